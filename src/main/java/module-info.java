@@ -1,5 +1,7 @@
 import stincmale.server.netty4.tcp.MonoHandler;
+import stincmale.server.netty4.tcp.http.HttpRequestDispatcherByRoute;
 import stincmale.server.netty4.tcp.http.HttpRequestProcessor;
+import stincmale.server.netty4.tcp.http.HttpRouter;
 import stincmale.server.netty4.tcp.http.SimpleHttpRequestDispatcherByUrl;
 import stincmale.server.reqres.Processor;
 import stincmale.server.reqres.RequestProcessor;
@@ -14,6 +16,8 @@ import stincmale.server.reqres.spring.SpringRequestDispatcher;
  *   via <a href="https://spring.io/projects/spring-framework">Spring Framework</a></li>
  *   <li>{@linkplain SimpleHttpRequestDispatcherByUrl auto-assigning} {@linkplain Processor annotated}
  *   {@linkplain HttpRequestProcessor HTTP request processors} to URIs;</li>
+ *   <li>{@linkplain HttpRouter routing} of HTTP requests to {@linkplain HttpRequestDispatcherByRoute request processors}
+ *   by URI paths with path parameters and by HTTP methods;</li>
  *   <li>{@linkplain RequestProcessor#process(Object) asynchronous processing} of requests
  *   with {@linkplain MonoHandler responses ordered the same as requests}.</li>
  * </ul>
@@ -22,12 +26,15 @@ module stincmale.server {
   requires org.slf4j;
   requires com.google.common;
   requires org.apache.commons.lang3;
+  requires java.management;
+  requires jdk.jfr;
   requires transitive jsr305;
   requires transitive io.netty.all;
   requires transitive java.dogstatsd.client;
   requires transitive spring.context;
   exports stincmale.server;
   exports stincmale.server.netty4;
+  exports stincmale.server.netty4.admin;
   exports stincmale.server.netty4.tcp;
   exports stincmale.server.netty4.tcp.http;
   exports stincmale.server.netty4.tcp.http.util;
@@ -35,5 +42,9 @@ module stincmale.server {
   exports stincmale.server.reqres;
   exports stincmale.server.reqres.spring;
   exports stincmale.server.reqres.spring.http;
+  exports stincmale.server.util.accesslog;
+  exports stincmale.server.util.context;
   exports stincmale.server.util.logging;
+  exports stincmale.server.util.stats;
+  exports stincmale.server.util.tracing;
 }
@@ -25,6 +25,16 @@ public abstract class AbstractServer implements Server {
    */
   protected abstract void doStart(CompletableFuture<Void> futureStop);
 
+  /**
+   * This method is called from {@link #start()} right before {@link #doStart(CompletableFuture)}
+   * in order to prepare the server to serve requests, e.g. to warm up the JIT compiler.
+   * The server is started even if this method throws a {@link RuntimeException}, unless the current thread is interrupted.
+   * <p>
+   * This implementation does nothing.
+   */
+  protected void warmUp() {
+  }
+
   /**
    * This method is called from {@link #stop()} only when it is required,
    * so it does not need to care if the server was already started/stopped.
@@ -41,6 +51,14 @@ public abstract class AbstractServer implements Server {
         result = new CompletableFuture<>();
         futureStop = result;
         result.thenRun(() -> logger.info("{} stopped", this));
+        if (!Thread.currentThread()
+            .isInterrupted()) {
+          try {
+            warmUp();
+          } catch (final RuntimeException e) {
+            logger.warn("Warm-up of {} has failed", this, e);
+          }
+        }
         if (Thread.currentThread()
             .isInterrupted()) {
           result.completeExceptionally(new InterruptedException());
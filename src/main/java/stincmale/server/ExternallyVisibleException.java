@@ -59,6 +59,43 @@ public class ExternallyVisibleException extends RuntimeException {
     this.externalMessage = externalMessage;
   }
 
+  /**
+   * @param message The detail message which is saved for later retrieval by the {@link #getMessage()} method.
+   * @param cause The cause which is saved for later retrieval by the {@link #getCause()} method.
+   * @param externalMessage Message that may be made visible outside the application.
+   * @param writableStackTrace Specifies whether the stack trace is filled in and whether
+   * {@linkplain #addSuppressed(Throwable) suppression} is enabled.
+   *
+   * @see #stackless(String)
+   */
+  protected ExternallyVisibleException(
+      @Nullable final String message, @Nullable final Throwable cause, final String externalMessage, final boolean writableStackTrace) {
+    super(message, cause, writableStackTrace, writableStackTrace);
+    checkNotNull(externalMessage, "The argument %s must not be null", "externalMessage");
+    this.externalMessage = externalMessage;
+  }
+
+  /**
+   * Creates an {@link ExternallyVisibleException} that neither has a stack trace nor {@linkplain #getSuppressed() suppressed} exceptions.
+   * Such an exception is cheap to create and to log, and is suitable for expected failures, e.g. caused by invalid input.
+   * An exception without a {@linkplain #getCause() cause} may also be created once and shared.
+   *
+   * @param externalMessage Message that may be made visible outside the application.
+   */
+  public static final ExternallyVisibleException stackless(final String externalMessage) {
+    return new ExternallyVisibleException(externalMessage, null, externalMessage, false);
+  }
+
+  /**
+   * @param externalMessage Message that may be made visible outside the application.
+   * @param cause The cause which is saved for later retrieval by the {@link #getCause()} method.
+   *
+   * @see #stackless(String)
+   */
+  public static final ExternallyVisibleException stackless(final String externalMessage, @Nullable final Throwable cause) {
+    return new ExternallyVisibleException(externalMessage, cause, externalMessage, false);
+  }
+
   /**
    * @return Message that may be made visible outside the application.
    */
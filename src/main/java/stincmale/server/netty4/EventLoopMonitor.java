@@ -0,0 +1,258 @@
+package stincmale.server.netty4;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import stincmale.server.util.stats.LatencyHistogram;
+import stincmale.server.util.stats.StatsAggregator;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Periodically samples the health of {@link EventExecutor}s (e.g. {@linkplain io.netty.channel.EventLoop event loops})
+ * of the monitored {@link EventExecutorGroup}s, e.g. the ones {@linkplain NettyServer#getEventLoopGroups() used by} {@link NettyServer}:
+ * <ul>
+ *   <li>the number of {@linkplain SingleThreadEventExecutor#pendingTasks() pending tasks}
+ *   (only for {@link SingleThreadEventExecutor}s);</li>
+ *   <li>the lag, i.e. the time between submitting a heartbeat task and executing it;</li>
+ *   <li>whether the {@link EventExecutor} is stuck, i.e. has not executed the heartbeat task for longer than the threshold,
+ *   e.g. because a {@link stincmale.server.reqres.RequestProcessor} blocks it by mistake.
+ *   The stack trace of the thread of a stuck {@link EventExecutor} is logged as a warning, even if the {@link EventExecutor}
+ *   got stuck before executing the first heartbeat task,
+ *   but not more often than once per {@value #MIN_LOG_INTERVAL_MILLIS} ms per {@link EventExecutor}.</li>
+ * </ul>
+ * If {@link StatsAggregator} is specified, then the following statistics are collected,
+ * tagged with {@code eventLoop:<group name>-<index of the EventExecutor in the group>}:
+ * {@code eventLoop.pendingTasks} {@linkplain StatsAggregator#gauge(String, java.util.Collection) gauge}
+ * (updated on each sample), {@code eventLoop.lag}
+ * {@linkplain StatsAggregator#histogram(String, java.util.Collection) histogram}, {@code eventLoop.stuckCount}
+ * {@linkplain StatsAggregator#counter(String, java.util.Collection) counter}.
+ * <p>
+ * Sampling is done by a dedicated thread, which is started by {@link #start()} and is stopped by {@link #stop()}.
+ */
+@ThreadSafe
+public final class EventLoopMonitor {
+  private static final Logger logger = LoggerFactory.getLogger(EventLoopMonitor.class);
+  private static final long MIN_LOG_INTERVAL_MILLIS = 60_000;
+
+  private final List<MonitoredExecutor> executors;
+  private final long sampleIntervalMillis;
+  private final long stuckThresholdNanos;
+  @Nullable
+  private final StatsAggregator statsAggregator;
+  private final Object mutex;
+  /**
+   * Is guarded by {@link #mutex}.
+   */
+  @Nullable
+  private ScheduledExecutorService sampler;
+
+  /**
+   * @param groups Monitored {@link EventExecutorGroup}s by names, which are used in statistics and logs.
+   * @param sampleIntervalMillis An interval between samples. Must be positive.
+   * @param stuckThresholdMillis The time after which an {@link EventExecutor} that has not executed a heartbeat task is considered stuck.
+   * Must not be less than {@code sampleIntervalMillis}.
+   */
+  public EventLoopMonitor(
+      final Map<String, ? extends EventExecutorGroup> groups,
+      final long sampleIntervalMillis,
+      final long stuckThresholdMillis,
+      @Nullable final StatsAggregator statsAggregator) {
+    checkNotNull(groups, "The argument %s must not be null", "groups");
+    checkArgument(sampleIntervalMillis > 0, "The argument %s must be positive", "sampleIntervalMillis");
+    checkArgument(stuckThresholdMillis >= sampleIntervalMillis,
+        "The argument %s must not be less than %s", "stuckThresholdMillis", "sampleIntervalMillis");
+    final List<MonitoredExecutor> executors = new ArrayList<>();
+    groups.forEach((groupName, group) -> {
+      int index = 0;
+      for (final EventExecutor executor : group) {
+        executors.add(new MonitoredExecutor(groupName + "-" + index, executor, statsAggregator));
+        index++;
+      }
+    });
+    this.executors = Collections.unmodifiableList(executors);
+    this.sampleIntervalMillis = sampleIntervalMillis;
+    stuckThresholdNanos = MILLISECONDS.toNanos(stuckThresholdMillis);
+    this.statsAggregator = statsAggregator;
+    mutex = new Object();
+  }
+
+  /**
+   * Starts sampling. Does nothing if already started.
+   */
+  public final void start() {
+    synchronized (mutex) {
+      if (sampler == null) {
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory(EventLoopMonitor.class, true));
+        sampler.scheduleWithFixedDelay(this::sample, sampleIntervalMillis, sampleIntervalMillis, MILLISECONDS);
+        this.sampler = sampler;
+        logger.info("{} was started", this);
+      }
+    }
+  }
+
+  /**
+   * Stops sampling. Does nothing if not started.
+   */
+  public final void stop() {
+    synchronized (mutex) {
+      if (sampler != null) {
+        sampler.shutdownNow();
+        sampler = null;
+        logger.info("{} was stopped", this);
+      }
+    }
+  }
+
+  /**
+   * Takes a sample of each monitored {@link EventExecutor}. Is called periodically after {@link #start()},
+   * but may also be called directly.
+   */
+  public final void sample() {
+    try {
+      final long nowNanos = System.nanoTime();
+      for (final MonitoredExecutor executor : executors) {
+        executor.sample(nowNanos, stuckThresholdNanos);
+      }
+    } catch (final RuntimeException e) {
+      logger.error("Failed to sample event loops", e);
+    }
+  }
+
+  /**
+   * @return The number of times monitored {@link EventExecutor}s were detected stuck.
+   */
+  public final long getStuckCount() {
+    return executors.stream()
+        .mapToLong(executor -> executor.stuckCount)
+        .sum();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(executorsCount=" + executors.size()
+        + ", sampleIntervalMillis=" + sampleIntervalMillis
+        + ", stuckThresholdMillis=" + NANOSECONDS.toMillis(stuckThresholdNanos)
+        + ", statsAggregator=" + statsAggregator
+        + ')';
+  }
+
+  /**
+   * All fields except for {@link #heartbeatPostedNanos} and {@link #thread} are accessed only by the sampling thread,
+   * though {@link #stuckCount} may be read by any thread.
+   */
+  @NotThreadSafe
+  private static final class MonitoredExecutor {
+    private final String name;
+    private final EventExecutor executor;
+    @Nullable
+    private final StatsAggregator.Gauge pendingTasksGauge;
+    @Nullable
+    private final LatencyHistogram lagHistogram;
+    @Nullable
+    private final StatsAggregator.Counter stuckCounter;
+    private final Runnable heartbeat;
+    /**
+     * The instant at which the outstanding heartbeat task was posted, or 0 if there is no such task.
+     */
+    private volatile long heartbeatPostedNanos;
+    @Nullable
+    private volatile Thread thread;
+    private boolean stuckReported;
+    private long lastLoggedNanos;
+    private volatile long stuckCount;
+
+    private MonitoredExecutor(final String name, final EventExecutor executor, @Nullable final StatsAggregator statsAggregator) {
+      this.name = name;
+      this.executor = executor;
+      final List<String> tags = List.of("eventLoop:" + name);
+      pendingTasksGauge = statsAggregator == null || !(executor instanceof SingleThreadEventExecutor)
+          ? null
+          : statsAggregator.gauge("eventLoop.pendingTasks", tags);
+      lagHistogram = statsAggregator == null ? null : statsAggregator.histogram("eventLoop.lag", tags);
+      stuckCounter = statsAggregator == null ? null : statsAggregator.counter("eventLoop.stuckCount", tags);
+      heartbeat = this::heartbeat;
+      try {//capture the thread up front, so that its stack trace is available even if the first heartbeat is never executed
+        executor.execute(() -> thread = Thread.currentThread());
+      } catch (final RejectedExecutionException e) {
+        //the executor is shut down and will not be sampled
+      }
+    }
+
+    private final void sample(final long nowNanos, final long stuckThresholdNanos) {
+      if (!executor.isShutdown()) {
+        if (pendingTasksGauge != null) {//the sampling thread is the only one that modifies the gauge
+          pendingTasksGauge.add(((SingleThreadEventExecutor)executor).pendingTasks() - pendingTasksGauge.value());
+        }
+        final long postedNanos = heartbeatPostedNanos;
+        if (postedNanos == 0) {
+          stuckReported = false;
+          heartbeatPostedNanos = nowNanos;
+          try {
+            executor.execute(heartbeat);
+          } catch (final RejectedExecutionException e) {
+            heartbeatPostedNanos = 0;
+          }
+        } else if (!stuckReported && nowNanos - postedNanos > stuckThresholdNanos) {
+          stuckReported = true;
+          stuckCount++;
+          if (stuckCounter != null) {
+            stuckCounter.increment();
+          }
+          if (lastLoggedNanos == 0 || nowNanos - lastLoggedNanos > MILLISECONDS.toNanos(MIN_LOG_INTERVAL_MILLIS)) {
+            lastLoggedNanos = nowNanos;
+            logStuck(NANOSECONDS.toMillis(nowNanos - postedNanos));
+          }
+        }
+      }
+    }
+
+    private final void logStuck(final long stuckForMillis) {
+      @Nullable
+      Thread thread = this.thread;
+      if (thread == null) {//the executor got stuck before executing the capturing task
+        thread = Thread.getAllStackTraces()
+            .keySet()
+            .stream()
+            .filter(executor::inEventLoop)
+            .findAny()
+            .orElse(null);
+      }
+      final StringBuilder stackTrace = new StringBuilder();
+      if (thread != null) {
+        for (final StackTraceElement element : thread.getStackTrace()) {
+          stackTrace.append(System.lineSeparator())
+              .append("\tat ")
+              .append(element);
+        }
+      }
+      logger.warn("Event loop {} (thread {}) has been stuck for {} ms{}", name, thread, stuckForMillis, stackTrace);
+    }
+
+    private final void heartbeat() {
+      thread = Thread.currentThread();
+      final long postedNanos = heartbeatPostedNanos;
+      if (lagHistogram != null) {
+        lagHistogram.record(System.nanoTime() - postedNanos);
+      }
+      heartbeatPostedNanos = 0;
+    }
+  }
+}
@@ -1,10 +1,22 @@
 package stincmale.server.netty4;
 
 import java.util.Optional;
+import javax.annotation.Nullable;
 
 /**
  * Just a typed key-value representation of data.
  */
 public interface Metadata {
   <T> Optional<T> get(MetadataKey<T> key);
+
+  /**
+   * Does the same as {@link #get(MetadataKey)} but does not allocate {@link Optional}.
+   * Implementations are encouraged to override this method.
+   *
+   * @return The value by the {@code key}, or {@code null} if there is no such value.
+   */
+  @Nullable
+  default <T> T getOrNull(final MetadataKey<T> key) {
+    return get(key).orElse(null);
+  }
 }
@@ -1,33 +1,109 @@
 package stincmale.server.netty4;
 
+import io.netty.channel.ChannelHandlerContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * A key that is used to store and retrieve data in the {@link RequestWithMetadata}.
+ * <p>
+ * {@link MetadataKey}s are registered in a global registry, which assigns each {@link MetadataKey} a dense
+ * {@linkplain #ordinal() ordinal}, so that {@link Metadata} implementations (e.g. {@link MetadataMap}) may store values in arrays
+ * indexed by ordinals. {@link MetadataKey}s are expected to be created once and stored in constants.
+ * <p>
+ * A {@linkplain #lazy(String, Loader) lazy} {@link MetadataKey} has a {@link Loader} that computes the value from the request
+ * and the {@link ChannelHandlerContext} when the value is requested for the first time,
+ * so that values that are needed only by some {@link stincmale.server.reqres.RequestProcessor}s are not computed for all requests.
  *
  * @param <T> A type of data that can be stored/retrieved by using the {@link MetadataKey}.
  */
 @Immutable
 public final class MetadataKey<T> {
+  private static final ConcurrentMap<String, MetadataKey<?>> registry = new ConcurrentHashMap<>();
+  private static final AtomicInteger nextOrdinal = new AtomicInteger();
+
   private final String id;
+  private final int ordinal;
+  @Nullable
+  private final Loader<? extends T> loader;
 
   /**
+   * Returns the registered {@link MetadataKey} with the specified {@code id}, or registers a new one.
+   *
    * @param <T> A type of data that can be stored/retrieved by using the {@link MetadataKey}.
    * @param id Identifier of the {@link MetadataKey}.
    */
+  @SuppressWarnings("unchecked")
   public static final <T> MetadataKey<T> of(final String id) {
     checkNotNull(id, "The argument %s must not be null", "id");
-    return new MetadataKey<>(id);
+    return (MetadataKey<T>)registry.computeIfAbsent(id, k -> new MetadataKey<>(k, nextOrdinal.getAndIncrement(), null));
+  }
+
+  /**
+   * Registers a new lazy {@link MetadataKey}, whose values are computed by the {@code loader} on demand.
+   * Lazy values are supported by {@link MetadataMap} that is {@linkplain MetadataMap#bind(ChannelHandlerContext, Object) bound}
+   * to a request.
+   *
+   * @param <T> A type of data that can be stored/retrieved by using the {@link MetadataKey}.
+   * @param id Identifier of the {@link MetadataKey}. Must not be already registered.
+   * @param loader A {@link Loader} of values.
+   */
+  @SuppressWarnings("unchecked")
+  public static final <T> MetadataKey<T> lazy(final String id, final Loader<? extends T> loader) {
+    checkNotNull(id, "The argument %s must not be null", "id");
+    checkNotNull(loader, "The argument %s must not be null", "loader");
+    final MetadataKey<T> result = (MetadataKey<T>)registry.computeIfAbsent(id, k -> new MetadataKey<>(k, nextOrdinal.getAndIncrement(), loader));
+    checkArgument(result.loader == loader, "The %s %s is already registered", MetadataKey.class.getSimpleName(), id);
+    return result;
+  }
+
+  /**
+   * @return All registered {@link MetadataKey}s.
+   */
+  static final Collection<MetadataKey<?>> registered() {
+    return Collections.unmodifiableCollection(registry.values());
   }
 
   /**
    * @param id Identifier of the {@link MetadataKey}.
    */
-  private MetadataKey(final String id) {
+  private MetadataKey(final String id, final int ordinal, @Nullable final Loader<? extends T> loader) {
     this.id = id;
+    this.ordinal = ordinal;
+    this.loader = loader;
   }
 
+  /**
+   * @return {@code true} if this {@link MetadataKey} was created via {@link #lazy(String, Loader)}.
+   */
+  public final boolean isLazy() {
+    return loader != null;
+  }
+
+  @Nullable
+  final Loader<? extends T> loader() {
+    return loader;
+  }
+
+  /**
+   * @return A non-negative number that is unique among registered {@link MetadataKey}s.
+   * Ordinals are assigned sequentially starting from 0.
+   */
+  public final int ordinal() {
+    return ordinal;
+  }
+
+  /**
+   * {@link MetadataKey}s are equal if they have equal identifiers, which for registered {@link MetadataKey}s means that
+   * they are the same object.
+   */
   @Override
   public final boolean equals(final Object o) {
     final boolean result;
@@ -35,7 +111,7 @@ public final class MetadataKey<T> {
       result = true;
     } else if (o instanceof MetadataKey) {
       final MetadataKey<?> that = (MetadataKey<?>)o;
-      result = id.equals(that.id);
+      result = ordinal == that.ordinal;
     } else {
       result = false;
     }
@@ -44,11 +120,30 @@ public final class MetadataKey<T> {
 
   @Override
   public final int hashCode() {
-    return id.hashCode();
+    return ordinal;
   }
 
   @Override
   public final String toString() {
     return id;
   }
+
+  /**
+   * A function that computes a value of a {@linkplain #lazy(String, Loader) lazy} {@link MetadataKey}.
+   * A {@link Loader} may be called by any thread that reads {@link Metadata}, not necessarily by an
+   * {@linkplain io.netty.channel.EventLoop event loop}, but is called at most once per request.
+   *
+   * @param <T> A type of data that can be stored/retrieved by using the {@link MetadataKey}.
+   */
+  @FunctionalInterface
+  public interface Loader<T> {
+    /**
+     * @param ctx {@link ChannelHandlerContext} of the handler that created the {@link Metadata}.
+     * @param request The request the {@link Metadata} is about.
+     *
+     * @return A value, or {@code null} if there is no value. Either result is memoized.
+     */
+    @Nullable
+    T load(ChannelHandlerContext ctx, Object request);
+  }
 }
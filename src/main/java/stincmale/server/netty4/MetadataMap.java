@@ -1,20 +1,120 @@
 package stincmale.server.netty4;
 
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.Recycler;
 import io.netty.util.ReferenceCounted;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * {@link Metadata} that stores values in an array indexed by {@linkplain MetadataKey#ordinal() ordinals} of {@link MetadataKey}s.
+ * The array is allocated lazily, when the first value is {@linkplain #set(MetadataKey, Object) set}.
+ * <p>
+ * {@link MetadataMap} may be {@linkplain #newPooled() pooled}, in which case the array is retained when the {@link MetadataMap}
+ * is {@linkplain #recycle() recycled}.
+ * <p>
+ * Values of {@linkplain MetadataKey#lazy(String, MetadataKey.Loader) lazy} {@link MetadataKey}s are computed on the first
+ * {@linkplain #getOrNull(MetadataKey) read} if this {@link MetadataMap} is {@linkplain #bind(ChannelHandlerContext, Object) bound}
+ * to a request, unless the value was explicitly {@linkplain #set(MetadataKey, Object) set}.
+ * While {@link #set(MetadataKey, Object)} must only be called before the {@link MetadataMap} is shared with other threads,
+ * lazy values may be read concurrently: each of them is computed at most once.
+ */
 @NotThreadSafe
 public final class MetadataMap implements Metadata {
+  private static final int MIN_CAPACITY = 8;
+  private static final Object NULL = new Object();
+  private static final VarHandle LAZY_VALUES_ELEMENT = MethodHandles.arrayElementVarHandle(Object[].class);
+  private static final Recycler<MetadataMap> recycler = new Recycler<>() {
+    @Override
+    protected final MetadataMap newObject(final Handle<MetadataMap> handle) {
+      return new MetadataMap(handle);
+    }
+  };
+
+  @Nullable
+  private Object[] values;
+  /**
+   * Is written only while holding the monitor of this object.
+   * Elements are written with the release semantics and read with the acquire semantics.
+   * {@link #NULL} represents a memoized {@code null}.
+   */
+  @Nullable
+  private volatile Object[] lazyValues;
   @Nullable
-  private Map<MetadataKey<?>, Object> metadata;
+  private ChannelHandlerContext ctx;
+  @Nullable
+  private Object request;
+  @Nullable
+  private final Recycler.Handle<MetadataMap> handle;
 
   public MetadataMap() {
+    handle = null;
+  }
+
+  private MetadataMap(final Recycler.Handle<MetadataMap> handle) {
+    this.handle = handle;
+  }
+
+  /**
+   * Returns an empty pooled {@link MetadataMap}, which is {@linkplain #recycle() recycled} either explicitly,
+   * or together with a {@linkplain RequestWithMetadata#newPooled(Object, Metadata) pooled} {@link RequestWithMetadata}.
+   */
+  public static final MetadataMap newPooled() {
+    return recycler.get();
+  }
+
+  /**
+   * Removes all values and returns this object to the pool if it is {@linkplain #newPooled() pooled}, does nothing otherwise.
+   * This object must not be used after it was recycled.
+   */
+  public final void recycle() {
+    if (handle != null) {
+      @Nullable final Object[] vs = values;
+      if (vs != null) {
+        Arrays.fill(vs, null);
+      }
+      synchronized (this) {
+        @Nullable final Object[] lvs = lazyValues;
+        if (lvs != null) {
+          Arrays.fill(lvs, null);
+        }
+      }
+      ctx = null;
+      request = null;
+      handle.recycle(this);
+    }
+  }
+
+  /**
+   * Binds this {@link MetadataMap} to the {@code request}, so that values of
+   * {@linkplain MetadataKey#lazy(String, MetadataKey.Loader) lazy} {@link MetadataKey}s can be computed.
+   * {@link RequestMetadataDecoder} binds {@link MetadataMap}s it creates automatically.
+   * This method must be called before this {@link MetadataMap} is shared with other threads.
+   *
+   * @param ctx See {@link MetadataKey.Loader#load(ChannelHandlerContext, Object)}.
+   * @param request See {@link MetadataKey.Loader#load(ChannelHandlerContext, Object)}.
+   */
+  public final MetadataMap bind(final ChannelHandlerContext ctx, final Object request) {
+    checkNotNull(ctx, "The argument %s must not be null", "ctx");
+    checkNotNull(request, "The argument %s must not be null", "request");
+    this.ctx = ctx;
+    this.request = request;
+    return this;
+  }
+
+  /**
+   * @return {@code true} if this {@link MetadataMap} is {@linkplain #bind(ChannelHandlerContext, Object) bound} to a request.
+   */
+  public final boolean isBound() {
+    return request != null;
   }
 
   /**
@@ -25,24 +125,101 @@ public final class MetadataMap implements Metadata {
     checkNotNull(value, "The argument %s must not be null", "value");
     checkArgument(!(value instanceof ReferenceCounted),
         "The argument %s must not be of type %s", "value", ReferenceCounted.class.getSimpleName());
-    if (metadata == null) {
-      metadata = new HashMap<>();
+    final int ordinal = key.ordinal();
+    @Nullable
+    Object[] vs = values;
+    if (vs == null) {
+      vs = new Object[Math.max(MIN_CAPACITY, ordinal + 1)];
+      values = vs;
+    } else if (ordinal >= vs.length) {
+      vs = Arrays.copyOf(vs, Math.max(2 * vs.length, ordinal + 1));
+      values = vs;
     }
-    metadata.put(key, value);
+    vs[ordinal] = value;
     return this;
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public final <T> Optional<T> get(final MetadataKey<T> key) {
+    return Optional.ofNullable(getOrNull(key));
+  }
+
+  @Override
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public final <T> T getOrNull(final MetadataKey<T> key) {
     checkNotNull(key, "The argument %s must not be null", "key");
-    return metadata == null
-        ? Optional.empty()
-        : Optional.ofNullable((T)metadata.get(key));
+    @Nullable final Object[] vs = values;
+    final int ordinal = key.ordinal();
+    @Nullable
+    Object result = vs == null || ordinal >= vs.length
+        ? null
+        : vs[ordinal];
+    if (result == null && key.isLazy()) {
+      result = getOrLoad(key);
+    }
+    return (T)result;
+  }
+
+  @Nullable
+  private final Object getOrLoad(final MetadataKey<?> key) {
+    final int ordinal = key.ordinal();
+    @Nullable
+    Object result = getLazy(lazyValues, ordinal);
+    if (result == null) {
+      synchronized (this) {
+        @Nullable
+        Object[] lvs = lazyValues;
+        result = getLazy(lvs, ordinal);
+        if (result == null && ctx != null && request != null) {
+          final MetadataKey.Loader<?> loader = key.loader();
+          assert loader != null;
+          result = loader.load(ctx, request);
+          if (result == null) {
+            result = NULL;
+          }
+          if (lvs == null || ordinal >= lvs.length) {
+            lvs = lvs == null
+                ? new Object[Math.max(MIN_CAPACITY, ordinal + 1)]
+                : Arrays.copyOf(lvs, Math.max(2 * lvs.length, ordinal + 1));
+            LAZY_VALUES_ELEMENT.setRelease(lvs, ordinal, result);
+            lazyValues = lvs;
+          } else {
+            LAZY_VALUES_ELEMENT.setRelease(lvs, ordinal, result);
+          }
+        }
+      }
+    }
+    return result == NULL ? null : result;
+  }
+
+  @Nullable
+  private static final Object getLazy(@Nullable final Object[] lazyValues, final int ordinal) {
+    return lazyValues == null || ordinal >= lazyValues.length
+        ? null
+        : LAZY_VALUES_ELEMENT.getAcquire(lazyValues, ordinal);
   }
 
   @Override
   public final String toString() {
+    @Nullable
+    Map<MetadataKey<?>, Object> metadata = null;
+    @Nullable final Object[] vs = values;
+    @Nullable final Object[] lvs = lazyValues;
+    if (vs != null || lvs != null) {
+      metadata = new HashMap<>();
+      for (final MetadataKey<?> key : MetadataKey.registered()) {
+        final int ordinal = key.ordinal();
+        if (vs != null && ordinal < vs.length && vs[ordinal] != null) {
+          metadata.put(key, vs[ordinal]);
+        } else {
+          @Nullable final Object lazyValue = getLazy(lvs, ordinal);
+          if (lazyValue != null && lazyValue != NULL) {
+            metadata.put(key, lazyValue);
+          }
+        }
+      }
+    }
     return getClass().getSimpleName()
         + "(metadata=" + metadata
         + ')';
@@ -6,12 +6,17 @@ import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.concurrent.Future;
 import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import org.slf4j.Logger;
@@ -19,7 +24,7 @@ import org.slf4j.LoggerFactory;
 import stincmale.server.AbstractServer;
 import stincmale.server.Server;
 import stincmale.server.netty4.tcp.DispatchMonoHandler;
-import stincmale.server.util.logging.TransferableMdc;
+import stincmale.server.util.context.Context;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -30,14 +35,54 @@ public class NettyServer extends AbstractServer {
   private static final Logger logger = LoggerFactory.getLogger(NettyServer.class);
 
   private final ServerBootstrap sBootstrap;
+  @Nullable
+  private final PipelineWarmUp warmUp;
+  @Nullable
+  private final Server adminServer;
 
   /**
    * @param sBootstrap Should be used to specify server options
    * as well as the {@linkplain ServerBootstrap#localAddress(SocketAddress) address to listen}.
    */
   public NettyServer(final ServerBootstrap sBootstrap) {
+    this(sBootstrap, null);
+  }
+
+  /**
+   * @param sBootstrap See {@link #NettyServer(ServerBootstrap)}.
+   * @param warmUp A warm-up phase that is run with the {@linkplain io.netty.bootstrap.ServerBootstrapConfig#childHandler() child handler}
+   * of the {@code sBootstrap} before binding.
+   */
+  public NettyServer(final ServerBootstrap sBootstrap, @Nullable final PipelineWarmUp warmUp) {
+    this(sBootstrap, warmUp, null);
+  }
+
+  /**
+   * @param sBootstrap See {@link #NettyServer(ServerBootstrap)}.
+   * @param warmUp See {@link #NettyServer(ServerBootstrap, PipelineWarmUp)}.
+   * @param adminServer A {@link Server} that shares the lifecycle of this server, e.g. {@link stincmale.server.netty4.admin.AdminServer}.
+   * It is {@linkplain Server#start() started} after this server starts listening,
+   * and is {@linkplain Server#stop() stopped} before this server stops listening.
+   */
+  public NettyServer(final ServerBootstrap sBootstrap, @Nullable final PipelineWarmUp warmUp, @Nullable final Server adminServer) {
     checkNotNull(sBootstrap, "The argument %s must not be null", "sBootstrap");
     this.sBootstrap = sBootstrap;
+    this.warmUp = warmUp;
+    this.adminServer = adminServer;
+  }
+
+  @Override
+  protected void warmUp() {
+    @Nullable final ChannelHandler childHandler = sBootstrap.config()
+        .childHandler();
+    if (warmUp != null && childHandler != null) {
+      try {
+        warmUp.warmUp(childHandler);
+      } catch (final InterruptedException e) {
+        Thread.currentThread()
+            .interrupt();
+      }
+    }
   }
 
   @Override
@@ -55,21 +100,18 @@ public class NettyServer extends AbstractServer {
     }
     if (futureBind != null) {
       if (futureBind.isSuccess()) {
-        final TransferableMdc mdc = TransferableMdc.current();
         final Channel channel = futureBind.channel();
         logger.info("{} is listening to {}", this, channel.localAddress());
-        channel.closeFuture()
-            .addListener(futureClose -> {
-              try (var transferredMdc = mdc.transfer()) {
-                if (futureClose.isSuccess()) {
-                  futureStop.complete(null);
-                } else if (futureClose.isCancelled()) {
-                  futureStop.cancel(true);
-                } else {
-                  futureStop.completeExceptionally(futureClose.cause());
+        Context.propagating(toCompletableFuture(channel.closeFuture()))
+            .whenComplete((nothing, cause) -> complete(futureStop, cause));
+        if (adminServer != null) {
+          adminServer.start()
+              .whenComplete((nothing, cause) -> {
+                if (cause != null) {
+                  logger.error("{} of {} has failed", adminServer, this, cause);
                 }
-              }
-            });
+              });
+        }
       } else if (futureBind.isCancelled()) {
         futureBind.cancel(true);
       } else {
@@ -80,43 +122,75 @@ public class NettyServer extends AbstractServer {
 
   protected void doStop(final CompletableFuture<Void> futureStop) {
     checkNotNull(futureStop, "The argument %s must not be null", "futureStop");
-    final TransferableMdc mdc = TransferableMdc.current();
-    CompletableFuture.allOf(
+    if (adminServer != null) {
+      try {
+        adminServer.stop();
+      } catch (final InterruptedException e) {
+        Thread.currentThread()
+            .interrupt();
+        logger.warn("Stopping {} of {} was interrupted", adminServer, this, e);
+      } catch (final RuntimeException e) {
+        logger.error("Failed to stop {} of {}", adminServer, this, e);
+      }
+    }
+    Context.propagating(CompletableFuture.allOf(
         shutdownEventLoopGroup(sBootstrap.config()
             .group()),
         shutdownEventLoopGroup(sBootstrap.config()
-            .childGroup()))
-        .whenComplete((nothing, cause) -> {
-          try (var transferredMdc = mdc.transfer()) {
-            if (cause == null) {
-              futureStop.complete(null);
-            } else if (cause instanceof CancellationException) {
-              futureStop.cancel(true);
-            } else {
-              futureStop.completeExceptionally(cause);
-            }
-          }
-        });
+            .childGroup())))
+        .whenComplete((nothing, cause) -> complete(futureStop, cause));
   }
 
   private static final CompletableFuture<Void> shutdownEventLoopGroup(@Nullable final EventLoopGroup eventLoopGroup) {
+    return eventLoopGroup == null
+        ? CompletableFuture.completedFuture(null)
+        : toCompletableFuture(eventLoopGroup.shutdownGracefully());
+  }
+
+  private static final CompletableFuture<Void> toCompletableFuture(final Future<?> future) {
     final CompletableFuture<Void> result = new CompletableFuture<>();
-    if (eventLoopGroup == null) {
-      result.complete(null);
+    future.addListener(completedFuture -> {
+      if (completedFuture.isSuccess()) {
+        result.complete(null);
+      } else if (completedFuture.isCancelled()) {
+        result.cancel(true);
+      } else {
+        result.completeExceptionally(completedFuture.cause());
+      }
+    });
+    return result;
+  }
+
+  private static final void complete(final CompletableFuture<Void> futureStop, @Nullable final Throwable cause) {
+    @Nullable final Throwable unwrappedCause = cause instanceof CompletionException && cause.getCause() != null
+        ? cause.getCause()
+        : cause;
+    if (unwrappedCause == null) {
+      futureStop.complete(null);
+    } else if (unwrappedCause instanceof CancellationException) {
+      futureStop.cancel(true);
     } else {
-      final TransferableMdc mdc = TransferableMdc.current();
-      eventLoopGroup.shutdownGracefully()
-          .addListener(futureShutdown -> {
-            try (var transferredMdc = mdc.transfer()) {
-              if (futureShutdown.isSuccess()) {
-                result.complete(null);
-              } else if (futureShutdown.isCancelled()) {
-                result.cancel(true);
-              } else {
-                result.completeExceptionally(futureShutdown.cause());
-              }
-            }
-          });
+      futureStop.completeExceptionally(unwrappedCause);
+    }
+  }
+
+  /**
+   * @return {@link EventLoopGroup}s of the {@link ServerBootstrap} by names: {@code "boss"} for the
+   * {@linkplain io.netty.bootstrap.ServerBootstrapConfig#group() parent group} and {@code "worker"} for the
+   * {@linkplain io.netty.bootstrap.ServerBootstrapConfig#childGroup() child group} if it differs from the parent group,
+   * e.g. in order to {@linkplain EventLoopMonitor monitor} them.
+   */
+  public final Map<String, EventLoopGroup> getEventLoopGroups() {
+    final Map<String, EventLoopGroup> result = new LinkedHashMap<>();
+    @Nullable final EventLoopGroup group = sBootstrap.config()
+        .group();
+    @Nullable final EventLoopGroup childGroup = sBootstrap.config()
+        .childGroup();
+    if (group != null) {
+      result.put("boss", group);
+    }
+    if (childGroup != null && childGroup != group) {
+      result.put("worker", childGroup);
     }
     return result;
   }
@@ -125,6 +199,8 @@ public class NettyServer extends AbstractServer {
   public String toString() {
     return getClass().getSimpleName()
         + "(sBootstrap=" + sBootstrap
+        + ", warmUp=" + warmUp
+        + ", adminServer=" + adminServer
         + ')';
   }
 
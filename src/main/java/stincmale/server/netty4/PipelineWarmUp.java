@@ -0,0 +1,24 @@
+package stincmale.server.netty4;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelHandler;
+
+/**
+ * A warm-up phase that {@link NettyServer} runs before {@linkplain ServerBootstrap#bind() binding},
+ * see {@link NettyServer#NettyServer(ServerBootstrap, PipelineWarmUp)}.
+ *
+ * @see stincmale.server.netty4.tcp.http.HttpWarmUp
+ */
+public interface PipelineWarmUp {
+  /**
+   * Drives synthetic requests through {@link io.netty.channel.ChannelPipeline}s initialized by the {@code childHandler}.
+   * Must not leave any {@link io.netty.channel.Channel}s or threads behind.
+   *
+   * @param childHandler The {@linkplain io.netty.bootstrap.ServerBootstrapConfig#childHandler() child handler} of the server.
+   * Implementations may initialize {@link io.netty.channel.Channel}s of a different type than the server does,
+   * e.g. {@link io.netty.channel.local.LocalChannel}s, so the {@code childHandler} should accept any {@link io.netty.channel.Channel}.
+   *
+   * @throws InterruptedException If the current thread was interrupted.
+   */
+  void warmUp(ChannelHandler childHandler) throws InterruptedException;
+}
@@ -2,37 +2,135 @@ package stincmale.server.netty4;
 
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.MessageToMessageDecoder;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.List;
+import stincmale.server.util.tracing.Trace;
+import stincmale.server.util.tracing.Tracer;
 
 /**
  * A {@link MessageToMessageDecoder} that wraps messages of type {@code RQ} into messages of type
  * {@link RequestWithMetadata}{@code <RQ>}.
+ * <p>
+ * Unlike a general {@link MessageToMessageDecoder}, this decoder neither allocates an intermediate list of decoded messages,
+ * nor {@linkplain ReferenceCounted#release() releases} a request: the ownership of the request is passed upstream
+ * together with the {@link RequestWithMetadata}.
+ * If the decoder is {@linkplain #RequestMetadataDecoder(boolean) pooled}, then it produces
+ * {@linkplain RequestWithMetadata#newPooled(Object, Metadata) pooled} {@link RequestWithMetadata}s, which must be
+ * {@linkplain RequestWithMetadata#recycle() recycled} upstream, e.g. by {@link stincmale.server.netty4.tcp.DispatchMonoHandler}.
+ * <p>
+ * If {@link Tracer} is {@linkplain #RequestMetadataDecoder(boolean, Tracer) specified}, then the decoder makes the sampling decision
+ * for each request and specifies the {@linkplain Trace#METADATA_KEY trace} of each sampled request
+ * if the created {@link Metadata} is {@link MetadataMap}.
+ * Spans of sampled requests are recorded by {@link stincmale.server.netty4.tcp.DispatchMonoHandler}.
  *
  * @param <RQ> A type of the request this {@link io.netty.channel.ChannelInboundHandlerAdapter} expects.
  */
 @Sharable
 @ThreadSafe
 public abstract class RequestMetadataDecoder<RQ> extends MessageToMessageDecoder<RQ> {
+  private final boolean pooled;
+  @Nullable
+  private final Tracer tracer;
+
   protected RequestMetadataDecoder() {
+    this(false);
+  }
+
+  /**
+   * @param pooled Specifies whether the decoder produces {@linkplain RequestWithMetadata#newPooled(Object, Metadata) pooled}
+   * {@link RequestWithMetadata}s.
+   */
+  protected RequestMetadataDecoder(final boolean pooled) {
+    this(pooled, null);
+  }
+
+  /**
+   * @param pooled See {@link #RequestMetadataDecoder(boolean)}.
+   * @param tracer {@link Tracer} that decides which requests are traced.
+   */
+  protected RequestMetadataDecoder(final boolean pooled, @Nullable final Tracer tracer) {
+    this.pooled = pooled;
+    this.tracer = tracer;
+  }
+
+  /**
+   * Wraps the {@code msg} into {@link RequestWithMetadata} and {@linkplain ChannelHandlerContext#fireChannelRead(Object) propagates}
+   * it upstream if the {@code msg} is {@linkplain #acceptInboundMessage(Object) accepted},
+   * otherwise propagates the {@code msg} as is.
+   * The {@code msg} is {@linkplain ReferenceCountUtil#release(Object) released} only if wrapping fails.
+   */
+  @Override
+  public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+    if (acceptInboundMessage(msg)) {
+      @SuppressWarnings("unchecked") final RQ request = (RQ)msg;
+      final RequestWithMetadata<RQ> requestWithMetadata;
+      try {
+        requestWithMetadata = wrap(ctx, request);
+      } catch (final DecoderException e) {
+        ReferenceCountUtil.release(msg);
+        throw e;
+      } catch (final Exception e) {
+        ReferenceCountUtil.release(msg);
+        throw new DecoderException(e);
+      }
+      ctx.fireChannelRead(requestWithMetadata);
+    } else {
+      ctx.fireChannelRead(msg);
+    }
   }
 
   /**
-   * @param request Note that {@linkplain ReferenceCountUtil#retain(java.lang.Object)} is called for the {@code msg}.
-   * This method automatically calls {@link ReferenceCounted#retain() retain} on the {@code request}.
+   * Is not used by {@link #channelRead(ChannelHandlerContext, Object)}.
+   * This method automatically calls {@link ReferenceCounted#retain() retain} on the {@code request},
+   * because {@link MessageToMessageDecoder} releases the decoded message.
    */
   @Override
   protected final void decode(final ChannelHandlerContext ctx, final RQ request, final List<Object> out) throws Exception {
-    final Metadata metadata = createMetadata(ctx, request);
-    final RequestWithMetadata<RQ> requestWithMetadata = new RequestWithMetadata<>(request, metadata);
+    final RequestWithMetadata<RQ> requestWithMetadata = wrap(ctx, request);
+    ReferenceCountUtil.retain(request);
     out.add(requestWithMetadata);
   }
 
   /**
-   * Is called from {@link #decode(ChannelHandlerContext, Object, List)}.
+   * Is called from {@link #channelRead(ChannelHandlerContext, Object)}.
+   * Implementations may use {@link #newMetadataMap()} to create {@link MetadataMap}
+   * that is pooled if this decoder is {@linkplain #RequestMetadataDecoder(boolean) pooled}.
+   * Values that are needed only by some {@link stincmale.server.reqres.RequestProcessor}s should not be computed here,
+   * but should rather be provided via {@linkplain MetadataKey#lazy(String, MetadataKey.Loader) lazy} {@link MetadataKey}s:
+   * the returned {@link MetadataMap} is automatically {@linkplain MetadataMap#bind(ChannelHandlerContext, Object) bound}
+   * to the {@code request}.
    */
   protected abstract Metadata createMetadata(ChannelHandlerContext ctx, RQ request);
+
+  /**
+   * @return {@linkplain MetadataMap#newPooled() Pooled} {@link MetadataMap} if this decoder is
+   * {@linkplain #RequestMetadataDecoder(boolean) pooled}, a new {@link MetadataMap} otherwise.
+   */
+  protected final MetadataMap newMetadataMap() {
+    return pooled ? MetadataMap.newPooled() : new MetadataMap();
+  }
+
+  private final RequestWithMetadata<RQ> wrap(final ChannelHandlerContext ctx, final RQ request) {
+    final Metadata metadata = createMetadata(ctx, request);
+    if (metadata instanceof MetadataMap) {
+      final MetadataMap metadataMap = (MetadataMap)metadata;
+      if (!metadataMap.isBound()) {
+        metadataMap.bind(ctx, request);
+      }
+      if (tracer != null) {
+        @Nullable final Trace trace = tracer.sample();
+        if (trace != null) {
+          metadataMap.set(Trace.METADATA_KEY, trace);
+        }
+      }
+    }
+    return pooled
+        ? RequestWithMetadata.newPooled(request, metadata)
+        : new RequestWithMetadata<>(request, metadata);
+  }
 }
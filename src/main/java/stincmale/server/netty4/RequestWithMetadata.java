@@ -1,9 +1,16 @@
 package stincmale.server.netty4;
 
+import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+import io.netty.util.ResourceLeakTracker;
 import javax.annotation.Nullable;
 import stincmale.server.netty4.tcp.DispatchMonoHandler;
+import stincmale.server.reqres.Prioritized;
+import stincmale.server.reqres.Priority;
+import stincmale.server.reqres.Routable;
 import javax.annotation.concurrent.NotThreadSafe;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -11,13 +18,43 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Allows to attach any data to the actual request before feeding it to the
  * {@link DispatchMonoHandler}, or for any other purpose.
+ * <p>
+ * {@link RequestWithMetadata} may be {@linkplain #newPooled(Object, Metadata) pooled}, in which case it must be {@linkplain #recycle() recycled}
+ * once it is not used anymore, and must not be used after that. {@link DispatchMonoHandler} recycles requests it receives
+ * after the response is written. Pooled instances are tracked by a {@link ResourceLeakDetector}, so leaks are reported
+ * the same way as leaks of {@link io.netty.buffer.ByteBuf}s, e.g. in tests with {@link ResourceLeakDetector.Level#PARANOID}.
+ * <p>
+ * {@link RequestWithMetadata} carries its {@linkplain #route() route}, which {@link DispatchMonoHandler} uses to group statistics,
+ * and its {@linkplain #priority() priority} if it is specified in the {@linkplain #metadata() metadata} by the key {@link #PRIORITY_METADATA_KEY}.
  *
  * @param <RQ> A type of the actual request
  */
 @NotThreadSafe
-public final class RequestWithMetadata<RQ> implements ReferenceCounted {
-  private final RQ request;
-  private final Metadata metadata;
+public final class RequestWithMetadata<RQ> implements ReferenceCounted, Routable, Prioritized {
+  /**
+   * A key that may be used to specify the {@linkplain #priority() priority} of a request in its {@link Metadata}, e.g. by a
+   * {@link RequestMetadataDecoder}.
+   */
+  public static final MetadataKey<Priority> PRIORITY_METADATA_KEY = MetadataKey.of(Priority.class.getName());
+  private static final Recycler<RequestWithMetadata<?>> recycler = new Recycler<>() {
+    @Override
+    protected final RequestWithMetadata<?> newObject(final Handle<RequestWithMetadata<?>> handle) {
+      return new RequestWithMetadata<>(handle);
+    }
+  };
+  private static final ResourceLeakDetector<RequestWithMetadata<?>> leakDetector = newLeakDetector();
+
+  @Nullable
+  private RQ request;
+  @Nullable
+  private Metadata metadata;
+  @Nullable
+  private String route;
+  @Nullable
+  private final Recycler.Handle<RequestWithMetadata<?>> handle;
+  @Nullable
+  private ResourceLeakTracker<RequestWithMetadata<?>> leak;
+  private boolean recycled;
 
   /**
    * Constructs a new {@link RequestWithMetadata}.
@@ -28,20 +65,121 @@ public final class RequestWithMetadata<RQ> implements ReferenceCounted {
   public RequestWithMetadata(final RQ request, final Metadata metadata) {
     this.request = checkNotNull(request, "The argument %s must not be null", "request");
     this.metadata = checkNotNull(metadata, "The argument %s must not be null", "metadata");
+    handle = null;
   }
 
   public RequestWithMetadata(final RQ request) {
     this(request, new MetadataMap());
   }
 
+  private RequestWithMetadata(final Recycler.Handle<RequestWithMetadata<?>> handle) {
+    this.handle = handle;
+  }
+
+  /**
+   * Returns a pooled {@link RequestWithMetadata} that must be {@linkplain #recycle() recycled}.
+   *
+   * @param metadata {@link Metadata} that is {@linkplain MetadataMap#recycle() recycled} together with the returned object
+   * if it is a {@linkplain MetadataMap#newPooled() pooled} {@link MetadataMap}.
+   */
+  @SuppressWarnings("unchecked")
+  public static final <RQ> RequestWithMetadata<RQ> newPooled(final RQ request, final Metadata metadata) {
+    checkNotNull(request, "The argument %s must not be null", "request");
+    checkNotNull(metadata, "The argument %s must not be null", "metadata");
+    final RequestWithMetadata<RQ> result = (RequestWithMetadata<RQ>)recycler.get();
+    result.request = request;
+    result.metadata = metadata;
+    result.recycled = false;
+    result.leak = leakDetector.track(result);
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static final ResourceLeakDetector<RequestWithMetadata<?>> newLeakDetector() {
+    return ResourceLeakDetectorFactory.instance()
+        .newResourceLeakDetector((Class<RequestWithMetadata<?>>)(Class<?>)RequestWithMetadata.class);
+  }
+
+  /**
+   * @throws IllegalStateException If this object is {@linkplain #isPooled() pooled} and was {@linkplain #recycle() recycled}.
+   */
   public final RQ request() {
+    checkNotRecycled();
     return request;
   }
 
+  /**
+   * @throws IllegalStateException If this object is {@linkplain #isPooled() pooled} and was {@linkplain #recycle() recycled}.
+   */
   public final Metadata metadata() {
+    checkNotRecycled();
     return metadata;
   }
 
+  @Override
+  public final void setRoute(final String route) {
+    checkNotNull(route, "The argument %s must not be null", "route");
+    checkNotRecycled();
+    this.route = route;
+  }
+
+  @Override
+  @Nullable
+  public final String route() {
+    return route;
+  }
+
+  /**
+   * @return The priority specified in the {@linkplain #metadata() metadata} by the key {@link #PRIORITY_METADATA_KEY},
+   * or {@code null} if it is not specified.
+   *
+   * @throws IllegalStateException If this object is {@linkplain #isPooled() pooled} and was {@linkplain #recycle() recycled}.
+   */
+  @Override
+  @Nullable
+  public final Priority priority() {
+    return metadata().getOrNull(PRIORITY_METADATA_KEY);
+  }
+
+  /**
+   * @return {@code true} if this object was created via {@link #newPooled(Object, Metadata)}.
+   */
+  public final boolean isPooled() {
+    return handle != null;
+  }
+
+  /**
+   * Returns this object to the pool if it is {@linkplain #isPooled() pooled}, and does nothing otherwise.
+   * Also {@linkplain MetadataMap#recycle() recycles} the {@linkplain #metadata() metadata} if it is {@link MetadataMap}.
+   * Note that this method does not {@linkplain #release() release} the {@linkplain #request() request}.
+   *
+   * @throws IllegalStateException If this object was already recycled.
+   */
+  public final void recycle() {
+    if (handle != null) {
+      checkNotRecycled();
+      recycled = true;
+      if (metadata instanceof MetadataMap) {
+        ((MetadataMap)metadata).recycle();
+      }
+      request = null;
+      metadata = null;
+      route = null;
+      @Nullable final ResourceLeakTracker<RequestWithMetadata<?>> leak = this.leak;
+      if (leak != null) {
+        this.leak = null;
+        leak.close(this);
+      }
+      handle.recycle(this);
+    }
+  }
+
+  private final void checkNotRecycled() {
+    if (recycled) {
+      throw new IllegalStateException(String.format("%s has been recycled", getClass().getSimpleName()));
+    }
+  }
+
   @Override
   public final int refCnt() {
     return request instanceof ReferenceCounted
@@ -65,12 +203,18 @@ public final class RequestWithMetadata<RQ> implements ReferenceCounted {
   @Override
   public final ReferenceCounted touch() {
     ReferenceCountUtil.touch(request);
+    if (leak != null) {
+      leak.record();
+    }
     return this;
   }
 
   @Override
   public final ReferenceCounted touch(@Nullable final Object hint) {
     ReferenceCountUtil.touch(request, hint);
+    if (leak != null) {
+      leak.record(hint);
+    }
     return this;
   }
 
@@ -90,6 +234,7 @@ public final class RequestWithMetadata<RQ> implements ReferenceCounted {
     return getClass().getSimpleName()
         + "(request=" + request
         + ", metadata=" + metadata
+        + ", route=" + route
         + ')';
   }
 }
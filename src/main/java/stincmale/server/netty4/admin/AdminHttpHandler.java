@@ -0,0 +1,93 @@
+package stincmale.server.netty4.admin;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.AsciiString;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import stincmale.server.netty4.tcp.http.util.HttpResponseTemplate;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * Responds to {@code GET} {@value #METRICS_PATH} with metrics written by {@link PrometheusExporter},
+ * and responds with {@code 404}/{@code 405} to other requests.
+ */
+@ThreadSafe
+@Sharable
+final class AdminHttpHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+  private static final Logger logger = LoggerFactory.getLogger(AdminHttpHandler.class);
+  static final String METRICS_PATH = "/metrics";
+  private static final AsciiString CONTENT_TYPE = AsciiString.cached("text/plain; version=0.0.4; charset=utf-8");
+  private static final HttpResponseTemplate notFoundResponse = new HttpResponseTemplate(HTTP_1_1, NOT_FOUND, null);
+  private static final HttpResponseTemplate methodNotAllowedResponse = new HttpResponseTemplate(HTTP_1_1, METHOD_NOT_ALLOWED, null);
+
+  private final PrometheusExporter exporter;
+
+  AdminHttpHandler(final PrometheusExporter exporter) {
+    checkNotNull(exporter, "The argument %s must not be null", "exporter");
+    this.exporter = exporter;
+  }
+
+  @Override
+  protected final void channelRead0(final ChannelHandlerContext ctx, final FullHttpRequest request) {
+    final String path = new QueryStringDecoder(request.uri()).path();
+    if (!path.equals(METRICS_PATH)) {
+      ctx.writeAndFlush(notFoundResponse.newResponse())
+          .addListener(ChannelFutureListener.CLOSE);
+    } else if (!request.method()
+        .equals(HttpMethod.GET)) {
+      ctx.writeAndFlush(methodNotAllowedResponse.newResponse())
+          .addListener(ChannelFutureListener.CLOSE);
+    } else {
+      final ByteBuf content = ctx.alloc()
+          .buffer();
+      final FullHttpResponse response;
+      try {
+        exporter.write(content);
+        response = new DefaultFullHttpResponse(HTTP_1_1, OK, content);
+      } catch (final RuntimeException e) {
+        content.release();
+        throw e;
+      }
+      response.headers()
+          .set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE)
+          .setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+      final boolean keepAlive = HttpUtil.isKeepAlive(request);
+      HttpUtil.setKeepAlive(response, keepAlive);
+      if (keepAlive) {
+        ctx.writeAndFlush(response, ctx.voidPromise());
+      } else {
+        ctx.writeAndFlush(response)
+            .addListener(ChannelFutureListener.CLOSE);
+      }
+    }
+  }
+
+  @Override
+  public final void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+    logger.error("Failed to process an admin request in {}", ctx.channel(), cause);
+    ctx.close();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(exporter=" + exporter
+        + ')';
+  }
+}
@@ -0,0 +1,65 @@
+package stincmale.server.netty4.admin;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.net.SocketAddress;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.server.Server;
+import stincmale.server.netty4.NettyServer;
+import stincmale.server.netty4.PipelineWarmUp;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An HTTP server that exposes metrics written by {@link PrometheusExporter} at {@code GET /metrics}.
+ * The server uses its own single-threaded {@link EventLoopGroup}, so scraping metrics neither competes with
+ * the monitored server for its {@linkplain io.netty.channel.EventLoop event loops} nor is blocked when they are stuck or overloaded.
+ * Responses are built in buffers allocated by {@link PooledByteBufAllocator#DEFAULT}.
+ * <p>
+ * {@link AdminServer} is intended to be specified as the {@code adminServer} of the monitored server via
+ * {@link NettyServer#NettyServer(ServerBootstrap, PipelineWarmUp, Server)}, which {@linkplain #start() starts} and
+ * {@linkplain #stop() stops} it together with the monitored server, e.g.
+ * <pre>{@code
+ * new NettyServer(sBootstrap, warmUp, new AdminServer(new InetSocketAddress(9090), exporter))
+ * }</pre>
+ */
+@ThreadSafe
+public final class AdminServer extends NettyServer {
+  private static final int MAX_REQUEST_SIZE = 8 * 1024;
+
+  /**
+   * @param localAddress The address to listen.
+   */
+  public AdminServer(final SocketAddress localAddress, final PrometheusExporter exporter) {
+    super(newSBootstrap(localAddress, exporter));
+  }
+
+  private static final ServerBootstrap newSBootstrap(final SocketAddress localAddress, final PrometheusExporter exporter) {
+    checkNotNull(localAddress, "The argument %s must not be null", "localAddress");
+    checkNotNull(exporter, "The argument %s must not be null", "exporter");
+    final AdminHttpHandler adminHttpHandler = new AdminHttpHandler(exporter);
+    final EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("admin", true));
+    return newDefaultSBootstrap()
+        .group(eventLoopGroup)
+        .channel(NioServerSocketChannel.class)
+        .localAddress(localAddress)
+        .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected final void initChannel(final SocketChannel ch) {
+            ch.pipeline()
+                .addLast(new HttpServerCodec())
+                .addLast(new HttpObjectAggregator(MAX_REQUEST_SIZE))
+                .addLast(adminHttpHandler);
+          }
+        });
+  }
+}
@@ -0,0 +1,306 @@
+package stincmale.server.netty4.admin;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.server.netty4.util.channel.ConnectionCounter;
+import stincmale.server.util.stats.LatencyHistogram;
+import stincmale.server.util.stats.StatsAggregator;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@linkplain #write(ByteBuf) Writes} metrics in the
+ * <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus text format</a>:
+ * <ul>
+ *   <li>metrics {@linkplain StatsAggregator#visit(StatsAggregator.Visitor) registered} in {@link StatsAggregator}:
+ *   {@linkplain StatsAggregator.Counter counters} as {@code <aspect>_total} counters,
+ *   {@linkplain StatsAggregator.Gauge gauges} (e.g. in-flight requests per {@link stincmale.server.reqres.RequestProcessor})
+ *   as {@code <aspect>} gauges, {@linkplain StatsAggregator.Summary histograms} (e.g. latencies) as {@code <aspect>_seconds} summaries
+ *   with percentiles of the {@linkplain StatsAggregator.Summary#snapshot() last flushed snapshot}
+ *   (or of all recorded values if {@link StatsAggregator} was never {@linkplain StatsAggregator#flush() flushed})
+ *   and with {@code _sum}, {@code _count} of all recorded values,
+ *   where characters that are not allowed in Prometheus metric names are replaced with {@code _},
+ *   the {@code Millis} suffix is removed, and tags {@code key:value} are converted to labels {@code key="value"};</li>
+ *   <li>{@code netty_event_loop_pending_tasks} gauges for {@link SingleThreadEventExecutor}s;</li>
+ *   <li>{@code netty_allocator_used_heap_memory_bytes}, {@code netty_allocator_used_direct_memory_bytes} gauges;</li>
+ *   <li>{@code server_connections_active} gauge and {@code server_connections_opened_total} counter.</li>
+ * </ul>
+ * Metrics are written directly into the provided {@link ByteBuf}, and names of metrics are computed once per metric.
+ */
+@ThreadSafe
+public final class PrometheusExporter {
+  private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999", "0.9999"};
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+  @Nullable
+  private final StatsAggregator statsAggregator;
+  private final Map<String, EventExecutorGroup> eventLoopGroups;
+  private final Map<String, ByteBufAllocatorMetricProvider> allocators;
+  @Nullable
+  private final ConnectionCounter connectionCounter;
+  /**
+   * Series (a metric name with labels) by metrics.
+   */
+  private final ConcurrentMap<Object, Series> series;
+
+  /**
+   * @param statsAggregator {@link StatsAggregator} whose metrics are exported.
+   * @param eventLoopGroups {@link EventExecutorGroup}s by names, e.g. {@link stincmale.server.netty4.NettyServer#getEventLoopGroups()}.
+   * @param allocators Allocators by names, e.g. {@link io.netty.buffer.PooledByteBufAllocator#DEFAULT}.
+   * @param connectionCounter {@link ConnectionCounter} whose metrics are exported.
+   */
+  public PrometheusExporter(
+      @Nullable final StatsAggregator statsAggregator,
+      final Map<String, ? extends EventExecutorGroup> eventLoopGroups,
+      final Map<String, ? extends ByteBufAllocatorMetricProvider> allocators,
+      @Nullable final ConnectionCounter connectionCounter) {
+    checkNotNull(eventLoopGroups, "The argument %s must not be null", "eventLoopGroups");
+    checkNotNull(allocators, "The argument %s must not be null", "allocators");
+    this.statsAggregator = statsAggregator;
+    this.eventLoopGroups = Collections.unmodifiableMap(new LinkedHashMap<>(eventLoopGroups));
+    this.allocators = Collections.unmodifiableMap(new LinkedHashMap<>(allocators));
+    this.connectionCounter = connectionCounter;
+    series = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Writes all metrics to the {@code out}.
+   */
+  public final void write(final ByteBuf out) {
+    checkNotNull(out, "The argument %s must not be null", "out");
+    if (statsAggregator != null) {
+      writeStatsAggregator(statsAggregator, out);
+    }
+    if (!eventLoopGroups.isEmpty()) {
+      writeType("netty_event_loop_pending_tasks", "gauge", out);
+      eventLoopGroups.forEach((groupName, group) -> {
+        int index = 0;
+        for (final EventExecutor executor : group) {
+          if (executor instanceof SingleThreadEventExecutor) {
+            ByteBufUtil.writeAscii(out, "netty_event_loop_pending_tasks{eventLoop=\"");
+            writeLabelValue(groupName, out);
+            out.writeByte('-');
+            writeLong(index, out);
+            ByteBufUtil.writeAscii(out, "\"} ");
+            writeLong(((SingleThreadEventExecutor)executor).pendingTasks(), out);
+            out.writeByte('\n');
+          }
+          index++;
+        }
+      });
+    }
+    if (!allocators.isEmpty()) {
+      writeType("netty_allocator_used_heap_memory_bytes", "gauge", out);
+      allocators.forEach((name, allocator) -> writeAllocator(
+          "netty_allocator_used_heap_memory_bytes", name, allocator.metric()
+              .usedHeapMemory(), out));
+      writeType("netty_allocator_used_direct_memory_bytes", "gauge", out);
+      allocators.forEach((name, allocator) -> writeAllocator(
+          "netty_allocator_used_direct_memory_bytes", name, allocator.metric()
+              .usedDirectMemory(), out));
+    }
+    if (connectionCounter != null) {
+      writeType("server_connections_active", "gauge", out);
+      ByteBufUtil.writeAscii(out, "server_connections_active ");
+      writeLong(connectionCounter.getActiveCount(), out);
+      out.writeByte('\n');
+      writeType("server_connections_opened_total", "counter", out);
+      ByteBufUtil.writeAscii(out, "server_connections_opened_total ");
+      writeLong(connectionCounter.getOpenedCount(), out);
+      out.writeByte('\n');
+    }
+  }
+
+  private final void writeStatsAggregator(final StatsAggregator statsAggregator, final ByteBuf out) {
+    /* Prometheus requires all series of a metric to be written together,
+     * while StatsAggregator may have multiple metrics with the same aspect and different tags.*/
+    final Map<String, List<Object>> families = new TreeMap<>();
+    statsAggregator.visit(new StatsAggregator.Visitor() {
+      @Override
+      public final void visit(final StatsAggregator.Counter counter) {
+        add(counter, counter.aspect(), counter.tags(), "_total");
+      }
+
+      @Override
+      public final void visit(final StatsAggregator.Gauge gauge) {
+        add(gauge, gauge.aspect(), gauge.tags(), "");
+      }
+
+      @Override
+      public final void visit(final StatsAggregator.Summary summary) {
+        add(summary, summary.aspect(), summary.tags(), "_seconds");
+      }
+
+      private final void add(final Object metric, final String aspect, final List<String> tags, final String suffix) {
+        final Series s = series.computeIfAbsent(metric, m -> new Series(aspect, tags, suffix));
+        families.computeIfAbsent(s.name, name -> new ArrayList<>())
+            .add(metric);
+      }
+    });
+    families.forEach((name, metrics) -> {
+      final Object first = metrics.get(0);
+      final String type = first instanceof StatsAggregator.Counter
+          ? "counter"
+          : first instanceof StatsAggregator.Gauge ? "gauge" : "summary";
+      writeType(name, type, out);
+      for (final Object metric : metrics) {
+        final Series s = series.get(metric);
+        if (metric instanceof StatsAggregator.Counter) {
+          writeSample(s.name, s.labels, null, ((StatsAggregator.Counter)metric).sum(), "", out);
+        } else if (metric instanceof StatsAggregator.Gauge) {
+          writeSample(s.name, s.labels, null, ((StatsAggregator.Gauge)metric).value(), "", out);
+        } else if (metric instanceof StatsAggregator.Summary) {
+          final StatsAggregator.Summary summary = (StatsAggregator.Summary)metric;
+          final LatencyHistogram.Snapshot snapshot = summary.snapshot();
+          if (snapshot.count() > 0) {
+            for (int i = 0; i < QUANTILES.length; i++) {
+              writeSample(s.name, s.labels, QUANTILES[i], snapshot.valueAtPercentile(PERCENTILES[i]), "e-9", out);
+            }
+          }
+          writeSample(s.sumName, s.labels, null, summary.totalSum(), "e-9", out);
+          writeSample(s.countName, s.labels, null, summary.totalCount(), "", out);
+        }
+      }
+    });
+  }
+
+  private static final void writeType(final String name, final String type, final ByteBuf out) {
+    ByteBufUtil.writeAscii(out, "# TYPE ");
+    ByteBufUtil.writeAscii(out, name);
+    out.writeByte(' ');
+    ByteBufUtil.writeAscii(out, type);
+    out.writeByte('\n');
+  }
+
+  private static final void writeSample(
+      final String name,
+      final String labels,
+      @Nullable final String quantile,
+      final long value,
+      final String valueSuffix,
+      final ByteBuf out) {
+    ByteBufUtil.writeAscii(out, name);
+    if (!labels.isEmpty() || quantile != null) {
+      out.writeByte('{');
+      ByteBufUtil.writeUtf8(out, labels);
+      if (quantile != null) {
+        if (!labels.isEmpty()) {
+          out.writeByte(',');
+        }
+        ByteBufUtil.writeAscii(out, "quantile=\"");
+        ByteBufUtil.writeAscii(out, quantile);
+        out.writeByte('"');
+      }
+      out.writeByte('}');
+    }
+    out.writeByte(' ');
+    writeLong(value, out);
+    ByteBufUtil.writeAscii(out, valueSuffix);
+    out.writeByte('\n');
+  }
+
+  private static final void writeAllocator(final String name, final String allocatorName, final long value, final ByteBuf out) {
+    ByteBufUtil.writeAscii(out, name);
+    ByteBufUtil.writeAscii(out, "{allocator=\"");
+    writeLabelValue(allocatorName, out);
+    ByteBufUtil.writeAscii(out, "\"} ");
+    writeLong(value, out);
+    out.writeByte('\n');
+  }
+
+  private static final void writeLabelValue(final String value, final ByteBuf out) {
+    ByteBufUtil.writeUtf8(out, escapeLabelValue(value));
+  }
+
+  /**
+   * Writes decimal digits of the {@code value} without allocating a {@link String}.
+   */
+  static final void writeLong(final long value, final ByteBuf out) {
+    if (value == Long.MIN_VALUE) {
+      ByteBufUtil.writeAscii(out, Long.toString(value));
+    } else {
+      long v = value;
+      if (v < 0) {
+        out.writeByte('-');
+        v = -v;
+      }
+      long divisor = 1;
+      while (divisor <= v / 10) {
+        divisor *= 10;
+      }
+      for (; divisor > 0; divisor /= 10) {
+        out.writeByte('0' + (int)(v / divisor % 10));
+      }
+    }
+  }
+
+  static final String sanitizeName(final String name) {
+    final StringBuilder result = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      final boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':' || (i > 0 && c >= '0' && c <= '9');
+      result.append(allowed ? c : '_');
+    }
+    return result.toString();
+  }
+
+  private static final String escapeLabelValue(final String value) {
+    return value.replace("\\", "\\\\")
+        .replace("\"", "\\\"")
+        .replace("\n", "\\n");
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(statsAggregator=" + statsAggregator
+        + ", eventLoopGroups=" + eventLoopGroups.keySet()
+        + ", allocators=" + allocators.keySet()
+        + ", connectionCounter=" + connectionCounter
+        + ')';
+  }
+
+  private static final class Series {
+    private final String name;
+    private final String sumName;
+    private final String countName;
+    private final String labels;
+
+    private Series(final String aspect, final List<String> tags, final String suffix) {
+      final String baseName = aspect.endsWith("Millis") && suffix.equals("_seconds")
+          ? aspect.substring(0, aspect.length() - "Millis".length())
+          : aspect;
+      name = sanitizeName(baseName) + suffix;
+      sumName = name + "_sum";
+      countName = name + "_count";
+      final StringBuilder labels = new StringBuilder();
+      for (final String tag : tags) {
+        if (labels.length() > 0) {
+          labels.append(',');
+        }
+        final int separatorIdx = tag.indexOf(':');
+        final String key = separatorIdx < 0 ? "tag" : tag.substring(0, separatorIdx);
+        final String value = separatorIdx < 0 ? tag : tag.substring(separatorIdx + 1);
+        labels.append(sanitizeName(key))
+            .append("=\"")
+            .append(escapeLabelValue(value))
+            .append('"');
+      }
+      this.labels = labels.toString();
+    }
+  }
+}
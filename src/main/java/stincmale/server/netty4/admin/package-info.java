@@ -0,0 +1,6 @@
+/**
+ * Contains <a href="http://netty.io/">Netty</a>-based administrative endpoints of the
+ * {@link stincmale.server.Server} framework, e.g. {@link stincmale.server.netty4.admin.AdminServer}.
+ */
+@javax.annotation.ParametersAreNonnullByDefault
+package stincmale.server.netty4.admin;
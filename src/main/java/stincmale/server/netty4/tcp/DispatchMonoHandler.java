@@ -1,7 +1,14 @@
 package stincmale.server.netty4.tcp;
 
-import stincmale.server.util.logging.TransferableMdc;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.util.context.Context;
+import stincmale.server.util.logging.FailureLogger;
+import stincmale.server.util.stats.LatencyHistogram;
+import stincmale.server.util.stats.StatsAggregator;
+import stincmale.server.util.tracing.Trace;
+import stincmale.server.reqres.RejectedRequestException;
 import stincmale.server.reqres.RequestDispatcher;
+import stincmale.server.reqres.Routable;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelFuture;
@@ -15,9 +22,14 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.ReferenceCounted;
+import java.util.function.BiConsumer;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import org.slf4j.Logger;
@@ -48,6 +60,23 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
  * that at any given moment not more than one request per {@link Channel} is being processed by
  * {@link RequestDispatcher}.
  * Note that {@link MonoHandler} disables {@linkplain ChannelConfig#setAutoRead(boolean) auto read}.
+ * <p>
+ * If {@link StatsAggregator} is {@linkplain #DispatchMonoHandler(RequestDispatcher, long, StatsAggregator) specified}, then
+ * {@link RequestTimings} of each request are recorded into the following {@linkplain StatsAggregator#histogram(String, java.util.Collection)
+ * histograms} tagged with {@code route:<route>}, where the route is specified by the {@link RequestDispatcher} via
+ * {@link Routable#setRoute(String)} if the request is {@link Routable}, e.g. {@link RequestWithMetadata}:
+ * {@code request.queueWaitTime}, {@code request.processingTime}, {@code request.handOffTime}, {@code request.socketWriteTime}.
+ * {@link RequestTimings} are not created for each request unless they are needed, i.e. unless {@link StatsAggregator} is specified
+ * or {@linkplain #DispatchMonoHandler(RequestDispatcher, long, StatsAggregator, boolean) recording timings} is requested explicitly,
+ * e.g. because of {@link stincmale.server.netty4.tcp.http.AccessLogHandler}, see {@link MonoHandler#MonoHandler(boolean)}.
+ * <p>
+ * If a request is {@link RequestWithMetadata} with a {@linkplain Trace#METADATA_KEY trace}, then the following spans are recorded:
+ * the root span named after the route, and its children {@value #DISPATCH_SPAN} (waiting in the queue of {@link MonoHandler}),
+ * {@value #PROCESS_SPAN} (processing), {@value #WRITE_SPAN} (handing off and writing the response).
+ * <p>
+ * {@link RequestDispatcher#process(Object)} is called while the {@link Context} of the request,
+ * which includes the {@linkplain Context#trace() trace}, is {@linkplain Context#attach() attached},
+ * and the same {@link Context} is attached while the response is being sent.
  *
  * @param <RQ> A type of the inbound message this {@link ChannelInboundHandlerAdapter} expects.
  * @param <RS> A type of the outbound message this {@link ChannelInboundHandlerAdapter} sends downstream.
@@ -56,14 +85,24 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 @Sharable
 public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
   private static final Logger logger = LoggerFactory.getLogger(DispatchMonoHandler.class);
+  private static final FailureLogger defaultFailureLogger = new FailureLogger(logger);
   private static final Object DEFAULT_VOID_RESPONSE = MonoHandler.VOID_OUTBOUND_MESSAGE;
   private static final String IDLE_HANDLER_NAME
       = DispatchMonoHandler.class.getSimpleName() + "_" + IdleStateHandler.class.getSimpleName();
   private static final String MONO_HANDLER_NAME
       = DispatchMonoHandler.class.getSimpleName() + "_" + MonoHandler.class.getSimpleName();
 
+  private static final String UNKNOWN_ROUTE = "unknown";
+  private static final String DISPATCH_SPAN = "dispatch";
+  private static final String PROCESS_SPAN = "process";
+  private static final String WRITE_SPAN = "write";
+
   private final RequestDispatcher<RQ, RS> dispatcher;
   private final long connectionIdleTimeoutMillis;
+  @Nullable
+  private final StatsAggregator statsAggregator;
+  private final boolean recordTimings;
+  private final ConcurrentMap<String, StageHistograms> stageHistograms;
 
   /**
    * @param connectionIdleTimeoutMillis An interval of inactivity of a TCP connection (no writes and no reads) in milliseconds after which the connection
@@ -73,9 +112,35 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
    * (this particular behavior may be altered via overriding method {@link #closeChannelAfterResponse(Object, Object, Throwable)}).
    */
   public DispatchMonoHandler(RequestDispatcher<RQ, RS> dispatcher, long connectionIdleTimeoutMillis) {
+    this(dispatcher, connectionIdleTimeoutMillis, null);
+  }
+
+  /**
+   * @param connectionIdleTimeoutMillis See {@link #DispatchMonoHandler(RequestDispatcher, long)}.
+   * @param statsAggregator {@link StatsAggregator} that is used to record {@link RequestTimings}.
+   */
+  public DispatchMonoHandler(
+      final RequestDispatcher<RQ, RS> dispatcher, final long connectionIdleTimeoutMillis, @Nullable final StatsAggregator statsAggregator) {
+    this(dispatcher, connectionIdleTimeoutMillis, statsAggregator, false);
+  }
+
+  /**
+   * @param connectionIdleTimeoutMillis See {@link #DispatchMonoHandler(RequestDispatcher, long)}.
+   * @param statsAggregator See {@link #DispatchMonoHandler(RequestDispatcher, long, StatsAggregator)}.
+   * @param recordTimings Specifies whether {@link RequestTimings} of each request must be recorded
+   * and be available via {@link RequestTimings#current(Channel)} even if {@code statsAggregator} is {@code null}.
+   */
+  public DispatchMonoHandler(
+      final RequestDispatcher<RQ, RS> dispatcher,
+      final long connectionIdleTimeoutMillis,
+      @Nullable final StatsAggregator statsAggregator,
+      final boolean recordTimings) {
     checkNotNull(dispatcher, "The argument %s must not be null", "dispatcher");
     this.dispatcher = dispatcher;
     this.connectionIdleTimeoutMillis = connectionIdleTimeoutMillis;
+    this.statsAggregator = statsAggregator;
+    this.recordTimings = recordTimings || statsAggregator != null;
+    stageHistograms = new ConcurrentHashMap<>();
   }
 
   /**
@@ -91,7 +156,7 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
     if (connectionIdleTimeoutMillis > 0) {
       addIdleStateHandler(selfName, pipe).channelRegistered(ctx);
     }
-    addMonoHandler(selfName, pipe).channelRegistered(ctx);
+    addMonoHandler(selfName, pipe, recordTimings).channelRegistered(ctx);
   }
 
   /**
@@ -102,13 +167,20 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
    * Does not {@linkplain ChannelHandlerContext#fireChannelRead(java.lang.Object) propagate} {@code msg} upstream.
    * <p>
    * Calls {@linkplain ReferenceCounted#release()} on the {@code msg} after completion of
-   * processing and sending a response if {@code msg} is {@link ReferenceCounted}.
+   * processing and sending a response if {@code msg} is {@link ReferenceCounted}, and
+   * {@linkplain RequestWithMetadata#recycle() recycles} the {@code msg} if it is {@link RequestWithMetadata}.
    */
   @Override
   public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
     @SuppressWarnings("unchecked") final RQ request = (RQ)msg;
+    @Nullable final RequestTimings timings = RequestTimings.current(ctx.channel());
+    final Context context = (timings == null ? Context.current() : timings.context())
+        .withTrace(trace(msg));
+    if (timings != null) {
+      timings.dispatchBegan();
+    }
     CompletionStage<? extends RS> futureResponse;
-    try {
+    try (var scope = context.attach()) {
       futureResponse = dispatcher.process(request);
     } catch (final Error e) {
       throw e;
@@ -116,8 +188,12 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
       final CompletableFuture<? extends RS> failureResponse = new CompletableFuture<>();
       failureResponse.completeExceptionally(e);
       futureResponse = failureResponse;
+    } finally {
+      if (timings != null) {
+        timings.dispatchEnded();
+      }
     }
-    respond(ctx, request, futureResponse);
+    respond(ctx, request, timings, context, futureResponse);
   }
 
   @Override
@@ -125,10 +201,10 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
     if (evt instanceof IdleStateEvent) {
       IdleStateEvent e = (IdleStateEvent)evt;
       if (e.state() == ALL_IDLE && connectionIdleTimeoutMillis > 0) {
-        final TransferableMdc mdc = TransferableMdc.current();
+        final Context context = Context.current();
         ctx.close()
             .addListener((final ChannelFuture channelFuture) -> {
-              try (var transferredMdc = mdc.transfer()) {
+              try (var scope = context.attach()) {
                 ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE.operationComplete(channelFuture);
               }
             });
@@ -154,7 +230,7 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
   public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable failure) throws Exception {
     final CompletableFuture<? extends RS> failureResponse = new CompletableFuture<>();
     failureResponse.completeExceptionally(failure);
-    respond(ctx, null, failureResponse);
+    respond(ctx, null, null, Context.current(), failureResponse);
   }
 
   /**
@@ -170,14 +246,26 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
    * the {@code request},or during {@linkplain ChannelHandlerContext#writeAndFlush(java.lang.Object) sending}
    * a response, or during some other operations related to the {@code request} or the current {@link Channel}.
    *
-   * @return {@code null}.
+   * @return {@code null}. Logs the {@code failure} via {@link #failureLogger()} unless it is caused by {@link RejectedRequestException}.
    */
   @Nullable
   protected RS failureResponse(@Nullable final RQ request, final Throwable failure) {
-    logger.error(String.format("Processing of the %s has failed", request == null ? "<unknown request>" : request), failure);
+    if (RejectedRequestException.extract(failure) != null) {
+      logger.debug("Rejected the {}", request == null ? "<unknown request>" : request);
+    } else {
+      failureLogger().log(failure, "Processing of the {} has failed", request == null ? "<unknown request>" : request);
+    }
     return null;
   }
 
+  /**
+   * @return {@link FailureLogger} that is used by {@link #failureResponse(Object, Throwable)}.
+   * Subclasses may override this method in order to use different budgets.
+   */
+  protected FailureLogger failureLogger() {
+    return defaultFailureLogger;
+  }
+
   /**
    * Determines if {@link Channel} will be {@linkplain Channel#close() closed} after
    * {@linkplain ChannelHandlerContext#writeAndFlush(java.lang.Object) sending} the {@code response}, or after
@@ -224,56 +312,66 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
     return connectionIdleTimeoutMillis;
   }
 
-  private final void respond(final ChannelHandlerContext ctx, @Nullable final RQ request, final CompletionStage<? extends RS> futureResponse) {
-    final TransferableMdc mdc = TransferableMdc.current();
-    futureResponse.whenComplete((response, failure) -> {
-      try (var transferredMdc = mdc.transfer()) {
-        @Nullable
-        ChannelFuture futureSend = null;
-        try {
-          final Channel channel = ctx.channel();
-          if (channel.isActive()) {
-            if (failure == null) {//request was processed successfully
-              futureSend = ctx.writeAndFlush(response == null ? DEFAULT_VOID_RESPONSE : response);
-            } else {//failed to process the request
-              futureSend = ctx.writeAndFlush(internalFailureResponse(request, failure));
-            }
-          }
-        } finally {
-          if (futureSend == null) {//channel is inactive, or any unexpected situation has happened
-            try {
-              ctx.channel()
-                  .close();
-            } finally {
-              release(request);
-            }
-          } else {
-            final TransferableMdc mdc2 = TransferableMdc.current();
-            futureSend.addListener((ChannelFuture future) -> {
-              try (var transferredMdc2 = mdc2.transfer()) {
-                try {
-                  if (future.isSuccess()) {
-                    if (closeChannelAfterResponse(request, response, failure)) {
-                      ChannelFutureListener.CLOSE.operationComplete(future);
-                    }
-                  } else {//everything is very bad for this channel
-                    try {
-                      ChannelFutureListener.CLOSE.operationComplete(future);
-                    } finally {
-                      if (fireExceptionOnResponseWriteFailure(request, response, future.cause())) {
-                        ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE.operationComplete(future);
-                      }
-                    }
-                  }
-                } finally {
-                  release(request);
-                }
-              }
-            });
-          }
-        }
+  private final void respond(
+      final ChannelHandlerContext ctx,
+      @Nullable final RQ request,
+      @Nullable final RequestTimings timings,
+      final Context context,
+      final CompletionStage<? extends RS> futureResponse) {
+    futureResponse.whenComplete(new Responder(ctx, request, timings, context));
+  }
+
+  private final void recordTimings(final RequestTimings timings) {
+    if (statsAggregator != null) {
+      @Nullable final String route = timings.route();
+      final StageHistograms histograms = stageHistograms.computeIfAbsent(
+          route == null ? UNKNOWN_ROUTE : route, r -> new StageHistograms(statsAggregator, r));
+      record(histograms.queueWait, timings.queueWaitNanos());
+      record(histograms.processing, timings.processingNanos());
+      record(histograms.handOff, timings.handOffNanos());
+      record(histograms.socketWrite, timings.socketWriteNanos());
+    }
+  }
+
+  private static final void recordSpans(final Trace trace, final RequestTimings timings) {
+    @Nullable final String route = timings.route();
+    final long decodedNanos = timings.decodedNanos();
+    final long dispatchedNanos = timings.dispatchedNanos();
+    final long processedNanos = timings.processedNanos();
+    final long flushedNanos = timings.flushedNanos();
+    if (dispatchedNanos != 0) {
+      trace.record(DISPATCH_SPAN, decodedNanos, dispatchedNanos);
+      if (processedNanos != 0) {
+        trace.record(PROCESS_SPAN, dispatchedNanos, processedNanos);
+        trace.record(WRITE_SPAN, processedNanos, flushedNanos);
       }
-    });
+    }
+    trace.recordRoot(route == null ? UNKNOWN_ROUTE : route, decodedNanos, flushedNanos);
+  }
+
+  /**
+   * {@link CompletionStage}s wrap a failure into {@link CompletionException} when propagating it to dependent stages,
+   * so the failure is unwrapped before passing it to {@link #failureResponse(Object, Throwable)}.
+   */
+  @Nullable
+  private static final Throwable unwrap(@Nullable final Throwable failure) {
+    return failure instanceof CompletionException && failure.getCause() != null
+        ? failure.getCause()
+        : failure;
+  }
+
+  @Nullable
+  static final Trace trace(final Object msg) {
+    return msg instanceof RequestWithMetadata
+        ? ((RequestWithMetadata<?>)msg).metadata()
+            .getOrNull(Trace.METADATA_KEY)
+        : null;
+  }
+
+  private static final void record(final LatencyHistogram histogram, final long durationNanos) {
+    if (durationNanos >= 0) {
+      histogram.record(durationNanos);
+    }
   }
 
   private Object internalFailureResponse(@Nullable final RQ request, final Throwable failure) {
@@ -316,13 +414,13 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
     return result;
   }
 
-  private static MonoHandler addMonoHandler(final String selfName, final ChannelPipeline pipe) {
+  private static MonoHandler addMonoHandler(final String selfName, final ChannelPipeline pipe, final boolean recordTimings) {
     @Nullable final ChannelHandler monoHandler = pipe.get(MonoHandler.class);
     if (monoHandler != null) {
       throw new RuntimeException(
           String.format("%s %s is already in the %s", MonoHandler.class.getSimpleName(), monoHandler, pipe));
     }
-    final MonoHandler result = new MonoHandler();
+    final MonoHandler result = new MonoHandler(recordTimings);
     pipe.addBefore(selfName, MONO_HANDLER_NAME, result);
     return result;
   }
@@ -334,5 +432,116 @@ public class DispatchMonoHandler<RQ, RS> extends ChannelInboundHandlerAdapter {
         rc.release();
       }
     }
+    if (o instanceof RequestWithMetadata) {
+      ((RequestWithMetadata<?>)o).recycle();
+    }
+  }
+
+  private static final class StageHistograms {
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram processing;
+    private final LatencyHistogram handOff;
+    private final LatencyHistogram socketWrite;
+
+    private StageHistograms(final StatsAggregator statsAggregator, final String route) {
+      final List<String> tags = List.of("route:" + route);
+      queueWait = statsAggregator.histogram("request.queueWaitTime", tags);
+      processing = statsAggregator.histogram("request.processingTime", tags);
+      handOff = statsAggregator.histogram("request.handOffTime", tags);
+      socketWrite = statsAggregator.histogram("request.socketWriteTime", tags);
+    }
+  }
+
+  /**
+   * Sends the response when processing is completed and finishes the request when the response is sent.
+   * Both stages use the same {@link Context}, and a single object serves as both listeners.
+   */
+  private final class Responder implements BiConsumer<RS, Throwable>, ChannelFutureListener {
+    private final ChannelHandlerContext ctx;
+    @Nullable
+    private final RQ request;
+    @Nullable
+    private final RequestTimings timings;
+    private final Context context;
+    @Nullable
+    private RS response;
+    @Nullable
+    private Throwable failure;
+
+    private Responder(
+        final ChannelHandlerContext ctx, @Nullable final RQ request, @Nullable final RequestTimings timings, final Context context) {
+      this.ctx = ctx;
+      this.request = request;
+      this.timings = timings;
+      this.context = context;
+    }
+
+    @Override
+    public final void accept(@Nullable final RS response, @Nullable final Throwable failure) {
+      this.response = response;
+      this.failure = unwrap(failure);
+      if (timings != null) {
+        timings.processed();
+        if (request instanceof Routable) {
+          timings.setRoute(((Routable)request).route());
+        }
+      }
+      try (var scope = context.attach()) {
+        @Nullable
+        ChannelFuture futureSend = null;
+        try {
+          final Channel channel = ctx.channel();
+          if (channel.isActive()) {
+            if (failure == null) {//request was processed successfully
+              futureSend = ctx.writeAndFlush(response == null ? DEFAULT_VOID_RESPONSE : response);
+            } else {//failed to process the request
+              futureSend = ctx.writeAndFlush(internalFailureResponse(request, this.failure));
+            }
+          }
+        } finally {
+          if (futureSend == null) {//channel is inactive, or any unexpected situation has happened
+            try {
+              ctx.channel()
+                  .close();
+            } finally {
+              release(request);
+            }
+          } else {
+            futureSend.addListener(this);
+          }
+        }
+      }
+    }
+
+    @Override
+    public final void operationComplete(final ChannelFuture future) throws Exception {
+      try (var scope = context.attach()) {
+        if (timings != null) {
+          timings.flushed();
+          recordTimings(timings);
+          @Nullable final Trace trace = context.trace();
+          if (trace != null) {
+            recordSpans(trace, timings);
+          }
+        }
+        try {
+          if (future.isSuccess()) {
+            if (closeChannelAfterResponse(request, response, failure)) {
+              ChannelFutureListener.CLOSE.operationComplete(future);
+            }
+          } else {//everything is very bad for this channel
+            try {
+              ChannelFutureListener.CLOSE.operationComplete(future);
+            } finally {
+              if (fireExceptionOnResponseWriteFailure(request, response, future.cause())) {
+                ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE.operationComplete(future);
+              }
+            }
+          }
+        } finally {
+          release(request);
+        }
+      }
+    }
   }
 }
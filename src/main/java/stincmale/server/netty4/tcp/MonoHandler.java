@@ -9,11 +9,14 @@ import io.netty.channel.ChannelInboundHandler;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
 import io.netty.util.AttributeKey;
+import java.util.ArrayDeque;
 import java.util.LinkedList;
 import java.util.Queue;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import stincmale.server.reqres.RequestDispatcher;
+import stincmale.server.util.context.Context;
+import stincmale.server.util.tracing.Trace;
 
 /**
  * The purpose of this {@link ChannelDuplexHandler} is to allow asynchronous processing of inbound messages
@@ -50,6 +53,13 @@ import stincmale.server.reqres.RequestDispatcher;
  * and there must not be any other outbound messages.
  * Such an outbound message may later be encoded to an empty message, or just ignored
  * (one should use the {@link #VOID_OUTBOUND_MESSAGE} to accomplish this).
+ * <p>
+ * The handler records {@link RequestTimings} of inbound messages and exposes the {@link RequestTimings}
+ * of the message that is being processed via {@link RequestTimings#current(Channel)}.
+ * If the handler is {@linkplain #MonoHandler(boolean) created} without recording timings, then {@link RequestTimings} are created only
+ * for messages that must wait in the queue of this handler (they retain the {@link Context} of the message),
+ * for messages with a {@linkplain Trace#METADATA_KEY trace}, and while any of {@link RequestEvents} is enabled;
+ * {@link RequestTimings#current(Channel)} is {@code null} for other messages.
  *
  * @see DispatchMonoHandler
  */
@@ -66,10 +76,28 @@ public final class MonoHandler extends ChannelDuplexHandler {
   static final Object VOID_OUTBOUND_MESSAGE = new Object();
 
   private final Queue<Object> accumulatedInboundMessages;
+  /**
+   * Contains {@link RequestTimings} of {@link #accumulatedInboundMessages} in the same order.
+   */
+  private final Queue<RequestTimings> accumulatedTimings;
+  private final boolean recordTimings;
   private boolean upstreamOpen;
 
+  /**
+   * Creates a {@link MonoHandler} that records {@link RequestTimings} of each inbound message.
+   */
   public MonoHandler() {
+    this(true);
+  }
+
+  /**
+   * @param recordTimings Specifies whether {@link RequestTimings} must be recorded for each inbound message,
+   * see {@link MonoHandler} for when they are recorded if {@code false}.
+   */
+  public MonoHandler(final boolean recordTimings) {
+    this.recordTimings = recordTimings;
     accumulatedInboundMessages = new LinkedList<>();
+    accumulatedTimings = new ArrayDeque<>();
     upstreamOpen = true;
   }
 
@@ -88,9 +116,14 @@ public final class MonoHandler extends ChannelDuplexHandler {
   public final void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
     if (upstreamOpen) {
       upstreamOpen = false;
-      ctx.fireChannelRead(msg);
+      fireChannelRead(ctx, msg, recordTimings || RequestEvents.isAnyEnabled() || DispatchMonoHandler.trace(msg) != null
+          ? new RequestTimings(System.nanoTime(), Context.current())
+          : null);
     } else {
+      final RequestTimings timings = new RequestTimings(System.nanoTime(), Context.current());
+      timings.queued();
       accumulatedInboundMessages.add(msg);
+      accumulatedTimings.add(timings);
     }
   }
 
@@ -118,6 +151,10 @@ public final class MonoHandler extends ChannelDuplexHandler {
    */
   @Override
   public final void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) throws Exception {
+    @Nullable final RequestTimings timings = RequestTimings.current(ctx.channel());
+    if (timings != null) {
+      timings.writeSubmitted();
+    }
     try {
       if (msg != VOID_OUTBOUND_MESSAGE) {
         ctx.write(msg, promise);
@@ -126,13 +163,22 @@ public final class MonoHandler extends ChannelDuplexHandler {
       @Nullable final Object accumulatedInboundMessage = accumulatedInboundMessages.poll();
       if (accumulatedInboundMessage == null) {
         upstreamOpen = true;
+        RequestTimings.setCurrent(ctx.channel(), null);
         ctx.read();
       } else {
-        ctx.fireChannelRead(accumulatedInboundMessage);
+        fireChannelRead(ctx, accumulatedInboundMessage, accumulatedTimings.remove());
       }
     }
   }
 
+  private static final void fireChannelRead(final ChannelHandlerContext ctx, final Object msg, @Nullable final RequestTimings timings) {
+    if (timings != null) {
+      timings.dispatched();
+    }
+    RequestTimings.setCurrent(ctx.channel(), timings);
+    ctx.fireChannelRead(msg);
+  }
+
   /**
    * Returns {@linkplain ChannelConfig#setAutoRead(boolean) auto read} back as it was before
    * {@link #channelRegistered(io.netty.channel.ChannelHandlerContext)}.
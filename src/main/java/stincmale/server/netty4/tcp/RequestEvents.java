@@ -0,0 +1,82 @@
+package stincmale.server.netty4.tcp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * <a href="https://docs.oracle.com/en/java/javase/14/jfapi/">Java Flight Recorder</a> events of the stages of processing a request
+ * by {@link MonoHandler} and {@link DispatchMonoHandler}, which are recorded by {@link RequestTimings}.
+ * Only events with durations longer than the {@linkplain Threshold threshold} are committed,
+ * the threshold may be changed via JFR settings.
+ * <p>
+ * Events are only instantiated if they are {@linkplain Event#isEnabled() enabled}, which is checked via a probe instance of each event,
+ * so the overhead of events is negligible when they are disabled.
+ * All events of a request are committed together when the response is written,
+ * so that all of them have the {@link RequestEvent#route route} of the request.
+ */
+final class RequestEvents {
+  private static final String NAME_PREFIX = "stincmale.server.";
+
+  static final QueueEvent QUEUE_PROBE = new QueueEvent();
+  static final DispatchEvent DISPATCH_PROBE = new DispatchEvent();
+  static final ProcessingEvent PROCESSING_PROBE = new ProcessingEvent();
+  static final WriteEvent WRITE_PROBE = new WriteEvent();
+
+  private RequestEvents() {
+    throw new UnsupportedOperationException("This class is not designed to be instantiated");
+  }
+
+  /**
+   * @return {@code true} if any of the events is {@linkplain Event#isEnabled() enabled}.
+   */
+  static final boolean isAnyEnabled() {
+    return QUEUE_PROBE.isEnabled() || DISPATCH_PROBE.isEnabled() || PROCESSING_PROBE.isEnabled() || WRITE_PROBE.isEnabled();
+  }
+
+  abstract static class RequestEvent extends Event {
+    @Label("Route")
+    @Description("The route of the request chosen by the request dispatcher, e.g. the name of the request processor")
+    String route;
+  }
+
+  @Name(NAME_PREFIX + "RequestQueue")
+  @Label("Request Queueing")
+  @Description("A request waited in the queue of MonoHandler, because the previous request from the same connection was being processed")
+  @Category({"Server", "Request"})
+  @Threshold("10 ms")
+  @StackTrace(false)
+  static final class QueueEvent extends RequestEvent {
+  }
+
+  @Name(NAME_PREFIX + "RequestDispatch")
+  @Label("Request Dispatch")
+  @Description("RequestDispatcher.process was called synchronously in an event loop")
+  @Category({"Server", "Request"})
+  @Threshold("1 ms")
+  @StackTrace(false)
+  static final class DispatchEvent extends RequestEvent {
+  }
+
+  @Name(NAME_PREFIX + "RequestProcessing")
+  @Label("Request Processing")
+  @Description("A request was being processed from dispatching it to the completion of processing")
+  @Category({"Server", "Request"})
+  @Threshold("10 ms")
+  @StackTrace(false)
+  static final class ProcessingEvent extends RequestEvent {
+  }
+
+  @Name(NAME_PREFIX + "ResponseWrite")
+  @Label("Response Write")
+  @Description("A response was being written to the socket")
+  @Category({"Server", "Request"})
+  @Threshold("10 ms")
+  @StackTrace(false)
+  static final class WriteEvent extends RequestEvent {
+  }
+}
@@ -0,0 +1,236 @@
+package stincmale.server.netty4.tcp;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import stincmale.server.util.context.Context;
+
+/**
+ * Instants (in terms of {@link System#nanoTime()}) at which a request passed the stages of processing by {@link MonoHandler}
+ * and {@link DispatchMonoHandler}:
+ * <ol>
+ *   <li>{@linkplain #decodedNanos() decoded} - the decoded request was received by {@link MonoHandler}
+ *   (and was possibly put in the queue of {@link MonoHandler});</li>
+ *   <li>{@linkplain #dispatchedNanos() dispatched} - {@link MonoHandler} propagated the request upstream for processing;</li>
+ *   <li>{@linkplain #processedNanos() processed} - processing of the request was completed, either successfully or not;</li>
+ *   <li>{@linkplain #writeSubmittedNanos() write submitted} - the response reached {@link MonoHandler}
+ *   in the {@linkplain io.netty.channel.EventLoop event loop} of the {@link Channel};</li>
+ *   <li>{@linkplain #flushedNanos() flushed} - the response was written to the socket.</li>
+ * </ol>
+ * An instant is 0 if the request has not passed the stage.
+ * <p>
+ * {@link RequestTimings} of the request that is being processed are available via {@link #current(Channel)}.
+ * They also retain the {@linkplain #context() context} in which the request was decoded.
+ * Instants are recorded by different threads, but each instant is recorded before the {@link RequestTimings} is handed over
+ * to the thread that records the next one, e.g. via {@link io.netty.channel.ChannelHandlerContext#writeAndFlush(Object)}.
+ * <p>
+ * {@link RequestTimings} also records <a href="https://docs.oracle.com/en/java/javase/14/jfapi/">Java Flight Recorder</a>
+ * events of the stages if they are enabled, see {@link RequestEvents}.
+ */
+@NotThreadSafe
+public final class RequestTimings {
+  private static final AttributeKey<RequestTimings> ATTR_KEY = AttributeKey.valueOf(RequestTimings.class.getName());
+
+  private final long decodedNanos;
+  private final Context context;
+  private long dispatchedNanos;
+  private long processedNanos;
+  private long writeSubmittedNanos;
+  private long flushedNanos;
+  @Nullable
+  private String route;
+  @Nullable
+  private RequestEvents.QueueEvent queueEvent;
+  @Nullable
+  private RequestEvents.DispatchEvent dispatchEvent;
+  @Nullable
+  private RequestEvents.ProcessingEvent processingEvent;
+  @Nullable
+  private RequestEvents.WriteEvent writeEvent;
+
+  RequestTimings(final long decodedNanos, final Context context) {
+    this.decodedNanos = decodedNanos;
+    this.context = context;
+  }
+
+  /**
+   * @return {@link RequestTimings} of the request that is being processed in the {@code channel}, or {@code null} if there is no such request.
+   */
+  @Nullable
+  public static final RequestTimings current(final Channel channel) {
+    return channel.attr(ATTR_KEY)
+        .get();
+  }
+
+  static final void setCurrent(final Channel channel, @Nullable final RequestTimings timings) {
+    channel.attr(ATTR_KEY)
+        .set(timings);
+  }
+
+  public final long decodedNanos() {
+    return decodedNanos;
+  }
+
+  /**
+   * @return The {@linkplain Context#current() current} {@link Context} of the thread that received the decoded request,
+   * e.g. its {@link Context#mdc()} contains {@link stincmale.server.netty4.tcp.http.ClientAddressMdcHandler#CLIENT_ADDRESS_MDC_KEY}
+   * if the request passed {@link stincmale.server.netty4.tcp.http.ClientAddressMdcHandler}.
+   */
+  public final Context context() {
+    return context;
+  }
+
+  public final long dispatchedNanos() {
+    return dispatchedNanos;
+  }
+
+  /**
+   * Must be called if the request is put in the queue of {@link MonoHandler}.
+   */
+  final void queued() {
+    if (RequestEvents.QUEUE_PROBE.isEnabled()) {
+      queueEvent = new RequestEvents.QueueEvent();
+      queueEvent.begin();
+    }
+  }
+
+  final void dispatched() {
+    dispatchedNanos = System.nanoTime();
+    if (queueEvent != null) {
+      queueEvent.end();
+    }
+    if (RequestEvents.PROCESSING_PROBE.isEnabled()) {
+      processingEvent = new RequestEvents.ProcessingEvent();
+      processingEvent.begin();
+    }
+  }
+
+  /**
+   * Must be called right before calling {@link stincmale.server.reqres.RequestDispatcher#process(Object)}.
+   */
+  final void dispatchBegan() {
+    if (RequestEvents.DISPATCH_PROBE.isEnabled()) {
+      dispatchEvent = new RequestEvents.DispatchEvent();
+      dispatchEvent.begin();
+    }
+  }
+
+  /**
+   * Must be called right after {@link stincmale.server.reqres.RequestDispatcher#process(Object)} returns or throws.
+   */
+  final void dispatchEnded() {
+    if (dispatchEvent != null) {
+      dispatchEvent.end();
+    }
+  }
+
+  public final long processedNanos() {
+    return processedNanos;
+  }
+
+  final void processed() {
+    processedNanos = System.nanoTime();
+    if (processingEvent != null) {
+      processingEvent.end();
+    }
+  }
+
+  public final long writeSubmittedNanos() {
+    return writeSubmittedNanos;
+  }
+
+  final void writeSubmitted() {
+    writeSubmittedNanos = System.nanoTime();
+    if (RequestEvents.WRITE_PROBE.isEnabled()) {
+      writeEvent = new RequestEvents.WriteEvent();
+      writeEvent.begin();
+    }
+  }
+
+  public final long flushedNanos() {
+    return flushedNanos;
+  }
+
+  /**
+   * Also commits all recorded {@link RequestEvents}.
+   */
+  final void flushed() {
+    flushedNanos = System.nanoTime();
+    if (writeEvent != null) {
+      writeEvent.end();
+    }
+    commit(queueEvent);
+    commit(dispatchEvent);
+    commit(processingEvent);
+    commit(writeEvent);
+  }
+
+  private final void commit(@Nullable final RequestEvents.RequestEvent event) {
+    if (event != null && event.shouldCommit()) {
+      event.route = route;
+      event.commit();
+    }
+  }
+
+  /**
+   * @return The {@linkplain stincmale.server.reqres.Routable#route() route} of the request,
+   * which is known once processing of the request is completed, or {@code null} if the request is not
+   * {@link stincmale.server.reqres.Routable} or was not routed.
+   */
+  @Nullable
+  public final String route() {
+    return route;
+  }
+
+  final void setRoute(@Nullable final String route) {
+    this.route = route;
+  }
+
+  /**
+   * @return The time the request spent in the queue of {@link MonoHandler}, or -1 if unknown.
+   */
+  public final long queueWaitNanos() {
+    return duration(decodedNanos, dispatchedNanos);
+  }
+
+  /**
+   * @return The time between {@linkplain #dispatchedNanos() dispatching} and {@linkplain #processedNanos() completing processing}
+   * of the request, or -1 if unknown.
+   */
+  public final long processingNanos() {
+    return duration(dispatchedNanos, processedNanos);
+  }
+
+  /**
+   * @return The time between {@linkplain #processedNanos() completing processing} of the request
+   * and {@linkplain #writeSubmittedNanos() submitting} the response in the {@linkplain io.netty.channel.EventLoop event loop},
+   * or -1 if unknown.
+   */
+  public final long handOffNanos() {
+    return duration(processedNanos, writeSubmittedNanos);
+  }
+
+  /**
+   * @return The time between {@linkplain #writeSubmittedNanos() submitting} and {@linkplain #flushedNanos() flushing}
+   * the response, or -1 if unknown.
+   */
+  public final long socketWriteNanos() {
+    return duration(writeSubmittedNanos, flushedNanos);
+  }
+
+  private static final long duration(final long beginNanos, final long endNanos) {
+    return beginNanos == 0 || endNanos == 0 ? -1 : endNanos - beginNanos;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(route=" + route
+        + ", queueWaitNanos=" + queueWaitNanos()
+        + ", processingNanos=" + processingNanos()
+        + ", handOffNanos=" + handOffNanos()
+        + ", socketWriteNanos=" + socketWriteNanos()
+        + ')';
+  }
+}
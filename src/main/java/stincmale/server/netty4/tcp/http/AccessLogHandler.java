@@ -0,0 +1,100 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.server.netty4.tcp.DispatchMonoHandler;
+import stincmale.server.netty4.tcp.MonoHandler;
+import stincmale.server.netty4.tcp.RequestTimings;
+import stincmale.server.reqres.RequestDispatcher;
+import stincmale.server.util.accesslog.AccessLog;
+import stincmale.server.util.stats.StatsAggregator;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@linkplain AccessLog#append(long, long, int, long, CharSequence, CharSequence) Appends} a record to {@link AccessLog}
+ * for each {@link HttpResponse} written by {@link DispatchMonoHandler}. The record contains
+ * <ul>
+ *   <li>the {@linkplain RequestTimings#route() route} of the request;</li>
+ *   <li>the client address put to {@link RequestTimings#context()} by {@link ClientAddressMdcHandler};</li>
+ *   <li>the status and the size of the content of the response;</li>
+ *   <li>the latency between {@linkplain RequestTimings#decodedNanos() decoding} the request
+ *   and {@linkplain RequestTimings#writeSubmittedNanos() submitting} the response.</li>
+ * </ul>
+ * The handler must be added to the {@link io.netty.channel.ChannelPipeline} before {@link DispatchMonoHandler},
+ * so that it is between the HTTP codec and {@link MonoHandler}, and {@link DispatchMonoHandler} must
+ * {@linkplain DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long, StatsAggregator, boolean) record timings}, otherwise
+ * {@link RequestTimings} may be unavailable, and then the record contains neither the route nor the latency:
+ * <pre>{@code
+ *  channel.pipeline()
+ *      .addLast(new HttpServerCodec())
+ *      .addLast(new HttpObjectAggregator(1_000_000))
+ *      .addLast(new ClientAddressMdcHandler())
+ *      .addLast(new AccessLogHandler(accessLog))
+ *      .addLast(new HttpDispatchMonoHandler(dispatcher, 60_000, false, null, true));
+ * }</pre>
+ */
+@ThreadSafe
+@ChannelHandler.Sharable
+public final class AccessLogHandler extends ChannelOutboundHandlerAdapter {
+  private final AccessLog accessLog;
+
+  public AccessLogHandler(final AccessLog accessLog) {
+    checkNotNull(accessLog, "The argument %s must not be null", "accessLog");
+    this.accessLog = accessLog;
+  }
+
+  @Override
+  public final void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpResponse) {
+      @Nullable final RequestTimings timings = RequestTimings.current(ctx.channel());
+      final long latencyNanos = timings == null ? -1 : System.nanoTime() - timings.decodedNanos();
+      final long nowMillis = System.currentTimeMillis();
+      accessLog.append(
+          latencyNanos < 0 ? nowMillis : nowMillis - latencyNanos / 1_000_000,
+          latencyNanos,
+          ((HttpResponse)msg).status()
+              .code(),
+          contentLength((HttpResponse)msg),
+          timings == null ? null : timings.route(),
+          timings == null ? null : timings.context()
+              .mdc()
+              .get(ClientAddressMdcHandler.CLIENT_ADDRESS_MDC_KEY));
+    }
+    ctx.write(msg, promise);
+  }
+
+  private static final long contentLength(final HttpResponse response) {
+    final long result;
+    if (response instanceof FullHttpResponse) {
+      result = ((FullHttpResponse)response).content()
+          .readableBytes();
+    } else {
+      @Nullable final String contentLength = response.headers()
+          .get(HttpHeaderNames.CONTENT_LENGTH);
+      long parsed = -1;
+      if (contentLength != null) {
+        try {
+          parsed = Long.parseLong(contentLength);
+        } catch (final NumberFormatException e) {
+          //the size is unknown
+        }
+      }
+      result = parsed;
+    }
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(accessLog=" + accessLog
+        + ')';
+  }
+}
@@ -1,37 +1,142 @@
 package stincmale.server.netty4.tcp.http;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.haproxy.HAProxyMessage;
+import io.netty.handler.codec.haproxy.HAProxyMessageDecoder;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import javax.annotation.concurrent.ThreadSafe;
-import stincmale.server.netty4.util.channel.ChannelUtil;
-import stincmale.server.netty4.tcp.http.util.HttpUtil;
+import stincmale.server.netty4.tcp.http.util.ForwardedHeaders;
+import stincmale.server.netty4.tcp.http.util.TrustedProxies;
+import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Puts the client address to {@link MDC} by the {@link #CLIENT_ADDRESS_MDC_KEY} key for each request.
+ * <p>
+ * The address of the peer is determined once per connection and is cached in the {@link Channel}.
+ * If the {@linkplain #ClientAddressMdcHandler(TrustedProxies, boolean) PROXY protocol is enabled}, then the address of the peer
+ * is the source address specified in the PROXY protocol header, which is decoded by {@link HAProxyMessageDecoder}
+ * that must be added to the {@link io.netty.channel.ChannelPipeline} before any other decoders:
+ * <pre>{@code
+ *  channel.pipeline()
+ *      .addLast(new HAProxyMessageDecoder())
+ *      .addLast(new HttpServerCodec())
+ *      .addLast(new HttpObjectAggregator(1_000_000))
+ *      .addLast(new ClientAddressMdcHandler(TrustedProxies.of("10.0.0.0/8"), true))
+ *      ...
+ * }</pre>
+ * If the request is {@link HttpRequest} and the address of the peer is {@linkplain TrustedProxies trusted},
+ * then the client address is extracted from the forwarded headers of the request (see {@link ForwardedHeaders}),
+ * otherwise the client address is the address of the peer.
+ */
 @ThreadSafe
 @ChannelHandler.Sharable
 public final class ClientAddressMdcHandler extends ChannelInboundHandlerAdapter {
+  /**
+   * The {@link MDC} key of the client address.
+   */
+  public static final String CLIENT_ADDRESS_MDC_KEY = "clientAddress";
   private static final Logger logger = LoggerFactory.getLogger(ClientAddressMdcHandler.class);
+  private static final String UNKNOWN_CLIENT_ADDRESS = "<unknown client address>";
+  private static final AttributeKey<Peer> PEER_ATTR_KEY = AttributeKey.valueOf(ClientAddressMdcHandler.class.getName() + ".peer");
+
+  private final TrustedProxies trustedProxies;
+  private final boolean proxyProtocol;
+
+  /**
+   * Trusts forwarded headers of requests from {@linkplain TrustedProxies#ANY any} peer, the PROXY protocol is disabled.
+   */
+  public ClientAddressMdcHandler() {
+    this(TrustedProxies.ANY, false);
+  }
+
+  /**
+   * @param trustedProxies Proxies that are trusted to report the client address via forwarded headers.
+   * @param proxyProtocol Specifies whether the address of the peer is taken from {@link HAProxyMessage},
+   * see {@link ClientAddressMdcHandler} for details.
+   */
+  public ClientAddressMdcHandler(final TrustedProxies trustedProxies, final boolean proxyProtocol) {
+    checkNotNull(trustedProxies, "The argument %s must not be null", "trustedProxies");
+    this.trustedProxies = trustedProxies;
+    this.proxyProtocol = proxyProtocol;
+  }
 
   @Override
   public final void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
-    try {
-      final String keyClientAddress = "clientAddress";
-      final String unknownClientAddress = "<unknown client address>";
-      MDC.remove(keyClientAddress);
-      if (msg instanceof HttpRequest) {
-        MDC.put(keyClientAddress, HttpUtil.getRemoteAddress(((HttpRequest)msg).headers(), ctx.channel())
-            .orElse(unknownClientAddress));
+    if (proxyProtocol && msg instanceof HAProxyMessage) {
+      try {
+        @Nullable final String sourceAddress = ((HAProxyMessage)msg).sourceAddress();
+        if (sourceAddress != null) {//null e.g. for the LOCAL command, in which case the address of the socket peer is used
+          ctx.channel()
+              .attr(PEER_ATTR_KEY)
+              .set(new Peer(sourceAddress, trustedProxies.isTrusted(sourceAddress, 0, sourceAddress.length())));
+        }
+      } finally {
+        ReferenceCountUtil.release(msg);
+      }
+    } else {
+      try {
+        final Peer peer = peer(ctx.channel());
+        @Nullable
+        String clientAddress = null;
+        if (msg instanceof HttpRequest) {
+          clientAddress = ForwardedHeaders.getClientAddress(((HttpRequest)msg).headers(), peer.trusted, trustedProxies);
+        }
+        MDC.put(CLIENT_ADDRESS_MDC_KEY, clientAddress == null ? peer.address : clientAddress);
+      } catch (final RuntimeException e) {
+        MDC.remove(CLIENT_ADDRESS_MDC_KEY);
+        logger.error("Failed to add useful information to MDC", e);
+      }
+      super.channelRead(ctx, msg);
+    }
+  }
+
+  private final Peer peer(final Channel channel) {
+    @Nullable
+    Peer result = channel.attr(PEER_ATTR_KEY)
+        .get();
+    if (result == null) {
+      @Nullable final SocketAddress socketAddress = channel.remoteAddress();
+      if (socketAddress instanceof InetSocketAddress && ((InetSocketAddress)socketAddress).getAddress() != null) {
+        final InetAddress address = ((InetSocketAddress)socketAddress).getAddress();
+        result = new Peer(address.getHostAddress(), trustedProxies.isTrusted(address));
       } else {
-        MDC.put(keyClientAddress, ChannelUtil.getRemoteAddress(ctx.channel())
-            .orElse(unknownClientAddress));
+        result = new Peer(UNKNOWN_CLIENT_ADDRESS, trustedProxies == TrustedProxies.ANY);
       }
-    } catch (final RuntimeException e) {
-      logger.error("Failed to add useful information to MDC", e);
+      channel.attr(PEER_ATTR_KEY)
+          .set(result);
+    }
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(trustedProxies=" + trustedProxies
+        + ", proxyProtocol=" + proxyProtocol
+        + ')';
+  }
+
+  @Immutable
+  private static final class Peer {
+    private final String address;
+    private final boolean trusted;
+
+    private Peer(final String address, final boolean trusted) {
+      this.address = address;
+      this.trusted = trusted;
     }
-    super.channelRead(ctx, msg);
   }
 }
@@ -5,21 +5,32 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.CompletionStage;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import stincmale.server.netty4.MetadataMap;
 import stincmale.server.netty4.RequestWithMetadata;
 import stincmale.server.netty4.tcp.DispatchMonoHandler;
+import stincmale.server.netty4.tcp.http.util.HttpResponseTemplate;
 import stincmale.server.netty4.tcp.http.util.HttpUtil;
+import stincmale.server.reqres.RejectedRequestException;
+import stincmale.server.reqres.RejectedRequestException.Reason;
 import stincmale.server.reqres.RequestDispatcher;
-import stincmale.server.util.logging.TransferableMdc;
+import stincmale.server.util.context.Context;
+import stincmale.server.util.logging.FailureLogger;
+import stincmale.server.util.stats.StatsAggregator;
 import stincmale.server.ExternallyVisibleException;
-import stincmale.server.util.throwable.ThrowableUtil;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static io.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
 /**
@@ -28,11 +39,32 @@ import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
  * <p>
  * {@link HttpDispatchMonoHandler} handles {@code Connection} HTTP header (a.k.a. {@code keep-alive}) so that
  * {@link RequestDispatcher} SHOULD NOT care about it.
+ * <p>
+ * Requests that could not be decoded are rejected with {@link Reason#MALFORMED_REQUEST} without being dispatched.
+ * {@link RejectedRequestException}s are responded to with {@linkplain #rejectionResponse(RequestWithMetadata, RejectedRequestException)
+ * pre-built responses} and are not logged as errors.
  */
 @ThreadSafe
 @Sharable
 public class HttpDispatchMonoHandler extends DispatchMonoHandler<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> {
   private static final Logger logger = LoggerFactory.getLogger(HttpDispatchMonoHandler.class);
+  private static final FailureLogger defaultFailureLogger = new FailureLogger(logger);
+  private static final Map<Reason, HttpResponseTemplate> rejectionResponses = new EnumMap<>(Reason.class);
+  /**
+   * The maximal length of the {@linkplain Throwable#getCause() cause} chain that is inspected by
+   * {@link #failureResponse(RequestWithMetadata, Throwable)}.
+   */
+  private static final int MAX_FAILURE_DEPTH = 8;
+
+  static {
+    rejectionResponses.put(Reason.UNKNOWN_PROCESSOR, new HttpResponseTemplate(HTTP_1_1, NOT_FOUND, null));
+    rejectionResponses.put(Reason.METHOD_NOT_ALLOWED, new HttpResponseTemplate(HTTP_1_1, METHOD_NOT_ALLOWED, null));
+    rejectionResponses.put(Reason.MALFORMED_REQUEST, new HttpResponseTemplate(HTTP_1_1, BAD_REQUEST, null));
+    rejectionResponses.put(Reason.OVERLOADED, new HttpResponseTemplate(HTTP_1_1, SERVICE_UNAVAILABLE, null));
+  }
+
+  private final boolean pooled;
+  private final ClassValue<FailureMapping> failureMappings;
 
   /**
    * @param dispatcher See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long)}.
@@ -41,7 +73,58 @@ public class HttpDispatchMonoHandler extends DispatchMonoHandler<RequestWithMeta
   public HttpDispatchMonoHandler(
       final RequestDispatcher<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> dispatcher,
       final long connectionIdleTimeoutMillis) {
-    super(new HttpRequestDispatcherWrapper(dispatcher), connectionIdleTimeoutMillis);
+    this(dispatcher, connectionIdleTimeoutMillis, false);
+  }
+
+  /**
+   * @param dispatcher See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long)}.
+   * @param connectionIdleTimeoutMillis See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long)}.
+   * @param pooled Specifies whether {@link RequestWithMetadata}s created by {@link #channelRead(ChannelHandlerContext, Object)}
+   * are {@linkplain RequestWithMetadata#newPooled(Object, stincmale.server.netty4.Metadata) pooled}.
+   */
+  public HttpDispatchMonoHandler(
+      final RequestDispatcher<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> dispatcher,
+      final long connectionIdleTimeoutMillis,
+      final boolean pooled) {
+    this(dispatcher, connectionIdleTimeoutMillis, pooled, null);
+  }
+
+  /**
+   * @param dispatcher See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long)}.
+   * @param connectionIdleTimeoutMillis See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long)}.
+   * @param pooled See {@link #HttpDispatchMonoHandler(RequestDispatcher, long, boolean)}.
+   * @param statsAggregator See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long, StatsAggregator)}.
+   */
+  public HttpDispatchMonoHandler(
+      final RequestDispatcher<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> dispatcher,
+      final long connectionIdleTimeoutMillis,
+      final boolean pooled,
+      @Nullable final StatsAggregator statsAggregator) {
+    this(dispatcher, connectionIdleTimeoutMillis, pooled, statsAggregator, false);
+  }
+
+  /**
+   * @param dispatcher See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long)}.
+   * @param connectionIdleTimeoutMillis See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long)}.
+   * @param pooled See {@link #HttpDispatchMonoHandler(RequestDispatcher, long, boolean)}.
+   * @param statsAggregator See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long, StatsAggregator)}.
+   * @param recordTimings See {@link DispatchMonoHandler#DispatchMonoHandler(RequestDispatcher, long, StatsAggregator, boolean)}.
+   */
+  public HttpDispatchMonoHandler(
+      final RequestDispatcher<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> dispatcher,
+      final long connectionIdleTimeoutMillis,
+      final boolean pooled,
+      @Nullable final StatsAggregator statsAggregator,
+      final boolean recordTimings) {
+    super(new HttpRequestDispatcherWrapper(dispatcher), connectionIdleTimeoutMillis, statsAggregator, recordTimings);
+    this.pooled = pooled;
+    failureMappings = new ClassValue<>() {
+      @Override
+      protected final FailureMapping computeValue(final Class<?> type) {
+        return new FailureMapping(
+            failureStatus(type.asSubclass(Throwable.class)), ExternallyVisibleException.class.isAssignableFrom(type));
+      }
+    };
   }
 
   /**
@@ -54,23 +137,101 @@ public class HttpDispatchMonoHandler extends DispatchMonoHandler<RequestWithMeta
     if (msg instanceof RequestWithMetadata) {
       super.channelRead(ctx, msg);
     } else {
-      super.channelRead(ctx, new RequestWithMetadata<>((FullHttpRequest)msg));
+      final FullHttpRequest httpRequest = (FullHttpRequest)msg;
+      super.channelRead(ctx, pooled
+          ? RequestWithMetadata.newPooled(httpRequest, MetadataMap.newPooled()
+              .bind(ctx, httpRequest))
+          : new RequestWithMetadata<>(httpRequest, new MetadataMap().bind(ctx, httpRequest)));
     }
   }
 
   @Override
   protected FullHttpResponse failureResponse(@Nullable final RequestWithMetadata<? extends FullHttpRequest> request, final Throwable failure) {
-    final FullHttpResponse result = HttpUtil.createHttpResponse(HTTP_1_1, INTERNAL_SERVER_ERROR);
-    ThrowableUtil.extract(failure, IllegalArgumentException.class)
-        .ifPresent(e -> result.setStatus(BAD_REQUEST));
-    ThrowableUtil.extract(failure, ExternallyVisibleException.class)
-        .ifPresent(e -> HttpUtil.setPlainTextUtf8Content(result, e.getExternalMessage()));
-    logger.error(
-        String.format("Processing of the %s has failed. Responding with %s", request == null ? "<unknown request>" : request, result),
-        failure);
+    @Nullable final RejectedRequestException rejection = RejectedRequestException.extract(failure);
+    final FullHttpResponse result;
+    if (rejection != null) {
+      logger.debug("Rejected the {} because of {}", request == null ? "<unknown request>" : request, rejection.reason());
+      result = rejectionResponse(request, rejection);
+    } else {
+      @Nullable
+      HttpResponseStatus status = null;
+      @Nullable
+      ExternallyVisibleException externallyVisible = null;
+      @Nullable
+      Throwable t = failure;
+      for (int depth = 0; t != null && depth < MAX_FAILURE_DEPTH && (status == null || externallyVisible == null);
+          t = t.getCause(), depth++) {
+        final Throwable[] suppressed = t.getSuppressed();
+        for (int i = -1; i < suppressed.length; i++) {
+          final Throwable candidate = i < 0 ? t : suppressed[i];
+          final FailureMapping mapping = failureMappings.get(candidate.getClass());
+          if (status == null) {
+            status = mapping.status;
+          }
+          if (externallyVisible == null && mapping.externallyVisible) {
+            externallyVisible = (ExternallyVisibleException)candidate;
+          }
+        }
+      }
+      result = HttpUtil.createHttpResponse(HTTP_1_1, status == null ? INTERNAL_SERVER_ERROR : status);
+      if (externallyVisible != null) {
+        HttpUtil.setPlainTextUtf8Content(result, externallyVisible.getExternalMessage());
+      }
+      failureLogger().log(
+          failure, "Processing of the {} has failed. Responding with {}", request == null ? "<unknown request>" : request, result);
+    }
     return result;
   }
 
+  @Override
+  protected FailureLogger failureLogger() {
+    return defaultFailureLogger;
+  }
+
+  /**
+   * Maps a type of failure to the status of the response. This method is called at most once per {@code failureType},
+   * the result is cached.
+   * <p>
+   * {@link #failureResponse(RequestWithMetadata, Throwable)} inspects the failure, its {@linkplain Throwable#getSuppressed() suppressed}
+   * {@link Throwable}s, and its {@linkplain Throwable#getCause() causes}, and uses the status of the closest one to the failure.
+   * If the inspected {@link Throwable}s include {@link ExternallyVisibleException},
+   * then its {@linkplain ExternallyVisibleException#getExternalMessage() external message} is used as the content of the response.
+   *
+   * @return {@link HttpResponseStatus#BAD_REQUEST} for {@link IllegalArgumentException}, {@code null} otherwise,
+   * which means that the failure does not determine the status. If no inspected {@link Throwable} determines the status, then
+   * {@link HttpResponseStatus#INTERNAL_SERVER_ERROR} is used.
+   */
+  @Nullable
+  protected HttpResponseStatus failureStatus(final Class<? extends Throwable> failureType) {
+    return IllegalArgumentException.class.isAssignableFrom(failureType) ? BAD_REQUEST : null;
+  }
+
+  /**
+   * This method is called from {@link #failureResponse(RequestWithMetadata, Throwable)} if the failure is caused by
+   * {@link RejectedRequestException}.
+   *
+   * @return A response {@linkplain HttpResponseTemplate#newResponse() instantiated} from a pre-built {@link HttpResponseTemplate}
+   * that corresponds to the {@linkplain RejectedRequestException#reason() reason}:
+   * {@link Reason#UNKNOWN_PROCESSOR} - 404, {@link Reason#METHOD_NOT_ALLOWED} - 405, {@link Reason#MALFORMED_REQUEST} - 400,
+   * {@link Reason#OVERLOADED} - 503.
+   */
+  protected FullHttpResponse rejectionResponse(
+      @Nullable final RequestWithMetadata<? extends FullHttpRequest> request, final RejectedRequestException rejection) {
+    return rejectionResponses.get(rejection.reason())
+        .newResponse();
+  }
+
+  private static final class FailureMapping {
+    @Nullable
+    private final HttpResponseStatus status;
+    private final boolean externallyVisible;
+
+    private FailureMapping(@Nullable final HttpResponseStatus status, final boolean externallyVisible) {
+      this.status = status;
+      this.externallyVisible = externallyVisible;
+    }
+  }
+
   private static final class HttpRequestDispatcherWrapper
       implements RequestDispatcher<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> {
     private final RequestDispatcher<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> dispatcher;
@@ -82,17 +243,16 @@ public class HttpDispatchMonoHandler extends DispatchMonoHandler<RequestWithMeta
 
     @Override
     public final CompletionStage<FullHttpResponse> process(final RequestWithMetadata<? extends FullHttpRequest> request) {
-      final TransferableMdc mdc = TransferableMdc.current();
-      return dispatcher.process(request)
-          .handle((httpResponse, failure) -> {
-            try (var transferredMdc = mdc.transfer()) {
-              if (failure != null) {
-                throw new RuntimeException(failure);
-              }
-              final HttpMessage httpRequest = request.request();
-              io.netty.handler.codec.http.HttpUtil.setKeepAlive(httpResponse, io.netty.handler.codec.http.HttpUtil.isKeepAlive(httpRequest));
-              return httpResponse;
-            }
+      if (request.request()
+          .decoderResult()
+          .isFailure()) {
+        throw RejectedRequestException.of(Reason.MALFORMED_REQUEST);
+      }
+      return Context.propagating(dispatcher.process(request))
+          .thenApply(httpResponse -> {//a failure is propagated as is instead of being wrapped
+            final HttpMessage httpRequest = request.request();
+            io.netty.handler.codec.http.HttpUtil.setKeepAlive(httpResponse, io.netty.handler.codec.http.HttpUtil.isKeepAlive(httpRequest));
+            return httpResponse;
           });
     }
   }
@@ -0,0 +1,210 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import stincmale.server.netty4.Metadata;
+import stincmale.server.netty4.MetadataKey;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.reqres.AdmissionLimiter;
+import stincmale.server.reqres.Priority;
+import stincmale.server.reqres.Processor;
+import stincmale.server.reqres.RejectedRequestException;
+import stincmale.server.reqres.RejectedRequestException.Reason;
+import stincmale.server.reqres.RequestDispatcher;
+import stincmale.server.reqres.RequestProcessor;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link RequestDispatcher} that chooses {@link RequestProcessor}s by matching URI path and method of an HTTP request against
+ * {@linkplain HttpRouter.Route routes} of an {@link HttpRouter}, where {@linkplain Processor#value() names} of
+ * {@link RequestProcessor}s are route patterns, e.g. {@code /users/{id}}.
+ * <p>
+ * If the matched route has parameters, then the {@link RequestProcessor} receives a request with {@link Metadata}
+ * that contains {@link PathParameters} by the key {@link PathParameters#METADATA_KEY}.
+ * <p>
+ * If there is no matching route, or the route does not allow the method of the request, then {@link #process(RequestWithMetadata)}
+ * throws {@link RejectedRequestException} with {@link Reason#UNKNOWN_PROCESSOR} or {@link Reason#METHOD_NOT_ALLOWED} respectively.
+ * <p>
+ * The pattern of the matched route is specified as the {@linkplain RequestWithMetadata#setRoute(String) route} of the request.
+ * <p>
+ * If an {@link AdmissionLimiter} is specified and does not admit the request, then {@link #process(RequestWithMetadata)}
+ * throws {@link RejectedRequestException} with {@link Reason#OVERLOADED}.
+ */
+@ThreadSafe
+public class HttpRequestDispatcherByRoute implements RequestDispatcher<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> {
+  private static final Logger logger = LoggerFactory.getLogger(HttpRequestDispatcherByRoute.class);
+
+  private final HttpRouter<? extends RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> router;
+  private final String contextPath;
+  private final Map<RequestProcessor<?, ?>, Priority> priorities;
+  @Nullable
+  private final AdmissionLimiter admissionLimiter;
+
+  /**
+   * @param contextPath See {@link SimpleHttpRequestDispatcherByUrl#SimpleHttpRequestDispatcherByUrl(java.util.Map, String)}.
+   * Unlike {@link SimpleHttpRequestDispatcherByUrl}, this dispatcher subtracts the {@code contextPath} only
+   * if it is followed by {@code /} in the URI path.
+   */
+  public HttpRequestDispatcherByRoute(
+      final HttpRouter<? extends RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> router,
+      final String contextPath) {
+    this(router, contextPath, Map.of(), null);
+  }
+
+  /**
+   * @param contextPath See {@link #HttpRequestDispatcherByRoute(HttpRouter, String)}.
+   * @param priorities {@link Map} that contains {@linkplain Processor#priority() priorities} of {@link RequestProcessor}s
+   * associated with routes of the {@code router}. {@link RequestProcessor}s are compared by identity.
+   * {@link Priority#NORMAL} is used for {@link RequestProcessor}s that are not present in this {@link Map}.
+   * @param admissionLimiter If not {@code null}, then {@link #process(RequestWithMetadata)} admits requests via
+   * {@link AdmissionLimiter#tryAcquire(Priority)} with the {@linkplain Priority#of(Object, Priority) priority} of a request
+   * after the {@link RequestProcessor} is found, see
+   * {@link stincmale.server.reqres.RequestDispatcherByProcessorName#RequestDispatcherByProcessorName(Map, Map, AdmissionLimiter)}.
+   */
+  public HttpRequestDispatcherByRoute(
+      final HttpRouter<? extends RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> router,
+      final String contextPath,
+      final Map<? extends RequestProcessor<?, ?>, Priority> priorities,
+      @Nullable final AdmissionLimiter admissionLimiter) {
+    checkNotNull(router, "The argument %s must not be null", "router");
+    checkNotNull(contextPath, "The argument %s must not be null", "contextPath");
+    checkArgument(contextPath.isEmpty() || contextPath.startsWith("/"),
+        "The argument %s must either be empty or start with /", "contextPath");
+    checkArgument(!contextPath.endsWith("/"), "The argument %s must not end with /", "contextPath");
+    checkNotNull(priorities, "The argument %s must not be null", "priorities");
+    this.router = router;
+    this.contextPath = contextPath;
+    this.priorities = new IdentityHashMap<>(priorities);
+    this.admissionLimiter = admissionLimiter;
+  }
+
+  @Override
+  public final CompletionStage<FullHttpResponse> process(final RequestWithMetadata<? extends FullHttpRequest> request) {
+    checkNotNull(request, "The argument %s must not be null", "request");
+    final FullHttpRequest httpRequest = request.request();
+    final String uri = httpRequest.uri();
+    final int pathBegin = pathBegin(uri);
+    @Nullable final HttpRouter.Route<? extends RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> route
+        = router.find(uri, pathBegin);
+    if (route == null) {
+      logger.debug("There is no route for URI {}", uri);
+      throw RejectedRequestException.of(Reason.UNKNOWN_PROCESSOR);
+    }
+    @Nullable final RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> processor
+        = route.value(httpRequest.method());
+    if (processor == null) {
+      logger.debug("Method {} is not allowed for {}", httpRequest.method(), route);
+      throw RejectedRequestException.of(Reason.METHOD_NOT_ALLOWED);
+    }
+    logger.debug("{} will be processed by processor {} with route {}", request, processor, route);
+    request.setRoute(route.pattern());
+    final RequestWithMetadata<? extends FullHttpRequest> routedRequest = route.hasParameters()
+        ? new RequestWithMetadata<>(httpRequest, new RouteMetadata(request.metadata(), route.parameters(uri, pathBegin)))
+        : request;
+    final CompletionStage<FullHttpResponse> result;
+    if (admissionLimiter == null) {
+      result = processor.process(routedRequest);
+    } else {
+      result = processAdmitted(processor, request, routedRequest, admissionLimiter);
+    }
+    return result;
+  }
+
+  private final CompletionStage<FullHttpResponse> processAdmitted(
+      final RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> processor,
+      final RequestWithMetadata<? extends FullHttpRequest> request,
+      final RequestWithMetadata<? extends FullHttpRequest> routedRequest,
+      final AdmissionLimiter admissionLimiter) {
+    final Priority priority = Priority.of(request, priorities.getOrDefault(processor, Priority.NORMAL));
+    if (!admissionLimiter.tryAcquire(priority)) {
+      logger.debug("{} with priority {} was not admitted by {}", request, priority, admissionLimiter);
+      throw RejectedRequestException.of(Reason.OVERLOADED);
+    }
+    final CompletionStage<FullHttpResponse> result;
+    try {
+      result = processor.process(routedRequest);
+    } catch (final RuntimeException e) {
+      admissionLimiter.release();
+      throw e;
+    }
+    result.whenComplete((response, failure) -> admissionLimiter.release());
+    return result;
+  }
+
+  /**
+   * @return The index of the first character of the URI path after subtracting the context path.
+   */
+  private final int pathBegin(final String uri) {
+    int result = 0;
+    if (!uri.startsWith("/")) {//absolute-form, e.g. http://host:port/path
+      final int authorityBegin = uri.indexOf("://");
+      if (authorityBegin >= 0) {
+        final int pathBegin = uri.indexOf('/', authorityBegin + 3);
+        result = pathBegin < 0 ? uri.length() : pathBegin;
+      }
+    }
+    final int contextPathLength = contextPath.length();
+    if (contextPathLength > 0
+        && uri.startsWith(contextPath, result)
+        && uri.length() > result + contextPathLength
+        && uri.charAt(result + contextPathLength) == '/') {
+      result += contextPathLength;
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "(router=" + router
+        + ", contextPath=" + contextPath
+        + ", admissionLimiter=" + admissionLimiter
+        + ')';
+  }
+
+  @Immutable
+  private static final class RouteMetadata implements Metadata {
+    private final Metadata metadata;
+    private final PathParameters pathParameters;
+
+    private RouteMetadata(final Metadata metadata, final PathParameters pathParameters) {
+      this.metadata = metadata;
+      this.pathParameters = pathParameters;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final <T> Optional<T> get(final MetadataKey<T> key) {
+      return key.ordinal() == PathParameters.METADATA_KEY.ordinal()
+          ? Optional.of((T)pathParameters)
+          : metadata.get(key);
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public final <T> T getOrNull(final MetadataKey<T> key) {
+      return key.ordinal() == PathParameters.METADATA_KEY.ordinal()
+          ? (T)pathParameters
+          : metadata.getOrNull(key);
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName()
+          + "(metadata=" + metadata
+          + ", pathParameters=" + pathParameters
+          + ')';
+    }
+  }
+}
@@ -0,0 +1,439 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.handler.codec.http.HttpMethod;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A compiled radix tree of {@linkplain Route routes} that {@linkplain #find(String, int) matches} URI paths.
+ * <p>
+ * A route pattern is a path that starts with {@code /} and may contain parameters, e.g. {@code /users/{id}/orders/{orderId}}.
+ * A parameter always occupies a whole path segment and matches any non-empty segment.
+ * If a path matches multiple routes, then static segments are preferred over parameters, e.g. {@code /users/me} is preferred over
+ * {@code /users/{id}} for the path {@code /users/me}.
+ * <p>
+ * Matching is performed against the raw (not {@linkplain io.netty.handler.codec.http.QueryStringDecoder decoded})
+ * URI and does not allocate objects unless values of {@linkplain PathParameters path parameters} are requested.
+ *
+ * @param <T> A type of values associated with routes, e.g. {@link stincmale.server.reqres.RequestProcessor}.
+ */
+@Immutable
+public final class HttpRouter<T> {
+  private static final int BINARY_SEARCH_THRESHOLD = 8;
+
+  private final Node<T> root;
+  private final List<Route<T>> routes;
+
+  private HttpRouter(final Node<T> root, final List<Route<T>> routes) {
+    this.root = root;
+    this.routes = routes;
+  }
+
+  public static final <T> Builder<T> builder() {
+    return new Builder<>();
+  }
+
+  /**
+   * @param uri A URI of a request, usually obtained via {@link io.netty.handler.codec.http.HttpRequest#uri()}.
+   * The path is terminated by the end of the {@code uri}, by the {@code ?} or by the {@code #} character.
+   * @param from An index in the {@code uri} from which the path starts. The character at this index is usually {@code /}.
+   *
+   * @return The matched {@link Route}, or {@code null} if there is no such {@link Route}.
+   */
+  @Nullable
+  public final Route<T> find(final String uri, final int from) {
+    checkNotNull(uri, "The argument %s must not be null", "uri");
+    return find(root, uri, from, pathEnd(uri, from));
+  }
+
+  /**
+   * @return All {@link Route}s of this {@link HttpRouter}.
+   */
+  public final List<Route<T>> routes() {
+    return routes;
+  }
+
+  /**
+   * @return The index of the first {@code ?} or {@code #} character in the {@code uri} starting from the index {@code from},
+   * or the length of the {@code uri} if there are no such characters.
+   */
+  static final int pathEnd(final String uri, final int from) {
+    int result = from;
+    for (final int length = uri.length(); result < length; result++) {
+      final char c = uri.charAt(result);
+      if (c == '?' || c == '#') {
+        break;
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private static final <T> Route<T> find(final Node<T> node, final String path, final int from, final int end) {
+    int pos = from;
+    if (node.param) {
+      while (pos < end && path.charAt(pos) != '/') {
+        pos++;
+      }
+      if (pos == from) {//parameters must not be empty
+        return null;
+      }
+    } else {
+      final char[] prefix = node.prefix;
+      if (end - pos < prefix.length) {
+        return null;
+      }
+      for (final char c : prefix) {
+        if (path.charAt(pos++) != c) {
+          return null;
+        }
+      }
+    }
+    @Nullable
+    Route<T> result;
+    if (pos == end) {
+      result = node.route;
+    } else {
+      result = null;
+      @Nullable final Node<T> staticChild = node.staticChild(path.charAt(pos));
+      if (staticChild != null) {
+        result = find(staticChild, path, pos, end);
+      }
+      if (result == null && node.paramChild != null) {
+        result = find(node.paramChild, path, pos, end);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(routes=" + routes
+        + ')';
+  }
+
+  /**
+   * A route {@linkplain #pattern() pattern} together with values associated with {@linkplain #value(HttpMethod) methods}.
+   */
+  @Immutable
+  public static final class Route<T> {
+    private static final HttpMethod[] NO_METHODS = new HttpMethod[0];
+    private static final String[] NO_PARAMETERS = new String[0];
+
+    private final String pattern;
+    private final String[] parameterNames;
+    /**
+     * Indices of path segments occupied by the parameters; the segment before the first {@code /} has index 0.
+     */
+    private final int[] parameterSegments;
+    private final HttpMethod[] methods;
+    private final Object[] values;
+    @Nullable
+    private final T anyMethodValue;
+
+    private Route(
+        final String pattern,
+        final List<String> parameterNames,
+        final int[] parameterSegments,
+        final Map<HttpMethod, T> values,
+        @Nullable final T anyMethodValue) {
+      this.pattern = pattern;
+      this.parameterNames = parameterNames.isEmpty() ? NO_PARAMETERS : parameterNames.toArray(new String[0]);
+      this.parameterSegments = parameterSegments;
+      this.methods = values.isEmpty() ? NO_METHODS : values.keySet()
+          .toArray(new HttpMethod[0]);
+      this.values = values.values()
+          .toArray();
+      this.anyMethodValue = anyMethodValue;
+    }
+
+    public final String pattern() {
+      return pattern;
+    }
+
+    /**
+     * @return The value associated with the {@code method}, or the value associated with any method,
+     * or {@code null} if there is no such value.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public final T value(final HttpMethod method) {
+      checkNotNull(method, "The argument %s must not be null", "method");
+      @Nullable
+      T result = anyMethodValue;
+      for (int i = 0; i < methods.length; i++) {
+        final HttpMethod m = methods[i];
+        if (m == method || m.equals(method)) {
+          result = (T)values[i];
+          break;
+        }
+      }
+      return result;
+    }
+
+    public final boolean hasParameters() {
+      return parameterNames.length > 0;
+    }
+
+    /**
+     * Captures values of path parameters.
+     * This method must only be called with the same arguments that were used to {@linkplain HttpRouter#find(String, int) find}
+     * this {@link Route}.
+     */
+    public final PathParameters parameters(final String uri, final int from) {
+      checkNotNull(uri, "The argument %s must not be null", "uri");
+      final int end = pathEnd(uri, from);
+      final int[] bounds = new int[2 * parameterNames.length];
+      int segment = 0;
+      int segmentBegin = from;
+      for (int i = from, p = 0; i <= end && p < parameterSegments.length; i++) {
+        if (i == end || uri.charAt(i) == '/') {
+          if (segment == parameterSegments[p]) {
+            bounds[2 * p] = segmentBegin;
+            bounds[2 * p + 1] = i;
+            p++;
+          }
+          segment++;
+          segmentBegin = i + 1;
+        }
+      }
+      return new PathParameters(parameterNames, uri, bounds);
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName()
+          + "(pattern=" + pattern
+          + ", methods=" + (methods.length == 0 ? "any" : Arrays.toString(methods) + (anyMethodValue == null ? "" : " and any"))
+          + ')';
+    }
+  }
+
+  @NotThreadSafe
+  public static final class Builder<T> {
+    private final BuildNode<T> root;
+    private final List<BuildNode<T>> terminals;
+
+    private Builder() {
+      root = new BuildNode<>("", false);
+      terminals = new ArrayList<>();
+    }
+
+    /**
+     * @param pattern See {@link HttpRouter}.
+     * @param methods Methods the {@code value} is associated with. An empty {@link Collection} means any method.
+     *
+     * @throws IllegalArgumentException If the {@code pattern} is malformed,
+     * or if the {@code pattern} conflicts with a previously added pattern and there are common methods.
+     */
+    public final Builder<T> add(final String pattern, final Collection<HttpMethod> methods, final T value) throws IllegalArgumentException {
+      checkNotNull(pattern, "The argument %s must not be null", "pattern");
+      checkNotNull(methods, "The argument %s must not be null", "methods");
+      checkNotNull(value, "The argument %s must not be null", "value");
+      checkArgument(pattern.startsWith("/"), "The argument %s=%s must start with /", "pattern", pattern);
+      final List<String> parameterNames = new ArrayList<>();
+      final List<Integer> parameterSegments = new ArrayList<>();
+      BuildNode<T> node = root;
+      int segment = 0;
+      for (int i = 0; i < pattern.length(); ) {
+        if (pattern.charAt(i) == '{') {
+          final int close = pattern.indexOf('}', i);
+          checkArgument(pattern.charAt(i - 1) == '/' && close > i + 1 && (close == pattern.length() - 1 || pattern.charAt(close + 1) == '/'),
+              "The argument %s=%s has a malformed parameter at index %s", "pattern", pattern, i);
+          final String name = pattern.substring(i + 1, close);
+          checkArgument(name.indexOf('{') < 0 && name.indexOf('/') < 0 && !parameterNames.contains(name),
+              "The argument %s=%s has a malformed or duplicate parameter %s", "pattern", pattern, name);
+          parameterNames.add(name);
+          parameterSegments.add(segment);
+          if (node.paramChild == null) {
+            node.paramChild = new BuildNode<>("", true);
+          }
+          node = node.paramChild;
+          i = close + 1;
+        } else {
+          int runEnd = pattern.indexOf('{', i);
+          runEnd = runEnd < 0 ? pattern.length() : runEnd;
+          final String run = pattern.substring(i, runEnd);
+          checkArgument(run.indexOf('}') < 0, "The argument %s=%s has an unmatched }", "pattern", pattern);
+          for (int j = 0; j < run.length(); j++) {
+            if (run.charAt(j) == '/') {
+              segment++;
+            }
+          }
+          node = insertStatic(node, run);
+          i = runEnd;
+        }
+      }
+      if (node.pattern == null) {
+        node.pattern = pattern;
+        node.parameterNames = parameterNames;
+        node.parameterSegments = parameterSegments.stream()
+            .mapToInt(Integer::intValue)
+            .toArray();
+        terminals.add(node);
+      } else {
+        checkArgument(node.pattern.equals(pattern),
+            "The argument %s=%s conflicts with the previously added pattern %s", "pattern", pattern, node.pattern);
+      }
+      if (methods.isEmpty()) {
+        checkArgument(node.anyMethodValue == null,
+            "The argument %s=%s was already added for any method", "pattern", pattern);
+        node.anyMethodValue = value;
+      } else {
+        for (final HttpMethod method : methods) {
+          checkArgument(node.values.put(method, value) == null,
+              "The argument %s=%s was already added for method %s", "pattern", pattern, method);
+        }
+      }
+      return this;
+    }
+
+    public final HttpRouter<T> build() {
+      final List<Route<T>> routes = new ArrayList<>(terminals.size());
+      final Node<T> compiledRoot = compile(root, routes);
+      return new HttpRouter<>(compiledRoot, Collections.unmodifiableList(routes));
+    }
+
+    private static final <T> BuildNode<T> insertStatic(BuildNode<T> node, String run) {
+      while (!run.isEmpty()) {
+        @Nullable
+        BuildNode<T> child = node.statics.get(run.charAt(0));
+        if (child == null) {
+          child = new BuildNode<>(run, false);
+          node.statics.put(run.charAt(0), child);
+          run = "";
+        } else {
+          int commonPrefixLength = 0;
+          for (final int maxLength = Math.min(child.prefix.length(), run.length());
+              commonPrefixLength < maxLength && child.prefix.charAt(commonPrefixLength) == run.charAt(commonPrefixLength); ) {
+            commonPrefixLength++;
+          }
+          if (commonPrefixLength < child.prefix.length()) {//split the child
+            final BuildNode<T> intermediate = new BuildNode<>(child.prefix.substring(0, commonPrefixLength), false);
+            child.prefix = child.prefix.substring(commonPrefixLength);
+            intermediate.statics.put(child.prefix.charAt(0), child);
+            node.statics.put(intermediate.prefix.charAt(0), intermediate);
+            child = intermediate;
+          }
+          run = run.substring(commonPrefixLength);
+        }
+        node = child;
+      }
+      return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final <T> Node<T> compile(final BuildNode<T> node, final List<Route<T>> routes) {
+      @Nullable
+      Route<T> route = null;
+      if (node.pattern != null) {
+        route = new Route<>(node.pattern, node.parameterNames, node.parameterSegments, node.values, node.anyMethodValue);
+        routes.add(route);
+      }
+      final char[] firstChars = new char[node.statics.size()];
+      final Node<T>[] children = (Node<T>[])new Node<?>[node.statics.size()];
+      int i = 0;
+      for (final Map.Entry<Character, BuildNode<T>> entry : node.statics.entrySet()) {//TreeMap, so the characters are sorted
+        firstChars[i] = entry.getKey();
+        children[i] = compile(entry.getValue(), routes);
+        i++;
+      }
+      return new Node<>(
+          node.prefix.toCharArray(), node.param, firstChars, children, node.paramChild == null ? null : compile(node.paramChild, routes), route);
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName()
+          + "(terminals=" + terminals.size()
+          + ')';
+    }
+  }
+
+  @Immutable
+  private static final class Node<T> {
+    /**
+     * We use {@code char[]} instead of {@link String} to avoid an indirection.
+     */
+    private final char[] prefix;
+    private final boolean param;
+    private final char[] firstChars;
+    private final Node<T>[] staticChildren;
+    @Nullable
+    private final Node<T> paramChild;
+    @Nullable
+    private final Route<T> route;
+
+    private Node(
+        final char[] prefix,
+        final boolean param,
+        final char[] firstChars,
+        final Node<T>[] staticChildren,
+        @Nullable final Node<T> paramChild,
+        @Nullable final Route<T> route) {
+      this.prefix = prefix;
+      this.param = param;
+      this.firstChars = firstChars;
+      this.staticChildren = staticChildren;
+      this.paramChild = paramChild;
+      this.route = route;
+    }
+
+    @Nullable
+    private final Node<T> staticChild(final char c) {
+      @Nullable
+      Node<T> result = null;
+      if (firstChars.length < BINARY_SEARCH_THRESHOLD) {
+        for (int i = 0; i < firstChars.length; i++) {
+          if (firstChars[i] == c) {
+            result = staticChildren[i];
+            break;
+          }
+        }
+      } else {
+        final int idx = Arrays.binarySearch(firstChars, c);
+        if (idx >= 0) {
+          result = staticChildren[idx];
+        }
+      }
+      return result;
+    }
+  }
+
+  @NotThreadSafe
+  private static final class BuildNode<T> {
+    private String prefix;
+    private final boolean param;
+    private final TreeMap<Character, BuildNode<T>> statics;
+    @Nullable
+    private BuildNode<T> paramChild;
+    @Nullable
+    private String pattern;
+    private List<String> parameterNames;
+    private int[] parameterSegments;
+    private final Map<HttpMethod, T> values;
+    @Nullable
+    private T anyMethodValue;
+
+    private BuildNode(final String prefix, final boolean param) {
+      this.prefix = prefix;
+      this.param = param;
+      statics = new TreeMap<>();
+      parameterNames = Collections.emptyList();
+      parameterSegments = new int[0];
+      values = new LinkedHashMap<>();
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import stincmale.server.netty4.NettyServer;
+import stincmale.server.netty4.PipelineWarmUp;
+import stincmale.server.reqres.WarmUp;
+import stincmale.server.util.stats.LatencyHistogram;
+import stincmale.server.util.stats.StatsAggregator;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Warms up the JIT compiler by sending synthetic HTTP requests (see {@link WarmUp}) through the {@link io.netty.channel.ChannelPipeline}
+ * of a {@link NettyServer} before it starts accepting connections.
+ * <p>
+ * Requests are sent in rounds via the in-JVM {@linkplain LocalChannel local transport} to a server {@link Channel}
+ * whose child {@link Channel}s are initialized by the child {@link ChannelHandler} of the {@link NettyServer},
+ * so the requests pass through the same handlers and {@link stincmale.server.reqres.RequestProcessor}s as real requests.
+ * Therefore the child {@link ChannelHandler} must accept any {@link Channel},
+ * e.g. be a {@link ChannelInitializer}{@code <}{@link Channel}{@code >}
+ * rather than a {@link ChannelInitializer}{@code <}{@link io.netty.channel.socket.SocketChannel}{@code >},
+ * which fails to initialize a {@link LocalChannel}.
+ * Each round sends each request once, each request is sent via a new connection. Warm-up ends after the first round
+ * (but not before {@code minRounds} rounds) in which
+ * <ul>
+ *   <li>the mean latency of requests does not exceed {@code targetLatencyNanos}, and</li>
+ *   <li>the JIT compiler spent no more than {@code maxRoundCompilationMillis} compiling
+ *   (if the JVM {@linkplain CompilationMXBean#isCompilationTimeMonitoringSupported() supports} monitoring the compilation time),</li>
+ * </ul>
+ * or when {@code maxDurationMillis} is exceeded.
+ * Warm-up is aborted with a warning if all requests of a round fail,
+ * e.g. because the child {@link ChannelHandler} does not accept {@link LocalChannel}s.
+ * <p>
+ * If {@link StatsAggregator} is specified, then the progress is reported via the following metrics:
+ * {@code warmUp.inProgress} (gauge, 1 while warming up), {@code warmUp.rounds} (counter), {@code warmUp.requestTime} (histogram).
+ * Note that warm-up requests are also recorded by other metrics, e.g. by {@link HttpDispatchMonoHandler}.
+ */
+@ThreadSafe
+public final class HttpWarmUp implements PipelineWarmUp {
+  private static final Logger logger = LoggerFactory.getLogger(HttpWarmUp.class);
+  private static final int NO_RESPONSE = -1;
+
+  private final List<String> requests;
+  private final int minRounds;
+  private final long maxDurationMillis;
+  private final long targetLatencyNanos;
+  private final long maxRoundCompilationMillis;
+  @Nullable
+  private final StatsAggregator statsAggregator;
+
+  /**
+   * @param requests HTTP/1.1 requests in the wire format, e.g. {@code "GET /users/1 HTTP/1.1\r\nHost: localhost\r\n\r\n"},
+   * see {@link stincmale.server.reqres.spring.SpringRequestDispatcher#detectWarmUpRequests(org.springframework.context.ApplicationContext,
+   * Collection, boolean)}.
+   * @param minRounds The minimal number of rounds. Must not be negative.
+   * @param maxDurationMillis The maximal duration of warm-up. Must be positive.
+   * @param targetLatencyNanos The mean latency of requests that is considered warm. Must be positive.
+   * @param maxRoundCompilationMillis The compilation time during a round that is considered warm. Must not be negative.
+   * @param statsAggregator {@link StatsAggregator} that is used to report the progress.
+   */
+  public HttpWarmUp(
+      final Collection<String> requests,
+      final int minRounds,
+      final long maxDurationMillis,
+      final long targetLatencyNanos,
+      final long maxRoundCompilationMillis,
+      @Nullable final StatsAggregator statsAggregator) {
+    checkNotNull(requests, "The argument %s must not be null", "requests");
+    checkArgument(minRounds >= 0, "The argument %s must not be negative", "minRounds");
+    checkArgument(maxDurationMillis > 0, "The argument %s must be positive", "maxDurationMillis");
+    checkArgument(targetLatencyNanos > 0, "The argument %s must be positive", "targetLatencyNanos");
+    checkArgument(maxRoundCompilationMillis >= 0, "The argument %s must not be negative", "maxRoundCompilationMillis");
+    this.requests = List.copyOf(requests);
+    this.minRounds = minRounds;
+    this.maxDurationMillis = maxDurationMillis;
+    this.targetLatencyNanos = targetLatencyNanos;
+    this.maxRoundCompilationMillis = maxRoundCompilationMillis;
+    this.statsAggregator = statsAggregator;
+  }
+
+  @Override
+  public final void warmUp(final ChannelHandler childHandler) throws InterruptedException {
+    checkNotNull(childHandler, "The argument %s must not be null", "childHandler");
+    if (childHandler instanceof ChannelHandlerAdapter
+        && !((ChannelHandlerAdapter)childHandler).isSharable()) {//a non-sharable handler could not be added to pipelines of the server
+      logger.warn("Skipping warm-up because {} is not {}", childHandler, ChannelHandler.Sharable.class.getSimpleName());
+    } else if (!requests.isEmpty()) {
+      @Nullable final StatsAggregator.Gauge inProgress = statsAggregator == null ? null : statsAggregator.gauge("warmUp.inProgress", null);
+      @Nullable final StatsAggregator.Counter roundsCounter = statsAggregator == null ? null : statsAggregator.counter("warmUp.rounds", null);
+      @Nullable final LatencyHistogram requestTime = statsAggregator == null ? null : statsAggregator.histogram("warmUp.requestTime", null);
+      final long beginNanos = System.nanoTime();
+      final long deadlineNanos = beginNanos + MILLISECONDS.toNanos(maxDurationMillis);
+      final EventLoopGroup group = new DefaultEventLoopGroup(1);
+      if (inProgress != null) {
+        inProgress.increment();
+      }
+      int rounds = 0;
+      int failedRequests = 0;
+      boolean warm = false;
+      boolean aborted = false;
+      try {
+        final Channel serverChannel = new ServerBootstrap()
+            .group(group)
+            .channel(LocalServerChannel.class)
+            .childHandler(childHandler)
+            .bind(LocalAddress.ANY)
+            .sync()
+            .channel();
+        try {
+          while (!warm && !aborted && System.nanoTime() - deadlineNanos < 0) {
+            final long compilationMillisBefore = compilationMillis();
+            long totalLatencyNanos = 0;
+            int roundFailedRequests = 0;
+            for (final String request : requests) {
+              final long requestBeginNanos = System.nanoTime();
+              final int status = send(group, serverChannel.localAddress(), request, deadlineNanos);
+              final long latencyNanos = System.nanoTime() - requestBeginNanos;
+              totalLatencyNanos += latencyNanos;
+              if (requestTime != null) {
+                requestTime.record(latencyNanos);
+              }
+              if (status == NO_RESPONSE || status >= 500) {
+                roundFailedRequests++;
+              }
+            }
+            rounds++;
+            failedRequests += roundFailedRequests;
+            if (roundsCounter != null) {
+              roundsCounter.increment();
+            }
+            final long meanLatencyNanos = totalLatencyNanos / requests.size();
+            final long compilationMillis = compilationMillisBefore < 0 ? 0 : compilationMillis() - compilationMillisBefore;
+            logger.debug("Warm-up round {}: meanLatencyNanos={}, compilationMillis={}", rounds, meanLatencyNanos, compilationMillis);
+            warm = rounds >= minRounds && meanLatencyNanos <= targetLatencyNanos && compilationMillis <= maxRoundCompilationMillis;
+            if (roundFailedRequests == requests.size()) {
+              aborted = true;
+              logger.warn("Aborting warm-up because all requests of the round {} failed, "
+                  + "note that {} must accept {} as a child {}", rounds, childHandler, LocalChannel.class.getSimpleName(),
+                  Channel.class.getSimpleName());
+            }
+          }
+        } finally {
+          serverChannel.close()
+              .sync();
+        }
+      } finally {
+        group.shutdownGracefully(0, 0, MILLISECONDS)
+            .await();
+        if (inProgress != null) {
+          inProgress.decrement();
+        }
+      }
+      logger.info("Warm-up {} after {} rounds in {} ms, {} of {} requests failed",
+          aborted ? "was aborted" : warm ? "completed" : "timed out", rounds, NANOSECONDS.toMillis(System.nanoTime() - beginNanos), failedRequests,
+          rounds * requests.size());
+    }
+  }
+
+  /**
+   * @return The status code of the response, or {@link #NO_RESPONSE}.
+   */
+  private static final int send(final EventLoopGroup group, final SocketAddress address, final String request, final long deadlineNanos)
+      throws InterruptedException {
+    final CompletableFuture<Integer> futureStatus = new CompletableFuture<>();
+    final Channel channel = new Bootstrap()
+        .group(group)
+        .channel(LocalChannel.class)
+        .handler(new ChannelInitializer<LocalChannel>() {
+          @Override
+          protected final void initChannel(final LocalChannel channel) {
+            channel.pipeline()
+                .addLast(new HttpResponseDecoder())
+                .addLast(new ResponseHandler(futureStatus));
+          }
+        })
+        .connect(address)
+        .sync()
+        .channel();
+    int result;
+    try {
+      channel.writeAndFlush(Unpooled.copiedBuffer(request, StandardCharsets.UTF_8));
+      result = futureStatus.get(Math.max(0, deadlineNanos - System.nanoTime()), NANOSECONDS);
+    } catch (final ExecutionException | TimeoutException e) {
+      result = NO_RESPONSE;
+    } finally {
+      channel.close()
+          .sync();
+    }
+    return result;
+  }
+
+  private static final long compilationMillis() {
+    @Nullable final CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+    return compilation != null && compilation.isCompilationTimeMonitoringSupported()
+        ? compilation.getTotalCompilationTime()
+        : -1;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(requests=" + requests.size()
+        + ", minRounds=" + minRounds
+        + ", maxDurationMillis=" + maxDurationMillis
+        + ", targetLatencyNanos=" + targetLatencyNanos
+        + ", maxRoundCompilationMillis=" + maxRoundCompilationMillis
+        + ')';
+  }
+
+  /**
+   * Completes {@link #futureStatus} as soon as the {@link HttpResponse} head is received, because a response may have neither
+   * {@code Content-Length} nor {@code Transfer-Encoding: chunked}, in which case its end is only signalled by closing the connection.
+   */
+  private static final class ResponseHandler extends SimpleChannelInboundHandler<HttpObject> {
+    private final CompletableFuture<Integer> futureStatus;
+
+    private ResponseHandler(final CompletableFuture<Integer> futureStatus) {
+      this.futureStatus = futureStatus;
+    }
+
+    @Override
+    protected final void channelRead0(final ChannelHandlerContext ctx, final HttpObject msg) {
+      if (msg instanceof HttpResponse) {
+        futureStatus.complete(((HttpResponse)msg).status()
+            .code());
+      }
+    }
+
+    @Override
+    public final void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+      futureStatus.complete(NO_RESPONSE);
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    public final void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+      futureStatus.complete(NO_RESPONSE);
+      ctx.close();
+    }
+  }
+}
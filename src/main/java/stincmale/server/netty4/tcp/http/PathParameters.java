@@ -0,0 +1,75 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import stincmale.server.netty4.MetadataKey;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Values of path parameters (e.g. {@code id} in {@code /users/{id}}) captured by {@link HttpRouter} from a request URI.
+ * Values are {@linkplain QueryStringDecoder#decodeComponent(String) decoded} lazily, when {@linkplain #get(String) requested}.
+ *
+ * @see #METADATA_KEY
+ */
+@Immutable
+public final class PathParameters {
+  /**
+   * {@link HttpRequestDispatcherByRoute} stores {@link PathParameters} in the {@link stincmale.server.netty4.Metadata}
+   * of a request by using this key if the matched {@linkplain HttpRouter.Route route} has parameters.
+   */
+  public static final MetadataKey<PathParameters> METADATA_KEY = MetadataKey.of(PathParameters.class.getName());
+
+  private final String[] names;
+  private final String uri;
+  /**
+   * Begin (inclusive) and end (exclusive) indices in {@link #uri} for each parameter, {@code bounds.length == 2 * names.length}.
+   */
+  private final int[] bounds;
+
+  PathParameters(final String[] names, final String uri, final int[] bounds) {
+    this.names = names;
+    this.uri = uri;
+    this.bounds = bounds;
+  }
+
+  /**
+   * @param name A name of the parameter as specified in the {@linkplain HttpRouter.Route#pattern() route pattern}.
+   */
+  public final Optional<String> get(final String name) {
+    checkNotNull(name, "The argument %s must not be null", "name");
+    @Nullable
+    String result = null;
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        result = QueryStringDecoder.decodeComponent(uri.substring(bounds[2 * i], bounds[2 * i + 1]), StandardCharsets.UTF_8);
+        break;
+      }
+    }
+    return Optional.ofNullable(result);
+  }
+
+  /**
+   * @return The number of parameters.
+   */
+  public final int size() {
+    return names.length;
+  }
+
+  @Override
+  public final String toString() {
+    final StringBuilder sb = new StringBuilder(getClass().getSimpleName()).append('(');
+    for (int i = 0; i < names.length; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(names[i])
+          .append('=')
+          .append(uri, bounds[2 * i], bounds[2 * i + 1]);
+    }
+    return sb.append(')')
+        .toString();
+  }
+}
@@ -0,0 +1,160 @@
+package stincmale.server.netty4.tcp.http.util;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.AsciiString;
+import javax.annotation.Nullable;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Extracts the client address from the following headers, which are checked in the specified order:
+ * <ul>
+ *   <li>{@code X-Forwarded-For}, e.g. {@code X-Forwarded-For: 192.0.2.43, 2001:db8:cafe::17};</li>
+ *   <li>{@code X-Real-IP}, e.g. {@code X-Real-IP: 192.0.2.43};</li>
+ *   <li>{@code Forwarded} (see <a href="https://tools.ietf.org/html/rfc7239">RFC 7239</a>),
+ *   e.g. {@code Forwarded: for=192.0.2.43;proto=http, for="[2001:db8:cafe::17]:4711"}.</li>
+ * </ul>
+ * A header is only taken into account if the address of the peer that sent the request is {@linkplain TrustedProxies trusted}.
+ * Headers that contain lists of addresses are scanned from right to left, skipping trusted addresses,
+ * so the client address is the rightmost address that is not trusted, or the leftmost address if all addresses are trusted.
+ * Ports, brackets around IPv6 addresses and quotes are removed.
+ * <p>
+ * Headers are scanned without allocating objects, except for the resulting {@link String}
+ * if the address is not the whole value of the header.
+ */
+public final class ForwardedHeaders {
+  private static final AsciiString X_FORWARDED_FOR = AsciiString.cached("x-forwarded-for");
+  private static final AsciiString X_REAL_IP = AsciiString.cached("x-real-ip");
+  private static final AsciiString FORWARDED = AsciiString.cached("forwarded");
+  private static final long NOT_FOUND = -1;
+
+  /**
+   * @param peerTrusted Whether the address of the peer that sent the request is {@linkplain TrustedProxies#isTrusted trusted}.
+   * If {@code false}, then headers are ignored.
+   *
+   * @return The client address, or {@code null} if there are no forwarded headers, or the peer is not trusted.
+   */
+  @Nullable
+  public static final String getClientAddress(final HttpHeaders headers, final boolean peerTrusted, final TrustedProxies trustedProxies) {
+    checkNotNull(headers, "The argument %s must not be null", "headers");
+    checkNotNull(trustedProxies, "The argument %s must not be null", "trustedProxies");
+    @Nullable
+    String result = null;
+    if (peerTrusted) {
+      result = scan(headers.get(X_FORWARDED_FOR), false, trustedProxies);
+      if (result == null) {
+        result = scan(headers.get(X_REAL_IP), false, trustedProxies);
+      }
+      if (result == null) {
+        result = scan(headers.get(FORWARDED), true, trustedProxies);
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private static final String scan(@Nullable final String value, final boolean forwardedSyntax, final TrustedProxies trustedProxies) {
+    @Nullable
+    String result = null;
+    if (value != null) {
+      long leftmost = NOT_FOUND;
+      int elementEnd = value.length();
+      while (elementEnd >= 0) {
+        final int elementStart = value.lastIndexOf(',', elementEnd - 1) + 1;
+        final long address = forwardedSyntax
+            ? forwardedFor(value, elementStart, elementEnd)
+            : address(value, elementStart, elementEnd);
+        if (address != NOT_FOUND) {
+          final int from = from(address);
+          final int to = to(address);
+          leftmost = address;
+          if (!trustedProxies.isTrusted(value, from, to)) {
+            break;
+          }
+        }
+        elementEnd = elementStart - 1;
+      }
+      if (leftmost != NOT_FOUND) {
+        result = value.substring(from(leftmost), to(leftmost));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The range of the value of the {@code for} parameter of the element of the {@code Forwarded} header
+   * {@linkplain #range(int, int) packed} into a {@code long}, or {@link #NOT_FOUND}.
+   */
+  private static final long forwardedFor(final String value, final int from, final int to) {
+    long result = NOT_FOUND;
+    int pairStart = from;
+    while (pairStart < to) {
+      int pairEnd = value.indexOf(';', pairStart);
+      if (pairEnd < 0 || pairEnd > to) {
+        pairEnd = to;
+      }
+      final int nameStart = skipWhitespace(value, pairStart, pairEnd);
+      if (value.regionMatches(true, nameStart, "for=", 0, 4)) {
+        result = address(value, nameStart + 4, pairEnd);
+        break;
+      }
+      pairStart = pairEnd + 1;
+    }
+    return result;
+  }
+
+  /**
+   * @return The range of the address without whitespaces, quotes, brackets, and the port
+   * {@linkplain #range(int, int) packed} into a {@code long}, or {@link #NOT_FOUND} if the range is empty.
+   */
+  private static final long address(final String value, int from, int to) {
+    from = skipWhitespace(value, from, to);
+    while (to > from && Character.isWhitespace(value.charAt(to - 1))) {
+      to--;
+    }
+    if (to - from >= 2 && value.charAt(from) == '"' && value.charAt(to - 1) == '"') {
+      from++;
+      to--;
+    }
+    if (from < to && value.charAt(from) == '[') {
+      final int closingBracketIdx = value.indexOf(']', from);
+      if (closingBracketIdx > from && closingBracketIdx < to) {
+        from++;
+        to = closingBracketIdx;
+      }
+    } else {
+      final int colonIdx = indexOf(value, ':', from, to);
+      if (colonIdx >= 0 && indexOf(value, ':', colonIdx + 1, to) < 0) {//an IPv4 address with a port
+        to = colonIdx;
+      }
+    }
+    return from < to ? range(from, to) : NOT_FOUND;
+  }
+
+  private static final int indexOf(final String value, final char c, final int from, final int to) {
+    final int result = value.indexOf(c, from);
+    return result < to ? result : -1;
+  }
+
+  private static final int skipWhitespace(final String value, int from, final int to) {
+    while (from < to && Character.isWhitespace(value.charAt(from))) {
+      from++;
+    }
+    return from;
+  }
+
+  private static final long range(final int from, final int to) {
+    return (long)from << 32 | to;
+  }
+
+  private static final int from(final long range) {
+    return (int)(range >>> 32);
+  }
+
+  private static final int to(final long range) {
+    return (int)range;
+  }
+
+  private ForwardedHeaders() {
+    throw new UnsupportedOperationException("This class is not designed to be instantiated");
+  }
+}
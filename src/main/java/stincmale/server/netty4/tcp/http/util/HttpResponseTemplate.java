@@ -0,0 +1,76 @@
+package stincmale.server.netty4.tcp.http.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.ReadOnlyHttpHeaders;
+import io.netty.util.AsciiString;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A pre-built {@link FullHttpResponse} with a plain text UTF-8 content and the {@code Connection: close} HTTP header,
+ * which is cheap to {@linkplain #newResponse() instantiate}.
+ * All {@linkplain #newResponse() instantiated} responses share the same
+ * {@linkplain ReadOnlyHttpHeaders read-only} headers and the same {@linkplain Unpooled#unreleasableBuffer(ByteBuf) unreleasable}
+ * read-only content, so they can neither be modified nor be released, and must not be used with handlers that modify responses,
+ * e.g. {@link io.netty.handler.codec.http.HttpContentCompressor}.
+ */
+@ThreadSafe
+public final class HttpResponseTemplate {
+  private static final AsciiString TEXT_PLAIN_UTF8 = AsciiString.cached("text/plain; charset=utf-8");
+
+  private final HttpVersion version;
+  private final HttpResponseStatus status;
+  private final HttpHeaders headers;
+  private final ByteBuf content;
+
+  /**
+   * @param content Content of responses. If {@code null}, then the {@linkplain HttpResponseStatus#reasonPhrase() reason phrase}
+   * of the {@code status} is used.
+   */
+  public HttpResponseTemplate(final HttpVersion version, final HttpResponseStatus status, @Nullable final String content) {
+    checkNotNull(version, "The argument %s must not be null", "version");
+    checkNotNull(status, "The argument %s must not be null", "status");
+    this.version = version;
+    this.status = status;
+    final byte[] contentBytes = (content == null ? status.reasonPhrase() : content).getBytes(StandardCharsets.UTF_8);
+    this.content = Unpooled.unreleasableBuffer(Unpooled.directBuffer(contentBytes.length)
+        .writeBytes(contentBytes)
+        .asReadOnly());
+    headers = new ReadOnlyHttpHeaders(false,
+        HttpHeaderNames.CONTENT_LENGTH, AsciiString.of(String.valueOf(contentBytes.length)),
+        HttpHeaderNames.CONTENT_TYPE, TEXT_PLAIN_UTF8,
+        HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+  }
+
+  /**
+   * @return A new {@link FullHttpResponse} whose content is a {@linkplain ByteBuf#retainedDuplicate() retained duplicate}
+   * of the content of this template.
+   */
+  public final FullHttpResponse newResponse() {
+    return new DefaultFullHttpResponse(version, status, content.retainedDuplicate(), headers, EmptyHttpHeaders.INSTANCE);
+  }
+
+  public final HttpResponseStatus status() {
+    return status;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(version=" + version
+        + ", status=" + status
+        + ", headers=" + headers
+        + ')';
+  }
+}
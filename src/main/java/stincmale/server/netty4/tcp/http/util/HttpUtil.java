@@ -10,7 +10,6 @@ import io.netty.handler.codec.http.HttpVersion;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import javax.annotation.Nullable;
-import org.apache.commons.lang3.StringUtils;
 import stincmale.server.netty4.util.channel.ChannelUtil;
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -48,16 +47,13 @@ public final class HttpUtil {
     return httpResponse;
   }
 
+  /**
+   * @return The client address specified by forwarded headers, which are {@linkplain TrustedProxies#ANY trusted}.
+   * See {@link ForwardedHeaders} for details.
+   */
   public static final Optional<String> getRemoteAddress(final HttpHeaders headers) {
     checkNotNull(headers, "The argument %s must not be null", "headers");
-    @Nullable
-    String result = headers.get("x-forwarded-for");
-    if (result == null) {
-      result = headers.get("X-Real-IP");
-    }
-    return StringUtils.isBlank(result)
-        ? Optional.empty()
-        : Optional.of(result.split("[:,\\s]")[0].trim());
+    return Optional.ofNullable(ForwardedHeaders.getClientAddress(headers, true, TrustedProxies.ANY));
   }
 
   public static Optional<String> getRemoteAddress(final HttpHeaders headers, final Channel channel) {
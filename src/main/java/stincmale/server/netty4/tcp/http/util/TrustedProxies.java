@@ -0,0 +1,316 @@
+package stincmale.server.netty4.tcp.http.util;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Specifies proxies that are trusted to report client addresses via forwarded headers (see {@link ForwardedHeaders})
+ * as a set of CIDR blocks, e.g. {@code 10.0.0.0/8} or {@code fd00::/8}.
+ * IPv4 addresses are matched as IPv4-mapped IPv6 addresses, so IPv4 blocks also match IPv4-mapped addresses and vice versa.
+ * <p>
+ * Checking whether an address specified by a {@link CharSequence} is {@linkplain #isTrusted(CharSequence, int, int) trusted}
+ * does not allocate objects.
+ */
+@ThreadSafe
+public final class TrustedProxies {
+  /**
+   * No proxies are trusted, i.e. forwarded headers are ignored.
+   */
+  public static final TrustedProxies NONE = new TrustedProxies(new long[0], new long[0], new int[0], "NONE");
+  /**
+   * All proxies are trusted, i.e. the client address is the leftmost address reported via forwarded headers.
+   * This is only suitable if the server is not reachable directly, but only via proxies.
+   */
+  public static final TrustedProxies ANY = new TrustedProxies(new long[] {0}, new long[] {0}, new int[] {0}, "ANY");
+  private static final long IPV4_MAPPED_PREFIX = 0xffff_0000_0000L;
+  private static final ThreadLocal<long[]> scratch = ThreadLocal.withInitial(() -> new long[2 + 8]);
+
+  private final long[] his;
+  private final long[] los;
+  private final int[] prefixLengths;
+  private final String description;
+
+  private TrustedProxies(final long[] his, final long[] los, final int[] prefixLengths, final String description) {
+    this.his = his;
+    this.los = los;
+    this.prefixLengths = prefixLengths;
+    this.description = description;
+  }
+
+  /**
+   * @param cidrs CIDR blocks, e.g. {@code 10.0.0.0/8}, {@code 192.168.1.1} (same as {@code 192.168.1.1/32}), {@code ::1/128}.
+   *
+   * @throws IllegalArgumentException If any of the {@code cidrs} is malformed.
+   */
+  public static final TrustedProxies of(final Collection<String> cidrs) {
+    checkNotNull(cidrs, "The argument %s must not be null", "cidrs");
+    final long[] his = new long[cidrs.size()];
+    final long[] los = new long[cidrs.size()];
+    final int[] prefixLengths = new int[cidrs.size()];
+    final long[] parsed = new long[2 + 8];
+    int i = 0;
+    for (final String cidr : cidrs) {
+      checkNotNull(cidr, "The argument %s must not contain null elements", "cidrs");
+      final int slashIdx = cidr.indexOf('/');
+      final int addressEnd = slashIdx < 0 ? cidr.length() : slashIdx;
+      final int maxPrefixLength;
+      if (parseIpv4(cidr, 0, addressEnd, parsed)) {
+        maxPrefixLength = 32;
+      } else if (parseIpv6(cidr, 0, addressEnd, parsed)) {
+        maxPrefixLength = 128;
+      } else {
+        throw new IllegalArgumentException(String.format("The CIDR block %s is malformed", cidr));
+      }
+      final int prefixLength;
+      if (slashIdx < 0) {
+        prefixLength = maxPrefixLength;
+      } else {
+        try {
+          prefixLength = Integer.parseInt(cidr, slashIdx + 1, cidr.length(), 10);
+        } catch (final NumberFormatException e) {
+          throw new IllegalArgumentException(String.format("The CIDR block %s is malformed", cidr), e);
+        }
+        checkArgument(prefixLength >= 0 && prefixLength <= maxPrefixLength, "The CIDR block %s has an invalid prefix length", cidr);
+      }
+      prefixLengths[i] = prefixLength + (128 - maxPrefixLength);
+      his[i] = parsed[0] & mask(prefixLengths[i]);
+      los[i] = parsed[1] & mask(prefixLengths[i] - 64);
+      i++;
+    }
+    return new TrustedProxies(his, los, prefixLengths, cidrs.toString());
+  }
+
+  /**
+   * @see #of(Collection)
+   */
+  public static final TrustedProxies of(final String... cidrs) {
+    checkNotNull(cidrs, "The argument %s must not be null", "cidrs");
+    return of(Arrays.asList(cidrs));
+  }
+
+  public final boolean isTrusted(final InetAddress address) {
+    checkNotNull(address, "The argument %s must not be null", "address");
+    final boolean result;
+    if (prefixLengths.length == 0) {
+      result = false;
+    } else if (this == ANY) {
+      result = true;
+    } else {
+      final byte[] bytes = address.getAddress();
+      if (address instanceof Inet4Address) {
+        result = matches(0, IPV4_MAPPED_PREFIX | Integer.toUnsignedLong(
+            (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | bytes[3] & 0xff));
+      } else {
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) {
+          hi = hi << 8 | bytes[i] & 0xff;
+          lo = lo << 8 | bytes[i + 8] & 0xff;
+        }
+        result = matches(hi, lo);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param address An IPv4 or IPv6 address without a port, brackets, or a zone ID.
+   * @param from The index of the first character of the address in the {@code address} (inclusive).
+   * @param to The index of the last character of the address in the {@code address} (exclusive).
+   *
+   * @return {@code false} if the {@code address} is not a valid IP address, unless this is {@link #ANY}.
+   */
+  public final boolean isTrusted(final CharSequence address, final int from, final int to) {
+    final boolean result;
+    if (prefixLengths.length == 0) {
+      result = false;
+    } else if (this == ANY) {
+      result = true;
+    } else {
+      final long[] parsed = scratch.get();
+      result = (parseIpv4(address, from, to, parsed) || parseIpv6(address, from, to, parsed)) && matches(parsed[0], parsed[1]);
+    }
+    return result;
+  }
+
+  private final boolean matches(final long hi, final long lo) {
+    boolean result = false;
+    for (int i = 0; i < prefixLengths.length; i++) {
+      final int prefixLength = prefixLengths[i];
+      if ((hi & mask(prefixLength)) == his[i] && (lo & mask(prefixLength - 64)) == los[i]) {
+        result = true;
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return A mask with the {@code prefixLength} most significant bits set, where {@code prefixLength} is clamped to [0, 64].
+   */
+  private static final long mask(final int prefixLength) {
+    final long result;
+    if (prefixLength <= 0) {
+      result = 0;
+    } else if (prefixLength >= 64) {
+      result = -1;
+    } else {
+      result = -1L << (64 - prefixLength);
+    }
+    return result;
+  }
+
+  /**
+   * Parses an IPv4 address as an IPv4-mapped IPv6 address.
+   *
+   * @param out {@code out[0]} and {@code out[1]} are set to the most and the least significant 64 bits of the address respectively.
+   */
+  private static final boolean parseIpv4(final CharSequence s, final int from, final int to, final long[] out) {
+    final long v4 = parseIpv4Bits(s, from, to);
+    final boolean result = v4 >= 0;
+    if (result) {
+      out[0] = 0;
+      out[1] = IPV4_MAPPED_PREFIX | v4;
+    }
+    return result;
+  }
+
+  /**
+   * @return -1 if {@code s} is not an IPv4 address.
+   */
+  private static final long parseIpv4Bits(final CharSequence s, final int from, final int to) {
+    long result = 0;
+    int octets = 0;
+    int octet = -1;
+    for (int i = from; i < to; i++) {
+      final char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+        if (octet > 255) {
+          return -1;
+        }
+      } else if (c == '.' && octet >= 0 && octets < 3) {
+        result = result << 8 | octet;
+        octets++;
+        octet = -1;
+      } else {
+        return -1;
+      }
+    }
+    return octet >= 0 && octets == 3 ? result << 8 | octet : -1;
+  }
+
+  /**
+   * @param out {@code out[0]} and {@code out[1]} are set to the most and the least significant 64 bits of the address respectively,
+   * the rest of {@code out} is used to store groups of the address.
+   */
+  private static final boolean parseIpv6(final CharSequence s, final int from, final int to, final long[] out) {
+    final int groupsOffset = 2;
+    int groups = 0;
+    int doubleColonGroup = -1;
+    int group = -1;
+    int digits = 0;
+    for (int i = from; i < to; i++) {
+      final char c = s.charAt(i);
+      final int digit = hexDigit(c);
+      if (digit >= 0) {
+        if (++digits > 4) {
+          return false;
+        }
+        group = (group < 0 ? 0 : group << 4) | digit;
+      } else if (c == ':') {
+        if (group >= 0) {
+          if (groups == 8) {
+            return false;
+          }
+          out[groupsOffset + groups++] = group;
+          group = -1;
+          digits = 0;
+        } else if (i != from) {//a colon that follows neither a group nor the beginning
+          return false;
+        }
+        if (i + 1 < to && s.charAt(i + 1) == ':') {
+          if (doubleColonGroup >= 0) {
+            return false;
+          }
+          doubleColonGroup = groups;
+          i++;
+        } else if (i == from || i + 1 == to) {//a leading or a trailing single colon
+          return false;
+        }
+      } else if (c == '.') {//an embedded IPv4 address
+        int start = i - 1;
+        while (start > from && s.charAt(start - 1) != ':') {
+          start--;
+        }
+        final long v4 = parseIpv4Bits(s, start, to);
+        if (v4 < 0 || groups > 6) {
+          return false;
+        }
+        out[groupsOffset + groups++] = v4 >>> 16;
+        out[groupsOffset + groups++] = v4 & 0xffff;
+        group = -1;
+        break;
+      } else {
+        return false;
+      }
+    }
+    if (group >= 0) {
+      if (groups == 8) {
+        return false;
+      }
+      out[groupsOffset + groups++] = group;
+    }
+    if (doubleColonGroup < 0 ? groups != 8 : groups > 7) {
+      return false;
+    }
+    long hi = 0;
+    long lo = 0;
+    final int zeros = 8 - groups;
+    for (int i = 0, g = 0; i < 8; i++) {
+      final long value;
+      if (doubleColonGroup >= 0 && i >= doubleColonGroup && i < doubleColonGroup + zeros) {
+        value = 0;
+      } else {
+        value = out[groupsOffset + g++];
+      }
+      if (i < 4) {
+        hi = hi << 16 | value;
+      } else {
+        lo = lo << 16 | value;
+      }
+    }
+    out[0] = hi;
+    out[1] = lo;
+    return true;
+  }
+
+  /**
+   * @return -1 if {@code c} is not an ASCII hexadecimal digit.
+   */
+  private static final int hexDigit(final char c) {
+    final int result;
+    if (c >= '0' && c <= '9') {
+      result = c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      result = c - 'a' + 10;
+    } else if (c >= 'A' && c <= 'F') {
+      result = c - 'A' + 10;
+    } else {
+      result = -1;
+    }
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(cidrs=" + description
+        + ')';
+  }
+}
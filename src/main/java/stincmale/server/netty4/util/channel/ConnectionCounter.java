@@ -0,0 +1,58 @@
+package stincmale.server.netty4.util.channel;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Counts {@linkplain io.netty.channel.Channel#isActive() active} connections and all connections ever opened
+ * by {@link io.netty.channel.Channel}s this handler is added to, e.g. via {@link io.netty.bootstrap.ServerBootstrap#childHandler}.
+ */
+@ThreadSafe
+@Sharable
+public final class ConnectionCounter extends ChannelInboundHandlerAdapter {
+  private final LongAdder activeCount;
+  private final LongAdder openedCount;
+
+  public ConnectionCounter() {
+    activeCount = new LongAdder();
+    openedCount = new LongAdder();
+  }
+
+  @Override
+  public final void channelActive(final ChannelHandlerContext ctx) throws Exception {
+    activeCount.increment();
+    openedCount.increment();
+    super.channelActive(ctx);
+  }
+
+  @Override
+  public final void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+    activeCount.decrement();
+    super.channelInactive(ctx);
+  }
+
+  /**
+   * @return The number of active connections.
+   */
+  public final long getActiveCount() {
+    return activeCount.sum();
+  }
+
+  /**
+   * @return The number of connections that were opened.
+   */
+  public final long getOpenedCount() {
+    return openedCount.sum();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(activeCount=" + activeCount
+        + ", openedCount=" + openedCount
+        + ')';
+  }
+}
@@ -0,0 +1,99 @@
+package stincmale.server.netty4.util.channel;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records <a href="https://docs.oracle.com/en/java/javase/14/jfapi/">Java Flight Recorder</a> events when connections
+ * of {@link io.netty.channel.Channel}s this handler is added to (e.g. via {@link io.netty.bootstrap.ServerBootstrap#childHandler})
+ * are accepted and closed. The duration of the close event is the lifetime of the connection.
+ * Events are only instantiated if they are {@linkplain Event#isEnabled() enabled},
+ * so the overhead of this handler is negligible when they are disabled.
+ */
+@ThreadSafe
+@Sharable
+public final class ConnectionEventsHandler extends ChannelInboundHandlerAdapter {
+  private static final AttributeKey<CloseEvent> CLOSE_EVENT_ATTR_KEY
+      = AttributeKey.valueOf(ConnectionEventsHandler.class.getName() + ".closeEvent");
+  private static final AcceptEvent ACCEPT_PROBE = new AcceptEvent();
+  private static final CloseEvent CLOSE_PROBE = new CloseEvent();
+
+  public ConnectionEventsHandler() {
+  }
+
+  @Override
+  public final void channelActive(final ChannelHandlerContext ctx) throws Exception {
+    if (ACCEPT_PROBE.isEnabled()) {
+      final AcceptEvent acceptEvent = new AcceptEvent();
+      if (acceptEvent.shouldCommit()) {
+        acceptEvent.remoteAddress = remoteAddress(ctx);
+        acceptEvent.commit();
+      }
+    }
+    if (CLOSE_PROBE.isEnabled()) {
+      final CloseEvent closeEvent = new CloseEvent();
+      closeEvent.begin();
+      ctx.channel()
+          .attr(CLOSE_EVENT_ATTR_KEY)
+          .set(closeEvent);
+    }
+    super.channelActive(ctx);
+  }
+
+  @Override
+  public final void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+    @Nullable final CloseEvent closeEvent = ctx.channel()
+        .attr(CLOSE_EVENT_ATTR_KEY)
+        .getAndSet(null);
+    if (closeEvent != null) {
+      closeEvent.end();
+      if (closeEvent.shouldCommit()) {
+        closeEvent.remoteAddress = remoteAddress(ctx);
+        closeEvent.commit();
+      }
+    }
+    super.channelInactive(ctx);
+  }
+
+  @Nullable
+  private static final String remoteAddress(final ChannelHandlerContext ctx) {
+    return ChannelUtil.getRemoteAddress(ctx.channel())
+        .orElse(null);
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName() + "()";
+  }
+
+  @Name("stincmale.server.ConnectionAccept")
+  @Label("Connection Accept")
+  @Category({"Server", "Connection"})
+  @StackTrace(false)
+  static final class AcceptEvent extends Event {
+    @Label("Remote Address")
+    @Nullable
+    String remoteAddress;
+  }
+
+  @Name("stincmale.server.ConnectionClose")
+  @Label("Connection Close")
+  @Description("A connection was closed, the duration of the event is the lifetime of the connection")
+  @Category({"Server", "Connection"})
+  @StackTrace(false)
+  static final class CloseEvent extends Event {
+    @Label("Remote Address")
+    @Nullable
+    String remoteAddress;
+  }
+}
@@ -0,0 +1,89 @@
+package stincmale.server.reqres;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Limits the total number of requests processed concurrently with regard to their {@link Priority}:
+ * a request is admitted only if the number of requests being processed is less than the limit for its {@link Priority}, where
+ * the limit for {@link Priority#LOW} is 50% of the {@code maxConcurrency},
+ * the limit for {@link Priority#NORMAL} is 75% of the {@code maxConcurrency},
+ * the limit for {@link Priority#HIGH} is the {@code maxConcurrency},
+ * and {@link Priority#CRITICAL} requests are always admitted.
+ * Thus when the load grows, {@link Priority#LOW} requests are shed first, and there is always capacity reserved for
+ * requests of higher priorities.
+ *
+ * @see RequestDispatcherByProcessorName#RequestDispatcherByProcessorName(java.util.Map, java.util.Map, AdmissionLimiter)
+ */
+@ThreadSafe
+public final class AdmissionLimiter {
+  private final int maxConcurrency;
+  private final int[] limits;
+  private final AtomicInteger concurrency;
+  private final LongAdder rejectedCount;
+
+  /**
+   * @param maxConcurrency Must be positive.
+   */
+  public AdmissionLimiter(final int maxConcurrency) {
+    checkArgument(maxConcurrency > 0, "The argument %s must be positive", "maxConcurrency");
+    this.maxConcurrency = maxConcurrency;
+    limits = new int[Priority.values().length];
+    limits[Priority.LOW.ordinal()] = Math.max(1, maxConcurrency / 2);
+    limits[Priority.NORMAL.ordinal()] = Math.max(1, maxConcurrency * 3 / 4);
+    limits[Priority.HIGH.ordinal()] = maxConcurrency;
+    limits[Priority.CRITICAL.ordinal()] = Integer.MAX_VALUE;
+    concurrency = new AtomicInteger();
+    rejectedCount = new LongAdder();
+  }
+
+  /**
+   * Admits a request if possible. Each successful invocation of this method must be followed by exactly one invocation of
+   * {@link #release()} once the request is processed.
+   *
+   * @return {@code true} if the request is admitted.
+   */
+  public final boolean tryAcquire(final Priority priority) {
+    checkNotNull(priority, "The argument %s must not be null", "priority");
+    final int limit = limits[priority.ordinal()];
+    boolean result = false;
+    for (int c = concurrency.get(); c < limit; c = concurrency.get()) {
+      if (concurrency.compareAndSet(c, c + 1)) {
+        result = true;
+        break;
+      }
+    }
+    if (!result) {
+      rejectedCount.increment();
+    }
+    return result;
+  }
+
+  public final void release() {
+    concurrency.decrementAndGet();
+  }
+
+  /**
+   * @return The number of admitted requests that are being processed.
+   */
+  public final int getConcurrency() {
+    return concurrency.get();
+  }
+
+  /**
+   * @return The number of requests that were not admitted.
+   */
+  public final long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(maxConcurrency=" + maxConcurrency
+        + ')';
+  }
+}
@@ -0,0 +1,258 @@
+package stincmale.server.reqres;
+
+import com.timgroup.statsd.StatsDClient;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import stincmale.server.util.context.Context;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * {@link RequestProcessor} that collects requests into batches and processes each batch with a single call of a batch function,
+ * e.g. a multi-get from a backend:
+ * <pre>{@code
+ * new BatchingRequestProcessor<String, User>(
+ *     "userLookup",
+ *     userIds -> userRepository.findAll(userIds),//must return users in the order of userIds
+ *     5, 100,
+ *     eventLoopGroup,
+ *     statsDClient, statsTags);
+ * }</pre>
+ * A batch is processed either when it reaches the {@code maxBatchSize}, or when the {@code windowMillis} elapses
+ * since the first request of the batch was received, whichever happens first.
+ * <p>
+ * The {@link CompletionStage} of each request is completed with the response at the same index in the list of responses
+ * returned by the batch function, and is completed while the {@link Context} of the request is {@linkplain Context#attach()
+ * attached}, so that dependent actions executed synchronously see the {@link org.slf4j.MDC} of their request.
+ * <p>
+ * The following statistics are collected via {@link StatsDClient}:
+ * {@code <name>.batchSize} histogram and {@code <name>.batchWaitTimeMillis} histogram,
+ * where the wait time is measured for the first request of a batch, i.e. it is the time the batch was being collected.
+ */
+@ThreadSafe
+public final class BatchingRequestProcessor<RQ, RS> implements RequestProcessor<RQ, RS> {
+  private static final Logger logger = LoggerFactory.getLogger(BatchingRequestProcessor.class);
+
+  private final String name;
+  private final Function<? super List<RQ>, ? extends CompletionStage<? extends List<? extends RS>>> batchProcessor;
+  private final int maxBatchSize;
+  private final long windowMillis;
+  private final ScheduledExecutorService scheduler;
+  private final Object mutex;
+  /**
+   * Is guarded by {@link #mutex}.
+   */
+  @Nullable
+  private Batch<RQ, RS> batch;
+  private final LongAdder batchesCount;
+  private final LongAdder batchedRequestsCount;
+  @Nullable
+  private final StatsDClient statsDClient;
+  private final String[] statsTags;
+  private final String batchSizeAspect;
+  private final String batchWaitTimeAspect;
+
+  /**
+   * @param name A name that is used in the names of collected statistics.
+   * @param batchProcessor A batch function that accepts requests of a batch and returns the responses in the same order.
+   * The batch function is called either by a thread that submits the last request of a batch, or by the {@code scheduler},
+   * and must not block.
+   * @param maxBatchSize The maximal number of requests in a batch. Must be positive.
+   * @param windowMillis The maximal time in milliseconds between receiving the first request of a batch and processing the batch.
+   * Must be positive.
+   * @param scheduler A {@link ScheduledExecutorService} that is used to process batches when {@code windowMillis} elapses,
+   * e.g. an {@link io.netty.channel.EventLoopGroup}.
+   */
+  public BatchingRequestProcessor(
+      final String name,
+      final Function<? super List<RQ>, ? extends CompletionStage<? extends List<? extends RS>>> batchProcessor,
+      final int maxBatchSize,
+      final long windowMillis,
+      final ScheduledExecutorService scheduler,
+      @Nullable final StatsDClient statsDClient,
+      @Nullable final Collection<String> statsTags) {
+    checkNotNull(name, "The argument %s must not be null", "name");
+    checkNotNull(batchProcessor, "The argument %s must not be null", "batchProcessor");
+    checkArgument(maxBatchSize > 0, "The argument %s must be positive", "maxBatchSize");
+    checkArgument(windowMillis > 0, "The argument %s must be positive", "windowMillis");
+    checkNotNull(scheduler, "The argument %s must not be null", "scheduler");
+    this.name = name;
+    this.batchProcessor = batchProcessor;
+    this.maxBatchSize = maxBatchSize;
+    this.windowMillis = windowMillis;
+    this.scheduler = scheduler;
+    mutex = new Object();
+    batchesCount = new LongAdder();
+    batchedRequestsCount = new LongAdder();
+    this.statsDClient = statsDClient;
+    this.statsTags = statsTags == null || statsTags.isEmpty() || statsDClient == null
+        ? new String[0]
+        : statsTags.toArray(new String[0]);
+    batchSizeAspect = name + ".batchSize";
+    batchWaitTimeAspect = name + ".batchWaitTimeMillis";
+  }
+
+  @Override
+  public final CompletionStage<RS> process(final RQ request) {
+    checkNotNull(request, "The argument %s must not be null", "request");
+    final CompletableFuture<RS> result = new CompletableFuture<>();
+    final Context context = Context.current();
+    @Nullable
+    Batch<RQ, RS> fullBatch = null;
+    synchronized (mutex) {
+      @Nullable
+      Batch<RQ, RS> b = batch;
+      if (b == null) {
+        b = new Batch<>(maxBatchSize);
+        batch = b;
+        if (maxBatchSize > 1) {
+          final Batch<RQ, RS> scheduledBatch = b;
+          b.scheduledProcessing = scheduler.schedule(() -> processScheduled(scheduledBatch), windowMillis, MILLISECONDS);
+        }
+      }
+      b.add(request, result, context);
+      if (b.requests.size() == maxBatchSize) {
+        batch = null;
+        fullBatch = b;
+      }
+    }
+    if (fullBatch != null) {
+      @Nullable final ScheduledFuture<?> scheduledProcessing = fullBatch.scheduledProcessing;
+      if (scheduledProcessing != null) {
+        scheduledProcessing.cancel(false);
+      }
+      processBatch(fullBatch);
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of processed batches.
+   */
+  public final long getBatchesCount() {
+    return batchesCount.sum();
+  }
+
+  /**
+   * @return The number of requests in all processed batches.
+   */
+  public final long getBatchedRequestsCount() {
+    return batchedRequestsCount.sum();
+  }
+
+  private final void processScheduled(final Batch<RQ, RS> scheduledBatch) {
+    boolean process = false;
+    synchronized (mutex) {
+      if (batch == scheduledBatch) {
+        batch = null;
+        process = true;
+      }
+    }
+    if (process) {
+      processBatch(scheduledBatch);
+    }
+  }
+
+  private final void processBatch(final Batch<RQ, RS> b) {
+    final int batchSize = b.requests.size();
+    final long waitTimeMillis = NANOSECONDS.toMillis(System.nanoTime() - b.beginInstantNanos);
+    batchesCount.increment();
+    batchedRequestsCount.add(batchSize);
+    logger.debug("Processing a batch of {} requests collected during {} ms", batchSize, waitTimeMillis);
+    if (statsDClient != null) {
+      statsDClient.recordHistogramValue(batchSizeAspect, batchSize, statsTags);
+      statsDClient.recordHistogramValue(batchWaitTimeAspect, waitTimeMillis, statsTags);
+    }
+    CompletionStage<? extends List<? extends RS>> futureResponses;
+    try {
+      futureResponses = batchProcessor.apply(b.requests);
+    } catch (final RuntimeException e) {
+      futureResponses = CompletableFuture.failedFuture(e);
+    }
+    futureResponses.whenComplete((responses, failure) -> complete(b, responses, failure));
+  }
+
+  private final void complete(final Batch<RQ, RS> b, @Nullable final List<? extends RS> responses, @Nullable final Throwable failure) {
+    final int batchSize = b.requests.size();
+    @Nullable
+    Throwable batchFailure = failure;
+    if (batchFailure == null && (responses == null || responses.size() != batchSize)) {
+      batchFailure = new IllegalStateException(String.format("The batch function returned %s responses for %s requests",
+          responses == null ? null : responses.size(), batchSize));
+      if (responses != null) {
+        responses.forEach(ReferenceCountUtil::release);
+      }
+    }
+    for (int i = 0; i < batchSize; i++) {
+      final CompletableFuture<RS> futureResponse = b.futureResponses.get(i);
+      if (batchFailure == null) {
+        final RS response = responses.get(i);
+        b.contexts.get(i)
+            .run(() -> {
+              if (!futureResponse.complete(response)) {//e.g. the future was cancelled by the caller, so nobody will release the response
+                ReferenceCountUtil.release(response);
+              }
+            });
+      } else {
+        final Throwable cause = batchFailure;
+        b.contexts.get(i)
+            .run(() -> futureResponse.completeExceptionally(cause));
+      }
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(name=" + name
+        + ", maxBatchSize=" + maxBatchSize
+        + ", windowMillis=" + windowMillis
+        + ", statsDClient=" + statsDClient
+        + ", statsTags=" + Arrays.toString(statsTags)
+        + ')';
+  }
+
+  /**
+   * Is modified only while holding {@link BatchingRequestProcessor#mutex} until it is detached from {@link BatchingRequestProcessor},
+   * and is only read afterwards.
+   */
+  @NotThreadSafe
+  private static final class Batch<RQ, RS> {
+    private final long beginInstantNanos;
+    private final List<RQ> requests;
+    private final List<CompletableFuture<RS>> futureResponses;
+    private final List<Context> contexts;
+    @Nullable
+    private ScheduledFuture<?> scheduledProcessing;
+
+    private Batch(final int maxBatchSize) {
+      beginInstantNanos = System.nanoTime();
+      final int initialCapacity = Math.min(maxBatchSize, 16);
+      requests = new ArrayList<>(initialCapacity);
+      futureResponses = new ArrayList<>(initialCapacity);
+      contexts = new ArrayList<>(initialCapacity);
+    }
+
+    private final void add(final RQ request, final CompletableFuture<RS> futureResponse, final Context context) {
+      requests.add(request);
+      futureResponses.add(futureResponse);
+      contexts.add(context);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package stincmale.server.reqres;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.Executor;
+import stincmale.server.reqres.spring.SpringRequestDispatcher;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Declares a bulkhead for a {@link RequestProcessor} via {@link Processor#bulkhead()}.
+ * A bulkhead limits the number of requests a {@link RequestProcessor} processes concurrently, so that a slow
+ * {@link RequestProcessor} is not able to consume all resources of a {@link stincmale.server.Server}.
+ * {@link SpringRequestDispatcher} enforces bulkheads via {@link BulkheadRequestProcessor},
+ * which honors {@linkplain Processor#priority() priorities} of requests.
+ *
+ * @see BulkheadRequestProcessor
+ */
+@Documented
+@Target({})
+@Retention(RUNTIME)
+public @interface Bulkhead {
+  /**
+   * @return The maximal number of requests that are processed concurrently.
+   * A non-positive value means that the bulkhead is disabled.
+   */
+  int maxConcurrency() default 0;
+
+  /**
+   * @return The maximal number of requests that wait for processing when {@link #maxConcurrency()} is reached.
+   * Requests that exceed the limit are rejected with {@link RejectedRequestException.Reason#OVERLOADED}.
+   */
+  int maxQueueLength() default 0;
+
+  /**
+   * @return The name of an {@link Executor} bean that is used to call the {@link RequestProcessor}.
+   * An empty name means that the {@link RequestProcessor} is called by the thread that submits a request,
+   * or by the thread that completes processing of a previous request if the request was queued.
+   */
+  String executor() default "";
+}
@@ -0,0 +1,386 @@
+package stincmale.server.reqres;
+
+import com.timgroup.statsd.StatsDClient;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import stincmale.server.util.context.Context;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Wraps {@link RequestProcessor} and limits the number of requests it processes concurrently (a.k.a. bulkhead).
+ * Requests that exceed the concurrency limit wait in a queue, requests that exceed the queue length are rejected with
+ * {@link RejectedRequestException.Reason#OVERLOADED}.
+ * <p>
+ * The bulkhead honors the {@linkplain Priority#of(Object, Priority) priority} of requests:
+ * queued requests are processed in the descending order of priorities, and in the FIFO order within the same priority;
+ * if the queue is full, then a request evicts (rejects) the most recently queued request of the lowest priority,
+ * provided that this priority is lower than the priority of the request;
+ * {@link Priority#CRITICAL} requests are neither queued nor rejected.
+ * <p>
+ * The following saturation statistics are collected via {@link StatsDClient}:
+ * {@code <ProcessorSimpleName>.bulkheadConcurrency} gauge and {@code <ProcessorSimpleName>.bulkheadQueueLength} gauge,
+ * which are recorded whenever a request is received;
+ * {@code <ProcessorSimpleName>.bulkheadQueueWaitTimeMillis} histogram, which is recorded for each queued request;
+ * {@code <ProcessorSimpleName>.bulkheadRejectedRequestsCount} counter,
+ * where the name is chosen the same way as by {@link RequestProcessorWithStats}.
+ * <p>
+ * If there is no {@link Executor}, then a queued request is processed by the thread that completed processing of the previous request.
+ * Queued requests are processed iteratively by a single thread at a time, so requests that complete synchronously
+ * do not cause unbounded recursion.
+ *
+ * @see Bulkhead
+ */
+@ThreadSafe
+public final class BulkheadRequestProcessor<RQ, RS> implements RequestProcessor<RQ, RS> {
+  private static final Logger logger = LoggerFactory.getLogger(BulkheadRequestProcessor.class);
+
+  private final RequestProcessor<? super RQ, ? extends RS> processor;
+  private final int maxConcurrency;
+  private final int maxQueueLength;
+  @Nullable
+  private final Executor executor;
+  private final Priority priority;
+  private final Object mutex;
+  /**
+   * Is guarded by {@link #mutex}.
+   */
+  private int concurrency;
+  /**
+   * Queues of requests indexed by {@link Priority#ordinal()}. Is guarded by {@link #mutex}.
+   */
+  private final List<Deque<QueuedRequest<RQ, RS>>> queues;
+  /**
+   * Is guarded by {@link #mutex}.
+   */
+  private int queueLength;
+  /**
+   * Queued requests that were given the slots of processed requests and must be processed by the calling thread
+   * because there is no {@link #executor}, see {@link #drain()}.
+   */
+  private final ConcurrentLinkedQueue<QueuedRequest<RQ, RS>> admitted;
+  /**
+   * The number of requests to {@linkplain #drain() drain} {@link #admitted}, the thread that increments it from 0 is the draining thread.
+   */
+  private final AtomicInteger drainRequests;
+  private final LongAdder rejectedCount;
+  private final String statsName;
+  @Nullable
+  private final StatsDClient statsDClient;
+  private final String[] statsTags;
+  private final String concurrencyAspect;
+  private final String queueLengthAspect;
+  private final String queueWaitTimeAspect;
+  private final String rejectedCountAspect;
+
+  /**
+   * @param maxConcurrency See {@link Bulkhead#maxConcurrency()}. Must be positive.
+   * @param maxQueueLength See {@link Bulkhead#maxQueueLength()}. Must not be negative.
+   * @param executor An {@link Executor} that is used to call the wrapped {@link RequestProcessor}. See {@link Bulkhead#executor()}.
+   * @param priority The priority of requests that do not specify their own {@linkplain Prioritized priority}.
+   */
+  public BulkheadRequestProcessor(
+      final RequestProcessor<? super RQ, ? extends RS> processor,
+      final int maxConcurrency,
+      final int maxQueueLength,
+      @Nullable final Executor executor,
+      final Priority priority,
+      @Nullable final StatsDClient statsDClient,
+      @Nullable final Collection<String> statsTags) {
+    checkNotNull(processor, "The argument %s must not be null", "processor");
+    checkArgument(maxConcurrency > 0, "The argument %s must be positive", "maxConcurrency");
+    checkArgument(maxQueueLength >= 0, "The argument %s must not be negative", "maxQueueLength");
+    checkNotNull(priority, "The argument %s must not be null", "priority");
+    this.processor = processor;
+    this.maxConcurrency = maxConcurrency;
+    this.maxQueueLength = maxQueueLength;
+    this.executor = executor == null ? null : Context.propagating(executor);
+    this.priority = priority;
+    mutex = new Object();
+    final int prioritiesCount = Priority.values().length;
+    queues = new ArrayList<>(prioritiesCount);
+    for (int i = 0; i < prioritiesCount; i++) {
+      queues.add(new ArrayDeque<>());
+    }
+    admitted = new ConcurrentLinkedQueue<>();
+    drainRequests = new AtomicInteger();
+    rejectedCount = new LongAdder();
+    this.statsDClient = statsDClient;
+    this.statsTags = statsTags == null || statsTags.isEmpty() || statsDClient == null
+        ? new String[0]
+        : statsTags.toArray(new String[0]);
+    statsName = RequestProcessorWithStats.statsName(processor);
+    concurrencyAspect = statsName + ".bulkheadConcurrency";
+    queueLengthAspect = statsName + ".bulkheadQueueLength";
+    queueWaitTimeAspect = statsName + ".bulkheadQueueWaitTimeMillis";
+    rejectedCountAspect = statsName + ".bulkheadRejectedRequestsCount";
+  }
+
+  /**
+   * Uses {@link Priority#NORMAL} as the priority of requests that do not specify their own priority.
+   *
+   * @see #BulkheadRequestProcessor(RequestProcessor, int, int, Executor, Priority, StatsDClient, Collection)
+   */
+  public BulkheadRequestProcessor(
+      final RequestProcessor<? super RQ, ? extends RS> processor,
+      final int maxConcurrency,
+      final int maxQueueLength,
+      @Nullable final Executor executor,
+      @Nullable final StatsDClient statsDClient,
+      @Nullable final Collection<String> statsTags) {
+    this(processor, maxConcurrency, maxQueueLength, executor, Priority.NORMAL, statsDClient, statsTags);
+  }
+
+  /**
+   * @throws RejectedRequestException With {@link RejectedRequestException.Reason#OVERLOADED} if both the concurrency limit
+   * and the queue length limit are reached.
+   */
+  @Override
+  public final CompletionStage<RS> process(final RQ request) {
+    checkNotNull(request, "The argument %s must not be null", "request");
+    final CompletableFuture<RS> result = new CompletableFuture<>();
+    final Priority requestPriority = Priority.of(request, priority);
+    final boolean admitted;
+    final boolean rejected;
+    @Nullable
+    QueuedRequest<RQ, RS> evicted = null;
+    final int currentConcurrency;
+    final int currentQueueLength;
+    synchronized (mutex) {
+      if (concurrency < maxConcurrency || requestPriority == Priority.CRITICAL) {
+        concurrency++;
+        admitted = true;
+        rejected = false;
+      } else {
+        admitted = false;
+        if (queueLength == maxQueueLength) {
+          evicted = evict(requestPriority);
+        }
+        if (queueLength < maxQueueLength) {
+          queues.get(requestPriority.ordinal())
+              .addLast(new QueuedRequest<>(request, result, Context.current()));
+          queueLength++;
+          rejected = false;
+        } else {
+          rejected = true;
+        }
+      }
+      currentConcurrency = concurrency;
+      currentQueueLength = queueLength;
+    }
+    if (statsDClient != null) {
+      statsDClient.recordGaugeValue(concurrencyAspect, currentConcurrency, statsTags);
+      statsDClient.recordGaugeValue(queueLengthAspect, currentQueueLength, statsTags);
+    }
+    if (evicted != null) {
+      final QueuedRequest<RQ, RS> evictedRequest = evicted;
+      evictedRequest.context.run(() -> {
+        reject(evictedRequest.request);
+        evictedRequest.futureResponse.completeExceptionally(RejectedRequestException.of(RejectedRequestException.Reason.OVERLOADED));
+      });
+    }
+    if (rejected) {
+      reject(request);
+      throw RejectedRequestException.of(RejectedRequestException.Reason.OVERLOADED);
+    }
+    if (admitted) {
+      execute(request, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of requests that are being processed.
+   */
+  public final int getConcurrency() {
+    synchronized (mutex) {
+      return concurrency;
+    }
+  }
+
+  /**
+   * @return The number of requests that wait for processing.
+   */
+  public final int getQueueLength() {
+    synchronized (mutex) {
+      return queueLength;
+    }
+  }
+
+  /**
+   * @return The number of rejected requests.
+   */
+  public final long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  final String statsName() {
+    return statsName;
+  }
+
+  /**
+   * Must be called while holding {@link #mutex}.
+   *
+   * @return The most recently queued request of the lowest priority that is lower than the {@code requestPriority},
+   * or {@code null} if there is no such request.
+   */
+  @Nullable
+  private final QueuedRequest<RQ, RS> evict(final Priority requestPriority) {
+    @Nullable
+    QueuedRequest<RQ, RS> result = null;
+    for (int i = 0; i < requestPriority.ordinal(); i++) {
+      result = queues.get(i)
+          .pollLast();
+      if (result != null) {
+        queueLength--;
+        break;
+      }
+    }
+    return result;
+  }
+
+  private final void reject(final RQ request) {
+    rejectedCount.increment();
+    logger.debug("{} was rejected by {}", request, this);
+    if (statsDClient != null) {
+      statsDClient.incrementCounter(rejectedCountAspect, statsTags);
+    }
+  }
+
+  /**
+   * Processes the {@code request} either by the current thread or by the {@link #executor},
+   * which propagates the {@linkplain Context#current() current} {@link Context}.
+   */
+  private final void execute(final RQ request, final CompletableFuture<RS> futureResponse) {
+    if (executor == null) {
+      processAndRelease(request, futureResponse);
+    } else {
+      try {
+        executor.execute(() -> processAndRelease(request, futureResponse));
+      } catch (final RejectedExecutionException e) {
+        futureResponse.completeExceptionally(RejectedRequestException.of(RejectedRequestException.Reason.OVERLOADED));
+        release();
+      }
+    }
+  }
+
+  private final void execute(final QueuedRequest<RQ, RS> queuedRequest) {
+    queuedRequest.context.run(() -> execute(queuedRequest.request, queuedRequest.futureResponse));
+  }
+
+  private final void processAndRelease(final RQ request, final CompletableFuture<RS> futureResponse) {
+    CompletionStage<? extends RS> futureProcessorResponse;
+    try {
+      futureProcessorResponse = processor.process(request);
+    } catch (final RuntimeException e) {
+      futureProcessorResponse = CompletableFuture.failedFuture(e);
+    }
+    futureProcessorResponse.whenComplete((response, failure) -> {
+      try {
+        if (failure == null) {
+          futureResponse.complete(response);
+        } else {
+          futureResponse.completeExceptionally(failure);
+        }
+      } finally {
+        release();
+      }
+    });
+  }
+
+  /**
+   * Either passes the slot of a processed request to a queued request, or frees the slot.
+   */
+  private final void release() {
+    @Nullable
+    QueuedRequest<RQ, RS> next = null;
+    synchronized (mutex) {
+      if (concurrency <= maxConcurrency) {//otherwise the slot was taken by a critical request above the limit
+        for (int i = queues.size() - 1; i >= 0 && next == null; i--) {
+          next = queues.get(i)
+              .pollFirst();
+        }
+      }
+      if (next == null) {
+        concurrency--;
+      } else {
+        queueLength--;
+      }
+    }
+    if (next != null) {
+      if (statsDClient != null) {
+        statsDClient.recordHistogramValue(
+            queueWaitTimeAspect, NANOSECONDS.toMillis(System.nanoTime() - next.enqueueInstantNanos), statsTags);
+      }
+      if (executor == null) {
+        admitted.add(next);
+        drain();
+      } else {
+        execute(next);
+      }
+    }
+  }
+
+  /**
+   * Processes {@link #admitted} requests.
+   * If another thread is draining {@link #admitted}, or this method is called reentrantly (e.g. because a request
+   * completed synchronously and {@linkplain #release() released} its slot), then this method makes the draining thread
+   * check {@link #admitted} again instead of processing requests by itself, so the stack depth does not depend on the number of queued requests.
+   */
+  private final void drain() {
+    if (drainRequests.getAndIncrement() == 0) {
+      int missed = 1;
+      do {
+        for (@Nullable QueuedRequest<RQ, RS> next = admitted.poll(); next != null; next = admitted.poll()) {
+          execute(next);
+        }
+        missed = drainRequests.addAndGet(-missed);
+      } while (missed != 0);
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(processor=" + processor
+        + ", maxConcurrency=" + maxConcurrency
+        + ", maxQueueLength=" + maxQueueLength
+        + ", executor=" + executor
+        + ", priority=" + priority
+        + ", statsDClient=" + statsDClient
+        + ", statsTags=" + Arrays.toString(statsTags)
+        + ')';
+  }
+
+  @Immutable
+  private static final class QueuedRequest<RQ, RS> {
+    private final RQ request;
+    private final CompletableFuture<RS> futureResponse;
+    private final Context context;
+    private final long enqueueInstantNanos;
+
+    private QueuedRequest(final RQ request, final CompletableFuture<RS> futureResponse, final Context context) {
+      this.request = request;
+      this.futureResponse = futureResponse;
+      this.context = context;
+      enqueueInstantNanos = System.nanoTime();
+    }
+  }
+}
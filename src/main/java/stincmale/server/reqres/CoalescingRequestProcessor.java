@@ -0,0 +1,230 @@
+package stincmale.server.reqres;
+
+import com.timgroup.statsd.StatsDClient;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Wraps {@link RequestProcessor} and coalesces concurrent requests with equal keys (a.k.a. single flight):
+ * while a request is being processed by the wrapped {@link RequestProcessor}, all other requests with the equal key
+ * are not processed but rather wait for the result of the request that is in flight.
+ * For example, a key of an HTTP request may be its method combined with its URI:
+ * <pre>{@code
+ * new CoalescingRequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>(
+ *     processor,
+ *     request -> request.request().method() + " " + request.request().uri(),
+ *     statsDClient, statsTags);
+ * }</pre>
+ * <p>
+ * Each coalesced request gets its own {@linkplain #duplicateResponse(Object) duplicate} of the response,
+ * so a {@link ReferenceCounted} response (e.g. {@link io.netty.handler.codec.http.FullHttpResponse}) may be
+ * {@linkplain ReferenceCounted#release() released} independently by each recipient.
+ * The original response is released once all duplicates are created.
+ */
+@ThreadSafe
+public final class CoalescingRequestProcessor<RQ, RS> implements RequestProcessor<RQ, RS> {
+  private static final Logger logger = LoggerFactory.getLogger(CoalescingRequestProcessor.class);
+
+  private final RequestProcessor<? super RQ, ? extends RS> processor;
+  private final Function<? super RQ, ?> keyExtractor;
+  private final UnaryOperator<RS> responseDuplicator;
+  private final ConcurrentMap<Object, Flight<RS>> flights;
+  private final LongAdder flightsCount;
+  private final LongAdder coalescedCount;
+  @Nullable
+  private final StatsDClient statsDClient;
+  private final String[] statsTags;
+  private final String coalescedCountAspect;
+
+  /**
+   * @param keyExtractor A {@link Function} that returns a key of a request.
+   * Requests with {@linkplain Object#equals(Object) equal} keys are coalesced.
+   * If the returned key is {@code null}, then the request is never coalesced.
+   * @param responseDuplicator A {@link UnaryOperator} that creates a duplicate of a response for a coalesced request.
+   * If a response is {@link ReferenceCounted}, then the duplicate must be independently {@linkplain ReferenceCounted#release() releasable}.
+   * If {@code null}, then {@link #duplicateResponse(Object)} is used.
+   */
+  public CoalescingRequestProcessor(
+      final RequestProcessor<? super RQ, ? extends RS> processor,
+      final Function<? super RQ, ?> keyExtractor,
+      @Nullable final UnaryOperator<RS> responseDuplicator,
+      @Nullable final StatsDClient statsDClient,
+      @Nullable final Collection<String> statsTags) {
+    checkNotNull(processor, "The argument %s must not be null", "processor");
+    checkNotNull(keyExtractor, "The argument %s must not be null", "keyExtractor");
+    this.processor = processor;
+    this.keyExtractor = keyExtractor;
+    this.responseDuplicator = responseDuplicator == null ? CoalescingRequestProcessor::duplicateResponse : responseDuplicator;
+    flights = new ConcurrentHashMap<>();
+    flightsCount = new LongAdder();
+    coalescedCount = new LongAdder();
+    this.statsDClient = statsDClient;
+    this.statsTags = statsTags == null || statsTags.isEmpty() || statsDClient == null
+        ? new String[0]
+        : statsTags.toArray(new String[0]);
+    coalescedCountAspect = processor.getClass()
+        .getSimpleName() + ".coalescedRequestsCount";
+  }
+
+  /**
+   * Uses {@link #duplicateResponse(Object)} to duplicate responses.
+   *
+   * @see #CoalescingRequestProcessor(RequestProcessor, Function, UnaryOperator, StatsDClient, Collection)
+   */
+  public CoalescingRequestProcessor(
+      final RequestProcessor<? super RQ, ? extends RS> processor,
+      final Function<? super RQ, ?> keyExtractor,
+      @Nullable final StatsDClient statsDClient,
+      @Nullable final Collection<String> statsTags) {
+    this(processor, keyExtractor, null, statsDClient, statsTags);
+  }
+
+  /**
+   * Returns {@link ByteBufHolder#retainedDuplicate()} if the {@code response} is {@link ByteBufHolder},
+   * {@link ReferenceCounted#retain()} if the {@code response} is {@link ReferenceCounted},
+   * and the {@code response} itself otherwise.
+   */
+  @SuppressWarnings("unchecked")
+  public static final <RS> RS duplicateResponse(final RS response) {
+    checkNotNull(response, "The argument %s must not be null", "response");
+    final RS result;
+    if (response instanceof ByteBufHolder) {
+      result = (RS)((ByteBufHolder)response).retainedDuplicate();
+    } else if (response instanceof ReferenceCounted) {
+      result = (RS)((ReferenceCounted)response).retain();
+    } else {
+      result = response;
+    }
+    return result;
+  }
+
+  @Override
+  public final CompletionStage<RS> process(final RQ request) {
+    checkNotNull(request, "The argument %s must not be null", "request");
+    @Nullable final Object key = keyExtractor.apply(request);
+    final CompletionStage<RS> result;
+    if (key == null) {
+      result = processWithoutCoalescing(request);
+    } else {
+      final CompletableFuture<RS> futureResponse = new CompletableFuture<>();
+      /* Waiters are added and the flight is removed while holding the lock ConcurrentHashMap uses for the key,
+       * hence once the flight is removed, nobody is able to join it.*/
+      final Flight<RS> flight = flights.compute(key, (k, existingFlight) -> {
+        final Flight<RS> f = existingFlight == null ? new Flight<>(futureResponse) : existingFlight;
+        f.waiters.add(futureResponse);
+        return f;
+      });
+      if (flight.leader == futureResponse) {
+        flightsCount.increment();
+        processWithoutCoalescing(request).whenComplete((response, failure) -> land(key, flight, response, failure));
+      } else {
+        coalescedCount.increment();
+        logger.debug("{} was coalesced with the request in flight with key {}", request, key);
+        if (statsDClient != null) {
+          statsDClient.incrementCounter(coalescedCountAspect, statsTags);
+        }
+      }
+      result = futureResponse;
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of requests that were actually processed by the wrapped {@link RequestProcessor},
+   * not counting requests with {@code null} keys.
+   */
+  public final long getFlightsCount() {
+    return flightsCount.sum();
+  }
+
+  /**
+   * @return The number of requests that were not processed by the wrapped {@link RequestProcessor}
+   * because they were coalesced with a request in flight.
+   */
+  public final long getCoalescedCount() {
+    return coalescedCount.sum();
+  }
+
+  @SuppressWarnings("unchecked")
+  private final CompletionStage<RS> processWithoutCoalescing(final RQ request) {
+    CompletionStage<RS> result;
+    try {
+      result = (CompletionStage<RS>)processor.process(request);
+    } catch (final RuntimeException e) {
+      result = CompletableFuture.failedFuture(e);
+    }
+    return result;
+  }
+
+  private final void land(final Object key, final Flight<RS> flight, @Nullable final RS response, @Nullable final Throwable failure) {
+    flights.remove(key, flight);
+    final List<CompletableFuture<RS>> waiters = flight.waiters;
+    if (failure != null) {
+      for (final CompletableFuture<RS> waiter : waiters) {
+        waiter.completeExceptionally(failure);
+      }
+    } else if (response == null || waiters.size() == 1) {
+      for (final CompletableFuture<RS> waiter : waiters) {
+        waiter.complete(response);
+      }
+    } else {
+      try {
+        for (final CompletableFuture<RS> waiter : waiters) {
+          @Nullable
+          RS duplicate = null;
+          try {
+            duplicate = responseDuplicator.apply(response);
+          } catch (final RuntimeException e) {
+            waiter.completeExceptionally(e);
+          }
+          if (duplicate != null && !waiter.complete(duplicate)) {
+            ReferenceCountUtil.release(duplicate);
+          }
+        }
+      } finally {
+        ReferenceCountUtil.release(response);
+      }
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(processor=" + processor
+        + ", statsDClient=" + statsDClient
+        + ", statsTags=" + Arrays.toString(statsTags)
+        + ')';
+  }
+
+  @NotThreadSafe
+  private static final class Flight<RS> {
+    private final CompletableFuture<RS> leader;
+    /**
+     * Is guarded by the lock {@link ConcurrentHashMap} uses for the key of the {@link Flight}.
+     */
+    private final List<CompletableFuture<RS>> waiters;
+
+    private Flight(final CompletableFuture<RS> leader) {
+      this.leader = leader;
+      waiters = new ArrayList<>(1);
+    }
+  }
+}
@@ -0,0 +1,474 @@
+package stincmale.server.reqres;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import stincmale.server.netty4.Metadata;
+import stincmale.server.netty4.MetadataKey;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.util.context.Context;
+import stincmale.server.util.stats.StatsAggregator;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Wraps {@link RequestDispatcher} and shares its capacity fairly between tenants (e.g. clients) by using deficit round robin
+ * scheduling: while the number of requests being processed is less than {@code maxConcurrency}, requests are dispatched immediately,
+ * otherwise they are queued per tenant, and whenever processing of a request completes, the next request is chosen so that
+ * under contention each tenant gets a share of the capacity proportional to its weight.
+ * <p>
+ * Without contention the only overhead is updating an atomic counter.
+ * <p>
+ * The dispatcher honors the {@linkplain Priority#of(Object, Priority) priority} of requests
+ * ({@link Priority#NORMAL} if a request does not specify its own priority):
+ * {@link Priority#CRITICAL} requests are neither queued nor rejected, and are dispatched even if {@code maxConcurrency} is reached;
+ * queued requests of a tenant are dispatched in the descending order of priorities, and in the FIFO order within the same priority;
+ * if the queue of a tenant is full, then a request evicts (rejects) the most recently queued request of the tenant
+ * with the lowest priority, provided that this priority is lower than the priority of the request.
+ * Queued requests are dispatched iteratively by a single thread at a time, so requests that complete synchronously
+ * do not cause unbounded recursion.
+ * <p>
+ * Per-tenant statistics are collected via {@link StatsAggregator} only under contention:
+ * {@code <DispatcherSimpleName>.fairQueueLength} gauge and {@code <DispatcherSimpleName>.fairServedRequestsCount} counter
+ * of queued requests are recorded with the tag {@code tenantBucket:<bucket>}, where tenants are hashed into
+ * {@value #STATS_TENANT_BUCKETS} buckets, so that the number of metrics does not grow with the number of distinct tenants,
+ * e.g. client addresses.
+ *
+ * @see #defaultTenantExtractor(String)
+ */
+@ThreadSafe
+public final class FairRequestDispatcher<RQ, RS> implements RequestDispatcher<RQ, RS> {
+  /**
+   * A key that may be used to specify the tenant of a request in its {@link Metadata}.
+   *
+   * @see #defaultTenantExtractor(String)
+   */
+  public static final MetadataKey<Object> TENANT_METADATA_KEY = MetadataKey.of(FairRequestDispatcher.class.getName() + ".tenant");
+  private static final Object UNKNOWN_TENANT = "<unknown tenant>";
+  static final int STATS_TENANT_BUCKETS = 16;
+  private static final Logger logger = LoggerFactory.getLogger(FairRequestDispatcher.class);
+
+  private final RequestDispatcher<RQ, RS> dispatcher;
+  private final Function<? super RQ, ?> tenantExtractor;
+  private final ToIntFunction<Object> weights;
+  private final int maxConcurrency;
+  private final int maxQueueLengthPerTenant;
+  private final AtomicInteger concurrency;
+  /**
+   * The number of requests to {@linkplain #drain() drain} the queue, the thread that increments it from 0 is the draining thread.
+   */
+  private final AtomicInteger drainRequests;
+  /**
+   * The number of queued requests. Is modified only while holding {@link #mutex}.
+   */
+  private volatile int queueLength;
+  private final Object mutex;
+  /**
+   * Tenants that have queued requests. Is guarded by {@link #mutex}.
+   */
+  private final Map<Object, Tenant<RQ, RS>> tenants;
+  /**
+   * Tenants from {@link #tenants} in the round robin order. Is guarded by {@link #mutex}.
+   */
+  private final Deque<Tenant<RQ, RS>> activeTenants;
+  @Nullable
+  private final StatsAggregator statsAggregator;
+  private final List<String> statsTags;
+  /**
+   * {@link TenantStats} indexed by {@link #statsTenantBucket(Object)}, or {@code null} if there is no {@link #statsAggregator}.
+   */
+  @Nullable
+  private final TenantStats[] tenantStats;
+
+  /**
+   * @param tenantExtractor A {@link Function} that returns the tenant of a request, e.g. {@link #defaultTenantExtractor(String)}.
+   * Requests with {@linkplain Object#equals(Object) equal} tenants belong to the same tenant,
+   * requests with the {@code null} tenant belong to a single unknown tenant.
+   * @param weights A {@link ToIntFunction} that returns a positive weight of a tenant. If {@code null}, then all weights are 1.
+   * @param maxConcurrency The number of requests that are processed concurrently, after which requests are queued. Must be positive.
+   * @param maxQueueLengthPerTenant Requests of a tenant that exceed this limit are rejected with
+   * {@link RejectedRequestException.Reason#OVERLOADED}. Must be positive.
+   * @param statsAggregator {@link StatsAggregator} that is used to record per-tenant statistics. If {@code null}, then no statistics are recorded.
+   * @param statsTags Tags that are added to all the statistics.
+   */
+  public FairRequestDispatcher(
+      final RequestDispatcher<RQ, RS> dispatcher,
+      final Function<? super RQ, ?> tenantExtractor,
+      @Nullable final ToIntFunction<Object> weights,
+      final int maxConcurrency,
+      final int maxQueueLengthPerTenant,
+      @Nullable final StatsAggregator statsAggregator,
+      @Nullable final Collection<String> statsTags) {
+    checkNotNull(dispatcher, "The argument %s must not be null", "dispatcher");
+    checkNotNull(tenantExtractor, "The argument %s must not be null", "tenantExtractor");
+    checkArgument(maxConcurrency > 0, "The argument %s must be positive", "maxConcurrency");
+    checkArgument(maxQueueLengthPerTenant > 0, "The argument %s must be positive", "maxQueueLengthPerTenant");
+    this.dispatcher = dispatcher;
+    this.tenantExtractor = tenantExtractor;
+    this.weights = weights == null ? tenant -> 1 : weights;
+    this.maxConcurrency = maxConcurrency;
+    this.maxQueueLengthPerTenant = maxQueueLengthPerTenant;
+    concurrency = new AtomicInteger();
+    drainRequests = new AtomicInteger();
+    mutex = new Object();
+    tenants = new HashMap<>();
+    activeTenants = new ArrayDeque<>();
+    this.statsAggregator = statsAggregator;
+    this.statsTags = statsTags == null ? List.of() : List.copyOf(statsTags);
+    tenantStats = statsAggregator == null ? null : newTenantStats(dispatcher, statsAggregator, this.statsTags);
+  }
+
+  /**
+   * Returns a tenant extractor that returns the tenant specified in the {@link Metadata} of a request by the key {@link #TENANT_METADATA_KEY}
+   * if the request is {@link RequestWithMetadata},
+   * or the value put to {@link MDC} by the {@code mdcKey},
+   * or {@code null} if neither is available.
+   *
+   * @param mdcKey The {@link MDC} key of the tenant, e.g.
+   * {@link stincmale.server.netty4.tcp.http.ClientAddressMdcHandler#CLIENT_ADDRESS_MDC_KEY} if tenants are client addresses.
+   * If {@code null}, then {@link MDC} is not used.
+   */
+  public static final Function<Object, Object> defaultTenantExtractor(@Nullable final String mdcKey) {
+    return request -> {
+      checkNotNull(request, "The argument %s must not be null", "request");
+      @Nullable
+      Object result = null;
+      if (request instanceof RequestWithMetadata) {
+        result = ((RequestWithMetadata<?>)request).metadata()
+            .getOrNull(TENANT_METADATA_KEY);
+      }
+      if (result == null && mdcKey != null) {
+        result = MDC.get(mdcKey);
+      }
+      return result;
+    };
+  }
+
+  /**
+   * @throws RejectedRequestException With {@link RejectedRequestException.Reason#OVERLOADED} if the request has to be queued
+   * but the queue of its tenant is full of requests with the same or a higher priority.
+   */
+  @Override
+  public final CompletionStage<RS> process(final RQ request) {
+    checkNotNull(request, "The argument %s must not be null", "request");
+    final CompletionStage<RS> result;
+    if (queueLength == 0 && tryAcquire()) {//the fast path
+      result = dispatchAndRelease(request);
+    } else {
+      final Priority priority = Priority.of(request, Priority.NORMAL);
+      if (priority == Priority.CRITICAL) {//takes a slot above the limit
+        concurrency.incrementAndGet();
+        result = dispatchAndRelease(request);
+      } else {
+        result = enqueue(request, priority);
+      }
+    }
+    return result;
+  }
+
+  private final CompletionStage<RS> enqueue(final RQ request, final Priority priority) {
+    @Nullable final Object extractedTenant = tenantExtractor.apply(request);
+    final Object tenantId = extractedTenant == null ? UNKNOWN_TENANT : extractedTenant;
+    final CompletableFuture<RS> result = new CompletableFuture<>();
+    @Nullable
+    QueuedRequest<RQ, RS> evicted = null;
+    synchronized (mutex) {
+      Tenant<RQ, RS> tenant = tenants.get(tenantId);
+      if (tenant == null) {
+        tenant = new Tenant<>(tenantId, weights.applyAsInt(tenantId), tenantStats == null ? null : tenantStats[statsTenantBucket(tenantId)]);
+        tenants.put(tenantId, tenant);
+        activeTenants.addLast(tenant);
+      } else if (tenant.queueLength == maxQueueLengthPerTenant) {
+        evicted = tenant.evict(priority);
+        if (evicted == null) {
+          logger.debug("{} of tenant {} was rejected by {}", request, tenantId, this);
+          throw RejectedRequestException.of(RejectedRequestException.Reason.OVERLOADED);
+        }
+        queueLength--;
+      }
+      tenant.add(new QueuedRequest<>(request, priority, result, Context.current()));
+      queueLength++;
+      if (tenant.stats != null && evicted == null) {
+        tenant.stats.queueLength.increment();
+      }
+    }
+    if (evicted != null) {
+      final QueuedRequest<RQ, RS> evictedRequest = evicted;
+      evictedRequest.context.run(() -> {
+        logger.debug("{} of tenant {} was evicted by {}", evictedRequest.request, tenantId, this);
+        evictedRequest.futureResponse.completeExceptionally(RejectedRequestException.of(RejectedRequestException.Reason.OVERLOADED));
+      });
+    }
+    /* A slot may have been released after we decided to queue the request but before the request was queued,
+     * hence we must try to take the slot and dispatch a queued request.*/
+    drain();
+    return result;
+  }
+
+  /**
+   * @return Lengths of queues of tenants that have queued requests.
+   */
+  public final Map<Object, Integer> getQueueLengths() {
+    final Map<Object, Integer> result = new HashMap<>();
+    synchronized (mutex) {
+      tenants.forEach((tenantId, tenant) -> result.put(tenantId, tenant.queueLength));
+    }
+    return result;
+  }
+
+  private final boolean tryAcquire() {
+    boolean result = false;
+    for (int c = concurrency.get(); c < maxConcurrency; c = concurrency.get()) {
+      if (concurrency.compareAndSet(c, c + 1)) {
+        result = true;
+        break;
+      }
+    }
+    return result;
+  }
+
+  private final void release() {
+    concurrency.decrementAndGet();
+    /* A request may have been queued after the slot was taken, hence we must try to dispatch it,
+     * see the comment in the process method.*/
+    if (queueLength > 0) {
+      drain();
+    }
+  }
+
+  /**
+   * Dispatches queued requests while there are free slots.
+   * If another thread is draining the queue, or this method is called reentrantly (e.g. because a dispatched request
+   * completed synchronously and {@linkplain #release() released} its slot), then this method makes the draining thread
+   * check the queue again instead of dispatching requests by itself, so the stack depth does not depend on the number of queued requests.
+   */
+  private final void drain() {
+    if (drainRequests.getAndIncrement() == 0) {
+      int missed = 1;
+      do {
+        while (queueLength > 0 && tryAcquire()) {
+          dispatchNext();
+        }
+        missed = drainRequests.addAndGet(-missed);
+      } while (missed != 0);
+    }
+  }
+
+  private final CompletionStage<RS> dispatchAndRelease(final RQ request) {
+    CompletionStage<RS> result;
+    try {
+      result = dispatcher.process(request);
+    } catch (final RuntimeException e) {
+      release();
+      throw e;
+    }
+    result.whenComplete((response, failure) -> release());
+    return result;
+  }
+
+  /**
+   * Must be called only by the thread that {@linkplain #drain() drains} the queue after a slot is {@linkplain #tryAcquire() acquired}.
+   * Chooses the next queued request by using the deficit round robin and dispatches it,
+   * or releases the slot if there are no queued requests.
+   */
+  private final void dispatchNext() {
+    @Nullable
+    QueuedRequest<RQ, RS> next = null;
+    @Nullable
+    TenantStats stats = null;
+    synchronized (mutex) {
+      @Nullable final Tenant<RQ, RS> tenant = activeTenants.peekFirst();
+      if (tenant != null) {
+        if (tenant.deficit <= 0) {//the tenant is visited in a new round
+          tenant.deficit += tenant.weight;
+        }
+        next = tenant.poll();
+        tenant.deficit--;
+        queueLength--;
+        stats = tenant.stats;
+        if (tenant.queueLength == 0) {
+          activeTenants.pollFirst();
+          tenants.remove(tenant.id);
+        } else if (tenant.deficit <= 0) {
+          activeTenants.addLast(activeTenants.pollFirst());
+        }
+      }
+    }
+    if (next == null) {//there is no need to drain, because the draining thread is the current one
+      concurrency.decrementAndGet();
+    } else {
+      if (stats != null) {
+        stats.queueLength.decrement();
+        stats.servedCount.increment();
+      }
+      final QueuedRequest<RQ, RS> queuedRequest = next;
+      queuedRequest.context.run(() -> dispatchAndRelease(queuedRequest));
+    }
+  }
+
+  /**
+   * Must be called while the {@link Context} of the {@code queuedRequest} is {@linkplain Context#attach() attached}.
+   */
+  private final void dispatchAndRelease(final QueuedRequest<RQ, RS> queuedRequest) {
+    final CompletableFuture<RS> futureResponse = queuedRequest.futureResponse;
+    CompletionStage<RS> futureDispatcherResponse;
+    try {
+      futureDispatcherResponse = dispatchAndRelease(queuedRequest.request);
+    } catch (final RuntimeException e) {
+      futureDispatcherResponse = CompletableFuture.failedFuture(e);
+    }
+    futureDispatcherResponse.whenComplete((response, failure) -> {
+      if (failure == null) {
+        futureResponse.complete(response);
+      } else {
+        futureResponse.completeExceptionally(failure);
+      }
+    });
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(dispatcher=" + dispatcher
+        + ", maxConcurrency=" + maxConcurrency
+        + ", maxQueueLengthPerTenant=" + maxQueueLengthPerTenant
+        + ", statsAggregator=" + statsAggregator
+        + ", statsTags=" + statsTags
+        + ')';
+  }
+
+  static final int statsTenantBucket(final Object tenantId) {
+    final int hash = tenantId.hashCode();
+    return Math.floorMod(hash ^ (hash >>> 16), STATS_TENANT_BUCKETS);
+  }
+
+  private static final TenantStats[] newTenantStats(
+      final RequestDispatcher<?, ?> dispatcher, final StatsAggregator statsAggregator, final List<String> statsTags) {
+    final String dispatcherName = dispatcher.getClass()
+        .getSimpleName();
+    final String queueLengthAspect = dispatcherName + ".fairQueueLength";
+    final String servedCountAspect = dispatcherName + ".fairServedRequestsCount";
+    final TenantStats[] result = new TenantStats[STATS_TENANT_BUCKETS];
+    for (int i = 0; i < result.length; i++) {
+      final List<String> tags = new ArrayList<>(statsTags.size() + 1);
+      tags.addAll(statsTags);
+      tags.add("tenantBucket:" + i);
+      result[i] = new TenantStats(statsAggregator.gauge(queueLengthAspect, tags), statsAggregator.counter(servedCountAspect, tags));
+    }
+    return result;
+  }
+
+  /**
+   * Is guarded by {@link FairRequestDispatcher#mutex}.
+   */
+  @NotThreadSafe
+  private static final class Tenant<RQ, RS> {
+    private final Object id;
+    private final int weight;
+    /**
+     * Queues of requests indexed by {@link Priority#ordinal()}.
+     */
+    private final List<Deque<QueuedRequest<RQ, RS>>> queues;
+    private int queueLength;
+    @Nullable
+    private final TenantStats stats;
+    private int deficit;
+
+    private Tenant(final Object id, final int weight, @Nullable final TenantStats stats) {
+      checkArgument(weight > 0, "The weight %s of the tenant %s must be positive", weight, id);
+      this.id = id;
+      this.weight = weight;
+      final int prioritiesCount = Priority.values().length;
+      queues = new ArrayList<>(prioritiesCount);
+      for (int i = 0; i < prioritiesCount; i++) {
+        queues.add(new ArrayDeque<>());
+      }
+      this.stats = stats;
+    }
+
+    private final void add(final QueuedRequest<RQ, RS> request) {
+      queues.get(request.priority.ordinal())
+          .addLast(request);
+      queueLength++;
+    }
+
+    /**
+     * @return The first queued request of the highest priority, or {@code null} if there are no queued requests.
+     */
+    @Nullable
+    private final QueuedRequest<RQ, RS> poll() {
+      @Nullable
+      QueuedRequest<RQ, RS> result = null;
+      for (int i = queues.size() - 1; i >= 0 && result == null; i--) {
+        result = queues.get(i)
+            .pollFirst();
+      }
+      if (result != null) {
+        queueLength--;
+      }
+      return result;
+    }
+
+    /**
+     * @return The most recently queued request of the lowest priority that is lower than the {@code priority},
+     * or {@code null} if there is no such request.
+     */
+    @Nullable
+    private final QueuedRequest<RQ, RS> evict(final Priority priority) {
+      @Nullable
+      QueuedRequest<RQ, RS> result = null;
+      for (int i = 0; i < priority.ordinal() && result == null; i++) {
+        result = queues.get(i)
+            .pollLast();
+      }
+      if (result != null) {
+        queueLength--;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Metrics that are shared by {@link Tenant}s hashed into the same {@linkplain #statsTenantBucket(Object) bucket}.
+   */
+  @ThreadSafe
+  private static final class TenantStats {
+    private final StatsAggregator.Gauge queueLength;
+    private final StatsAggregator.Counter servedCount;
+
+    private TenantStats(final StatsAggregator.Gauge queueLength, final StatsAggregator.Counter servedCount) {
+      this.queueLength = queueLength;
+      this.servedCount = servedCount;
+    }
+  }
+
+  @NotThreadSafe
+  private static final class QueuedRequest<RQ, RS> {
+    private final RQ request;
+    private final Priority priority;
+    private final CompletableFuture<RS> futureResponse;
+    private final Context context;
+
+    private QueuedRequest(final RQ request, final Priority priority, final CompletableFuture<RS> futureResponse, final Context context) {
+      this.request = request;
+      this.priority = priority;
+      this.futureResponse = futureResponse;
+      this.context = context;
+    }
+  }
+}
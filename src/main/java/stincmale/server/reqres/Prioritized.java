@@ -0,0 +1,17 @@
+package stincmale.server.reqres;
+
+import javax.annotation.Nullable;
+
+/**
+ * A request that may specify its own {@link Priority}, which takes precedence over the {@linkplain Processor#priority() priority}
+ * of the {@link RequestProcessor}, see {@link Priority#of(Object, Priority)}.
+ *
+ * @see stincmale.server.netty4.RequestWithMetadata
+ */
+public interface Prioritized {
+  /**
+   * @return The priority of this request, or {@code null} if the request does not specify its own priority.
+   */
+  @Nullable
+  Priority priority();
+}
@@ -0,0 +1,44 @@
+package stincmale.server.reqres;
+
+import javax.annotation.Nullable;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A priority class of a request. Overload controls, e.g. {@link BulkheadRequestProcessor} and {@link AdmissionLimiter},
+ * never shed requests of a higher priority before requests of a lower priority, and process queued requests of a higher priority first.
+ * Constants are declared in the ascending order of priority.
+ * <p>
+ * The priority of a request is its own {@linkplain Prioritized#priority() priority} if the request is {@link Prioritized}
+ * and specifies one, e.g. {@link stincmale.server.netty4.RequestWithMetadata} with the priority specified in its metadata,
+ * or the {@linkplain Processor#priority() priority} of the {@link RequestProcessor} otherwise.
+ */
+public enum Priority {
+  /**
+   * For requests that may be postponed or shed without much harm, e.g. bulk report queries.
+   */
+  LOW,
+  /**
+   * The default priority.
+   */
+  NORMAL,
+  HIGH,
+  /**
+   * For requests that must never be rejected or queued by overload controls, e.g. health checks.
+   */
+  CRITICAL;
+
+  /**
+   * @return The {@linkplain Prioritized#priority() priority} of the {@code request} if it is {@link Prioritized}
+   * and specifies its own priority, or {@code defaultPriority}.
+   */
+  public static final Priority of(final Object request, final Priority defaultPriority) {
+    checkNotNull(request, "The argument %s must not be null", "request");
+    checkNotNull(defaultPriority, "The argument %s must not be null", "defaultPriority");
+    @Nullable
+    Priority result = null;
+    if (request instanceof Prioritized) {
+      result = ((Prioritized)request).priority();
+    }
+    return result == null ? defaultPriority : result;
+  }
+}
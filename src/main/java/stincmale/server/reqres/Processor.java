@@ -3,6 +3,7 @@ package stincmale.server.reqres;
 import static java.lang.annotation.ElementType.TYPE;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 import stincmale.server.Server;
+import stincmale.server.netty4.tcp.http.HttpRequestDispatcherByRoute;
 import stincmale.server.netty4.tcp.http.SimpleHttpRequestDispatcherByUrl;
 import stincmale.server.reqres.spring.SpringRequestDispatcher;
 import java.lang.annotation.Documented;
@@ -33,6 +34,28 @@ public @interface Processor {
    * @see RequestDispatcherByProcessorName
    * @see SimpleHttpRequestDispatcherByUrl
    * @see SimpleSpringHttpRequestDispatcherByUrl
+   * @see HttpRequestDispatcherByRoute
    */
   String value();
+
+  /**
+   * @return Names of request methods (e.g. HTTP methods {@code GET}, {@code POST})
+   * this {@link RequestProcessor} is restricted to. An empty array means that any method is acceptable.
+   * Only {@link RequestDispatcher}s that distinguish requests by methods take this into account, e.g. {@link HttpRequestDispatcherByRoute}
+   * allows multiple {@link RequestProcessor}s with the same {@linkplain #value() route} but different methods.
+   */
+  String[] methods() default {};
+
+  /**
+   * @return The bulkhead of this {@link RequestProcessor}. The default bulkhead is disabled.
+   */
+  Bulkhead bulkhead() default @Bulkhead;
+
+  /**
+   * @return The priority of requests processed by this {@link RequestProcessor}
+   * unless a request specifies its own {@linkplain Prioritized priority}.
+   * The priority is taken into account by the {@linkplain #bulkhead() bulkhead} of this {@link RequestProcessor},
+   * and by the {@link AdmissionLimiter} of a {@link RequestDispatcherByProcessorName} or of an {@link HttpRequestDispatcherByRoute}.
+   */
+  Priority priority() default Priority.NORMAL;
 }
@@ -0,0 +1,96 @@
+package stincmale.server.reqres;
+
+import java.util.EnumMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * This {@link RuntimeException} means that a request was rejected by the framework without being processed,
+ * e.g. because there is no {@link RequestProcessor} for it, or because the server is overloaded.
+ * <p>
+ * Rejections are expected to be frequent (e.g. a scanner hitting random URIs), so instances of this exception are
+ * {@linkplain #of(Reason) shared}, they neither have a stack trace nor {@linkplain #getSuppressed() suppressed} exceptions,
+ * and should neither be logged with a stack trace nor be wrapped into other exceptions.
+ */
+@Immutable
+public final class RejectedRequestException extends RuntimeException {
+  private static final long serialVersionUID = 0;
+  private static final Map<Reason, RejectedRequestException> instances = new EnumMap<>(Reason.class);
+  /**
+   * The maximal length of the {@linkplain Throwable#getCause() cause} chain that is inspected by {@link #extract(Throwable)}.
+   */
+  private static final int MAX_EXTRACT_DEPTH = 8;
+
+  static {
+    for (final Reason reason : Reason.values()) {
+      instances.put(reason, new RejectedRequestException(reason));
+    }
+  }
+
+  private final Reason reason;
+
+  private RejectedRequestException(final Reason reason) {
+    super(reason.name(), null, false, false);
+    this.reason = reason;
+  }
+
+  /**
+   * @return A shared {@link RejectedRequestException}.
+   */
+  public static final RejectedRequestException of(final Reason reason) {
+    checkNotNull(reason, "The argument %s must not be null", "reason");
+    return instances.get(reason);
+  }
+
+  /**
+   * A cheap alternative to {@link stincmale.server.util.throwable.ThrowableUtil#extract(Throwable, Class)}:
+   * inspects only a few first {@link Throwable}s in the {@linkplain Throwable#getCause() cause} chain and does not inspect
+   * {@linkplain Throwable#getSuppressed() suppressed} {@link Throwable}s.
+   *
+   * @return {@link RejectedRequestException} from the cause chain of the {@code failure}, or {@code null} if there is no such exception.
+   */
+  @Nullable
+  public static final RejectedRequestException extract(@Nullable final Throwable failure) {
+    @Nullable
+    RejectedRequestException result = null;
+    @Nullable
+    Throwable t = failure;
+    for (int depth = 0; t != null && depth < MAX_EXTRACT_DEPTH; t = t.getCause(), depth++) {
+      if (t instanceof RejectedRequestException) {
+        result = (RejectedRequestException)t;
+        break;
+      }
+    }
+    return result;
+  }
+
+  public final Reason reason() {
+    return reason;
+  }
+
+  /**
+   * A reason of rejecting a request.
+   */
+  public enum Reason {
+    /**
+     * There is no {@link RequestProcessor} for the request.
+     */
+    UNKNOWN_PROCESSOR,
+    /**
+     * There is a {@link RequestProcessor} for the request but it does not accept the method of the request.
+     *
+     * @see Processor#methods()
+     */
+    METHOD_NOT_ALLOWED,
+    /**
+     * The request is malformed, e.g. it could not be decoded.
+     */
+    MALFORMED_REQUEST,
+    /**
+     * The server or a {@link RequestProcessor} is overloaded.
+     */
+    OVERLOADED
+  }
+}
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletionStage;
@@ -12,37 +13,104 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * {@link RequestDispatcher} that chooses {@link RequestProcessor}s by {@linkplain Processor#value() names}.
+ * The name of the chosen {@link RequestProcessor} is specified as the {@linkplain Routable#setRoute(String) route}
+ * of the request if it is {@link Routable}.
+ * <p>
+ * When a dispatcher is constructed, it compiles each {@link RequestProcessor} together with the {@link RequestProcessorWithStats}
+ * wrapping it (if any) into a {@link RequestProcessor} of a new class, so that calls within the chain of each
+ * {@link RequestProcessor} are devirtualized and inlined by the JIT compiler regardless of the number of {@link RequestProcessor}s.
  */
 @ThreadSafe
 public abstract class RequestDispatcherByProcessorName<RQ, RS> implements RequestDispatcher<RQ, RS> {
   private static final Logger logger = LoggerFactory.getLogger(RequestDispatcherByProcessorName.class);
 
   private final Map<String, ? extends RequestProcessor<RQ, RS>> processors;
+  private final Map<String, RequestProcessor<RQ, RS>> specializedProcessors;
+  private final Map<String, Priority> priorities;
+  @Nullable
+  private final AdmissionLimiter admissionLimiter;
 
   /**
    * @param processors {@link Map} that contains available {@link RequestProcessor}s as {@linkplain Entry#getValue() values}
    * and names of {@link RequestProcessor}s as {@linkplain Entry#getKey() keys}.
    */
   protected RequestDispatcherByProcessorName(Map<String, ? extends RequestProcessor<RQ, RS>> processors) {
+    this(processors, Collections.emptyMap(), null);
+  }
+
+  /**
+   * @param processors See {@link #RequestDispatcherByProcessorName(Map)}.
+   * @param priorities {@link Map} that contains {@linkplain Processor#priority() priorities} of {@link RequestProcessor}s
+   * as {@linkplain Entry#getValue() values} and names of {@link RequestProcessor}s as {@linkplain Entry#getKey() keys}.
+   * {@link Priority#NORMAL} is used for {@link RequestProcessor}s that are not present in this {@link Map}.
+   * @param admissionLimiter If not {@code null}, then {@link #process(Object)} admits requests via
+   * {@link AdmissionLimiter#tryAcquire(Priority)} with the {@linkplain Priority#of(Object, Priority) priority} of a request
+   * and rejects requests that are not admitted with {@link RejectedRequestException.Reason#OVERLOADED}.
+   */
+  protected RequestDispatcherByProcessorName(
+      final Map<String, ? extends RequestProcessor<RQ, RS>> processors,
+      final Map<String, Priority> priorities,
+      @Nullable final AdmissionLimiter admissionLimiter) {
+    checkNotNull(priorities, "The argument %s must not be null", "priorities");
     this.processors = processors;
+    specializedProcessors = new HashMap<>();
+    processors.forEach((name, processor) -> specializedProcessors.put(name, RequestProcessorSpecializer.specialize(processor)));
+    this.priorities = priorities;
+    this.admissionLimiter = admissionLimiter;
   }
 
   /**
    * Calls {@link #getProcessorName(java.lang.Object)} to determine {@link RequestProcessor}'s name,
    * finds the {@link RequestProcessor} by this name among available processors and delegates processing of the
    * {@code request} to the found {@link RequestProcessor}.
+   *
+   * @throws RejectedRequestException With {@link RejectedRequestException.Reason#UNKNOWN_PROCESSOR}
+   * if there is no {@link RequestProcessor} with the name, or with {@link RejectedRequestException.Reason#OVERLOADED}
+   * if the request is not admitted by the {@link AdmissionLimiter}.
    */
   @Override
   public final CompletionStage<RS> process(final RQ request) {
     checkNotNull(request, "The argument must not be null", "request");
     final String processorName = getProcessorName(request);
-    @Nullable final RequestProcessor<? super RQ, RS> processor = processors.get(processorName);
+    @Nullable final RequestProcessor<? super RQ, RS> processor = specializedProcessors.get(processorName);
     if (processor == null) {
-      throw new RuntimeException(String.format("Unknown %s's name %s. Available processors are %s",
-          RequestProcessor.class.getSimpleName(), processorName, processors));
+      logger.debug("Unknown {}'s name {}", RequestProcessor.class.getSimpleName(), processorName);
+      throw RejectedRequestException.of(RejectedRequestException.Reason.UNKNOWN_PROCESSOR);
+    }
+    if (logger.isDebugEnabled()) {//the specialized processor does not have a meaningful string representation
+      logger.debug("{} will be processed by processor {} with name {}", request, processors.get(processorName), processorName);
+    }
+    if (request instanceof Routable) {
+      ((Routable)request).setRoute(processorName);
+    }
+    final CompletionStage<RS> result;
+    if (admissionLimiter == null) {
+      result = processor.process(request);
+    } else {
+      result = processAdmitted(processor, processorName, request, admissionLimiter);
+    }
+    return result;
+  }
+
+  private final CompletionStage<RS> processAdmitted(
+      final RequestProcessor<? super RQ, RS> processor,
+      final String processorName,
+      final RQ request,
+      final AdmissionLimiter admissionLimiter) {
+    final Priority priority = Priority.of(request, priorities.getOrDefault(processorName, Priority.NORMAL));
+    if (!admissionLimiter.tryAcquire(priority)) {
+      logger.debug("{} with priority {} was not admitted by {}", request, priority, admissionLimiter);
+      throw RejectedRequestException.of(RejectedRequestException.Reason.OVERLOADED);
+    }
+    final CompletionStage<RS> result;
+    try {
+      result = processor.process(request);
+    } catch (final RuntimeException e) {
+      admissionLimiter.release();
+      throw e;
     }
-    logger.debug("{} will be processed by processor {} with name {}", request, processor, processorName);
-    return processor.process(request);
+    result.whenComplete((response, failure) -> admissionLimiter.release());
+    return result;
   }
 
   protected Map<String, RequestProcessor<RQ, RS>> getProcessors() {
@@ -0,0 +1,290 @@
+package stincmale.server.reqres;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Compiles the chain of a {@link RequestProcessor} into a {@link RequestProcessor} of a new class.
+ * <p>
+ * A virtual call site is profiled by the JIT compiler per bytecode, not per caller, so when a {@link RequestDispatcher}
+ * calls many {@link RequestProcessor}s, the call site in a shared wrapper (e.g. the call of the wrapped {@link RequestProcessor}
+ * in {@link RequestProcessorWithStats#process(Object)}) becomes megamorphic and the wrapped {@link RequestProcessor} is not inlined.
+ * A specialized {@link RequestProcessor} is of a class defined via {@link MethodHandles.Lookup#defineClass(byte[])} for each
+ * {@link RequestProcessor}. Its fields are declared with the precise types of the {@link RequestProcessor}s in the chain,
+ * so only the call of the specialized {@link RequestProcessor} by the {@link RequestDispatcher} remains megamorphic,
+ * while calls within the chain are devirtualized and inlined separately for each {@link RequestProcessor}.
+ * <p>
+ * If the class of a {@link RequestProcessor} cannot be referenced by the defined class, e.g. because it is a lambda
+ * or is loaded by a class loader that is not visible to this class, then the chain is still specialized,
+ * but the field is declared with the type {@link RequestProcessor}.
+ */
+@ThreadSafe
+final class RequestProcessorSpecializer {
+  private static final Logger logger = LoggerFactory.getLogger(RequestProcessorSpecializer.class);
+  private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+  private static final AtomicInteger classCounter = new AtomicInteger();
+  private static final String PROCESSOR = internalName(RequestProcessor.class);
+  private static final String WITH_STATS = internalName(RequestProcessorWithStats.class);
+  private static final String OBJECT = internalName(Object.class);
+  private static final String COMPLETION_STAGE = internalName(CompletionStage.class);
+
+  private RequestProcessorSpecializer() {
+    throw new UnsupportedOperationException("This class is not designed to be instantiated");
+  }
+
+  /**
+   * @return A {@link RequestProcessor} of a new class that delegates to the {@code processor},
+   * or the {@code processor} if it cannot be specialized.
+   */
+  @SuppressWarnings("unchecked")
+  static final <RQ, RS> RequestProcessor<RQ, RS> specialize(final RequestProcessor<RQ, RS> processor) {
+    checkNotNull(processor, "The argument %s must not be null", "processor");
+    @Nullable final RequestProcessorWithStats<RQ, RS> processorWithStats = processor instanceof RequestProcessorWithStats
+        ? (RequestProcessorWithStats<RQ, RS>)processor
+        : null;
+    final RequestProcessor<?, ?> innermost = processorWithStats == null ? processor : processorWithStats.processor();
+    final Class<?> innermostType = referenceableType(innermost.getClass());
+    final String className = internalName(RequestProcessorSpecializer.class) + "$Specialized" + classCounter.getAndIncrement();
+    RequestProcessor<RQ, RS> result;
+    try {
+      final Class<?> klass = lookup.defineClass(classBytes(className, internalName(innermostType), processorWithStats != null));
+      result = (RequestProcessor<RQ, RS>)lookup.findConstructor(klass, methodType(void.class, RequestProcessorWithStats.class, innermostType))
+          .invoke(processorWithStats, innermost);
+    } catch (final ReflectiveOperationException | LinkageError e) {
+      logger.warn("Failed to specialize {}", processor, e);
+      result = processor;
+    } catch (final RuntimeException | Error e) {
+      throw e;
+    } catch (final Throwable e) {//the constructor does not throw checked exceptions
+      throw new AssertionError(e);
+    }
+    return result;
+  }
+
+  /**
+   * Produces a class that is equivalent to
+   * <pre>{@code
+   * final class <className> implements RequestProcessor {
+   *   private final RequestProcessorWithStats withStats;
+   *   private final <innermost> innermost;
+   *
+   *   <className>(RequestProcessorWithStats withStats, <innermost> innermost) {
+   *     this.withStats = withStats;
+   *     this.innermost = innermost;
+   *   }
+   *
+   *   public final CompletionStage process(Object request) {
+   *     return RequestProcessorWithStats.process(withStats, innermost, request);//if withStats
+   *     return innermost.process(request);//otherwise
+   *   }
+   * }
+   * }</pre>
+   * The methods do not have branches, so the class file does not need {@code StackMapTable} attributes.
+   */
+  private static final byte[] classBytes(final String className, final String innermost, final boolean withStats) {
+    final ConstantPool cp = new ConstantPool();
+    final int thisClass = cp.classInfo(className);
+    final int objectClass = cp.classInfo(OBJECT);
+    final int processorClass = cp.classInfo(PROCESSOR);
+    final int withStatsField = cp.fieldref(thisClass, "withStats", descriptor(WITH_STATS));
+    final int innermostField = cp.fieldref(thisClass, "innermost", descriptor(innermost));
+    final int objectInit = cp.methodref(objectClass, "<init>", "()V", false);
+    final String processDescriptor = "(" + descriptor(OBJECT) + ")" + descriptor(COMPLETION_STAGE);
+    final int call = withStats
+        ? cp.methodref(cp.classInfo(WITH_STATS), "process",
+            "(" + descriptor(WITH_STATS) + descriptor(PROCESSOR) + descriptor(OBJECT) + ")" + descriptor(COMPLETION_STAGE), false)
+        : cp.methodref(processorClass, "process", processDescriptor, true);
+    final int code = cp.utf8("Code");
+    final int withStatsName = cp.utf8("withStats");
+    final int withStatsDescriptor = cp.utf8(descriptor(WITH_STATS));
+    final int innermostName = cp.utf8("innermost");
+    final int innermostDescriptor = cp.utf8(descriptor(innermost));
+    final int initName = cp.utf8("<init>");
+    final int initDescriptor = cp.utf8("(" + descriptor(WITH_STATS) + descriptor(innermost) + ")V");
+    final int processName = cp.utf8("process");
+    final int processDescriptorIdx = cp.utf8(processDescriptor);
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(result)) {
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0);//minor version
+      out.writeShort(52);//major version
+      cp.write(out);
+      out.writeShort(0x0010 | 0x0020);//ACC_FINAL | ACC_SUPER
+      out.writeShort(thisClass);
+      out.writeShort(objectClass);
+      out.writeShort(1);//interfaces
+      out.writeShort(processorClass);
+      out.writeShort(2);//fields
+      writeField(out, withStatsName, withStatsDescriptor);
+      writeField(out, innermostName, innermostDescriptor);
+      out.writeShort(2);//methods
+      writeMethod(out, 0, initName, initDescriptor, code, 2, 3, new byte[] {
+          0x2A,//aload_0
+          (byte)0xB7, hi(objectInit), lo(objectInit),//invokespecial Object.<init>
+          0x2A,//aload_0
+          0x2B,//aload_1
+          (byte)0xB5, hi(withStatsField), lo(withStatsField),//putfield withStats
+          0x2A,//aload_0
+          0x2C,//aload_2
+          (byte)0xB5, hi(innermostField), lo(innermostField),//putfield innermost
+          (byte)0xB1});//return
+      writeMethod(out, 0x0001 | 0x0010, processName, processDescriptorIdx, code, 3, 2, withStats//ACC_PUBLIC | ACC_FINAL
+          ? new byte[] {
+              0x2A,//aload_0
+              (byte)0xB4, hi(withStatsField), lo(withStatsField),//getfield withStats
+              0x2A,//aload_0
+              (byte)0xB4, hi(innermostField), lo(innermostField),//getfield innermost
+              0x2B,//aload_1
+              (byte)0xB8, hi(call), lo(call),//invokestatic RequestProcessorWithStats.process
+              (byte)0xB0}//areturn
+          : new byte[] {
+              0x2A,//aload_0
+              (byte)0xB4, hi(innermostField), lo(innermostField),//getfield innermost
+              0x2B,//aload_1
+              (byte)0xB9, hi(call), lo(call), 2, 0,//invokeinterface RequestProcessor.process
+              (byte)0xB0});//areturn
+      out.writeShort(0);//attributes
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result.toByteArray();
+  }
+
+  private static final void writeField(final DataOutputStream out, final int name, final int descriptor) throws IOException {
+    out.writeShort(0x0002 | 0x0010);//ACC_PRIVATE | ACC_FINAL
+    out.writeShort(name);
+    out.writeShort(descriptor);
+    out.writeShort(0);//attributes
+  }
+
+  private static final void writeMethod(
+      final DataOutputStream out,
+      final int accessFlags,
+      final int name,
+      final int descriptor,
+      final int codeAttributeName,
+      final int maxStack,
+      final int maxLocals,
+      final byte[] code) throws IOException {
+    out.writeShort(accessFlags);
+    out.writeShort(name);
+    out.writeShort(descriptor);
+    out.writeShort(1);//attributes
+    out.writeShort(codeAttributeName);
+    out.writeInt(2 + 2 + 4 + code.length + 2 + 2);//the length of the attribute
+    out.writeShort(maxStack);
+    out.writeShort(maxLocals);
+    out.writeInt(code.length);
+    out.write(code);
+    out.writeShort(0);//exception table
+    out.writeShort(0);//attributes
+  }
+
+  private static final byte hi(final int index) {
+    return (byte)(index >>> 8);
+  }
+
+  private static final byte lo(final int index) {
+    return (byte)index;
+  }
+
+  private static final String internalName(final Class<?> klass) {
+    return klass.getName()
+        .replace('.', '/');
+  }
+
+  private static final String descriptor(final String internalName) {
+    return "L" + internalName + ";";
+  }
+
+  /**
+   * @return {@code klass} if it can be referenced by classes defined by {@link RequestProcessorSpecializer},
+   * otherwise {@link RequestProcessor}.
+   */
+  private static final Class<?> referenceableType(final Class<?> klass) {
+    Class<?> result = RequestProcessor.class;
+    try {
+      if (Class.forName(klass.getName(), false, RequestProcessorSpecializer.class.getClassLoader()) == klass) {
+        result = klass;
+      }
+    } catch (final ClassNotFoundException e) {
+      //the class is hidden or is not visible to the class loader of this class
+    }
+    return result;
+  }
+
+  /**
+   * Accumulates entries of the constant pool of a class file.
+   */
+  @NotThreadSafe
+  private static final class ConstantPool {
+    private static final int UTF8 = 1;
+    private static final int CLASS = 7;
+    private static final int FIELDREF = 9;
+    private static final int METHODREF = 10;
+    private static final int INTERFACE_METHODREF = 11;
+    private static final int NAME_AND_TYPE = 12;
+
+    /**
+     * Each entry is the tag followed by either a {@link String} for {@link #UTF8}, or indices of other entries.
+     */
+    private final List<Object[]> entries;
+
+    private ConstantPool() {
+      entries = new ArrayList<>();
+    }
+
+    private final int utf8(final String value) {
+      return add(UTF8, value);
+    }
+
+    private final int classInfo(final String internalName) {
+      return add(CLASS, utf8(internalName));
+    }
+
+    private final int fieldref(final int classInfo, final String name, final String descriptor) {
+      return add(FIELDREF, classInfo, add(NAME_AND_TYPE, utf8(name), utf8(descriptor)));
+    }
+
+    private final int methodref(final int classInfo, final String name, final String descriptor, final boolean ofInterface) {
+      return add(ofInterface ? INTERFACE_METHODREF : METHODREF, classInfo, add(NAME_AND_TYPE, utf8(name), utf8(descriptor)));
+    }
+
+    /**
+     * @return The index of the added entry. Indices start with 1.
+     */
+    private final int add(final Object... entry) {
+      entries.add(entry);
+      return entries.size();
+    }
+
+    private final void write(final DataOutputStream out) throws IOException {
+      out.writeShort(entries.size() + 1);
+      for (final Object[] entry : entries) {
+        final int tag = (int)entry[0];
+        out.writeByte(tag);
+        if (tag == UTF8) {
+          out.writeUTF((String)entry[1]);
+        } else {
+          for (int i = 1; i < entry.length; i++) {
+            out.writeShort((int)entry[i]);
+          }
+        }
+      }
+    }
+  }
+}
@@ -9,64 +9,149 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import java.util.concurrent.CompletionStage;
 import static com.google.common.base.Preconditions.checkNotNull;
-import stincmale.server.util.logging.TransferableMdc;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import stincmale.server.util.context.Context;
+import stincmale.server.util.stats.LatencyHistogram;
+import stincmale.server.util.stats.StatsAggregator;
 
 /**
- * Wraps {@link RequestProcessor} and collects statistics via {@link StatsDClient}.
+ * Wraps {@link RequestProcessor} and collects statistics via {@link StatsDClient}:
+ * {@code <processor class simple name>.requestsCount} counter and {@code <processor class simple name>.processingTimeMillis}.
+ * If {@link StatsAggregator} is {@linkplain #RequestProcessorWithStats(RequestProcessor, StatsAggregator, Collection) specified},
+ * then the processing time is recorded into a {@linkplain StatsAggregator#histogram(String, Collection) histogram}
+ * whose percentiles are periodically sent, the number of requests is recorded into an aggregated
+ * {@linkplain StatsAggregator#counter(String, Collection) counter}, and the number of requests that are being processed is recorded into
+ * the {@code <processor class simple name>.inFlightRequests} {@linkplain StatsAggregator#gauge(String, Collection) gauge},
+ * otherwise statistics are sent for each request.
+ * <p>
+ * Statistics are named after the wrapped {@link RequestProcessor}, and if it is itself a wrapper,
+ * e.g. {@link BulkheadRequestProcessor}, then after the {@link RequestProcessor} it wraps, see {@link #statsName(RequestProcessor)}.
  */
 @ThreadSafe
 public final class RequestProcessorWithStats<RQ, RS> implements RequestProcessor<RQ, RS> {
   private static final Logger logger = LoggerFactory.getLogger(RequestProcessorWithStats.class);
 
   private final RequestProcessor<? super RQ, ? extends RS> processor;
+  private final String statsName;
   @Nullable
   private final StatsDClient statsDClient;
   private final String[] statsTags;
+  private final String timeAspect;
+  private final String countAspect;
+  @Nullable
+  private final LatencyHistogram timeHistogram;
+  @Nullable
+  private final StatsAggregator.Counter counter;
+  @Nullable
+  private final StatsAggregator.Gauge inFlightGauge;
 
   public RequestProcessorWithStats(
       final RequestProcessor<? super RQ, ? extends RS> processor,
       @Nullable final StatsDClient statsDClient,
       @Nullable final Collection<String> statsTags) {
+    this(processor, statsDClient, null, statsTags);
+  }
+
+  /**
+   * @param statsAggregator {@link StatsAggregator} whose {@linkplain StatsAggregator#getStatsDClient() StatsDClient} is used.
+   */
+  public RequestProcessorWithStats(
+      final RequestProcessor<? super RQ, ? extends RS> processor,
+      @Nullable final StatsAggregator statsAggregator,
+      @Nullable final Collection<String> statsTags) {
+    this(processor, statsAggregator == null ? null : statsAggregator.getStatsDClient(), statsAggregator, statsTags);
+  }
+
+  private RequestProcessorWithStats(
+      final RequestProcessor<? super RQ, ? extends RS> processor,
+      @Nullable final StatsDClient statsDClient,
+      @Nullable final StatsAggregator statsAggregator,
+      @Nullable final Collection<String> statsTags) {
     checkNotNull(processor, "The argument %s must not be null", "processor");
     this.processor = processor;
     this.statsDClient = statsDClient;
     this.statsTags = statsTags == null || statsTags.isEmpty() || statsDClient == null
         ? new String[0]
         : statsTags.toArray(new String[0]);
+    statsName = statsName(processor);
+    timeAspect = statsName + ".processingTimeMillis";
+    countAspect = statsName + ".requestsCount";
+    timeHistogram = statsAggregator == null ? null : statsAggregator.histogram(timeAspect, statsTags);
+    counter = statsAggregator == null ? null : statsAggregator.counter(countAspect, statsTags);
+    inFlightGauge = statsAggregator == null ? null : statsAggregator.gauge(statsName + ".inFlightRequests", statsTags);
+  }
+
+  /**
+   * @return The {@linkplain Class#getSimpleName() simple name} of the class of the {@code processor},
+   * or the name used by the {@code processor} if it is {@link RequestProcessorWithStats} or {@link BulkheadRequestProcessor},
+   * so that wrapping a {@link RequestProcessor} does not change the names of its statistics.
+   */
+  static final String statsName(final RequestProcessor<?, ?> processor) {
+    final String result;
+    if (processor instanceof RequestProcessorWithStats) {
+      result = ((RequestProcessorWithStats<?, ?>)processor).statsName;
+    } else if (processor instanceof BulkheadRequestProcessor) {
+      result = ((BulkheadRequestProcessor<?, ?>)processor).statsName();
+    } else {
+      result = processor.getClass()
+          .getSimpleName();
+    }
+    return result;
   }
 
   @Override
   public final CompletionStage<RS> process(final RQ request) {
+    return process(this, processor, request);
+  }
+
+  /**
+   * @return The wrapped {@link RequestProcessor}.
+   */
+  final RequestProcessor<? super RQ, ? extends RS> processor() {
+    return processor;
+  }
+
+  /**
+   * Does what {@link #process(Object)} does, but calls the {@code processor} passed as an argument,
+   * which allows {@link RequestProcessorSpecializer} to pass it with the precise type.
+   *
+   * @param processor {@link #processor()} of the {@code processorWithStats}.
+   */
+  static final <RQ, RS> CompletionStage<RS> process(
+      final RequestProcessorWithStats<RQ, RS> processorWithStats,
+      final RequestProcessor<? super RQ, ? extends RS> processor,
+      final RQ request) {
     checkNotNull(request, "The argument %s must not be null", "request");
-    final long beginInstantMillis = System.currentTimeMillis();
-    final TransferableMdc mdc = TransferableMdc.current();
-    return processor.process(request)
-        .handle((response, failure) -> {
-          try (var transferredMdc = mdc.transfer()) {
-            final long endInstantMillis = System.currentTimeMillis();
-            collectStats(endInstantMillis - beginInstantMillis);
-            if (failure != null) {
-              throw new RuntimeException(failure);
-            }
-            return response;
-          }
-        });
+    final long beginInstantNanos = System.nanoTime();
+    @Nullable final StatsAggregator.Gauge inFlightGauge = processorWithStats.inFlightGauge;
+    if (inFlightGauge != null) {
+      inFlightGauge.increment();
+    }
+    final CompletionStage<? extends RS> futureResponse;
+    try {
+      futureResponse = processor.process(request);
+    } catch (final RuntimeException e) {
+      if (inFlightGauge != null) {
+        inFlightGauge.decrement();
+      }
+      throw e;
+    }
+    @SuppressWarnings("unchecked") final CompletionStage<RS> result = (CompletionStage<RS>)Context.propagating(futureResponse)
+        .whenComplete((response, failure) -> processorWithStats.collectStats(System.nanoTime() - beginInstantNanos));//propagates the failure as is
+    return result;
   }
 
-  private final void collectStats(final long processingTimeMillis) {
-    @Nullable final String timeAspect;
-    if (logger.isDebugEnabled() || statsDClient != null) {
-      timeAspect = processor.getClass()
-          .getSimpleName() + ".processingTimeMillis";
-    } else {
-      timeAspect = null;
+  private final void collectStats(final long processingTimeNanos) {
+    if (logger.isDebugEnabled()) {
+      logger.debug("{}={}", timeAspect, NANOSECONDS.toMillis(processingTimeNanos));
     }
-    logger.debug("{}={}", timeAspect, processingTimeMillis);
-    if (statsDClient != null) {
-      String countAspect = processor.getClass()
-          .getSimpleName() + ".requestsCount";
+    if (timeHistogram != null && counter != null && inFlightGauge != null) {
+      inFlightGauge.decrement();
+      counter.increment();
+      timeHistogram.record(processingTimeNanos);
+    } else if (statsDClient != null) {
       statsDClient.incrementCounter(countAspect, statsTags);
-      statsDClient.recordExecutionTime(timeAspect, processingTimeMillis, statsTags);
+      statsDClient.recordExecutionTime(timeAspect, NANOSECONDS.toMillis(processingTimeNanos), statsTags);
     }
   }
 
@@ -76,6 +161,7 @@ public final class RequestProcessorWithStats<RQ, RS> implements RequestProcessor
         + "(processor=" + processor
         + ", statsDClient=" + statsDClient
         + ", statsTags=" + Arrays.toString(statsTags)
+        + ", aggregated=" + (timeHistogram != null)
         + ')';
   }
 }
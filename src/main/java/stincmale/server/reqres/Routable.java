@@ -0,0 +1,27 @@
+package stincmale.server.reqres;
+
+import javax.annotation.Nullable;
+
+/**
+ * A request that carries the route chosen for it by a {@link RequestDispatcher},
+ * e.g. the {@linkplain Processor#value() name} of the chosen {@link RequestProcessor}. The route is used to group statistics of requests.
+ * <p>
+ * The route is carried by the request itself rather than by the thread that dispatches it, because a {@link RequestDispatcher}
+ * may dispatch a different request on the same stack, e.g. {@link FairRequestDispatcher} may dispatch a queued request
+ * while another request is being dispatched.
+ *
+ * @see stincmale.server.netty4.RequestWithMetadata
+ */
+public interface Routable {
+  /**
+   * Specifies the route of this request. {@link RequestDispatcher}s call this method right before delegating processing of this request
+   * to the chosen {@link RequestProcessor}.
+   */
+  void setRoute(String route);
+
+  /**
+   * @return The {@linkplain #setRoute(String) route} of this request, or {@code null} if the request has not been dispatched yet.
+   */
+  @Nullable
+  String route();
+}
@@ -0,0 +1,39 @@
+package stincmale.server.reqres;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import stincmale.server.netty4.tcp.http.HttpWarmUp;
+import stincmale.server.reqres.spring.SpringRequestDispatcher;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Declares synthetic requests that are used to warm up a {@link stincmale.server.Server} before it starts accepting connections,
+ * so that the code that processes requests is compiled by the JIT compiler before real requests arrive.
+ * A {@link RequestProcessor} annotated with {@code @}{@link Processor} may also be annotated with this annotation,
+ * the requests are {@linkplain SpringRequestDispatcher#detectWarmUpRequests(org.springframework.context.ApplicationContext,
+ * java.util.Collection, boolean) detected} the same way as {@link RequestProcessor}s.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * @Processor("/users/{id}")
+ * @WarmUp("GET /users/1 HTTP/1.1\r\nHost: localhost\r\n\r\n")
+ * final class UserProcessor implements HttpRequestProcessor {
+ *   ...
+ * }
+ * }</pre>
+ *
+ * @see HttpWarmUp
+ */
+@Documented
+@Target({TYPE})
+@Retention(RUNTIME)
+public @interface WarmUp {
+  /**
+   * @return Requests in the wire format of the protocol of the {@link stincmale.server.Server}, e.g. HTTP/1.1 requests.
+   * Requests are sent to the {@link stincmale.server.Server} as is, so they must include
+   * a context path if the {@link RequestDispatcher} uses one.
+   */
+  String[] value();
+}
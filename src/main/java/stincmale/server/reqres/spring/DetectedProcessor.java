@@ -0,0 +1,50 @@
+package stincmale.server.reqres.spring;
+
+import javax.annotation.concurrent.Immutable;
+import stincmale.server.reqres.Processor;
+import stincmale.server.reqres.RequestProcessor;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link RequestProcessor} {@linkplain SpringRequestDispatcher#detectProcessors(org.springframework.context.ApplicationContext,
+ * java.util.Collection, boolean, com.timgroup.statsd.StatsDClient) detected} by {@link SpringRequestDispatcher}
+ * together with its {@code @}{@link Processor} annotation.
+ */
+@Immutable
+public final class DetectedProcessor<RQ, RS> {
+  private final Processor annotation;
+  private final RequestProcessor<RQ, RS> processor;
+
+  DetectedProcessor(final Processor annotation, final RequestProcessor<RQ, RS> processor) {
+    this.annotation = checkNotNull(annotation, "The argument %s must not be null", "annotation");
+    this.processor = checkNotNull(processor, "The argument %s must not be null", "processor");
+  }
+
+  /**
+   * @return {@link Processor#value()}.
+   */
+  public final String name() {
+    return annotation.value();
+  }
+
+  public final Processor annotation() {
+    return annotation;
+  }
+
+  /**
+   * @return The detected {@link RequestProcessor} wrapped as specified by
+   * {@link SpringRequestDispatcher#detectProcessors(org.springframework.context.ApplicationContext, java.util.Collection, boolean,
+   * com.timgroup.statsd.StatsDClient)}.
+   */
+  public final RequestProcessor<RQ, RS> processor() {
+    return processor;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(annotation=" + annotation
+        + ", processor=" + processor
+        + ')';
+  }
+}
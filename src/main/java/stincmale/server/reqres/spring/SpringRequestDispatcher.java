@@ -1,7 +1,9 @@
 package stincmale.server.reqres.spring;
 
 import com.timgroup.statsd.StatsDClient;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
@@ -10,12 +12,19 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import org.springframework.context.annotation.Bean;
+import stincmale.server.reqres.AdmissionLimiter;
+import stincmale.server.reqres.Bulkhead;
+import stincmale.server.reqres.BulkheadRequestProcessor;
+import stincmale.server.reqres.Priority;
 import stincmale.server.reqres.Processor;
 import stincmale.server.reqres.RequestDispatcher;
 import stincmale.server.reqres.RequestDispatcherByProcessorName;
 import stincmale.server.reqres.RequestProcessor;
 import stincmale.server.reqres.RequestProcessorWithStats;
+import stincmale.server.reqres.WarmUp;
+import stincmale.server.util.stats.StatsAggregator;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -36,7 +45,26 @@ public abstract class SpringRequestDispatcher<RQ, RS> extends RequestDispatcherB
       @Nullable final Collection<String> packageNames,
       final boolean searchRecursively,
       @Nullable final StatsDClient statsDClient) {
-    super(getProcessors(appCtx, packageNames, searchRecursively, statsDClient));
+    this(appCtx, packageNames, searchRecursively, statsDClient, null);
+  }
+
+  /**
+   * @param packageNames See {@link #SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   * @param searchRecursively See {@link #SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   * @param admissionLimiter See {@link RequestDispatcherByProcessorName#RequestDispatcherByProcessorName(Map, Map, AdmissionLimiter)}.
+   * {@linkplain Processor#priority() Priorities} of {@link RequestProcessor}s are taken from their {@code @}{@link Processor} annotations.
+   */
+  protected SpringRequestDispatcher(
+      final ApplicationContext appCtx,
+      @Nullable final Collection<String> packageNames,
+      final boolean searchRecursively,
+      @Nullable final StatsDClient statsDClient,
+      @Nullable final AdmissionLimiter admissionLimiter) {
+    this(SpringRequestDispatcher.<RQ, RS>detectProcessors(appCtx, packageNames, searchRecursively, statsDClient), admissionLimiter);
+  }
+
+  private SpringRequestDispatcher(final List<DetectedProcessor<RQ, RS>> detectedProcessors, @Nullable final AdmissionLimiter admissionLimiter) {
+    super(getProcessors(detectedProcessors), getPriorities(detectedProcessors), admissionLimiter);
   }
 
   /*
@@ -65,14 +93,44 @@ public abstract class SpringRequestDispatcher<RQ, RS> extends RequestDispatcherB
     return result;
   }
 
+  private static final <RQ, RS> Map<String, RequestProcessor<RQ, RS>> getProcessors(final List<DetectedProcessor<RQ, RS>> detectedProcessors) {
+    final Map<String, RequestProcessor<RQ, RS>> result = new HashMap<>();
+    detectedProcessors.forEach(detectedProcessor -> result.put(detectedProcessor.name(), detectedProcessor.processor()));
+    return result;
+  }
+
+  private static final Map<String, Priority> getPriorities(final List<? extends DetectedProcessor<?, ?>> detectedProcessors) {
+    final Map<String, Priority> result = new HashMap<>();
+    detectedProcessors.forEach(detectedProcessor -> result.put(detectedProcessor.name(), detectedProcessor.annotation()
+        .priority()));
+    return result;
+  }
+
+  /**
+   * Searches for {@link RequestProcessor}s {@linkplain Bean beans} annotated with {@code @}{@link Processor}
+   * and wraps them into {@link RequestProcessorWithStats}.
+   * {@link RequestProcessor}s with enabled {@linkplain Processor#bulkhead() bulkheads} are then wrapped into {@link BulkheadRequestProcessor}s.
+   * Statistics of both wrappers are named after the class of the {@linkplain Bean bean}.
+   * If the {@code appCtx} has a unique {@link StatsAggregator} {@linkplain Bean bean}, then it is used by {@link RequestProcessorWithStats}s
+   * instead of the {@code statsDClient}.
+   * This method is used by {@link SpringRequestDispatcher} and may be used by other {@link RequestDispatcher}s
+   * that need to detect {@link RequestProcessor}s the same way.
+   *
+   * @param packageNames See {@link #SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   * @param searchRecursively See {@link #SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   */
   @SuppressWarnings("unchecked")
-  private static final <RQ, RS> Map<String, RequestProcessor<RQ, RS>> getProcessors(
+  public static final <RQ, RS> List<DetectedProcessor<RQ, RS>> detectProcessors(
       final ApplicationContext appCtx,
       @Nullable final Collection<String> packageNames,
       final boolean searchRecursively,
       @Nullable final StatsDClient statsDClient) {
     checkNotNull(appCtx, "The argument %s must not be null", "appCtx");
-    final Map<String, RequestProcessor<RQ, RS>> result = new HashMap<>();
+    final List<DetectedProcessor<RQ, RS>> result = new ArrayList<>();
+    final String[] statsAggregatorNames = appCtx.getBeanNamesForType(StatsAggregator.class);
+    @Nullable final StatsAggregator statsAggregator = statsAggregatorNames.length == 1
+        ? appCtx.getBean(statsAggregatorNames[0], StatsAggregator.class)
+        : null;
     appCtx.getBeansWithAnnotation(Processor.class)
         .forEach((beanName, bean) -> {
           if (bean instanceof RequestProcessor) {
@@ -85,9 +143,15 @@ public abstract class SpringRequestDispatcher<RQ, RS> extends RequestDispatcherB
             if (packageNames == null || isInPackages(processorClass, packageNames, searchRecursively)) {
               final Processor processorAnnotation = processorClass.getAnnotation(Processor.class);
               final String processorName = processorAnnotation.value();
-              final RequestProcessorWithStats<RQ, RS> processor
-                  = addStats((RequestProcessor<RQ, RS>)bean, statsDClient, Collections.singleton(String.format("type:%s", processorName)));
-              result.put(processorName, processor);
+              final Collection<String> statsTags = Collections.singleton(String.format("type:%s", processorName));
+              //the bulkhead wraps the statistics, so that the processing time does not include the time spent in the queue of the bulkhead
+              final RequestProcessor<RQ, RS> processor = addBulkhead(
+                  addStats((RequestProcessor<RQ, RS>)bean, statsDClient, statsAggregator, statsTags),
+                  processorAnnotation,
+                  appCtx,
+                  statsDClient,
+                  statsTags);
+              result.add(new DetectedProcessor<>(processorAnnotation, processor));
             }
           } else {
             throw new RuntimeException(String.format(
@@ -99,12 +163,62 @@ public abstract class SpringRequestDispatcher<RQ, RS> extends RequestDispatcherB
     return result;
   }
 
+  /**
+   * Searches for {@link RequestProcessor}s {@linkplain Bean beans} annotated with both {@code @}{@link Processor}
+   * and {@code @}{@link WarmUp}, and collects their {@linkplain WarmUp#value() warm-up requests}.
+   *
+   * @param packageNames See {@link #SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   * @param searchRecursively See {@link #SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   */
+  public static final List<String> detectWarmUpRequests(
+      final ApplicationContext appCtx, @Nullable final Collection<String> packageNames, final boolean searchRecursively) {
+    checkNotNull(appCtx, "The argument %s must not be null", "appCtx");
+    final List<String> result = new ArrayList<>();
+    appCtx.getBeansWithAnnotation(Processor.class)
+        .forEach((beanName, bean) -> {
+          final Class<?> processorClass = bean.getClass();
+          @Nullable final WarmUp warmUp = processorClass.getAnnotation(WarmUp.class);
+          if (warmUp != null && (packageNames == null || isInPackages(processorClass, packageNames, searchRecursively))) {
+            result.addAll(List.of(warmUp.value()));
+          }
+        });
+    return result;
+  }
+
+  private static <RQ, RS> RequestProcessor<RQ, RS> addBulkhead(
+      final RequestProcessor<RQ, RS> processor,
+      final Processor processorAnnotation,
+      final ApplicationContext appCtx,
+      @Nullable final StatsDClient statsDClient,
+      final Collection<String> statsTags) {
+    final Bulkhead bulkhead = processorAnnotation.bulkhead();
+    final RequestProcessor<RQ, RS> result;
+    if (bulkhead.maxConcurrency() > 0) {
+      @Nullable final Executor executor = bulkhead.executor()
+          .isEmpty()
+          ? null
+          : appCtx.getBean(bulkhead.executor(), Executor.class);
+      result = new BulkheadRequestProcessor<>(
+          processor, bulkhead.maxConcurrency(), bulkhead.maxQueueLength(), executor, processorAnnotation.priority(), statsDClient, statsTags);
+    } else {
+      result = processor;
+    }
+    return result;
+  }
+
   private static <RQ, RS> RequestProcessorWithStats<RQ, RS> addStats(
       final RequestProcessor<RQ, RS> processor,
       @Nullable final StatsDClient statsDClient,
+      @Nullable final StatsAggregator statsAggregator,
       final Collection<String> statsTags) {
-    return (processor instanceof RequestProcessorWithStats)
-        ? (RequestProcessorWithStats<RQ, RS>)processor
-        : new RequestProcessorWithStats<>(processor, statsDClient, statsTags);
+    final RequestProcessorWithStats<RQ, RS> result;
+    if (processor instanceof RequestProcessorWithStats) {
+      result = (RequestProcessorWithStats<RQ, RS>)processor;
+    } else if (statsAggregator != null) {
+      result = new RequestProcessorWithStats<>(processor, statsAggregator, statsTags);
+    } else {
+      result = new RequestProcessorWithStats<>(processor, statsDClient, statsTags);
+    }
+    return result;
   }
 }
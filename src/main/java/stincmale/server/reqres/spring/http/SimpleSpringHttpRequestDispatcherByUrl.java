@@ -4,6 +4,7 @@ import com.timgroup.statsd.StatsDClient;
 import stincmale.server.reqres.spring.SpringRequestDispatcher;
 import stincmale.server.netty4.RequestWithMetadata;
 import stincmale.server.netty4.tcp.http.SimpleHttpRequestDispatcherByUrl;
+import stincmale.server.reqres.AdmissionLimiter;
 import stincmale.server.reqres.RequestDispatcher;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
@@ -49,7 +50,27 @@ public class SimpleSpringHttpRequestDispatcherByUrl
       final boolean searchRecursively,
       @Nullable StatsDClient statsDClient,
       final String contextPath) {
-    super(appCtx, packageNames, searchRecursively, statsDClient);
+    this(appCtx, packageNames, searchRecursively, statsDClient, contextPath, null);
+  }
+
+  /**
+   * @param appCtx See {@link #SimpleSpringHttpRequestDispatcherByUrl(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param packageNames See {@link #SimpleSpringHttpRequestDispatcherByUrl(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param searchRecursively See
+   * {@link #SimpleSpringHttpRequestDispatcherByUrl(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param statsDClient See {@link #SimpleSpringHttpRequestDispatcherByUrl(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param contextPath See {@link #SimpleSpringHttpRequestDispatcherByUrl(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param admissionLimiter See
+   * {@link SpringRequestDispatcher#SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient, AdmissionLimiter)}.
+   */
+  public SimpleSpringHttpRequestDispatcherByUrl(
+      final ApplicationContext appCtx,
+      @Nullable final Collection<String> packageNames,
+      final boolean searchRecursively,
+      @Nullable StatsDClient statsDClient,
+      final String contextPath,
+      @Nullable final AdmissionLimiter admissionLimiter) {
+    super(appCtx, packageNames, searchRecursively, statsDClient, admissionLimiter);
     this.urlDispatcher = new InnerUrlDispatcher(contextPath);
   }
 
@@ -0,0 +1,102 @@
+package stincmale.server.reqres.spring.http;
+
+import com.timgroup.statsd.StatsDClient;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.springframework.context.ApplicationContext;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.netty4.tcp.http.HttpRequestDispatcherByRoute;
+import stincmale.server.netty4.tcp.http.HttpRouter;
+import stincmale.server.reqres.AdmissionLimiter;
+import stincmale.server.reqres.Priority;
+import stincmale.server.reqres.Processor;
+import stincmale.server.reqres.RequestDispatcher;
+import stincmale.server.reqres.RequestProcessor;
+import stincmale.server.reqres.spring.DetectedProcessor;
+import stincmale.server.reqres.spring.SpringRequestDispatcher;
+
+/**
+ * This {@link RequestDispatcher} combines the {@linkplain SpringRequestDispatcher#detectProcessors(ApplicationContext, Collection,
+ * boolean, StatsDClient) detection} of {@link RequestProcessor}s used by {@link SpringRequestDispatcher} with
+ * {@link HttpRequestDispatcherByRoute}: {@linkplain Processor#value() names} of {@link RequestProcessor}s are used as route patterns,
+ * and {@link Processor#methods()} are used as methods of routes.
+ * {@linkplain Processor#priority() Priorities} of {@link RequestProcessor}s are taken from their {@code @}{@link Processor} annotations.
+ */
+@ThreadSafe
+public class SpringHttpRequestDispatcherByRoute extends HttpRequestDispatcherByRoute {
+  /**
+   * @param appCtx See
+   * {@link SpringRequestDispatcher#SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   * @param packageNames See
+   * {@link SpringRequestDispatcher#SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   * @param searchRecursively See {@link SpringRequestDispatcher#SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   * @param statsDClient See {@link SpringRequestDispatcher#SpringRequestDispatcher(ApplicationContext, Collection, boolean, StatsDClient)}.
+   * @param contextPath See {@link HttpRequestDispatcherByRoute#HttpRequestDispatcherByRoute(HttpRouter, String)}.
+   */
+  public SpringHttpRequestDispatcherByRoute(
+      final ApplicationContext appCtx,
+      @Nullable final Collection<String> packageNames,
+      final boolean searchRecursively,
+      @Nullable final StatsDClient statsDClient,
+      final String contextPath) {
+    this(appCtx, packageNames, searchRecursively, statsDClient, contextPath, null);
+  }
+
+  /**
+   * @param appCtx See {@link #SpringHttpRequestDispatcherByRoute(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param packageNames See {@link #SpringHttpRequestDispatcherByRoute(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param searchRecursively See
+   * {@link #SpringHttpRequestDispatcherByRoute(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param statsDClient See {@link #SpringHttpRequestDispatcherByRoute(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param contextPath See {@link #SpringHttpRequestDispatcherByRoute(ApplicationContext, Collection, boolean, StatsDClient, String)}.
+   * @param admissionLimiter See {@link HttpRequestDispatcherByRoute#HttpRequestDispatcherByRoute(HttpRouter, String, Map, AdmissionLimiter)}.
+   */
+  public SpringHttpRequestDispatcherByRoute(
+      final ApplicationContext appCtx,
+      @Nullable final Collection<String> packageNames,
+      final boolean searchRecursively,
+      @Nullable final StatsDClient statsDClient,
+      final String contextPath,
+      @Nullable final AdmissionLimiter admissionLimiter) {
+    this(SpringRequestDispatcher.<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>detectProcessors(
+        appCtx, packageNames, searchRecursively, statsDClient), contextPath, admissionLimiter);
+  }
+
+  private SpringHttpRequestDispatcherByRoute(
+      final List<DetectedProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> detectedProcessors,
+      final String contextPath,
+      @Nullable final AdmissionLimiter admissionLimiter) {
+    super(buildRouter(detectedProcessors), contextPath, getPriorities(detectedProcessors), admissionLimiter);
+  }
+
+  private static final HttpRouter<RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> buildRouter(
+      final List<DetectedProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> detectedProcessors) {
+    final HttpRouter.Builder<RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> result = HttpRouter.builder();
+    for (final DetectedProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> detectedProcessor : detectedProcessors) {
+      result.add(
+          detectedProcessor.name(),
+          Arrays.stream(detectedProcessor.annotation()
+              .methods())
+              .map(HttpMethod::valueOf)
+              .collect(Collectors.toList()),
+          detectedProcessor.processor());
+    }
+    return result.build();
+  }
+
+  private static final Map<RequestProcessor<?, ?>, Priority> getPriorities(final List<? extends DetectedProcessor<?, ?>> detectedProcessors) {
+    final Map<RequestProcessor<?, ?>, Priority> result = new IdentityHashMap<>();
+    detectedProcessors.forEach(detectedProcessor -> result.put(detectedProcessor.processor(), detectedProcessor.annotation()
+        .priority()));
+    return result;
+  }
+}
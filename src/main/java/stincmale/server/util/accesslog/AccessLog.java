@@ -0,0 +1,299 @@
+package stincmale.server.util.accesslog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An access log that {@linkplain #append(long, long, int, long, CharSequence, CharSequence) appends} fixed-size binary records
+ * to memory-mapped segment files, which may be converted to text by {@link AccessLogDecoder}.
+ * <p>
+ * Appending is lock-free and may be done concurrently by multiple threads: a thread claims a record in the current segment
+ * by atomically incrementing the position of the segment, writes the fields of the record, and then publishes the record by writing
+ * its {@linkplain #RECORD_MAGIC marker} with the release semantics, so a reader never observes a partially written record as complete.
+ * Appending neither formats strings nor performs I/O: writing the data to the disk is done by the operating system,
+ * and the next segment is created and mapped in advance by the {@code executor}. If the next segment is not ready when the current one
+ * is full, then records are {@linkplain #getDroppedCount() dropped} instead of blocking.
+ * <p>
+ * Segment files are named {@code <prefix>-<index>.bin}, where the index is a zero-padded sequence number of the segment.
+ * Besides the current and the next segments, only the specified number of the most recently filled segments are retained,
+ * older segments are deleted.
+ * <p>
+ * The format of a segment (all numbers are little-endian):
+ * <ul>
+ *   <li>header of {@value #HEADER_SIZE} bytes: {@code int} {@link #SEGMENT_MAGIC}, {@code int} {@link #VERSION},
+ *   {@code int} record size, {@code int} number of records, {@code long} segment index;</li>
+ *   <li>records of {@value #RECORD_SIZE} bytes: {@code int} {@link #RECORD_MAGIC} (0 if the record is not published),
+ *   {@code int} status, {@code long} timestamp in milliseconds since the epoch, {@code long} latency in nanoseconds,
+ *   {@code long} response size in bytes, {@code byte} length and {@value #ADDRESS_CAPACITY} bytes of the US-ASCII client address,
+ *   {@code byte} length and {@value #ROUTE_CAPACITY} bytes of the US-ASCII route.</li>
+ * </ul>
+ * Characters that are not US-ASCII are replaced with {@code '?'}, strings that are too long are truncated.
+ */
+@ThreadSafe
+public final class AccessLog implements Closeable {
+  public static final int SEGMENT_MAGIC = 0x534c4341;//"ACLS" in little-endian
+  public static final int RECORD_MAGIC = 0x52434341;//"ACCR" in little-endian
+  public static final int VERSION = 1;
+  public static final int HEADER_SIZE = 32;
+  public static final int RECORD_SIZE = 128;
+  static final int ADDRESS_CAPACITY = 45;
+  static final int ROUTE_CAPACITY = 46;
+  static final int MAGIC_OFFSET = 0;
+  static final int STATUS_OFFSET = 4;
+  static final int TIMESTAMP_OFFSET = 8;
+  static final int LATENCY_OFFSET = 16;
+  static final int BYTES_OFFSET = 24;
+  static final int ADDRESS_OFFSET = 32;
+  static final int ROUTE_OFFSET = ADDRESS_OFFSET + 1 + ADDRESS_CAPACITY;
+  static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+  private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class, BYTE_ORDER);
+  private static final Logger logger = LoggerFactory.getLogger(AccessLog.class);
+
+  private final Path directory;
+  private final String prefix;
+  private final int recordsPerSegment;
+  private final int retainedSegments;
+  private final Executor executor;
+  private final AtomicReference<Segment> current;
+  private final AtomicReference<Segment> next;
+  private final LongAdder droppedCount;
+  /**
+   * Guards {@link #closed} against creating the next segment concurrently with {@linkplain #close() closing}.
+   */
+  private final Object closeMutex;
+  private volatile boolean closed;
+
+  /**
+   * @param directory A directory where segment files are created. Existing segments with the same {@code prefix} are retained,
+   * and new segments continue their sequence.
+   * @param recordsPerSegment The number of records in a segment. Must be positive.
+   * @param retainedSegments The number of the most recently filled segments that are retained. Must be positive.
+   * @param executor An {@link Executor} that is used to create, map, flush and delete segments.
+   *
+   * @throws UncheckedIOException If the first segment cannot be created.
+   */
+  public AccessLog(
+      final Path directory, final String prefix, final int recordsPerSegment, final int retainedSegments, final Executor executor) {
+    checkNotNull(directory, "The argument %s must not be null", "directory");
+    checkNotNull(prefix, "The argument %s must not be null", "prefix");
+    checkArgument(recordsPerSegment > 0, "The argument %s must be positive", "recordsPerSegment");
+    checkArgument(retainedSegments > 0, "The argument %s must be positive", "retainedSegments");
+    checkNotNull(executor, "The argument %s must not be null", "executor");
+    this.directory = directory;
+    this.prefix = prefix;
+    this.recordsPerSegment = recordsPerSegment;
+    this.retainedSegments = retainedSegments;
+    this.executor = executor;
+    closeMutex = new Object();
+    current = new AtomicReference<>(createSegment(lastSegmentIndex() + 1));
+    next = new AtomicReference<>();
+    droppedCount = new LongAdder();
+    prepareNextSegment(current.get().index + 1);
+  }
+
+  /**
+   * Appends a record. Does nothing if the {@link AccessLog} is {@linkplain #close() closed}.
+   *
+   * @param timestampMillis The instant the request was received, in milliseconds since the epoch.
+   * @param latencyNanos The time it took to respond, or -1 if unknown.
+   * @param status The status of the response, e.g. the HTTP status code.
+   * @param responseBytes The size of the response, or -1 if unknown.
+   * @param route The route of the request, see {@link stincmale.server.netty4.tcp.RequestTimings#route()}.
+   * @param clientAddress The address of the client.
+   *
+   * @return {@code false} if the record was {@linkplain #getDroppedCount() dropped}.
+   */
+  public final boolean append(
+      final long timestampMillis,
+      final long latencyNanos,
+      final int status,
+      final long responseBytes,
+      @Nullable final CharSequence route,
+      @Nullable final CharSequence clientAddress) {
+    boolean result = false;
+    while (!closed) {
+      final Segment segment = current.get();
+      final int recordIdx = segment.position.getAndIncrement();
+      if (recordIdx >= 0 && recordIdx < recordsPerSegment) {
+        final MappedByteBuffer buffer = segment.buffer;
+        final int offset = HEADER_SIZE + recordIdx * RECORD_SIZE;
+        buffer.putInt(offset + STATUS_OFFSET, status);
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestampMillis);
+        buffer.putLong(offset + LATENCY_OFFSET, latencyNanos);
+        buffer.putLong(offset + BYTES_OFFSET, responseBytes);
+        putAscii(buffer, offset + ADDRESS_OFFSET, ADDRESS_CAPACITY, clientAddress);
+        putAscii(buffer, offset + ROUTE_OFFSET, ROUTE_CAPACITY, route);
+        INT_VIEW.setRelease(buffer, offset + MAGIC_OFFSET, RECORD_MAGIC);
+        result = true;
+        break;
+      } else {//the segment is full
+        @Nullable final Segment nextSegment = next.get();
+        if (nextSegment == null) {
+          segment.position.set(recordsPerSegment);//prevents the position from overflowing
+          break;
+        } else if (nextSegment.index <= segment.index) {//another thread has just made the next segment current and is about to clear next
+          Thread.onSpinWait();
+        } else if (current.compareAndSet(segment, nextSegment)) {//only the thread that makes the next segment current clears next
+          next.compareAndSet(nextSegment, null);
+          prepareNextSegment(nextSegment.index + 1);
+          retire(segment);
+        }//otherwise another thread has made the next segment current, so we retry with it
+      }
+    }
+    if (!result) {
+      droppedCount.increment();
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of records that were not {@linkplain #append(long, long, int, long, CharSequence, CharSequence) appended}
+   * because the next segment was not ready, or the {@link AccessLog} was {@linkplain #close() closed}.
+   */
+  public final long getDroppedCount() {
+    return droppedCount.sum();
+  }
+
+  /**
+   * Flushes the current segment to the disk and deletes the next segment if it was prepared,
+   * no segments are created after closing. Records that are being appended concurrently with closing may be lost.
+   */
+  @Override
+  public final void close() {
+    synchronized (closeMutex) {
+      closed = true;
+    }
+    current.get().buffer
+        .force();
+    @Nullable final Segment unused = next.getAndSet(null);
+    if (unused != null) {
+      try {
+        Files.deleteIfExists(segmentFile(unused.index));
+      } catch (final IOException e) {
+        logger.warn("Failed to delete the unused segment {} of {}", unused.index, this, e);
+      }
+    }
+  }
+
+  private static final void putAscii(final MappedByteBuffer buffer, final int offset, final int capacity, @Nullable final CharSequence s) {
+    final int length = s == null ? 0 : Math.min(s.length(), capacity);
+    buffer.put(offset, (byte)length);
+    for (int i = 0; i < length; i++) {
+      final char c = s.charAt(i);
+      buffer.put(offset + 1 + i, c < 0x80 ? (byte)c : (byte)'?');
+    }
+  }
+
+  private final void prepareNextSegment(final long index) {
+    try {
+      executor.execute(() -> {
+        try {
+          synchronized (closeMutex) {
+            if (!closed) {
+              next.set(createSegment(index));
+            }
+          }
+        } catch (final RuntimeException e) {
+          logger.error("Failed to prepare the segment {} of {}", index, this, e);
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      logger.error("Failed to prepare the segment {} of {}", index, this, e);
+    }
+  }
+
+  private final void retire(final Segment segment) {
+    try {
+      executor.execute(() -> {
+        try {
+          segment.buffer.force();
+          Files.deleteIfExists(segmentFile(segment.index - retainedSegments));
+        } catch (final IOException | RuntimeException e) {
+          logger.error("Failed to retire the segment {} of {}", segment.index, this, e);
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      logger.error("Failed to retire the segment {} of {}", segment.index, this, e);
+    }
+  }
+
+  private final Segment createSegment(final long index) {
+    final Path file = segmentFile(index);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)recordsPerSegment * RECORD_SIZE);
+      buffer.order(BYTE_ORDER);
+      buffer.putInt(0, SEGMENT_MAGIC);
+      buffer.putInt(4, VERSION);
+      buffer.putInt(8, RECORD_SIZE);
+      buffer.putInt(12, recordsPerSegment);
+      buffer.putLong(16, index);
+      return new Segment(index, buffer);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private final long lastSegmentIndex() {
+    long result = -1;
+    try (var files = Files.newDirectoryStream(directory, prefix + "-*.bin")) {
+      for (final Path file : files) {
+        final String fileName = file.getFileName()
+            .toString();
+        try {
+          result = Math.max(result, Long.parseLong(fileName, prefix.length() + 1, fileName.length() - ".bin".length(), 10));
+        } catch (final NumberFormatException e) {
+          //not a segment
+        }
+      }
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return result;
+  }
+
+  private final Path segmentFile(final long index) {
+    return directory.resolve(String.format("%s-%019d.bin", prefix, index));
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(directory=" + directory
+        + ", prefix=" + prefix
+        + ", recordsPerSegment=" + recordsPerSegment
+        + ", retainedSegments=" + retainedSegments
+        + ')';
+  }
+
+  private static final class Segment {
+    private final long index;
+    private final MappedByteBuffer buffer;
+    private final AtomicInteger position;
+
+    private Segment(final long index, final MappedByteBuffer buffer) {
+      this.index = index;
+      this.buffer = buffer;
+      position = new AtomicInteger();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package stincmale.server.util.accesslog;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static stincmale.server.util.accesslog.AccessLog.ADDRESS_OFFSET;
+import static stincmale.server.util.accesslog.AccessLog.BYTES_OFFSET;
+import static stincmale.server.util.accesslog.AccessLog.BYTE_ORDER;
+import static stincmale.server.util.accesslog.AccessLog.HEADER_SIZE;
+import static stincmale.server.util.accesslog.AccessLog.LATENCY_OFFSET;
+import static stincmale.server.util.accesslog.AccessLog.MAGIC_OFFSET;
+import static stincmale.server.util.accesslog.AccessLog.RECORD_MAGIC;
+import static stincmale.server.util.accesslog.AccessLog.ROUTE_OFFSET;
+import static stincmale.server.util.accesslog.AccessLog.SEGMENT_MAGIC;
+import static stincmale.server.util.accesslog.AccessLog.STATUS_OFFSET;
+import static stincmale.server.util.accesslog.AccessLog.TIMESTAMP_OFFSET;
+import static stincmale.server.util.accesslog.AccessLog.VERSION;
+
+/**
+ * Converts segments of {@link AccessLog} to text, one line per published record with tab-separated fields:
+ * timestamp (ISO-8601), client address, route, status, response size in bytes, latency in nanoseconds.
+ * Unknown values are represented by {@code -}.
+ * <p>
+ * Usage: {@code java stincmale.server.util.accesslog.AccessLogDecoder <segment file>...}, the text is printed to the standard output.
+ */
+public final class AccessLogDecoder {
+  private static final String UNKNOWN = "-";
+
+  public static final void main(final String... args) throws IOException {
+    final PrintStream out = System.out;
+    for (final String arg : args) {
+      decode(Paths.get(arg), out);
+    }
+    out.flush();
+  }
+
+  /**
+   * Decodes all published records of the {@code segment} in the order they were claimed.
+   *
+   * @return The number of decoded records.
+   *
+   * @throws IOException If the {@code segment} cannot be read, or is not a segment of {@link AccessLog}.
+   */
+  public static final int decode(final Path segment, final Appendable out) throws IOException {
+    checkNotNull(segment, "The argument %s must not be null", "segment");
+    checkNotNull(out, "The argument %s must not be null", "out");
+    final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment))
+        .order(BYTE_ORDER);
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != SEGMENT_MAGIC) {
+      throw new IOException(String.format("%s is not a segment of %s", segment, AccessLog.class.getSimpleName()));
+    }
+    final int version = buffer.getInt(4);
+    if (version != VERSION) {
+      throw new IOException(String.format("The version %s of the segment %s is not supported", version, segment));
+    }
+    final int recordSize = buffer.getInt(8);
+    final int records = buffer.getInt(12);
+    int result = 0;
+    for (int i = 0; i < records; i++) {
+      final int offset = HEADER_SIZE + i * recordSize;
+      if (offset + recordSize > buffer.limit()) {
+        break;
+      }
+      if (buffer.getInt(offset + MAGIC_OFFSET) == RECORD_MAGIC) {
+        final StringBuilder line = new StringBuilder(128);
+        line.append(Instant.ofEpochMilli(buffer.getLong(offset + TIMESTAMP_OFFSET)))
+            .append('\t');
+        appendAscii(buffer, offset + ADDRESS_OFFSET, line).append('\t');
+        appendAscii(buffer, offset + ROUTE_OFFSET, line).append('\t');
+        line.append(buffer.getInt(offset + STATUS_OFFSET))
+            .append('\t');
+        appendKnown(buffer.getLong(offset + BYTES_OFFSET), line).append('\t');
+        appendKnown(buffer.getLong(offset + LATENCY_OFFSET), line).append('\n');
+        out.append(line);
+        result++;
+      }
+    }
+    return result;
+  }
+
+  private static final StringBuilder appendAscii(final ByteBuffer buffer, final int offset, final StringBuilder sb) {
+    final int length = buffer.get(offset) & 0xff;
+    if (length == 0) {
+      sb.append(UNKNOWN);
+    } else {
+      sb.append(new String(buffer.array(), offset + 1, length, StandardCharsets.US_ASCII));
+    }
+    return sb;
+  }
+
+  private static final StringBuilder appendKnown(final long value, final StringBuilder sb) {
+    return value < 0 ? sb.append(UNKNOWN) : sb.append(value);
+  }
+
+  private AccessLogDecoder() {
+    throw new UnsupportedOperationException("This class is not designed to be instantiated");
+  }
+}
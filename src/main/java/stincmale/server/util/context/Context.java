@@ -0,0 +1,248 @@
+package stincmale.server.util.context;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.slf4j.MDC;
+import stincmale.server.util.logging.MdcAccess;
+import stincmale.server.util.logging.TransferableMdc;
+import stincmale.server.util.tracing.Trace;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An immutable snapshot of the execution context of a {@linkplain Thread thread} that is propagated across asynchronous boundaries,
+ * e.g. from the thread that submits a task to the thread that executes it, or from the thread that registers a callback
+ * on a {@link CompletionStage} to the thread that executes the callback. The context consists of
+ * <ul>
+ *   <li>the context map of {@link MDC};</li>
+ *   <li>the {@linkplain #deadlineNanos() deadline} of the work;</li>
+ *   <li>the {@linkplain #trace() trace} of a sampled request.</li>
+ * </ul>
+ * <p>
+ * Unlike {@link TransferableMdc}, a {@link Context} is immutable and may be {@linkplain #attach() attached} any number of times,
+ * including concurrently by different threads, so a single snapshot may be used for all stages of processing a request.
+ * Capturing the {@linkplain #current() current} context does not copy the context map of {@link MDC}
+ * if the {@link MDC} binding allows this (see {@link MdcAccess}), and returns the same object as long as the context does not change.
+ * <p>
+ * <b>Usage examples.</b>
+ * <pre>{@code
+ * Context context = Context.current();
+ * executor.execute(() -> {
+ *  try (var scope = context.attach()) {
+ *      logger.info("This call can access the context map of MDC of the outer thread");
+ *  }
+ * });
+ * }</pre>
+ * The same may be achieved without writing the boilerplate:
+ * <pre>{@code
+ * Executor propagatingExecutor = Context.propagating(executor);
+ * propagatingExecutor.execute(() -> logger.info("This call can access the context map of MDC of the outer thread"));
+ * Context.propagating(futureResponse)
+ *     .thenAccept(response -> logger.info("This call can access the context map of MDC of the thread that registered it"));
+ * }</pre>
+ */
+@Immutable
+public final class Context {
+  private static final long NO_DEADLINE = Long.MAX_VALUE;
+  private static final Context EMPTY = new Context(Collections.emptyMap(), false, NO_DEADLINE, null);
+  /**
+   * The most recently {@linkplain #attach() attached} or {@linkplain #current() captured} {@link Context} of the thread.
+   * Its {@link #mdc} may be stale because the context map of {@link MDC} may be changed directly,
+   * so {@link #current()} must compare it with the actual context map.
+   */
+  private static final ThreadLocal<Context> threadContext = ThreadLocal.withInitial(() -> EMPTY);
+
+  private final Map<String, String> mdc;
+  private final boolean hasDeadline;
+  private final long deadlineNanos;
+  @Nullable
+  private final Trace trace;
+
+  private Context(final Map<String, String> mdc, final boolean hasDeadline, final long deadlineNanos, @Nullable final Trace trace) {
+    this.mdc = mdc;
+    this.hasDeadline = hasDeadline;
+    this.deadlineNanos = deadlineNanos;
+    this.trace = trace;
+  }
+
+  /**
+   * @return The {@link Context} of the current {@linkplain Thread thread}.
+   */
+  public static final Context current() {
+    final Map<String, String> currentMdc = MdcAccess.instance()
+        .capture();
+    Context result = threadContext.get();
+    if (result.mdc != currentMdc) {
+      result = result.hasDeadline || result.trace != null || !currentMdc.isEmpty()
+          ? new Context(currentMdc, result.hasDeadline, result.deadlineNanos, result.trace)
+          : EMPTY;
+      threadContext.set(result);
+    }
+    return result;
+  }
+
+  /**
+   * @return An {@link Executor} that {@linkplain #attach() attaches} the {@linkplain #current() current} {@link Context}
+   * of the thread that {@linkplain Executor#execute(Runnable) submits} a task while the task is being executed.
+   */
+  public static final Executor propagating(final Executor executor) {
+    checkNotNull(executor, "The argument %s must not be null", "executor");
+    return executor instanceof PropagatingExecutor ? executor : new PropagatingExecutor(executor);
+  }
+
+  /**
+   * @return A {@link CompletionStage} that {@linkplain #attach() attaches} the {@linkplain #current() current} {@link Context}
+   * of the thread that registers a callback while the callback is being executed. {@link CompletionStage}s returned by methods
+   * of the returned {@link CompletionStage} behave the same way, except for {@link CompletionStage#toCompletableFuture()}.
+   */
+  public static final <T> CompletionStage<T> propagating(final CompletionStage<T> stage) {
+    checkNotNull(stage, "The argument %s must not be null", "stage");
+    return stage instanceof PropagatingCompletionStage ? stage : new PropagatingCompletionStage<>(stage);
+  }
+
+  /**
+   * @return An unmodifiable snapshot of the context map of {@link MDC}.
+   */
+  public final Map<String, String> mdc() {
+    return mdc;
+  }
+
+  /**
+   * @return {@code true} if the {@link Context} has a {@linkplain #deadlineNanos() deadline}.
+   */
+  public final boolean hasDeadline() {
+    return hasDeadline;
+  }
+
+  /**
+   * @return The deadline in terms of {@link System#nanoTime()}, or {@link Long#MAX_VALUE} if there is {@linkplain #hasDeadline() no deadline}.
+   */
+  public final long deadlineNanos() {
+    return deadlineNanos;
+  }
+
+  /**
+   * @return The number of nanoseconds remaining until the {@linkplain #deadlineNanos() deadline}, which is not positive
+   * if the deadline has passed, or {@link Long#MAX_VALUE} if there is {@linkplain #hasDeadline() no deadline}.
+   */
+  public final long remainingNanos() {
+    return hasDeadline ? deadlineNanos - System.nanoTime() : NO_DEADLINE;
+  }
+
+  /**
+   * @return {@code true} if the {@linkplain #deadlineNanos() deadline} has passed.
+   */
+  public final boolean isExpired() {
+    return hasDeadline && deadlineNanos - System.nanoTime() <= 0;
+  }
+
+  @Nullable
+  public final Trace trace() {
+    return trace;
+  }
+
+  /**
+   * @param timeoutNanos The number of nanoseconds from now until the deadline. Must not be negative.
+   *
+   * @return A {@link Context} with the deadline that is the earliest of the existing {@linkplain #deadlineNanos() deadline}
+   * and the one specified by the {@code timeoutNanos}.
+   */
+  public final Context withTimeout(final long timeoutNanos) {
+    checkArgument(timeoutNanos >= 0, "The argument %s must not be negative", "timeoutNanos");
+    final long newDeadlineNanos = System.nanoTime() + timeoutNanos;
+    return hasDeadline && deadlineNanos - newDeadlineNanos <= 0
+        ? this
+        : new Context(mdc, true, newDeadlineNanos, trace);
+  }
+
+  /**
+   * @param trace {@code null} if there is no trace.
+   *
+   * @return A {@link Context} with the specified {@code trace}.
+   */
+  public final Context withTrace(@Nullable final Trace trace) {
+    return this.trace == trace
+        ? this
+        : new Context(mdc, hasDeadline, deadlineNanos, trace);
+  }
+
+  /**
+   * Makes this {@link Context} the context of the current {@linkplain Thread thread} and retains the original context,
+   * which is restored when the returned {@link Scope} is {@linkplain Scope#close() closed}.
+   * Neither attaching nor restoring changes {@link MDC} if its context map is the same as the one to be set.
+   *
+   * @return A {@link Scope} that must be {@linkplain Scope#close() closed} by the same thread, e.g. via the try-with-resources statement.
+   */
+  public final Scope attach() {
+    final Context previous = current();
+    final Scope result;
+    if (previous == this) {
+      result = Scope.NOOP;
+    } else {
+      if (previous.mdc != mdc) {
+        MdcAccess.instance()
+            .restore(mdc);
+      }
+      threadContext.set(this);
+      result = new Scope(previous);
+    }
+    return result;
+  }
+
+  /**
+   * Executes the {@code action} while this {@link Context} is {@linkplain #attach() attached}.
+   */
+  public final void run(final Runnable action) {
+    try (var scope = attach()) {
+      action.run();
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(mdc=" + mdc
+        + ", deadlineNanos=" + (hasDeadline ? deadlineNanos : "none")
+        + ", trace=" + trace
+        + ')';
+  }
+
+  /**
+   * The result of {@linkplain #attach() attaching} a {@link Context}.
+   */
+  public static final class Scope implements AutoCloseable {
+    private static final Scope NOOP = new Scope(null);
+
+    @Nullable
+    private final Context previous;
+
+    private Scope(@Nullable final Context previous) {
+      this.previous = previous;
+    }
+
+    /**
+     * Restores the {@link Context} that was current before {@linkplain #attach() attaching}.
+     */
+    @Override
+    public final void close() {
+      if (previous != null) {
+        final MdcAccess mdcAccess = MdcAccess.instance();
+        if (mdcAccess.capture() != previous.mdc) {
+          mdcAccess.restore(previous.mdc);
+        }
+        threadContext.set(previous);
+      }
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName()
+          + "(previous=" + previous
+          + ')';
+    }
+  }
+}
@@ -0,0 +1,277 @@
+package stincmale.server.util.context;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * See {@link Context#propagating(CompletionStage)}.
+ */
+@ThreadSafe
+final class PropagatingCompletionStage<T> implements CompletionStage<T> {
+  private final CompletionStage<T> stage;
+
+  PropagatingCompletionStage(final CompletionStage<T> stage) {
+    this.stage = stage;
+  }
+
+  @Override
+  public final <U> CompletionStage<U> thenApply(final Function<? super T, ? extends U> fn) {
+    return new PropagatingCompletionStage<>(stage.thenApply(propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> thenApplyAsync(final Function<? super T, ? extends U> fn) {
+    return new PropagatingCompletionStage<>(stage.thenApplyAsync(propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> thenApplyAsync(final Function<? super T, ? extends U> fn, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.thenApplyAsync(propagatingFunction(fn), executor));
+  }
+
+  @Override
+  public final CompletionStage<Void> thenAccept(final Consumer<? super T> action) {
+    return new PropagatingCompletionStage<>(stage.thenAccept(propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> thenAcceptAsync(final Consumer<? super T> action) {
+    return new PropagatingCompletionStage<>(stage.thenAcceptAsync(propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> thenAcceptAsync(final Consumer<? super T> action, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.thenAcceptAsync(propagatingAction(action), executor));
+  }
+
+  @Override
+  public final CompletionStage<Void> thenRun(final Runnable action) {
+    return new PropagatingCompletionStage<>(stage.thenRun(propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> thenRunAsync(final Runnable action) {
+    return new PropagatingCompletionStage<>(stage.thenRunAsync(propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> thenRunAsync(final Runnable action, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.thenRunAsync(propagatingAction(action), executor));
+  }
+
+  @Override
+  public final <U, V> CompletionStage<V> thenCombine(
+      final CompletionStage<? extends U> other, final BiFunction<? super T, ? super U, ? extends V> fn) {
+    return new PropagatingCompletionStage<>(stage.thenCombine(other, propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U, V> CompletionStage<V> thenCombineAsync(
+      final CompletionStage<? extends U> other, final BiFunction<? super T, ? super U, ? extends V> fn) {
+    return new PropagatingCompletionStage<>(stage.thenCombineAsync(other, propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U, V> CompletionStage<V> thenCombineAsync(
+      final CompletionStage<? extends U> other, final BiFunction<? super T, ? super U, ? extends V> fn, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.thenCombineAsync(other, propagatingFunction(fn), executor));
+  }
+
+  @Override
+  public final <U> CompletionStage<Void> thenAcceptBoth(final CompletionStage<? extends U> other, final BiConsumer<? super T, ? super U> action) {
+    return new PropagatingCompletionStage<>(stage.thenAcceptBoth(other, propagatingAction(action)));
+  }
+
+  @Override
+  public final <U> CompletionStage<Void> thenAcceptBothAsync(
+      final CompletionStage<? extends U> other, final BiConsumer<? super T, ? super U> action) {
+    return new PropagatingCompletionStage<>(stage.thenAcceptBothAsync(other, propagatingAction(action)));
+  }
+
+  @Override
+  public final <U> CompletionStage<Void> thenAcceptBothAsync(
+      final CompletionStage<? extends U> other, final BiConsumer<? super T, ? super U> action, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.thenAcceptBothAsync(other, propagatingAction(action), executor));
+  }
+
+  @Override
+  public final CompletionStage<Void> runAfterBoth(final CompletionStage<?> other, final Runnable action) {
+    return new PropagatingCompletionStage<>(stage.runAfterBoth(other, propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> runAfterBothAsync(final CompletionStage<?> other, final Runnable action) {
+    return new PropagatingCompletionStage<>(stage.runAfterBothAsync(other, propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> runAfterBothAsync(final CompletionStage<?> other, final Runnable action, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.runAfterBothAsync(other, propagatingAction(action), executor));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> applyToEither(final CompletionStage<? extends T> other, final Function<? super T, U> fn) {
+    return new PropagatingCompletionStage<>(stage.applyToEither(other, propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> applyToEitherAsync(final CompletionStage<? extends T> other, final Function<? super T, U> fn) {
+    return new PropagatingCompletionStage<>(stage.applyToEitherAsync(other, propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> applyToEitherAsync(
+      final CompletionStage<? extends T> other, final Function<? super T, U> fn, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.applyToEitherAsync(other, propagatingFunction(fn), executor));
+  }
+
+  @Override
+  public final CompletionStage<Void> acceptEither(final CompletionStage<? extends T> other, final Consumer<? super T> action) {
+    return new PropagatingCompletionStage<>(stage.acceptEither(other, propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> acceptEitherAsync(final CompletionStage<? extends T> other, final Consumer<? super T> action) {
+    return new PropagatingCompletionStage<>(stage.acceptEitherAsync(other, propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> acceptEitherAsync(
+      final CompletionStage<? extends T> other, final Consumer<? super T> action, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.acceptEitherAsync(other, propagatingAction(action), executor));
+  }
+
+  @Override
+  public final CompletionStage<Void> runAfterEither(final CompletionStage<?> other, final Runnable action) {
+    return new PropagatingCompletionStage<>(stage.runAfterEither(other, propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> runAfterEitherAsync(final CompletionStage<?> other, final Runnable action) {
+    return new PropagatingCompletionStage<>(stage.runAfterEitherAsync(other, propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<Void> runAfterEitherAsync(final CompletionStage<?> other, final Runnable action, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.runAfterEitherAsync(other, propagatingAction(action), executor));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> thenCompose(final Function<? super T, ? extends CompletionStage<U>> fn) {
+    return new PropagatingCompletionStage<>(stage.thenCompose(propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> thenComposeAsync(final Function<? super T, ? extends CompletionStage<U>> fn) {
+    return new PropagatingCompletionStage<>(stage.thenComposeAsync(propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> thenComposeAsync(final Function<? super T, ? extends CompletionStage<U>> fn, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.thenComposeAsync(propagatingFunction(fn), executor));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> handle(final BiFunction<? super T, Throwable, ? extends U> fn) {
+    return new PropagatingCompletionStage<>(stage.handle(propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> handleAsync(final BiFunction<? super T, Throwable, ? extends U> fn) {
+    return new PropagatingCompletionStage<>(stage.handleAsync(propagatingFunction(fn)));
+  }
+
+  @Override
+  public final <U> CompletionStage<U> handleAsync(final BiFunction<? super T, Throwable, ? extends U> fn, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.handleAsync(propagatingFunction(fn), executor));
+  }
+
+  @Override
+  public final CompletionStage<T> whenComplete(final BiConsumer<? super T, ? super Throwable> action) {
+    return new PropagatingCompletionStage<>(stage.whenComplete(propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<T> whenCompleteAsync(final BiConsumer<? super T, ? super Throwable> action) {
+    return new PropagatingCompletionStage<>(stage.whenCompleteAsync(propagatingAction(action)));
+  }
+
+  @Override
+  public final CompletionStage<T> whenCompleteAsync(final BiConsumer<? super T, ? super Throwable> action, final Executor executor) {
+    return new PropagatingCompletionStage<>(stage.whenCompleteAsync(propagatingAction(action), executor));
+  }
+
+  @Override
+  public final CompletionStage<T> exceptionally(final Function<Throwable, ? extends T> fn) {
+    return new PropagatingCompletionStage<>(stage.exceptionally(propagatingFunction(fn)));
+  }
+
+  /**
+   * @return {@link CompletionStage#toCompletableFuture()} of the underlying {@link CompletionStage},
+   * which does not propagate {@link Context}.
+   */
+  @Override
+  public final CompletableFuture<T> toCompletableFuture() {
+    return stage.toCompletableFuture();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(stage=" + stage
+        + ')';
+  }
+
+  private static final <T, U> Function<T, U> propagatingFunction(final Function<? super T, ? extends U> fn) {
+    checkNotNull(fn, "The argument %s must not be null", "fn");
+    final Context context = Context.current();
+    return t -> {
+      try (var scope = context.attach()) {
+        return fn.apply(t);
+      }
+    };
+  }
+
+  private static final <T, U, V> BiFunction<T, U, V> propagatingFunction(final BiFunction<? super T, ? super U, ? extends V> fn) {
+    checkNotNull(fn, "The argument %s must not be null", "fn");
+    final Context context = Context.current();
+    return (t, u) -> {
+      try (var scope = context.attach()) {
+        return fn.apply(t, u);
+      }
+    };
+  }
+
+  private static final <T> Consumer<T> propagatingAction(final Consumer<? super T> action) {
+    checkNotNull(action, "The argument %s must not be null", "action");
+    final Context context = Context.current();
+    return t -> {
+      try (var scope = context.attach()) {
+        action.accept(t);
+      }
+    };
+  }
+
+  private static final <T, U> BiConsumer<T, U> propagatingAction(final BiConsumer<? super T, ? super U> action) {
+    checkNotNull(action, "The argument %s must not be null", "action");
+    final Context context = Context.current();
+    return (t, u) -> {
+      try (var scope = context.attach()) {
+        action.accept(t, u);
+      }
+    };
+  }
+
+  private static final Runnable propagatingAction(final Runnable action) {
+    checkNotNull(action, "The argument %s must not be null", "action");
+    final Context context = Context.current();
+    return () -> context.run(action);
+  }
+}
@@ -0,0 +1,31 @@
+package stincmale.server.util.context;
+
+import java.util.concurrent.Executor;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * See {@link Context#propagating(Executor)}.
+ */
+@ThreadSafe
+final class PropagatingExecutor implements Executor {
+  private final Executor executor;
+
+  PropagatingExecutor(final Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public final void execute(final Runnable command) {
+    checkNotNull(command, "The argument %s must not be null", "command");
+    final Context context = Context.current();
+    executor.execute(() -> context.run(command));
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(executor=" + executor
+        + ')';
+  }
+}
@@ -0,0 +1,289 @@
+package stincmale.server.util.logging;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Logs failures with the error level in a way that is suitable for failures that may happen at a high rate,
+ * e.g. failures of requests during an outage of a downstream service.
+ * <p>
+ * Failures are grouped by fingerprints, which consist of the class of a failure and a few top frames of its stack trace.
+ * Only the first {@code fullLogsPerPeriod} failures with the same fingerprint within a period are logged in full, i.e. with the message
+ * and the stack trace, the rest are counted, and the counts are logged once per period. The number of distinct fingerprints
+ * that are tracked is limited, failures with fingerprints that do not fit are only counted.
+ * A message is formatted only if the failure is logged in full.
+ * <p>
+ * Counts are {@linkplain #report() reported} once per period by a task scheduled with the {@link ScheduledExecutorService}
+ * specified via {@link #FailureLogger(Logger, int, long, int, int, ScheduledExecutorService)},
+ * and by {@link #log(Throwable, String, Object...)} if it notices that a period has ended.
+ * The scheduled task does not prevent the {@link FailureLogger} from being garbage collected.
+ */
+@ThreadSafe
+public final class FailureLogger {
+  public static final int DEFAULT_FULL_LOGS_PER_PERIOD = 3;
+  public static final long DEFAULT_PERIOD_MILLIS = 60_000;
+  public static final int DEFAULT_MAX_FINGERPRINTS = 1_000;
+  public static final int DEFAULT_FINGERPRINT_FRAMES = 5;
+  /**
+   * Marks a count that was removed from {@link #counts}, see {@link #report(long)}.
+   */
+  private static final long RETIRED = Long.MIN_VALUE;
+
+  private final Logger logger;
+  private final int fullLogsPerPeriod;
+  private final long periodNanos;
+  private final int maxFingerprints;
+  private final int fingerprintFrames;
+  private final LongSupplier nanoClock;
+  private final ConcurrentMap<Fingerprint, AtomicLong> counts;
+  private final LongAdder untrackedCount;
+  private final AtomicLong periodStartNanos;
+  private final Object reportMutex;
+  @Nullable
+  private final ScheduledFuture<?> scheduledReport;
+
+  /**
+   * Uses {@link #DEFAULT_FULL_LOGS_PER_PERIOD}, {@link #DEFAULT_PERIOD_MILLIS}, {@link #DEFAULT_MAX_FINGERPRINTS},
+   * {@link #DEFAULT_FINGERPRINT_FRAMES}.
+   *
+   * @param logger {@link Logger} that is used to log failures.
+   *
+   * @see #FailureLogger(Logger, int, long, int, int)
+   */
+  public FailureLogger(final Logger logger) {
+    this(logger, DEFAULT_FULL_LOGS_PER_PERIOD, DEFAULT_PERIOD_MILLIS, DEFAULT_MAX_FINGERPRINTS, DEFAULT_FINGERPRINT_FRAMES);
+  }
+
+  /**
+   * Counts are {@linkplain #report() reported} by a single daemon thread that is shared by all {@link FailureLogger}s
+   * created via this constructor.
+   *
+   * @see #FailureLogger(Logger, int, long, int, int, ScheduledExecutorService)
+   */
+  public FailureLogger(
+      final Logger logger, final int fullLogsPerPeriod, final long periodMillis, final int maxFingerprints, final int fingerprintFrames) {
+    this(logger, fullLogsPerPeriod, periodMillis, maxFingerprints, fingerprintFrames, DefaultScheduler.INSTANCE);
+  }
+
+  /**
+   * @param logger {@link Logger} that is used to log failures.
+   * @param fullLogsPerPeriod The number of failures with the same fingerprint that are logged in full within a period.
+   * Must not be negative.
+   * @param periodMillis The duration of a period. Must be positive.
+   * @param maxFingerprints The maximal number of distinct fingerprints that are tracked. Must be positive.
+   * @param fingerprintFrames The number of top frames of the stack trace of a failure that are included in the fingerprint.
+   * Must not be negative.
+   * @param scheduler {@link ScheduledExecutorService} that is used to {@linkplain #report() report} counts once per period.
+   * If {@code null}, then counts of a period are reported only when the next failure happens or when {@link #report()} is called.
+   */
+  public FailureLogger(
+      final Logger logger,
+      final int fullLogsPerPeriod,
+      final long periodMillis,
+      final int maxFingerprints,
+      final int fingerprintFrames,
+      @Nullable final ScheduledExecutorService scheduler) {
+    this(logger, fullLogsPerPeriod, periodMillis, maxFingerprints, fingerprintFrames, scheduler, System::nanoTime);
+  }
+
+  FailureLogger(
+      final Logger logger,
+      final int fullLogsPerPeriod,
+      final long periodMillis,
+      final int maxFingerprints,
+      final int fingerprintFrames,
+      @Nullable final ScheduledExecutorService scheduler,
+      final LongSupplier nanoClock) {
+    checkNotNull(logger, "The argument %s must not be null", "logger");
+    checkArgument(fullLogsPerPeriod >= 0, "The argument %s must not be negative", "fullLogsPerPeriod");
+    checkArgument(periodMillis > 0, "The argument %s must be positive", "periodMillis");
+    checkArgument(maxFingerprints > 0, "The argument %s must be positive", "maxFingerprints");
+    checkArgument(fingerprintFrames >= 0, "The argument %s must not be negative", "fingerprintFrames");
+    this.logger = logger;
+    this.fullLogsPerPeriod = fullLogsPerPeriod;
+    periodNanos = MILLISECONDS.toNanos(periodMillis);
+    this.maxFingerprints = maxFingerprints;
+    this.fingerprintFrames = fingerprintFrames;
+    this.nanoClock = nanoClock;
+    counts = new ConcurrentHashMap<>();
+    untrackedCount = new LongAdder();
+    periodStartNanos = new AtomicLong(nanoClock.getAsLong());
+    reportMutex = new Object();
+    scheduledReport = scheduler == null ? null : scheduleReport(this, scheduler, periodMillis);
+  }
+
+  /**
+   * The scheduled task references the {@code failureLogger} weakly and cancels itself when the {@code failureLogger} is garbage collected.
+   */
+  private static final ScheduledFuture<?> scheduleReport(
+      final FailureLogger failureLogger, final ScheduledExecutorService scheduler, final long periodMillis) {
+    final WeakReference<FailureLogger> ref = new WeakReference<>(failureLogger);
+    return scheduler.scheduleAtFixedRate(() -> {
+      @Nullable final FailureLogger referent = ref.get();
+      if (referent == null) {
+        throw new IllegalStateException("The task is no longer needed");//cancels subsequent executions of the task
+      } else {
+        referent.report();
+      }
+    }, periodMillis, periodMillis, MILLISECONDS);
+  }
+
+  /**
+   * Logs the {@code failure} in full if the budget of its fingerprint is not exhausted, otherwise counts it.
+   *
+   * @param format A message format as specified by {@link Logger#error(String, Object...)}.
+   * @param args Arguments of the message.
+   *
+   * @return {@code true} if the {@code failure} was logged in full.
+   */
+  public final boolean log(final Throwable failure, final String format, final Object... args) {
+    checkNotNull(failure, "The argument %s must not be null", "failure");
+    final long nowNanos = nanoClock.getAsLong();
+    final long periodStart = periodStartNanos.get();
+    if (nowNanos - periodStart >= periodNanos && periodStartNanos.compareAndSet(periodStart, nowNanos)) {
+      report(nowNanos - periodStart);
+    }
+    final Fingerprint fingerprint = new Fingerprint(failure, fingerprintFrames);
+    boolean result;
+    while (true) {
+      @Nullable
+      AtomicLong count = counts.get(fingerprint);
+      if (count == null && counts.size() < maxFingerprints) {
+        count = counts.computeIfAbsent(fingerprint, f -> new AtomicLong());
+      }
+      if (count == null) {
+        untrackedCount.increment();
+        result = false;
+        break;
+      } else {
+        final long n = count.incrementAndGet();
+        if (n > 0) {
+          result = n <= fullLogsPerPeriod;
+          break;
+        }//otherwise the count was retired by report, so we must retry with a new count
+      }
+    }
+    if (result && logger.isErrorEnabled()) {
+      final Object[] argsAndFailure = Arrays.copyOf(args, args.length + 1);
+      argsAndFailure[args.length] = failure;
+      logger.error(format, argsAndFailure);
+    }
+    return result;
+  }
+
+  /**
+   * Logs the number of failures per fingerprint that were not logged in full since the previous report, and starts a new period.
+   */
+  public final void report() {
+    final long nowNanos = nanoClock.getAsLong();
+    report(nowNanos - periodStartNanos.getAndSet(nowNanos));
+  }
+
+  /**
+   * Stops tracking fingerprints that did not occur during the whole period. A count is {@linkplain #RETIRED retired} before removing it,
+   * so that {@link #log(Throwable, String, Object...)} that has already obtained the count does not lose its increment
+   * and retries with a new count instead.
+   */
+  private final void report(final long elapsedNanos) {
+    final long elapsedMillis = NANOSECONDS.toMillis(elapsedNanos);
+    synchronized (reportMutex) {//concurrent reports could otherwise reset a retired count
+      for (final Map.Entry<Fingerprint, AtomicLong> entry : counts.entrySet()) {
+        final AtomicLong count = entry.getValue();
+        final long n = count.getAndSet(0);
+        if (n == 0) {
+          if (count.compareAndSet(0, RETIRED)) {
+            counts.remove(entry.getKey(), count);
+          }
+        } else if (n > fullLogsPerPeriod) {
+          logger.error("{} more failures like {} were not logged during the last {} ms", n - fullLogsPerPeriod, entry.getKey(), elapsedMillis);
+        }
+      }
+      final long untracked = untrackedCount.sumThenReset();
+      if (untracked > 0) {
+        logger.error("{} failures were not logged during the last {} ms because there were more than {} distinct failures",
+            untracked, elapsedMillis, maxFingerprints);
+      }
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(logger=" + logger.getName()
+        + ", fullLogsPerPeriod=" + fullLogsPerPeriod
+        + ", periodNanos=" + periodNanos
+        + ", maxFingerprints=" + maxFingerprints
+        + ", fingerprintFrames=" + fingerprintFrames
+        + ", scheduled=" + (scheduledReport != null)
+        + ')';
+  }
+
+  private static final class DefaultScheduler {
+    private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread result = new Thread(runnable, FailureLogger.class.getSimpleName() + "-reporter");
+      result.setDaemon(true);
+      return result;
+    });
+
+    private DefaultScheduler() {
+      throw new UnsupportedOperationException("This class is not designed to be instantiated");
+    }
+  }
+
+  @Immutable
+  private static final class Fingerprint {
+    private final Class<?> type;
+    private final StackTraceElement[] frames;
+    private final int hash;
+
+    private Fingerprint(final Throwable failure, final int maxFrames) {
+      type = failure.getClass();
+      final StackTraceElement[] stackTrace = failure.getStackTrace();
+      frames = stackTrace.length <= maxFrames ? stackTrace : Arrays.copyOf(stackTrace, maxFrames);
+      hash = 31 * type.hashCode() + Arrays.hashCode(frames);
+    }
+
+    @Override
+    public final boolean equals(final Object o) {
+      final boolean result;
+      if (this == o) {
+        result = true;
+      } else if (o instanceof Fingerprint) {
+        final Fingerprint other = (Fingerprint)o;
+        result = hash == other.hash && type == other.type && Arrays.equals(frames, other.frames);
+      } else {
+        result = false;
+      }
+      return result;
+    }
+
+    @Override
+    public final int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public final String toString() {
+      return frames.length == 0
+          ? type.getName()
+          : type.getName() + " at " + frames[0];
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package stincmale.server.util.logging;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.MDC;
+
+/**
+ * Captures and restores the context map of {@link MDC} of the current thread as cheaply as the {@link MDC} binding allows.
+ * <p>
+ * If {@link MDC} is bound to <a href="https://logging.apache.org/log4j/2.x/">Log4j 2</a>,
+ * then the context map is captured without copying it whenever the {@code ThreadContextMap} implementation allows this,
+ * and therefore {@link #capture()} returns the same object as long as the context is not changed.
+ * Otherwise the context map is captured via {@link MDC#getCopyOfContextMap()}.
+ * Log4j 2 is accessed via {@link MethodHandle}s, so it is not required to be present.
+ * The ability to capture without copying relies on implementation details of Log4j 2 (names of {@code ThreadContextMap} classes),
+ * and if they change, then {@link MdcAccess} silently falls back to copying via {@link MDC};
+ * {@code TestMdcAccess} fails in this case, so that upgrading Log4j 2 does not silently make capturing more expensive.
+ * <p>
+ * {@link #restore(Map)} copies the {@code context} into the context map of the thread in either case,
+ * because neither {@link MDC} nor Log4j 2 {@code ThreadContext} allows setting a map as is
+ * (the Log4j 2 implementation clears the context map and puts all entries of the {@code context} into it).
+ * Hence callers should avoid restoring a context that is identical to the {@linkplain #capture() current} one,
+ * as {@link stincmale.server.util.context.Context#attach()} does.
+ * <p>
+ * This is a low-level facility used by {@link TransferableMdc} and {@link stincmale.server.util.context.Context},
+ * which should be preferred.
+ */
+@ThreadSafe
+public abstract class MdcAccess {
+  private static final MdcAccess instance = create();
+
+  private MdcAccess() {
+  }
+
+  public static final MdcAccess instance() {
+    return instance;
+  }
+
+  /**
+   * @return An unmodifiable map that must not be modified.
+   * If the context is empty, then returns {@link Collections#emptyMap()}, which allows comparing empty contexts by identity.
+   */
+  public abstract Map<String, String> capture();
+
+  /**
+   * Replaces the context map of the current thread with the {@code context}.
+   *
+   * @param context A map returned by {@link #capture()}.
+   */
+  public abstract void restore(Map<String, String> context);
+
+  /**
+   * @return The {@link MdcAccess} that is used if {@link MDC} is not bound to Log4j 2, or if Log4j 2 cannot be accessed.
+   */
+  static final MdcAccess newFallback() {
+    return new Slf4jMdcAccess();
+  }
+
+  private static final MdcAccess create() {
+    @Nullable MdcAccess result = null;
+    if ("org.apache.logging.slf4j.Log4jMDCAdapter".equals(MDC.getMDCAdapter()
+        .getClass()
+        .getName())) {
+      try {
+        result = Log4j2MdcAccess.create();
+      } catch (final ReflectiveOperationException | RuntimeException e) {
+        result = null;
+      }
+    }
+    return result == null ? newFallback() : result;
+  }
+
+  private static final class Slf4jMdcAccess extends MdcAccess {
+    private Slf4jMdcAccess() {
+    }
+
+    @Override
+    public final Map<String, String> capture() {
+      @Nullable final Map<String, String> copy = MDC.getCopyOfContextMap();
+      return copy == null || copy.isEmpty()
+          ? Collections.emptyMap()
+          : Collections.unmodifiableMap(copy);
+    }
+
+    @Override
+    public final void restore(final Map<String, String> context) {
+      if (context.isEmpty()) {
+        MDC.clear();
+      } else {
+        MDC.setContextMap(context);
+      }
+    }
+  }
+
+  /**
+   * Log4j 2 {@code ThreadContext} uses one of the following context maps:
+   * <ul>
+   *   <li>{@code DefaultThreadContextMap}, which replaces the unmodifiable {@link Map} of the thread on each change,
+   *   and {@code ThreadContext.getImmutableContext()} returns this {@link Map} without copying;</li>
+   *   <li>{@code CopyOnWriteSortedArrayThreadContextMap} (the default one if Log4j 2 Core is used),
+   *   which replaces the frozen {@code StringMap} of the thread on each change, but {@code ThreadContext.getImmutableContext()}
+   *   copies it into a new {@link Map}. So the {@code StringMap} returned by {@code getReadOnlyContextData()} is used as a version,
+   *   and the captured {@link Map} is cached per thread until the version changes;</li>
+   *   <li>{@code GarbageFreeSortedArrayThreadContextMap}, which changes the {@code StringMap} of the thread in place,
+   *   so the context is copied on each capture.</li>
+   * </ul>
+   */
+  private static final class Log4j2MdcAccess extends MdcAccess {
+    private final MethodHandle getImmutableContext;
+    private final MethodHandle clearMap;
+    private final MethodHandle putAll;
+    /**
+     * {@code (Object threadContextMap) -> Object version} if the context map is {@code CopyOnWriteSortedArrayThreadContextMap},
+     * otherwise {@code null}.
+     */
+    @Nullable
+    private final MethodHandle getVersion;
+    @Nullable
+    private final Object threadContextMap;
+    @Nullable
+    private final ThreadLocal<CachedContext> cachedContext;
+
+    private Log4j2MdcAccess(
+        final MethodHandle getImmutableContext,
+        final MethodHandle clearMap,
+        final MethodHandle putAll,
+        @Nullable final MethodHandle getVersion,
+        @Nullable final Object threadContextMap) {
+      this.getImmutableContext = getImmutableContext;
+      this.clearMap = clearMap;
+      this.putAll = putAll;
+      this.getVersion = getVersion;
+      this.threadContextMap = threadContextMap;
+      cachedContext = getVersion == null ? null : ThreadLocal.withInitial(CachedContext::new);
+    }
+
+    private static final Log4j2MdcAccess create() throws ReflectiveOperationException {
+      final Class<?> threadContextClass = Class.forName("org.apache.logging.log4j.ThreadContext");
+      final Class<?> readOnlyThreadContextMapClass = Class.forName("org.apache.logging.log4j.spi.ReadOnlyThreadContextMap");
+      final Class<?> stringMapClass = Class.forName("org.apache.logging.log4j.util.StringMap");
+      final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      @Nullable final Object threadContextMap;
+      try {
+        threadContextMap = lookup.findStatic(
+            threadContextClass, "getThreadContextMap", MethodType.methodType(readOnlyThreadContextMapClass))
+            .invoke();
+      } catch (final ReflectiveOperationException | RuntimeException | Error e) {
+        throw e;
+      } catch (final Throwable e) {
+        throw new RuntimeException(e);
+      }
+      @Nullable final MethodHandle getVersion = threadContextMap != null && threadContextMap.getClass()
+          .getName()
+          .equals("org.apache.logging.log4j.spi.CopyOnWriteSortedArrayThreadContextMap")
+          ? lookup.findVirtual(readOnlyThreadContextMapClass, "getReadOnlyContextData", MethodType.methodType(stringMapClass))
+              .asType(MethodType.methodType(Object.class, Object.class))
+          : null;
+      return new Log4j2MdcAccess(
+          lookup.findStatic(threadContextClass, "getImmutableContext", MethodType.methodType(Map.class)),
+          lookup.findStatic(threadContextClass, "clearMap", MethodType.methodType(void.class)),
+          lookup.findStatic(threadContextClass, "putAll", MethodType.methodType(void.class, Map.class)),
+          getVersion,
+          threadContextMap);
+    }
+
+    @Override
+    public final Map<String, String> capture() {
+      final Map<String, String> result;
+      if (getVersion == null) {
+        result = immutableContext();
+      } else {
+        assert cachedContext != null;
+        final CachedContext cached = cachedContext.get();
+        final Object version = version();
+        if (cached.version != version) {
+          cached.version = version;
+          cached.context = immutableContext();
+        }
+        result = cached.context;
+      }
+      return result;
+    }
+
+    @Override
+    public final void restore(final Map<String, String> context) {
+      try {
+        clearMap.invokeExact();
+        if (!context.isEmpty()) {
+          putAll.invokeExact(context);
+        }
+      } catch (final RuntimeException | Error e) {
+        throw e;
+      } catch (final Throwable e) {
+        throw new RuntimeException(e);
+      }
+      if (getVersion != null) {
+        assert cachedContext != null;
+        final CachedContext cached = cachedContext.get();
+        cached.version = version();
+        cached.context = context;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private final Map<String, String> immutableContext() {
+      final Map<String, String> result;
+      try {
+        result = (Map<String, String>)getImmutableContext.invokeExact();
+      } catch (final RuntimeException | Error e) {
+        throw e;
+      } catch (final Throwable e) {
+        throw new RuntimeException(e);
+      }
+      return result.isEmpty()
+          ? Collections.emptyMap()
+          : getVersion == null ? result : Collections.unmodifiableMap(result);
+    }
+
+    private final Object version() {
+      assert getVersion != null;
+      try {
+        return (Object)getVersion.invokeExact(threadContextMap);
+      } catch (final RuntimeException | Error e) {
+        throw e;
+      } catch (final Throwable e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private static final class CachedContext {
+    @Nullable
+    private Object version;
+    private Map<String, String> context;
+
+    private CachedContext() {
+      context = Collections.emptyMap();
+    }
+  }
+}
@@ -1,6 +1,5 @@
 package stincmale.server.util.logging;
 
-import java.util.Collections;
 import org.slf4j.MDC;
 import org.slf4j.spi.MDCAdapter;
 import javax.annotation.Nullable;
@@ -12,7 +11,15 @@ import java.util.Map;
 /**
  * A read-only {@link MDCAdapter} which allows to copy the state of {@link MDC} between {@linkplain Thread threads}.
  * <p>
+ * {@link TransferableMdc} holds an immutable snapshot of the context map of {@link MDC}, which may be shared with {@link MDC}
+ * and with other {@link TransferableMdc}s: if {@link MDC} is bound to <a href="https://logging.apache.org/log4j/2.x/">Log4j 2</a>,
+ * then {@linkplain #current() capturing} the snapshot is just a read of the reference to the copy-on-write context map of the thread,
+ * otherwise it requires {@linkplain MDC#getCopyOfContextMap() copying} the context map.
+ * {@linkplain #transfer() Transferring} does not change {@link MDC} if the snapshot is the same as the current context map of the thread,
+ * e.g. if both are empty, and {@linkplain #close() rolling back} does not change {@link MDC} if it is the same as before transferring.
+ * <p>
  * This class is not thread-safe but correctly transfers {@link MDC} if used according to the provided idiom.
+ * {@link stincmale.server.util.context.Context} is an immutable alternative that also propagates deadlines and traces.
  * <p>
  * <b>Usage examples.</b>
  * <p>
@@ -81,9 +88,13 @@ public final class TransferableMdc implements MDCAdapter, Closeable {
    * {@linkplain Thread thread}'s state of {@link MDC}.
    */
   public static final TransferableMdc current() {
-    return new TransferableMdc(MDC.getCopyOfContextMap());
+    return new TransferableMdc(MdcAccess.instance()
+        .capture());
   }
 
+  /**
+   * An immutable snapshot captured by {@link MdcAccess#capture()}.
+   */
   private final Map<String, String> context;
   /**
    * null value is used to mark {@link TransferableMdc} as closed by {@link #close()}.
@@ -92,8 +103,8 @@ public final class TransferableMdc implements MDCAdapter, Closeable {
   @Nullable
   private Map<String, String> backup;
 
-  private TransferableMdc(@Nullable final Map<String, String> contextMapCopy) {
-    context = contextMapCopy == null ? Collections.emptyMap() : contextMapCopy;
+  private TransferableMdc(final Map<String, String> context) {
+    this.context = context;
   }
 
   /**
@@ -106,10 +117,12 @@ public final class TransferableMdc implements MDCAdapter, Closeable {
    * @see #close()
    */
   public final TransferableMdc transfer() {
-    @Nullable
-    final Map<String, String> currentContext = MDC.getCopyOfContextMap();
-    backup = currentContext == null ? Collections.emptyMap() : currentContext;
-    MDC.setContextMap(context);
+    final MdcAccess mdcAccess = MdcAccess.instance();
+    final Map<String, String> currentContext = mdcAccess.capture();
+    backup = currentContext;
+    if (currentContext != context) {
+      mdcAccess.restore(context);
+    }
     return this;
   }
 
@@ -131,7 +144,10 @@ public final class TransferableMdc implements MDCAdapter, Closeable {
     if (backup == null) {
       throw new IllegalStateException(getClass().getSimpleName() + " must not be reused and cannot be closed more than once");
     }
-    MDC.setContextMap(backup);
+    final MdcAccess mdcAccess = MdcAccess.instance();
+    if (mdcAccess.capture() != backup) {
+      mdcAccess.restore(backup);
+    }
     backup = null;
   }
 
@@ -0,0 +1,233 @@
+package stincmale.server.util.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A histogram of durations in nanoseconds with logarithmic buckets similar to
+ * <a href="http://hdrhistogram.org/">HdrHistogram</a>: each power of two is split into {@value #SUB_BUCKETS} linear sub-buckets,
+ * which gives the relative error of {@linkplain Snapshot#valueAtPercentile(double) percentiles} not greater than
+ * {@code 1 / }{@value #SUB_BUCKETS}. Values greater than {@value #MAX_VALUE} ns (about 2 minutes) are recorded as {@value #MAX_VALUE}.
+ * <p>
+ * {@linkplain #record(long) Recording} is lock-free and does not allocate (except for the first recording into a stripe):
+ * values are recorded into one of a fixed number of stripes (arrays of buckets) chosen by a hash of the recording thread,
+ * and the stripes are merged when a {@link #drain() snapshot is taken}.
+ * The number of stripes depends only on the number of available processors,
+ * so the memory footprint does not depend on how many threads record values, and short-lived threads do not leak memory.
+ */
+@ThreadSafe
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 36;
+  static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+  static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+  /**
+   * The index of the element of an array of buckets that holds the sum of recorded values.
+   */
+  private static final int SUM_IDX = BUCKETS;
+  /**
+   * The smallest power of two that is not less than twice the number of available processors, but not greater than 64.
+   */
+  static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime()
+      .availableProcessors() * 2 - 1) << 1);
+
+  /**
+   * Stripes are allocated lazily because most histograms are recorded by a few threads.
+   */
+  private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+  public LatencyHistogram() {
+    stripes = new AtomicReferenceArray<>(STRIPES);
+  }
+
+  /**
+   * @param durationNanos A duration in nanoseconds, e.g. a difference between two values of {@link System#nanoTime()}.
+   * Negative values are recorded as 0.
+   */
+  public final void record(final long durationNanos) {
+    final AtomicLongArray buckets = stripe();
+    buckets.getAndIncrement(index(durationNanos));
+    buckets.getAndAdd(SUM_IDX, Math.min(Math.max(durationNanos, 0), MAX_VALUE));
+  }
+
+  private final AtomicLongArray stripe() {
+    final long threadId = Thread.currentThread()
+        .getId();
+    final int idx = (int)((threadId * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1);//Fibonacci hashing spreads sequential ids
+    @Nullable
+    AtomicLongArray result = stripes.get(idx);
+    if (result == null) {
+      final AtomicLongArray newStripe = new AtomicLongArray(BUCKETS + 1);
+      result = stripes.compareAndSet(idx, null, newStripe) ? newStripe : stripes.get(idx);
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of stripes that have been allocated.
+   */
+  final int allocatedStripes() {
+    int result = 0;
+    for (int i = 0; i < STRIPES; i++) {
+      if (stripes.get(i) != null) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Takes a snapshot of all values recorded since the previous snapshot and resets the histogram.
+   * Values that are being recorded concurrently are included either in this or in the next snapshot.
+   */
+  public final Snapshot drain() {
+    return snapshot(true);
+  }
+
+  /**
+   * Takes a snapshot of all values recorded since the previous {@linkplain #drain() drain} without resetting the histogram.
+   */
+  public final Snapshot peek() {
+    return snapshot(false);
+  }
+
+  private final Snapshot snapshot(final boolean reset) {
+    final long[] counts = new long[BUCKETS];
+    long totalCount = 0;
+    long sum = 0;
+    for (int stripeIdx = 0; stripeIdx < STRIPES; stripeIdx++) {
+      @Nullable final AtomicLongArray buckets = stripes.get(stripeIdx);
+      if (buckets != null) {
+        for (int i = 0; i < BUCKETS; i++) {
+          if (buckets.get(i) != 0) {
+            final long count = reset ? buckets.getAndSet(i, 0) : buckets.get(i);
+            counts[i] += count;
+            totalCount += count;
+          }
+        }
+        sum += reset ? buckets.getAndSet(SUM_IDX, 0) : buckets.get(SUM_IDX);
+      }
+    }
+    return new Snapshot(counts, totalCount, sum);
+  }
+
+  static final int index(final long value) {
+    final int result;
+    if (value < SUB_BUCKETS) {
+      result = value < 0 ? 0 : (int)value;
+    } else {
+      final int exponent = 63 - Long.numberOfLeadingZeros(value);
+      result = exponent > MAX_EXPONENT
+          ? BUCKETS - 1
+          : SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + (int)((value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS);
+    }
+    return result;
+  }
+
+  /**
+   * @return The greatest value that is recorded into the bucket with the specified {@code index}.
+   */
+  static final long highestEquivalentValue(final int index) {
+    final long result;
+    if (index < SUB_BUCKETS) {
+      result = index;
+    } else {
+      final int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+      final int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+      result = ((long)(SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(stripes=" + allocatedStripes()
+        + ')';
+  }
+
+  /**
+   * An immutable snapshot of a {@link LatencyHistogram}.
+   */
+  @Immutable
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+
+    private Snapshot(final long[] counts, final long count, final long sum) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+    }
+
+    /**
+     * @return The number of recorded values.
+     */
+    public final long count() {
+      return count;
+    }
+
+    /**
+     * @return The sum of recorded values. Unlike {@linkplain #valueAtPercentile(double) percentiles}, the sum is exact,
+     * except for values that are recorded as 0 or {@value LatencyHistogram#MAX_VALUE}.
+     */
+    public final long sum() {
+      return sum;
+    }
+
+    /**
+     * @param percentile A number in the range [0, 100].
+     *
+     * @return The greatest value that is equivalent (within the precision of the {@link LatencyHistogram}) to the value
+     * at the specified {@code percentile}, or 0 if there are no recorded values.
+     */
+    public final long valueAtPercentile(final double percentile) {
+      checkArgument(percentile >= 0 && percentile <= 100, "The argument %s must be in the range [0, 100]", "percentile");
+      long result = 0;
+      if (count > 0) {
+        final long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length; i++) {
+          cumulativeCount += counts[i];
+          if (cumulativeCount >= rank) {
+            result = highestEquivalentValue(i);
+            break;
+          }
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return The greatest value that is equivalent (within the precision of the {@link LatencyHistogram}) to the maximal
+     * recorded value, or 0 if there are no recorded values.
+     */
+    public final long max() {
+      long result = 0;
+      for (int i = counts.length - 1; i >= 0; i--) {
+        if (counts[i] != 0) {
+          result = highestEquivalentValue(i);
+          break;
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName()
+          + "(count=" + count
+          + ", sum=" + sum
+          + ", p50=" + valueAtPercentile(50)
+          + ", p99=" + valueAtPercentile(99)
+          + ", max=" + max()
+          + ')';
+    }
+  }
+}
@@ -0,0 +1,435 @@
+package stincmale.server.util.stats;
+
+import com.timgroup.statsd.StatsDClient;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Aggregates statistics in-process and periodically {@linkplain #flush() flushes} them via {@link StatsDClient},
+ * so that the number of sent StatsD packets does not depend on the rate of recorded events.
+ * <p>
+ * For each {@linkplain #histogram(String, Collection) histogram} the following gauges are sent on each flush
+ * if there were recorded values since the previous flush: {@code <aspect>.p50}, {@code <aspect>.p90}, {@code <aspect>.p99},
+ * {@code <aspect>.p999}, {@code <aspect>.p9999}, {@code <aspect>.max} in milliseconds, and the counter {@code <aspect>.count}.
+ * For each {@linkplain #counter(String, Collection) counter} the increment since the previous flush is sent if it is not 0,
+ * and for each {@linkplain #gauge(String, Collection) gauge} the current value is sent.
+ * Recording values is allocation-free and is done via {@link LongAdder}s, so it scales well when done by many threads.
+ * Metrics are sent one after another, which allows {@link StatsDClient} to batch them into few packets,
+ * e.g. {@link com.timgroup.statsd.NonBlockingStatsDClient} sends multiple metrics in a packet up to the maximal packet size.
+ * <p>
+ * Registered metrics may also be {@linkplain #visit(Visitor) visited}, e.g. in order to expose them via an additional protocol.
+ * <p>
+ * {@link StatsAggregator} must be {@linkplain #start() started} in order to flush automatically,
+ * and should be {@linkplain #stop() stopped} in order to flush the remaining statistics.
+ */
+@ThreadSafe
+public final class StatsAggregator {
+  private static final Logger logger = LoggerFactory.getLogger(StatsAggregator.class);
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+  private static final String[] PERCENTILE_SUFFIXES = {".p50", ".p90", ".p99", ".p999", ".p9999"};
+  private static final double NANOS_PER_MILLI = MILLISECONDS.toNanos(1);
+
+  private final StatsDClient statsDClient;
+  private final long flushIntervalMillis;
+  private final ScheduledExecutorService scheduler;
+  private final ConcurrentMap<List<Object>, Summary> histograms;
+  private final ConcurrentMap<List<Object>, Counter> counters;
+  private final ConcurrentMap<List<Object>, Gauge> gauges;
+  private final Object mutex;
+  private final Object flushMutex;
+  /**
+   * Is guarded by {@link #mutex}.
+   */
+  @Nullable
+  private ScheduledFuture<?> scheduledFlush;
+
+  /**
+   * @param flushIntervalMillis An interval between {@linkplain #flush() flushes}. Must be positive.
+   * @param scheduler A {@link ScheduledExecutorService} that is used to {@linkplain #flush() flush} statistics.
+   */
+  public StatsAggregator(final StatsDClient statsDClient, final long flushIntervalMillis, final ScheduledExecutorService scheduler) {
+    checkNotNull(statsDClient, "The argument %s must not be null", "statsDClient");
+    checkArgument(flushIntervalMillis > 0, "The argument %s must be positive", "flushIntervalMillis");
+    checkNotNull(scheduler, "The argument %s must not be null", "scheduler");
+    this.statsDClient = statsDClient;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.scheduler = scheduler;
+    histograms = new ConcurrentHashMap<>();
+    counters = new ConcurrentHashMap<>();
+    gauges = new ConcurrentHashMap<>();
+    mutex = new Object();
+    flushMutex = new Object();
+  }
+
+  /**
+   * Returns the registered {@link LatencyHistogram} with the specified {@code aspect} and {@code tags}, or registers a new one.
+   * This method is expected to be called once per histogram, e.g. when a component that records values is constructed.
+   */
+  public final LatencyHistogram histogram(final String aspect, @Nullable final Collection<String> tags) {
+    checkNotNull(aspect, "The argument %s must not be null", "aspect");
+    final String[] tagsArray = toArray(tags);
+    return histograms.computeIfAbsent(List.of(aspect, List.of(tagsArray)), key -> new Summary(aspect, tagsArray, flushMutex))
+        .histogram;
+  }
+
+  /**
+   * Returns the registered {@link Counter} with the specified {@code aspect} and {@code tags}, or registers a new one.
+   * This method is expected to be called once per counter, e.g. when a component that records values is constructed.
+   */
+  public final Counter counter(final String aspect, @Nullable final Collection<String> tags) {
+    checkNotNull(aspect, "The argument %s must not be null", "aspect");
+    final String[] tagsArray = toArray(tags);
+    return counters.computeIfAbsent(List.of(aspect, List.of(tagsArray)), key -> new Counter(aspect, tagsArray));
+  }
+
+  /**
+   * Returns the registered {@link Gauge} with the specified {@code aspect} and {@code tags}, or registers a new one.
+   * This method is expected to be called once per gauge, e.g. when a component that records values is constructed.
+   */
+  public final Gauge gauge(final String aspect, @Nullable final Collection<String> tags) {
+    checkNotNull(aspect, "The argument %s must not be null", "aspect");
+    final String[] tagsArray = toArray(tags);
+    return gauges.computeIfAbsent(List.of(aspect, List.of(tagsArray)), key -> new Gauge(aspect, tagsArray));
+  }
+
+  public final StatsDClient getStatsDClient() {
+    return statsDClient;
+  }
+
+  /**
+   * Starts {@linkplain #flush() flushing} statistics with the fixed rate. Does nothing if already started.
+   */
+  public final void start() {
+    synchronized (mutex) {
+      if (scheduledFlush == null) {
+        scheduledFlush = scheduler.scheduleAtFixedRate(this::flushSafely, flushIntervalMillis, flushIntervalMillis, MILLISECONDS);
+        logger.info("{} was started", this);
+      }
+    }
+  }
+
+  /**
+   * Stops {@linkplain #flush() flushing} statistics with the fixed rate and flushes the remaining statistics.
+   * Does nothing if not started.
+   */
+  public final void stop() {
+    synchronized (mutex) {
+      if (scheduledFlush != null) {
+        scheduledFlush.cancel(false);
+        scheduledFlush = null;
+        flushSafely();
+        logger.info("{} was stopped", this);
+      }
+    }
+  }
+
+  /**
+   * Sends statistics aggregated since the previous flush via {@link StatsDClient}.
+   */
+  public final void flush() {
+    synchronized (flushMutex) {
+      histograms.values()
+          .forEach(this::flush);
+      counters.values()
+          .forEach(this::flush);
+      gauges.values()
+          .forEach(this::flush);
+    }
+  }
+
+  /**
+   * Calls the {@code visitor} for each registered metric.
+   */
+  public final void visit(final Visitor visitor) {
+    checkNotNull(visitor, "The argument %s must not be null", "visitor");
+    counters.values()
+        .forEach(visitor::visit);
+    gauges.values()
+        .forEach(visitor::visit);
+    histograms.values()
+        .forEach(visitor::visit);
+  }
+
+  private final void flush(final Counter counter) {
+    final long sum = counter.adder.sum();
+    final long delta = sum - counter.flushedSum;
+    if (delta != 0) {
+      counter.flushedSum = sum;
+      statsDClient.count(counter.aspect, delta, counter.tags);
+    }
+  }
+
+  private final void flush(final Gauge gauge) {
+    statsDClient.gauge(gauge.aspect, gauge.adder.sum(), gauge.tags);
+  }
+
+  private final void flush(final Summary summary) {
+    final LatencyHistogram.Snapshot snapshot = summary.histogram.drain();
+    final long count = snapshot.count();
+    summary.lastSnapshot = snapshot;
+    summary.totalCount += count;
+    summary.totalSum += snapshot.sum();
+    if (count > 0) {
+      final String[] tags = summary.tags;
+      for (int i = 0; i < PERCENTILES.length; i++) {
+        statsDClient.gauge(summary.percentileAspects[i], snapshot.valueAtPercentile(PERCENTILES[i]) / NANOS_PER_MILLI, tags);
+      }
+      statsDClient.gauge(summary.maxAspect, snapshot.max() / NANOS_PER_MILLI, tags);
+      statsDClient.count(summary.countAspect, count, tags);
+    }
+  }
+
+  private final void flushSafely() {
+    try {
+      flush();
+    } catch (final RuntimeException e) {
+      logger.error("Failed to flush statistics", e);
+    }
+  }
+
+  private static final String[] toArray(@Nullable final Collection<String> tags) {
+    return tags == null || tags.isEmpty()
+        ? new String[0]
+        : tags.toArray(new String[0]);
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(statsDClient=" + statsDClient
+        + ", flushIntervalMillis=" + flushIntervalMillis
+        + ')';
+  }
+
+  /**
+   * A visitor of metrics registered in {@link StatsAggregator}. Methods are called by a thread that calls {@link #visit(Visitor)}.
+   */
+  public interface Visitor {
+    void visit(Counter counter);
+
+    void visit(Gauge gauge);
+
+    void visit(Summary summary);
+  }
+
+  /**
+   * A view of a registered {@linkplain #histogram(String, Collection) histogram}.
+   */
+  @ThreadSafe
+  public static final class Summary {
+    private final String aspect;
+    private final String[] tags;
+    private final List<String> tagsList;
+    private final LatencyHistogram histogram;
+    private final String[] percentileAspects;
+    private final String maxAspect;
+    private final String countAspect;
+    private final Object flushMutex;
+    /**
+     * Is guarded by {@link StatsAggregator#flushMutex}.
+     */
+    @Nullable
+    private LatencyHistogram.Snapshot lastSnapshot;
+    /**
+     * Is guarded by {@link StatsAggregator#flushMutex}.
+     */
+    private long totalCount;
+    /**
+     * Is guarded by {@link StatsAggregator#flushMutex}.
+     */
+    private long totalSum;
+
+    private Summary(final String aspect, final String[] tags, final Object flushMutex) {
+      this.aspect = aspect;
+      this.tags = tags;
+      tagsList = List.of(tags);
+      histogram = new LatencyHistogram();
+      percentileAspects = Arrays.stream(PERCENTILE_SUFFIXES)
+          .map(suffix -> aspect + suffix)
+          .toArray(String[]::new);
+      maxAspect = aspect + ".max";
+      countAspect = aspect + ".count";
+      this.flushMutex = flushMutex;
+    }
+
+    public final String aspect() {
+      return aspect;
+    }
+
+    public final List<String> tags() {
+      return tagsList;
+    }
+
+    /**
+     * @return The snapshot taken by the last {@linkplain #flush() flush}, or {@code null} if there were no flushes.
+     *
+     * @see #snapshot()
+     */
+    @Nullable
+    public final LatencyHistogram.Snapshot lastSnapshot() {
+      synchronized (flushMutex) {
+        return lastSnapshot;
+      }
+    }
+
+    /**
+     * @return The {@linkplain #lastSnapshot() last snapshot}, or if there were no {@linkplain #flush() flushes},
+     * e.g. because the {@link StatsAggregator} is not {@linkplain #start() started}, a snapshot of all values recorded so far.
+     */
+    public final LatencyHistogram.Snapshot snapshot() {
+      synchronized (flushMutex) {
+        return lastSnapshot == null ? histogram.peek() : lastSnapshot;
+      }
+    }
+
+    /**
+     * @return The number of all recorded values, including the values that have not been {@linkplain #flush() flushed} yet.
+     */
+    public final long totalCount() {
+      synchronized (flushMutex) {
+        return totalCount + histogram.peek()
+            .count();
+      }
+    }
+
+    /**
+     * @return The sum of all recorded values, including the values that have not been {@linkplain #flush() flushed} yet.
+     *
+     * @see LatencyHistogram.Snapshot#sum()
+     */
+    public final long totalSum() {
+      synchronized (flushMutex) {
+        return totalSum + histogram.peek()
+            .sum();
+      }
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName()
+          + "(aspect=" + aspect
+          + ", tags=" + tagsList
+          + ", lastSnapshot=" + lastSnapshot()
+          + ')';
+    }
+  }
+
+  /**
+   * A counter whose increments are aggregated by {@link StatsAggregator}.
+   */
+  @ThreadSafe
+  public static final class Counter {
+    private final String aspect;
+    private final String[] tags;
+    private final List<String> tagsList;
+    private final LongAdder adder;
+    /**
+     * Is guarded by {@link StatsAggregator#flushMutex}.
+     */
+    private long flushedSum;
+
+    private Counter(final String aspect, final String[] tags) {
+      this.aspect = aspect;
+      this.tags = tags;
+      tagsList = List.of(tags);
+      adder = new LongAdder();
+    }
+
+    public final String aspect() {
+      return aspect;
+    }
+
+    public final List<String> tags() {
+      return tagsList;
+    }
+
+    public final void increment() {
+      adder.increment();
+    }
+
+    public final void add(final long delta) {
+      adder.add(delta);
+    }
+
+    /**
+     * @return The sum of all increments, including the ones that were already sent.
+     */
+    public final long sum() {
+      return adder.sum();
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName()
+          + "(aspect=" + aspect
+          + ", tags=" + tagsList
+          + ", sum=" + adder.sum()
+          + ')';
+    }
+  }
+
+  /**
+   * A gauge whose value is changed by deltas, e.g. the number of requests that are being processed.
+   * The current value is sent on each {@linkplain #flush() flush}.
+   */
+  @ThreadSafe
+  public static final class Gauge {
+    private final String aspect;
+    private final String[] tags;
+    private final List<String> tagsList;
+    private final LongAdder adder;
+
+    private Gauge(final String aspect, final String[] tags) {
+      this.aspect = aspect;
+      this.tags = tags;
+      tagsList = List.of(tags);
+      adder = new LongAdder();
+    }
+
+    public final String aspect() {
+      return aspect;
+    }
+
+    public final List<String> tags() {
+      return tagsList;
+    }
+
+    public final void increment() {
+      adder.increment();
+    }
+
+    public final void decrement() {
+      adder.decrement();
+    }
+
+    public final void add(final long delta) {
+      adder.add(delta);
+    }
+
+    public final long value() {
+      return adder.sum();
+    }
+
+    @Override
+    public final String toString() {
+      return getClass().getSimpleName()
+          + "(aspect=" + aspect
+          + ", tags=" + tagsList
+          + ", value=" + adder.sum()
+          + ')';
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package stincmale.server.util.tracing;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A span read from {@link SpanRingBuffer}.
+ */
+@Immutable
+public final class Span {
+  private final long traceId;
+  private final long spanId;
+  private final long parentSpanId;
+  private final String name;
+  private final long startEpochNanos;
+  private final long durationNanos;
+
+  Span(
+      final long traceId,
+      final long spanId,
+      final long parentSpanId,
+      final String name,
+      final long startEpochNanos,
+      final long durationNanos) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.startEpochNanos = startEpochNanos;
+    this.durationNanos = durationNanos;
+  }
+
+  public final long traceId() {
+    return traceId;
+  }
+
+  public final long spanId() {
+    return spanId;
+  }
+
+  /**
+   * @return The {@linkplain #spanId() ID} of the parent span, or 0 if this span is the root span of the trace.
+   */
+  public final long parentSpanId() {
+    return parentSpanId;
+  }
+
+  public final String name() {
+    return name;
+  }
+
+  /**
+   * @return The number of nanoseconds from the Unix epoch to the start of the span.
+   * The precision of this value is the same as the precision of {@link System#currentTimeMillis()},
+   * but the difference between start instants of spans is as precise as {@link System#nanoTime()}.
+   */
+  public final long startEpochNanos() {
+    return startEpochNanos;
+  }
+
+  public final long durationNanos() {
+    return durationNanos;
+  }
+
+  /**
+   * @return A single-line JSON representation of this span, where IDs are represented as hexadecimal strings, e.g.
+   * <pre>{@code
+   * {"traceId":"5f1e2d3c4b5a6978","spanId":"0123456789abcdef","parentSpanId":"0000000000000000","name":"process","startEpochNanos":1600000000000000000,"durationNanos":12345}
+   * }</pre>
+   */
+  public final String toJson() {
+    final StringBuilder result = new StringBuilder(160)
+        .append("{\"traceId\":\"");
+    appendHex(traceId, result);
+    result.append("\",\"spanId\":\"");
+    appendHex(spanId, result);
+    result.append("\",\"parentSpanId\":\"");
+    appendHex(parentSpanId, result);
+    result.append("\",\"name\":\"");
+    appendJsonEscaped(name, result);
+    return result.append("\",\"startEpochNanos\":")
+        .append(startEpochNanos)
+        .append(",\"durationNanos\":")
+        .append(durationNanos)
+        .append('}')
+        .toString();
+  }
+
+  /**
+   * Appends a 16-characters-long lowercase hexadecimal representation of the {@code id}.
+   */
+  static final void appendHex(final long id, final StringBuilder sb) {
+    for (int shift = 60; shift >= 0; shift -= 4) {
+      sb.append(Character.forDigit((int)(id >>> shift) & 0xf, 16));
+    }
+  }
+
+  private static final void appendJsonEscaped(final String s, final StringBuilder sb) {
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\')
+            .append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int)c));
+      } else {
+        sb.append(c);
+      }
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(traceId=" + Long.toHexString(traceId)
+        + ", spanId=" + Long.toHexString(spanId)
+        + ", parentSpanId=" + Long.toHexString(parentSpanId)
+        + ", name=" + name
+        + ", startEpochNanos=" + startEpochNanos
+        + ", durationNanos=" + durationNanos
+        + ')';
+  }
+}
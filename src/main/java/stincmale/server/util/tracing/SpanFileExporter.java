@@ -0,0 +1,134 @@
+package stincmale.server.util.tracing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Periodically {@linkplain #export() appends} spans recorded into {@link SpanRingBuffer} since the previous export to a file
+ * in the JSON Lines format, one {@linkplain Span#toJson() span} per line.
+ * Spans that were overwritten in the {@link SpanRingBuffer} before being exported are lost,
+ * so the capacity of the buffer should be chosen according to the export interval and the rate of sampled requests.
+ * <p>
+ * {@link SpanFileExporter} must be {@linkplain #start() started} in order to export automatically,
+ * and should be {@linkplain #stop() stopped} in order to export the remaining spans.
+ */
+@ThreadSafe
+public final class SpanFileExporter {
+  private static final Logger logger = LoggerFactory.getLogger(SpanFileExporter.class);
+
+  private final SpanRingBuffer buffer;
+  private final Path file;
+  private final long exportIntervalMillis;
+  private final ScheduledExecutorService scheduler;
+  private final Object mutex;
+  private final Object exportMutex;
+  /**
+   * Is guarded by {@link #mutex}.
+   */
+  @Nullable
+  private ScheduledFuture<?> scheduledExport;
+  /**
+   * Is guarded by {@link #exportMutex}.
+   */
+  private long nextSequence;
+
+  /**
+   * @param file A file to which spans are appended. The file is created if it does not exist.
+   * @param exportIntervalMillis An interval between {@linkplain #export() exports}. Must be positive.
+   * @param scheduler A {@link ScheduledExecutorService} that is used to {@linkplain #export() export} spans.
+   */
+  public SpanFileExporter(
+      final SpanRingBuffer buffer, final Path file, final long exportIntervalMillis, final ScheduledExecutorService scheduler) {
+    checkNotNull(buffer, "The argument %s must not be null", "buffer");
+    checkNotNull(file, "The argument %s must not be null", "file");
+    checkArgument(exportIntervalMillis > 0, "The argument %s must be positive", "exportIntervalMillis");
+    checkNotNull(scheduler, "The argument %s must not be null", "scheduler");
+    this.buffer = buffer;
+    this.file = file;
+    this.exportIntervalMillis = exportIntervalMillis;
+    this.scheduler = scheduler;
+    mutex = new Object();
+    exportMutex = new Object();
+  }
+
+  /**
+   * Starts {@linkplain #export() exporting} spans with the fixed rate. Does nothing if already started.
+   */
+  public final void start() {
+    synchronized (mutex) {
+      if (scheduledExport == null) {
+        scheduledExport = scheduler.scheduleAtFixedRate(this::exportSafely, exportIntervalMillis, exportIntervalMillis, MILLISECONDS);
+        logger.info("{} was started", this);
+      }
+    }
+  }
+
+  /**
+   * Stops {@linkplain #export() exporting} spans with the fixed rate and exports the remaining spans.
+   * Does nothing if not started.
+   */
+  public final void stop() {
+    synchronized (mutex) {
+      if (scheduledExport != null) {
+        scheduledExport.cancel(false);
+        scheduledExport = null;
+        exportSafely();
+        logger.info("{} was stopped", this);
+      }
+    }
+  }
+
+  /**
+   * Appends spans recorded since the previous export to the file.
+   *
+   * @throws UncheckedIOException If writing to the file fails.
+   */
+  public final void export() {
+    synchronized (exportMutex) {
+      try (BufferedWriter writer = Files.newBufferedWriter(
+          file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+        nextSequence = buffer.read(nextSequence, span -> {
+          try {
+            writer.write(span.toJson());
+            writer.newLine();
+          } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private final void exportSafely() {
+    try {
+      export();
+    } catch (final RuntimeException e) {
+      logger.error("Failed to export spans", e);
+    }
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(buffer=" + buffer
+        + ", file=" + file
+        + ", exportIntervalMillis=" + exportIntervalMillis
+        + ')';
+  }
+}
@@ -0,0 +1,137 @@
+package stincmale.server.util.tracing;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A preallocated lock-free ring buffer of spans, which keeps the most recently {@linkplain #record(long, long, long, String, long, long)
+ * recorded} spans and overwrites the oldest ones.
+ * <p>
+ * Recording is wait-free and does not allocate: a writer claims a slot by incrementing the sequence of the buffer,
+ * writes the fields of the span into preallocated arrays, and then publishes the sequence of the span in the slot.
+ * A reader {@linkplain #read(long, Consumer) reads} the fields of a span and accepts it only if the slot still contains
+ * the same published sequence after reading (a seqlock), so spans that are overwritten while being read are skipped
+ * rather than being read torn. Spans that are being recorded concurrently with reading are also skipped.
+ */
+@ThreadSafe
+public final class SpanRingBuffer {
+  private static final long WRITING = -1;
+
+  private final int capacity;
+  private final int mask;
+  private final long epochOffsetNanos;
+  private final AtomicLong nextSequence;
+  /**
+   * The sequence of the span published in each slot, or {@link #WRITING} if the slot is being written or has never been written.
+   */
+  private final AtomicLongArray sequences;
+  private final long[] traceIds;
+  private final long[] spanIds;
+  private final long[] parentSpanIds;
+  private final String[] names;
+  private final long[] startNanos;
+  private final long[] durationNanos;
+
+  /**
+   * @param capacity The maximal number of spans the buffer keeps. Must be a positive power of two.
+   */
+  public SpanRingBuffer(final int capacity) {
+    checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "The argument %s must be a positive power of two", "capacity");
+    this.capacity = capacity;
+    mask = capacity - 1;
+    epochOffsetNanos = MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+    nextSequence = new AtomicLong();
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, WRITING);
+    }
+    traceIds = new long[capacity];
+    spanIds = new long[capacity];
+    parentSpanIds = new long[capacity];
+    names = new String[capacity];
+    startNanos = new long[capacity];
+    durationNanos = new long[capacity];
+  }
+
+  /**
+   * @param parentSpanId 0 if the span is the root span of the trace.
+   * @param startNanos The start of the span in terms of {@link System#nanoTime()}.
+   */
+  public final void record(
+      final long traceId,
+      final long spanId,
+      final long parentSpanId,
+      final String name,
+      final long startNanos,
+      final long durationNanos) {
+    final long sequence = nextSequence.getAndIncrement();
+    final int i = (int)sequence & mask;
+    sequences.setOpaque(i, WRITING);
+    VarHandle.storeStoreFence();
+    traceIds[i] = traceId;
+    spanIds[i] = spanId;
+    parentSpanIds[i] = parentSpanId;
+    names[i] = name;
+    this.startNanos[i] = startNanos;
+    this.durationNanos[i] = durationNanos;
+    sequences.setRelease(i, sequence);
+  }
+
+  /**
+   * Passes the available spans with sequences not less than {@code fromSequence} to the {@code consumer} in the order of recording.
+   *
+   * @param fromSequence The value returned by the previous invocation of this method, or 0 in order to read all available spans.
+   *
+   * @return The sequence that should be passed to the next invocation of this method in order to read only spans
+   * that are recorded after this invocation.
+   */
+  public final long read(final long fromSequence, final Consumer<? super Span> consumer) {
+    checkNotNull(consumer, "The argument %s must not be null", "consumer");
+    final long result = nextSequence.get();
+    for (long sequence = Math.max(fromSequence, result - capacity); sequence < result; sequence++) {
+      final int i = (int)sequence & mask;
+      if (sequences.getAcquire(i) == sequence) {
+        final long traceId = traceIds[i];
+        final long spanId = spanIds[i];
+        final long parentSpanId = parentSpanIds[i];
+        final String name = names[i];
+        final long startNanos = this.startNanos[i];
+        final long durationNanos = this.durationNanos[i];
+        VarHandle.acquireFence();
+        if (sequences.getOpaque(i) == sequence) {
+          consumer.accept(new Span(traceId, spanId, parentSpanId, name, startNanos + epochOffsetNanos, durationNanos));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Dumps all available spans.
+   */
+  public final List<Span> snapshot() {
+    final List<Span> result = new ArrayList<>(capacity);
+    read(0, result::add);
+    return result;
+  }
+
+  public final int capacity() {
+    return capacity;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(capacity=" + capacity
+        + ", recordedCount=" + nextSequence.get()
+        + ')';
+  }
+}
@@ -0,0 +1,80 @@
+package stincmale.server.util.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.concurrent.ThreadSafe;
+import stincmale.server.netty4.MetadataKey;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@linkplain Tracer#sample() sampled} trace of a request, which consists of the root span and its child spans.
+ * Spans are recorded into {@link SpanRingBuffer} only when they end.
+ */
+@ThreadSafe
+public final class Trace {
+  /**
+   * A {@link MetadataKey} of the {@link Trace} of a sampled request,
+   * e.g. specified by {@link stincmale.server.netty4.RequestMetadataDecoder}.
+   */
+  public static final MetadataKey<Trace> METADATA_KEY = MetadataKey.of(Trace.class.getName());
+
+  private final SpanRingBuffer buffer;
+  private final long traceId;
+  private final long rootSpanId;
+
+  Trace(final SpanRingBuffer buffer, final long traceId, final long rootSpanId) {
+    this.buffer = buffer;
+    this.traceId = traceId;
+    this.rootSpanId = rootSpanId;
+  }
+
+  public final long traceId() {
+    return traceId;
+  }
+
+  public final long rootSpanId() {
+    return rootSpanId;
+  }
+
+  /**
+   * Records the root span.
+   *
+   * @param startNanos The start of the span in terms of {@link System#nanoTime()}.
+   * @param endNanos The end of the span in terms of {@link System#nanoTime()}.
+   */
+  public final void recordRoot(final String name, final long startNanos, final long endNanos) {
+    checkNotNull(name, "The argument %s must not be null", "name");
+    buffer.record(traceId, rootSpanId, 0, name, startNanos, endNanos - startNanos);
+  }
+
+  /**
+   * Records a child span of the root span.
+   *
+   * @param startNanos See {@link #recordRoot(String, long, long)}.
+   * @param endNanos See {@link #recordRoot(String, long, long)}.
+   *
+   * @return The ID of the recorded span.
+   */
+  public final long record(final String name, final long startNanos, final long endNanos) {
+    checkNotNull(name, "The argument %s must not be null", "name");
+    final long result = Tracer.newId(ThreadLocalRandom.current());
+    buffer.record(traceId, result, rootSpanId, name, startNanos, endNanos - startNanos);
+    return result;
+  }
+
+  /**
+   * @return A 16-characters-long lowercase hexadecimal representation of the {@link #traceId()},
+   * e.g. in order to put it into {@link org.slf4j.MDC}.
+   */
+  public final String traceIdHex() {
+    final StringBuilder result = new StringBuilder(16);
+    Span.appendHex(traceId, result);
+    return result.toString();
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(traceId=" + traceIdHex()
+        + ')';
+  }
+}
@@ -0,0 +1,65 @@
+package stincmale.server.util.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Makes head-based sampling decisions: a {@link Trace} is either {@linkplain #sample() started} when a request is received,
+ * and then all spans of the request are recorded into the {@link SpanRingBuffer}, or the request is not traced at all.
+ * The decision for a request that is not sampled costs a single {@link ThreadLocalRandom#nextLong()} and does not allocate.
+ */
+@ThreadSafe
+public final class Tracer {
+  private final double samplingProbability;
+  private final long samplingThreshold;
+  private final SpanRingBuffer buffer;
+
+  /**
+   * @param samplingProbability The probability of {@linkplain #sample() sampling} a request, must be within [0, 1].
+   * @param buffer A buffer into which spans of sampled requests are recorded.
+   */
+  public Tracer(final double samplingProbability, final SpanRingBuffer buffer) {
+    checkArgument(samplingProbability >= 0 && samplingProbability <= 1, "The argument %s must be within [0, 1]", "samplingProbability");
+    checkNotNull(buffer, "The argument %s must not be null", "buffer");
+    this.samplingProbability = samplingProbability;
+    samplingThreshold = samplingProbability == 1 ? Long.MAX_VALUE : (long)(samplingProbability * Long.MAX_VALUE);
+    this.buffer = buffer;
+  }
+
+  /**
+   * @return A new {@link Trace} if the request is sampled, or {@code null} otherwise.
+   */
+  @Nullable
+  public final Trace sample() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    return samplingThreshold != 0 && (random.nextLong() >>> 1) < samplingThreshold
+        ? new Trace(buffer, newId(random), newId(random))
+        : null;
+  }
+
+  public final SpanRingBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * @return A random ID that is not 0.
+   */
+  static final long newId(final ThreadLocalRandom random) {
+    long result;
+    do {
+      result = random.nextLong();
+    } while (result == 0);
+    return result;
+  }
+
+  @Override
+  public final String toString() {
+    return getClass().getSimpleName()
+        + "(samplingProbability=" + samplingProbability
+        + ", buffer=" + buffer
+        + ')';
+  }
+}
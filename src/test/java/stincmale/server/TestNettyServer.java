@@ -2,6 +2,8 @@ package stincmale.server;
 
 import org.junit.jupiter.api.Test;
 import stincmale.server.netty4.NettyServer;
+import stincmale.server.netty4.admin.AdminServer;
+import stincmale.server.netty4.admin.PrometheusExporter;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
@@ -10,8 +12,12 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import java.net.ConnectException;
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
 import java.util.concurrent.Future;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -51,4 +57,43 @@ public final class TestNettyServer {
     server.stop();
     assertTrue(futureCompletion.isDone());
   }
+
+  @Test
+  public final void adminServer() throws Exception {
+    final ServerBootstrap sBootstrap = new ServerBootstrap();
+    sBootstrap.channel(NioServerSocketChannel.class);
+    sBootstrap.group(new NioEventLoopGroup(1));
+    sBootstrap.localAddress(new InetSocketAddress("localhost", 22875));
+    sBootstrap.childHandler(new LoggingHandler(LogLevel.DEBUG));
+    final InetSocketAddress adminAddress = new InetSocketAddress("localhost", 22876);
+    final AdminServer adminServer = new AdminServer(adminAddress, new PrometheusExporter(null, Map.of(), Map.of(), null));
+    final NettyServer server = new NettyServer(sBootstrap, null, adminServer);
+    final Future<Void> futureCompletion = server.start();
+    assertFalse(futureCompletion.isDone());
+    try (var socket = new Socket(adminAddress.getAddress(), adminAddress.getPort())) {
+      assertTrue(socket.isConnected());
+    }
+    server.stop();
+    assertTrue(futureCompletion.isDone());
+    assertTrue(adminServer.start()
+        .isDone());
+    assertTrue(isClosed(adminAddress, 5_000));
+  }
+
+  /**
+   * Closing a listening socket registered with a selector is completed by the selector asynchronously, hence the retries.
+   */
+  private static final boolean isClosed(final InetSocketAddress address, final long timeoutMillis) throws Exception {
+    final long deadlineNanos = System.nanoTime() + MILLISECONDS.toNanos(timeoutMillis);
+    boolean result = false;
+    while (!result && System.nanoTime() - deadlineNanos < 0) {
+      try {
+        new Socket(address.getAddress(), address.getPort()).close();
+        Thread.sleep(10);
+      } catch (final ConnectException e) {
+        result = true;
+      }
+    }
+    return result;
+  }
 }
@@ -53,6 +53,24 @@ public final class TestExampleSpringHttpServer {
         request(String.format("http://localhost:%s/context/path/helloWorld", port)));
   }
 
+  @Test
+  public final void testUser() throws Exception {
+    assertEquals(
+        String.format(TestExampleSpringHttpServer_UserProcessor.RESPONSE_FORMAT, "stIncMale"),
+        request(String.format("http://localhost:%s/context/path/users/stIncMale", port)));
+  }
+
+  @Test
+  public final void testUnknownRoute() throws Exception {
+    final HttpURLConnection connection = (HttpURLConnection)new URL(String.format("http://localhost:%s/context/path/unknown", port))
+        .openConnection();
+    try {
+      assertEquals(HttpURLConnection.HTTP_NOT_FOUND, connection.getResponseCode());
+    } finally {
+      connection.disconnect();
+    }
+  }
+
   @Test
   public final void testChunkedRequest() throws Exception {
     final HttpURLConnection connection = (HttpURLConnection)new URL(String.format("http://localhost:%s/", port))
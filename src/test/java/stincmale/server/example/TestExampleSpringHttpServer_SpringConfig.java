@@ -25,7 +25,7 @@ import stincmale.server.netty4.NettyServer;
 import stincmale.server.netty4.RequestMetadataDecoder;
 import stincmale.server.netty4.tcp.http.ClientAddressMdcHandler;
 import stincmale.server.netty4.tcp.http.HttpDispatchMonoHandler;
-import stincmale.server.reqres.spring.http.SimpleSpringHttpRequestDispatcherByUrl;
+import stincmale.server.reqres.spring.http.SpringHttpRequestDispatcherByRoute;
 import static io.netty.util.ResourceLeakDetector.Level.PARANOID;
 
 @Configuration
@@ -48,11 +48,11 @@ class TestExampleSpringHttpServer_SpringConfig {
 
   @Bean
   RequestMetadataDecoder<FullHttpRequest> provideRequestMetadataDecoder() {
-    return new RequestMetadataDecoder<>() {
+    return new RequestMetadataDecoder<>(true) {
       @Override
       protected MetadataMap createMetadata(final ChannelHandlerContext ctx, final FullHttpRequest request) {
         //add any data to requestWithMetadata, e.g. remote address from ctx
-        return new MetadataMap();
+        return newMetadataMap();
       }
     };
   }
@@ -63,7 +63,7 @@ class TestExampleSpringHttpServer_SpringConfig {
       @Value("${prop.contextPath}") final String contextPath,
       @Value("${prop.connectionIdleTimeoutMillis}") final long connectionIdleTimeoutMillis) {
     return new HttpDispatchMonoHandler(
-        new SimpleSpringHttpRequestDispatcherByUrl(
+        new SpringHttpRequestDispatcherByRoute(
             appCtx, ImmutableSet.of("stincmale.server.example"), true, null, contextPath),
         connectionIdleTimeoutMillis);
   }
@@ -0,0 +1,36 @@
+package stincmale.server.example;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import javax.annotation.concurrent.ThreadSafe;
+import org.springframework.stereotype.Component;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.netty4.tcp.http.HttpRequestProcessor;
+import stincmale.server.netty4.tcp.http.PathParameters;
+import stincmale.server.netty4.tcp.http.util.HttpUtil;
+import stincmale.server.reqres.Processor;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+@Processor(value = "/users/{id}", methods = "GET")
+@Component
+@ThreadSafe
+final class TestExampleSpringHttpServer_UserProcessor implements HttpRequestProcessor {
+  static final String RESPONSE_FORMAT = "Hello, %s!";
+
+  private TestExampleSpringHttpServer_UserProcessor() {
+  }
+
+  @Override
+  public final CompletionStage<FullHttpResponse> process(final RequestWithMetadata<? extends FullHttpRequest> request) {
+    //the path parameter id is captured by the router
+    final String id = request.metadata()
+        .get(PathParameters.METADATA_KEY)
+        .flatMap(pathParameters -> pathParameters.get("id"))
+        .orElseThrow();
+    return CompletableFuture.completedFuture(
+        HttpUtil.setPlainTextUtf8Content(HttpUtil.createHttpResponse(HTTP_1_1, OK), String.format(RESPONSE_FORMAT, id)));
+  }
+}
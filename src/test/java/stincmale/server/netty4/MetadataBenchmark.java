@@ -0,0 +1,120 @@
+package stincmale.server.netty4;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link MetadataMap} with a {@link HashMap}-based {@link Metadata}, which {@link MetadataMap} used to be.
+ * See {@code contributing.md} for how to run benchmarks, use {@code -prof gc} to see allocation rates.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MetadataBenchmark {
+  private static final MetadataKey<String> KEY1 = MetadataKey.of(MetadataBenchmark.class.getName() + ".key1");
+  private static final MetadataKey<Integer> KEY2 = MetadataKey.of(MetadataBenchmark.class.getName() + ".key2");
+  private static final MetadataKey<String> ABSENT_KEY = MetadataKey.of(MetadataBenchmark.class.getName() + ".absentKey");
+
+  private MetadataMap metadataMap;
+  private HashMapMetadata hashMapMetadata;
+  private String value1;
+  private Integer value2;
+
+  public MetadataBenchmark() {
+  }
+
+  @Setup
+  public final void setup() {
+    value1 = "value";
+    value2 = 1_000_000;
+    metadataMap = new MetadataMap().set(KEY1, value1)
+        .set(KEY2, value2);
+    hashMapMetadata = new HashMapMetadata().set(KEY1, value1)
+        .set(KEY2, value2);
+  }
+
+  @Benchmark
+  public final Metadata hashMapCreate() {
+    return new HashMapMetadata().set(KEY1, value1)
+        .set(KEY2, value2);
+  }
+
+  @Benchmark
+  public final Metadata metadataMapCreate() {
+    return new MetadataMap().set(KEY1, value1)
+        .set(KEY2, value2);
+  }
+
+  @Benchmark
+  public final int hashMapGet() {
+    return hashMapMetadata.get(KEY1)
+        .orElseThrow()
+        .length()
+        + hashMapMetadata.get(KEY2)
+        .orElseThrow()
+        + hashMapMetadata.get(ABSENT_KEY)
+        .map(String::length)
+        .orElse(0);
+  }
+
+  @Benchmark
+  public final int metadataMapGet() {
+    return metadataMap.get(KEY1)
+        .orElseThrow()
+        .length()
+        + metadataMap.get(KEY2)
+        .orElseThrow()
+        + metadataMap.get(ABSENT_KEY)
+        .map(String::length)
+        .orElse(0);
+  }
+
+  @Benchmark
+  public final int metadataMapGetOrNull() {
+    @Nullable final String absent = metadataMap.getOrNull(ABSENT_KEY);
+    return metadataMap.getOrNull(KEY1)
+        .length()
+        + metadataMap.getOrNull(KEY2)
+        + (absent == null ? 0 : absent.length());
+  }
+
+  private static final class HashMapMetadata implements Metadata {
+    @Nullable
+    private Map<MetadataKey<?>, Object> metadata;
+
+    private HashMapMetadata() {
+    }
+
+    private final <T> HashMapMetadata set(final MetadataKey<T> key, final T value) {
+      if (metadata == null) {
+        metadata = new HashMap<>();
+      }
+      metadata.put(key, value);
+      return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final <T> Optional<T> get(final MetadataKey<T> key) {
+      return metadata == null
+          ? Optional.empty()
+          : Optional.ofNullable((T)metadata.get(key));
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package stincmale.server.netty4;
+
+import com.timgroup.statsd.NoOpStatsDClient;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.Test;
+import stincmale.server.util.stats.StatsAggregator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public final class TestEventLoopMonitor {
+  public TestEventLoopMonitor() {
+  }
+
+  @Test
+  public final void stuck() throws Exception {
+    final EventLoopGroup group = new DefaultEventLoopGroup(1);
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final StatsAggregator statsAggregator = new StatsAggregator(new NoOpStatsDClient(), 60_000, scheduler);
+      final EventLoopMonitor monitor = new EventLoopMonitor(Map.of("test", group), 10, 10, statsAggregator);
+      monitor.sample();
+      group.submit(() -> null)
+          .get(5, SECONDS);
+      assertEquals(1, statsAggregator.histogram("eventLoop.lag", List.of("eventLoop:test-0"))
+          .drain()
+          .count());
+      assertEquals(0, monitor.getStuckCount());
+      final CountDownLatch unblock = new CountDownLatch(1);
+      group.execute(() -> {
+        try {
+          unblock.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread()
+              .interrupt();
+        }
+      });
+      monitor.sample();
+      Thread.sleep(50);
+      monitor.sample();
+      monitor.sample();
+      assertEquals(1, monitor.getStuckCount());
+      assertEquals(1, statsAggregator.gauge("eventLoop.pendingTasks", List.of("eventLoop:test-0"))
+          .value());//the heartbeat task
+      assertEquals(1, statsAggregator.counter("eventLoop.stuckCount", List.of("eventLoop:test-0"))
+          .sum());
+      unblock.countDown();
+      group.submit(() -> null)
+          .get(5, SECONDS);
+      assertTrue(statsAggregator.histogram("eventLoop.lag", List.of("eventLoop:test-0"))
+          .drain()
+          .max() > 0);
+    } finally {
+      scheduler.shutdownNow();
+      group.shutdownGracefully(0, 0, SECONDS);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package stincmale.server.netty4;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestMetadataMap {
+  private static final MetadataKey<String> KEY = MetadataKey.of(TestMetadataMap.class.getName() + ".key");
+  private static final AtomicInteger lazyLoadsCount = new AtomicInteger();
+  private static final MetadataKey<String> LAZY_KEY = MetadataKey.lazy(TestMetadataMap.class.getName() + ".lazyKey", (ctx, request) -> {
+    lazyLoadsCount.incrementAndGet();
+    return request.toString();
+  });
+  private static final MetadataKey<String> LAZY_NULL_KEY = MetadataKey.lazy(TestMetadataMap.class.getName() + ".lazyNullKey",
+      (ctx, request) -> {
+        lazyLoadsCount.incrementAndGet();
+        return null;
+      });
+
+  public TestMetadataMap() {
+  }
+
+  @Test
+  public final void registry() {
+    assertSame(KEY, MetadataKey.of(TestMetadataMap.class.getName() + ".key"));
+    assertTrue(KEY.ordinal() >= 0);
+  }
+
+  @Test
+  public final void setGet() {
+    final MetadataMap metadata = new MetadataMap();
+    assertNull(metadata.getOrNull(KEY));
+    assertTrue(metadata.get(KEY)
+        .isEmpty());
+    metadata.set(KEY, "value");
+    assertEquals("value", metadata.getOrNull(KEY));
+    assertEquals("value", metadata.get(KEY)
+        .orElseThrow());
+    assertTrue(metadata.toString()
+        .contains("value"));
+  }
+
+  @Test
+  public final void manyKeys() {
+    final MetadataMap metadata = new MetadataMap();
+    for (int i = 0; i < 100; i++) {
+      metadata.set(MetadataKey.of(TestMetadataMap.class.getName() + ".key" + i), i);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, metadata.getOrNull(MetadataKey.<Integer>of(TestMetadataMap.class.getName() + ".key" + i)));
+    }
+  }
+
+  @Test
+  public final void referenceCounted() {
+    assertThrows(IllegalArgumentException.class, () -> new MetadataMap().set(MetadataKey.of(TestMetadataMap.class.getName() + ".rc"),
+        Unpooled.buffer()));
+  }
+
+  @Test
+  public final void lazy() throws Exception {
+    assertTrue(LAZY_KEY.isLazy());
+    assertThrows(IllegalArgumentException.class, () -> MetadataKey.lazy(LAZY_KEY.toString(), (ctx, request) -> ""));
+    assertNull(new MetadataMap().getOrNull(LAZY_KEY));
+    final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int i = 0; i < 100; i++) {
+        lazyLoadsCount.set(0);
+        final MetadataMap metadata = new MetadataMap().bind(channel.pipeline()
+            .firstContext(), "request" + i);
+        final List<CompletableFuture<String>> values = new ArrayList<>();
+        for (int j = 0; j < 4; j++) {
+          values.add(CompletableFuture.supplyAsync(() -> metadata.getOrNull(LAZY_KEY), executor));
+        }
+        for (final CompletableFuture<String> value : values) {
+          assertEquals("request" + i, value.get());
+        }
+        assertEquals(1, lazyLoadsCount.get());
+      }
+    } finally {
+      executor.shutdownNow();
+      channel.finishAndReleaseAll();
+    }
+  }
+
+  @Test
+  public final void lazyNull() {
+    final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    try {
+      lazyLoadsCount.set(0);
+      final MetadataMap metadata = new MetadataMap().bind(channel.pipeline()
+          .firstContext(), "request");
+      assertNull(metadata.getOrNull(LAZY_NULL_KEY));
+      assertTrue(metadata.get(LAZY_NULL_KEY)
+          .isEmpty());
+      assertEquals(1, lazyLoadsCount.get());
+      metadata.set(LAZY_KEY, "explicit");
+      assertEquals("explicit", metadata.getOrNull(LAZY_KEY));
+      assertEquals(1, lazyLoadsCount.get());
+    } finally {
+      channel.finishAndReleaseAll();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package stincmale.server.netty4;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestRequestWithMetadata {
+  private static final MetadataKey<String> KEY = MetadataKey.of(TestRequestWithMetadata.class.getName() + ".key");
+
+  public TestRequestWithMetadata() {
+  }
+
+  @Test
+  public final void notPooled() {
+    final RequestWithMetadata<String> request = new RequestWithMetadata<>("request");
+    assertFalse(request.isPooled());
+    request.recycle();
+    request.recycle();
+    assertEquals("request", request.request());
+  }
+
+  @Test
+  public final void pooled() {
+    final MetadataMap metadata = MetadataMap.newPooled();
+    metadata.set(KEY, "value");
+    final ByteBuf buf = Unpooled.buffer();
+    final RequestWithMetadata<ByteBuf> request = RequestWithMetadata.newPooled(buf, metadata);
+    assertTrue(request.isPooled());
+    assertSame(buf, request.request());
+    assertSame(metadata, request.metadata());
+    request.recycle();
+    assertEquals(1, buf.refCnt());
+    assertNull(metadata.getOrNull(KEY));
+    buf.release();
+  }
+
+  @Test
+  public final void useAfterRecycle() {
+    final RequestWithMetadata<String> request = RequestWithMetadata.newPooled("request", new MetadataMap());
+    request.recycle();
+    assertThrows(IllegalStateException.class, request::request);
+    assertThrows(IllegalStateException.class, request::metadata);
+  }
+
+  @Test
+  public final void doubleRecycle() {
+    final RequestWithMetadata<String> request = RequestWithMetadata.newPooled("request", new MetadataMap());
+    request.recycle();
+    assertThrows(IllegalStateException.class, request::recycle);
+  }
+}
@@ -0,0 +1,139 @@
+package stincmale.server.netty4.admin;
+
+import com.timgroup.statsd.NoOpStatsDClient;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.Test;
+import stincmale.server.netty4.util.channel.ConnectionCounter;
+import stincmale.server.util.stats.LatencyHistogram;
+import stincmale.server.util.stats.StatsAggregator;
+import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpMethod.POST;
+import static io.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestPrometheusExporter {
+  public TestPrometheusExporter() {
+  }
+
+  @Test
+  public final void write() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final StatsAggregator aggregator = new StatsAggregator(new NoOpStatsDClient(), 60_000, scheduler);
+      aggregator.counter("requestsCount", List.of("route:/a"))
+          .add(3);
+      aggregator.counter("requestsCount", List.of("route:/b\\"))
+          .increment();
+      aggregator.gauge("Processor.inFlightRequests", null)
+          .add(2);
+      final LatencyHistogram histogram = aggregator.histogram("processingTimeMillis", List.of("route:/a"));
+      for (int i = 0; i < 100; i++) {
+        histogram.record(MILLISECONDS.toNanos(1));
+      }
+      aggregator.flush();
+      final ConnectionCounter connectionCounter = new ConnectionCounter();
+      new EmbeddedChannel(connectionCounter);
+      final PrometheusExporter exporter = new PrometheusExporter(aggregator, Map.of(), Map.of(), connectionCounter);
+      final ByteBuf out = Unpooled.buffer();
+      try {
+        exporter.write(out);
+        final String text = out.toString(StandardCharsets.UTF_8);
+        assertTrue(text.contains("# TYPE requestsCount_total counter\n"
+            + "requestsCount_total{route=\"/a\"} 3\n"), text);
+        assertTrue(text.contains("requestsCount_total{route=\"/b\\\\\"} 1\n"), text);
+        assertTrue(text.contains("# TYPE Processor_inFlightRequests gauge\n"
+            + "Processor_inFlightRequests 2\n"), text);
+        assertTrue(text.contains("# TYPE processingTime_seconds summary\n"
+            + "processingTime_seconds{route=\"/a\",quantile=\"0.5\"} "), text);
+        assertTrue(text.contains("processingTime_seconds_sum{route=\"/a\"} 100000000e-9\n"), text);
+        assertTrue(text.contains("processingTime_seconds_count{route=\"/a\"} 100\n"), text);
+        assertTrue(text.contains("server_connections_active 1\n"), text);
+        assertTrue(text.contains("server_connections_opened_total 1\n"), text);
+      } finally {
+        out.release();
+      }
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void writeNotStartedStatsAggregator() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final StatsAggregator aggregator = new StatsAggregator(new NoOpStatsDClient(), 60_000, scheduler);
+      final LatencyHistogram histogram = aggregator.histogram("processingTimeMillis", null);
+      for (int i = 0; i < 10; i++) {
+        histogram.record(MILLISECONDS.toNanos(1));
+      }
+      final PrometheusExporter exporter = new PrometheusExporter(aggregator, Map.of(), Map.of(), null);
+      final ByteBuf out = Unpooled.buffer();
+      try {
+        exporter.write(out);
+        final String text = out.toString(StandardCharsets.UTF_8);
+        assertTrue(text.contains("processingTime_seconds{quantile=\"0.5\"} 1"), text);
+        assertTrue(text.contains("processingTime_seconds_sum 10000000e-9\n"), text);
+        assertTrue(text.contains("processingTime_seconds_count 10\n"), text);
+      } finally {
+        out.release();
+      }
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void writeLong() {
+    final ByteBuf out = Unpooled.buffer();
+    try {
+      for (final long value : new long[] {0, 7, 10, -10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+        out.clear();
+        PrometheusExporter.writeLong(value, out);
+        assertEquals(Long.toString(value), out.toString(StandardCharsets.US_ASCII));
+      }
+    } finally {
+      out.release();
+    }
+  }
+
+  @Test
+  public final void adminHttpHandler() {
+    final PrometheusExporter exporter = new PrometheusExporter(null, Map.of(), Map.of(), new ConnectionCounter());
+    final EmbeddedChannel testChannel = new EmbeddedChannel(new AdminHttpHandler(exporter));
+    testChannel.writeInbound(new DefaultFullHttpRequest(HTTP_1_1, GET, AdminHttpHandler.METRICS_PATH));
+    final FullHttpResponse metricsResponse = testChannel.readOutbound();
+    assertNotNull(metricsResponse);
+    try {
+      assertEquals(OK, metricsResponse.status());
+      assertTrue(metricsResponse.content()
+          .toString(StandardCharsets.UTF_8)
+          .contains("server_connections_active 0\n"));
+    } finally {
+      metricsResponse.release();
+    }
+    testChannel.writeInbound(new DefaultFullHttpRequest(HTTP_1_1, POST, AdminHttpHandler.METRICS_PATH));
+    final FullHttpResponse postResponse = testChannel.readOutbound();
+    assertEquals(METHOD_NOT_ALLOWED, postResponse.status());
+    postResponse.release();
+    final EmbeddedChannel testChannel2 = new EmbeddedChannel(new AdminHttpHandler(exporter));
+    testChannel2.writeInbound(new DefaultFullHttpRequest(HTTP_1_1, GET, "/unknown"));
+    final FullHttpResponse unknownResponse = testChannel2.readOutbound();
+    assertEquals(NOT_FOUND, unknownResponse.status());
+    unknownResponse.release();
+  }
+}
@@ -1,7 +1,26 @@
 package stincmale.server.netty4.tcp;
 
+import com.timgroup.statsd.NoOpStatsDClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import org.junit.jupiter.api.Test;
+import stincmale.server.netty4.MetadataMap;
+import stincmale.server.netty4.RequestWithMetadata;
 import stincmale.server.reqres.RequestDispatcher;
+import stincmale.server.reqres.Routable;
+import stincmale.server.util.stats.StatsAggregator;
+import stincmale.server.util.tracing.Span;
+import stincmale.server.util.tracing.SpanRingBuffer;
+import stincmale.server.util.tracing.Trace;
+import stincmale.server.util.tracing.Tracer;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
@@ -177,4 +196,130 @@ public final class TestDispatchMonoHandler {
     assertSame(DHandler.CLOSE_REQUEST, testChannel.readOutbound());
     assertFalse(testChannel.isOpen());
   }
+
+  @Test
+  public final void requestTimings() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final StatsAggregator statsAggregator = new StatsAggregator(new NoOpStatsDClient(), 60_000, scheduler);
+      final CompletableFuture<Object> futureResponse = new CompletableFuture<>();
+      final RequestDispatcher<Object, Object> dispatcher = request -> {
+        ((Routable)request).setRoute("route");
+        return futureResponse;
+      };
+      final EmbeddedChannel testChannel = new EmbeddedChannel(new DispatchMonoHandler<>(dispatcher, -1, statsAggregator));
+      testChannel.writeInbound(new RequestWithMetadata<>(new Object()));
+      @Nullable final RequestTimings timings = RequestTimings.current(testChannel);
+      assertNotNull(timings);
+      assertNull(timings.route());
+      assertTrue(timings.queueWaitNanos() >= 0);
+      assertEquals(-1, timings.processingNanos());
+      futureResponse.complete("response");
+      testChannel.runPendingTasks();
+      assertEquals("response", testChannel.readOutbound());
+      assertEquals("route", timings.route());
+      assertTrue(timings.processingNanos() >= 0);
+      assertTrue(timings.handOffNanos() >= 0);
+      assertTrue(timings.socketWriteNanos() >= 0);
+      assertNull(RequestTimings.current(testChannel));
+      assertEquals(1, statsAggregator.histogram("request.processingTime", List.of("route:route"))
+          .drain()
+          .count());
+      assertEquals(1, statsAggregator.histogram("request.socketWriteTime", List.of("route:route"))
+          .drain()
+          .count());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void requestTimingsOnlyIfNeeded() {
+    final CompletableFuture<Object> futureResponse1 = new CompletableFuture<>();
+    final CompletableFuture<Object> futureResponse2 = new CompletableFuture<>();
+    final RequestDispatcher<RequestWithMetadata<CompletableFuture<Object>>, Object> dispatcher = RequestWithMetadata::request;
+    final EmbeddedChannel testChannel = new EmbeddedChannel(new DispatchMonoHandler<>(dispatcher, -1));
+    testChannel.writeInbound(new RequestWithMetadata<>(futureResponse1));
+    assertNull(RequestTimings.current(testChannel));
+    testChannel.writeInbound(new RequestWithMetadata<>(futureResponse2));
+    futureResponse1.complete("response");
+    testChannel.runPendingTasks();
+    assertEquals("response", testChannel.readOutbound());
+    assertNotNull(RequestTimings.current(testChannel), "A queued request must have timings in order to retain its context");
+    final EmbeddedChannel testChannel2 = new EmbeddedChannel(new DispatchMonoHandler<>(request -> new CompletableFuture<>(), -1, null, true));
+    testChannel2.writeInbound(new RequestWithMetadata<>(new Object()));
+    assertNotNull(RequestTimings.current(testChannel2));
+  }
+
+  @Test
+  public final void spans() {
+    final SpanRingBuffer buffer = new SpanRingBuffer(16);
+    @Nullable final Trace trace = new Tracer(1, buffer).sample();
+    assertNotNull(trace);
+    final RequestDispatcher<Object, Object> dispatcher = request -> {
+      ((Routable)request).setRoute("route");
+      return CompletableFuture.completedFuture("response");
+    };
+    final EmbeddedChannel testChannel = new EmbeddedChannel(new DispatchMonoHandler<>(dispatcher, -1));
+    testChannel.writeInbound(new RequestWithMetadata<>(new Object(), new MetadataMap().set(Trace.METADATA_KEY, trace)));
+    assertEquals("response", testChannel.readOutbound());
+    final List<Span> spans = buffer.snapshot();
+    assertEquals(4, spans.size());
+    final Span root = spans.get(3);
+    assertEquals("route", root.name());
+    assertEquals(trace.rootSpanId(), root.spanId());
+    assertEquals(0, root.parentSpanId());
+    assertEquals(List.of("dispatch", "process", "write"), List.of(spans.get(0)
+        .name(), spans.get(1)
+        .name(), spans.get(2)
+        .name()));
+    for (final Span span : spans) {
+      assertEquals(trace.traceId(), span.traceId());
+      assertTrue(span.durationNanos() >= 0);
+    }
+    assertEquals(trace.rootSpanId(), spans.get(1)
+        .parentSpanId());
+  }
+
+  @Test
+  public final void jfrEvents() throws Exception {
+    final List<RecordedEvent> events;
+    try (var recording = new Recording()) {
+      for (final String eventName : List.of("RequestQueue", "RequestDispatch", "RequestProcessing", "ResponseWrite")) {
+        recording.enable("stincmale.server." + eventName)
+            .withThreshold(Duration.ZERO);
+      }
+      recording.start();
+      final CompletableFuture<Object> futureResponse = new CompletableFuture<>();
+      final RequestDispatcher<Object, Object> dispatcher = request -> {
+        ((Routable)request).setRoute("route");
+        return futureResponse;
+      };
+      final EmbeddedChannel testChannel = new EmbeddedChannel(new DispatchMonoHandler<>(dispatcher, -1));
+      testChannel.writeInbound(new RequestWithMetadata<>(new Object()));
+      testChannel.writeInbound(new RequestWithMetadata<>(new Object()));
+      futureResponse.complete("response");
+      testChannel.runPendingTasks();
+      assertEquals("response", testChannel.readOutbound());
+      assertEquals("response", testChannel.readOutbound());
+      recording.stop();
+      final Path file = Files.createTempFile(TestDispatchMonoHandler.class.getSimpleName(), ".jfr");
+      try {
+        recording.dump(file);
+        events = RecordingFile.readAllEvents(file);
+      } finally {
+        Files.delete(file);
+      }
+    }
+    assertEquals(List.of("stincmale.server.RequestDispatch", "stincmale.server.RequestDispatch", "stincmale.server.RequestProcessing",
+        "stincmale.server.RequestProcessing", "stincmale.server.RequestQueue", "stincmale.server.ResponseWrite", "stincmale.server.ResponseWrite"),
+        events.stream()
+            .map(event -> event.getEventType()
+                .getName())
+            .sorted()
+            .collect(Collectors.toList()));
+    for (final RecordedEvent event : events) {
+      assertEquals("route", event.getString("route"));
+    }
+  }
 }
@@ -0,0 +1,25 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.reqres.RequestProcessor;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * The template of classes of {@link RequestProcessor}s defined by {@link HttpDispatchChainBenchmark}.
+ * The class is top-level, so that its copies do not have to be members of a nest.
+ */
+final class BenchmarkProcessor00 implements RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> {
+  public BenchmarkProcessor00() {
+  }
+
+  @Override
+  public final CompletionStage<FullHttpResponse> process(final RequestWithMetadata<? extends FullHttpRequest> request) {
+    return CompletableFuture.completedFuture(new DefaultFullHttpResponse(HTTP_1_1, OK));
+  }
+}
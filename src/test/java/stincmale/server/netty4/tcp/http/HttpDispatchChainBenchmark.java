@@ -0,0 +1,159 @@
+package stincmale.server.netty4.tcp.http;
+
+import com.timgroup.statsd.NoOpStatsDClient;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.reqres.RejectedRequestException;
+import stincmale.server.reqres.RequestDispatcher;
+import stincmale.server.reqres.RequestDispatcherByProcessorName;
+import stincmale.server.reqres.RequestProcessor;
+import stincmale.server.reqres.RequestProcessorWithStats;
+import stincmale.server.util.stats.StatsAggregator;
+import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * Measures the full dispatch chain {@link HttpDispatchMonoHandler} → {@link SimpleHttpRequestDispatcherByUrl}
+ * → {@link RequestProcessorWithStats} → {@link RequestProcessor}, which is what
+ * {@link stincmale.server.reqres.spring.http.SimpleSpringHttpRequestDispatcherByUrl} does for {@link RequestProcessor}s
+ * detected in a Spring application context.
+ * Each {@link RequestProcessor} is of its own class, which is a copy of {@link BenchmarkProcessor00}.
+ * If {@link #specialized}, then {@link SimpleHttpRequestDispatcherByUrl} is used,
+ * otherwise a dispatcher that calls {@link RequestProcessor}s the way {@link RequestDispatcherByProcessorName}
+ * did before it started to specialize them.
+ * See {@code contributing.md} for how to run benchmarks, use a logging configuration that disables debug logging.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class HttpDispatchChainBenchmark {
+  private static final String TEMPLATE_NAME = BenchmarkProcessor00.class.getSimpleName();
+
+  @Param({"64"})
+  public int processorsCount;
+  @Param({"false", "true"})
+  public boolean specialized;
+
+  private ScheduledExecutorService scheduler;
+  private EmbeddedChannel channel;
+  private String[] uris;
+  private int idx;
+
+  public HttpDispatchChainBenchmark() {
+  }
+
+  @Setup
+  public final void setup() throws ReflectiveOperationException, IOException {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    final StatsAggregator statsAggregator = new StatsAggregator(new NoOpStatsDClient(), 60_000, scheduler);
+    final Map<String, RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> processors = new HashMap<>();
+    uris = new String[processorsCount];
+    for (int i = 0; i < processorsCount; i++) {
+      final String name = "/resource" + i;
+      final RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> processor = newProcessorOfNewClass(i);
+      processors.put(name, new RequestProcessorWithStats<>(processor, statsAggregator, Collections.singleton("type:" + name)));
+      uris[i] = name;
+    }
+    channel = new EmbeddedChannel(new HttpDispatchMonoHandler(
+        specialized ? new SimpleHttpRequestDispatcherByUrl(processors, "") : new UnspecializedDispatcher(processors), -1));
+    idx = 0;
+  }
+
+  @TearDown
+  public final void tearDown() {
+    channel.finishAndReleaseAll();
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Defines a copy of {@link BenchmarkProcessor00} whose name ends with {@code i} instead of {@code 00}.
+   */
+  @SuppressWarnings("unchecked")
+  private static final RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> newProcessorOfNewClass(final int i)
+      throws ReflectiveOperationException, IOException {
+    final Class<?> klass;
+    if (i == 0) {
+      klass = BenchmarkProcessor00.class;
+    } else {
+      final byte[] template;
+      try (InputStream in = BenchmarkProcessor00.class.getResourceAsStream(TEMPLATE_NAME + ".class")) {
+        template = in.readAllBytes();
+      }
+      //the name has the same length, so the constant pool of the class stays valid
+      final byte[] bytes = new String(template, StandardCharsets.ISO_8859_1)
+          .replace(TEMPLATE_NAME, TEMPLATE_NAME.substring(0, TEMPLATE_NAME.length() - 2) + String.format("%02d", i))
+          .getBytes(StandardCharsets.ISO_8859_1);
+      klass = MethodHandles.lookup()
+          .defineClass(bytes);
+    }
+    return (RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>)klass.getDeclaredConstructor()
+        .newInstance();
+  }
+
+  private final String nextUri() {
+    idx = idx + 1 == processorsCount ? 0 : idx + 1;
+    return uris[idx];
+  }
+
+  @Benchmark
+  public final FullHttpResponse dispatch() {
+    channel.writeInbound(new RequestWithMetadata<>(new DefaultFullHttpRequest(HTTP_1_1, GET, nextUri())));
+    final FullHttpResponse result = channel.readOutbound();
+    result.release();
+    return result;
+  }
+
+  private static final class UnspecializedDispatcher
+      implements RequestDispatcher<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> {
+    private final SimpleHttpRequestDispatcherByUrl urlDispatcher;
+    private final Map<String, RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> processors;
+
+    private UnspecializedDispatcher(
+        final Map<String, RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> processors) {
+      urlDispatcher = new SimpleHttpRequestDispatcherByUrl(Collections.emptyMap(), "");
+      this.processors = processors;
+    }
+
+    @Override
+    public final CompletionStage<FullHttpResponse> process(final RequestWithMetadata<? extends FullHttpRequest> request) {
+      final String processorName = urlDispatcher.getProcessorName(request);
+      @Nullable final RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> processor
+          = processors.get(processorName);
+      if (processor == null) {
+        throw RejectedRequestException.of(RejectedRequestException.Reason.UNKNOWN_PROCESSOR);
+      }
+      request.setRoute(processorName);
+      return processor.process(request);
+    }
+  }
+}
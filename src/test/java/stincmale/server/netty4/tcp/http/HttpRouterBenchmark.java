@@ -0,0 +1,97 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import static io.netty.handler.codec.http.HttpMethod.GET;
+
+/**
+ * Compares {@link HttpRouter} with the exact-match approach used by {@link SimpleHttpRequestDispatcherByUrl}.
+ * See {@code contributing.md} for how to run benchmarks, use {@code -prof gc} to see allocation rates.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class HttpRouterBenchmark {
+  private static final String CONTEXT_PATH = "/context/path";
+
+  @Param({"3000"})
+  public int routesCount;
+
+  private HttpRouter<Integer> router;
+  private Map<String, Integer> exactMatchRoutes;
+  private String[] staticUris;
+  private String[] parameterizedUris;
+  private int idx;
+
+  public HttpRouterBenchmark() {
+  }
+
+  @Setup
+  public final void setup() {
+    final HttpRouter.Builder<Integer> routerBuilder = HttpRouter.builder();
+    exactMatchRoutes = new HashMap<>();
+    staticUris = new String[routesCount];
+    parameterizedUris = new String[routesCount];
+    for (int i = 0; i < routesCount; i++) {
+      final String staticRoute = "/api/v1/resource" + i + "/list";
+      routerBuilder.add(staticRoute, List.of(), i);
+      routerBuilder.add("/api/v1/resource" + i + "/{id}/items/{itemId}", List.of(GET), i);
+      exactMatchRoutes.put(staticRoute, i);
+      staticUris[i] = CONTEXT_PATH + staticRoute + "?limit=10";
+      parameterizedUris[i] = CONTEXT_PATH + "/api/v1/resource" + i + "/" + (i * 31) + "/items/" + i + "?limit=10";
+    }
+    router = routerBuilder.build();
+    idx = 0;
+  }
+
+  private final int nextIdx() {
+    idx = idx + 1 == routesCount ? 0 : idx + 1;
+    return idx;
+  }
+
+  @Benchmark
+  public final Integer exactMatchStatic() {
+    final String uri = staticUris[nextIdx()];
+    final String path = new QueryStringDecoder(uri, StandardCharsets.UTF_8).path();
+    return exactMatchRoutes.get(path.startsWith(CONTEXT_PATH) ? path.substring(CONTEXT_PATH.length()) : path);
+  }
+
+  @Benchmark
+  public final Integer routerStatic() {
+    final String uri = staticUris[nextIdx()];
+    return router.find(uri, CONTEXT_PATH.length())
+        .value(GET);
+  }
+
+  @Benchmark
+  public final Integer routerParameterized() {
+    final String uri = parameterizedUris[nextIdx()];
+    return router.find(uri, CONTEXT_PATH.length())
+        .value(GET);
+  }
+
+  @Benchmark
+  public final PathParameters routerParameterizedWithCapture() {
+    final String uri = parameterizedUris[nextIdx()];
+    return router.find(uri, CONTEXT_PATH.length())
+        .parameters(uri, CONTEXT_PATH.length());
+  }
+}
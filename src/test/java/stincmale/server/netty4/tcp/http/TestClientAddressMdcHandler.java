@@ -0,0 +1,76 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.haproxy.HAProxyMessageDecoder;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import stincmale.server.netty4.tcp.http.util.TrustedProxies;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class TestClientAddressMdcHandler {
+  public TestClientAddressMdcHandler() {
+  }
+
+  @AfterEach
+  public final void after() {
+    MDC.clear();
+  }
+
+  @Test
+  public final void forwardedHeaders() {
+    final List<String> clientAddresses = new ArrayList<>();
+    final EmbeddedChannel channel = new EmbeddedChannel(new ClientAddressMdcHandler(), new MdcCollector(clientAddresses));
+    channel.writeInbound(request("192.0.2.43"));
+    channel.writeInbound(request(null));
+    channel.finishAndReleaseAll();
+    assertEquals(List.of("192.0.2.43", "<unknown client address>"), clientAddresses);
+  }
+
+  @Test
+  public final void proxyProtocol() {
+    final List<String> clientAddresses = new ArrayList<>();
+    final EmbeddedChannel channel = new EmbeddedChannel(
+        new HAProxyMessageDecoder(),
+        new ClientAddressMdcHandler(TrustedProxies.of("10.0.0.0/8"), true),
+        new MdcCollector(clientAddresses));
+    channel.writeInbound(Unpooled.copiedBuffer("PROXY TCP4 10.0.0.7 10.0.0.1 56324 443\r\n", StandardCharsets.US_ASCII));
+    channel.writeInbound(request("192.0.2.43, 10.0.0.8"));
+    channel.writeInbound(request(null));
+    channel.finishAndReleaseAll();
+    assertEquals(List.of("192.0.2.43", "10.0.0.7"), clientAddresses);
+  }
+
+  private static final FullHttpRequest request(final String xForwardedFor) {
+    final FullHttpRequest result = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+    if (xForwardedFor != null) {
+      result.headers()
+          .add("X-Forwarded-For", xForwardedFor);
+    }
+    return result;
+  }
+
+  private static final class MdcCollector extends ChannelInboundHandlerAdapter {
+    private final List<String> clientAddresses;
+
+    private MdcCollector(final List<String> clientAddresses) {
+      this.clientAddresses = clientAddresses;
+    }
+
+    @Override
+    public final void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+      clientAddresses.add(MDC.get(ClientAddressMdcHandler.CLIENT_ADDRESS_MDC_KEY));
+      ((FullHttpRequest)msg).release();
+    }
+  }
+}
@@ -2,19 +2,27 @@ package stincmale.server.netty4.tcp.http;
 
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.DecoderResult;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import org.junit.jupiter.api.Test;
+import stincmale.server.ExternallyVisibleException;
 import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.reqres.RejectedRequestException;
 import stincmale.server.reqres.RequestDispatcher;
 import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static io.netty.handler.codec.http.HttpResponseStatus.CONFLICT;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_0;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -74,4 +82,66 @@ public final class TestHttpDispatchMonoHandler {
     assertNotNull(response);
     assertFalse(HttpUtil.isKeepAlive(response));
   }
+
+  @Test
+  public final void malformedRequest() {
+    final EmbeddedChannel testChannel = new EmbeddedChannel(new HttpDispatchMonoHandler(new Dispatcher(), -1));
+    final FullHttpRequest httpRequest = new DefaultFullHttpRequest(HTTP_1_1, GET, "/");
+    httpRequest.setDecoderResult(DecoderResult.failure(new RuntimeException()));
+    testChannel.writeInbound(new RequestWithMetadata<>(httpRequest));
+    final FullHttpResponse response = testChannel.readOutbound();
+    assertNotNull(response);
+    assertEquals(BAD_REQUEST, response.status());
+    assertFalse(HttpUtil.isKeepAlive(response));
+    assertFalse(testChannel.isOpen());
+  }
+
+  @Test
+  public final void rejection() {
+    final EmbeddedChannel testChannel = new EmbeddedChannel(new HttpDispatchMonoHandler(
+        request -> CompletableFuture.failedFuture(RejectedRequestException.of(RejectedRequestException.Reason.OVERLOADED)), -1));
+    testChannel.writeInbound(new RequestWithMetadata<>(new DefaultFullHttpRequest(HTTP_1_1, GET, "/")));
+    final FullHttpResponse response1 = testChannel.readOutbound();
+    assertNotNull(response1);
+    assertEquals(SERVICE_UNAVAILABLE, response1.status());
+    assertEquals(SERVICE_UNAVAILABLE.reasonPhrase(), response1.content()
+        .toString(StandardCharsets.UTF_8));
+    response1.release();
+    final EmbeddedChannel testChannel2 = new EmbeddedChannel(new HttpDispatchMonoHandler(
+        request -> CompletableFuture.failedFuture(RejectedRequestException.of(RejectedRequestException.Reason.OVERLOADED)), -1));
+    testChannel2.writeInbound(new RequestWithMetadata<>(new DefaultFullHttpRequest(HTTP_1_1, GET, "/")));
+    final FullHttpResponse response2 = testChannel2.readOutbound();
+    assertEquals(response1.content(), response2.content());
+  }
+
+  @Test
+  public final void failure() {
+    final ExternallyVisibleException failure = ExternallyVisibleException.stackless("Invalid id");
+    assertEquals(0, failure.getStackTrace().length);
+    final EmbeddedChannel testChannel = new EmbeddedChannel(new HttpDispatchMonoHandler(
+        request -> CompletableFuture.failedFuture(new IllegalArgumentException(failure)), -1));
+    testChannel.writeInbound(new RequestWithMetadata<>(new DefaultFullHttpRequest(HTTP_1_1, GET, "/")));
+    final FullHttpResponse response = testChannel.readOutbound();
+    assertNotNull(response);
+    assertEquals(BAD_REQUEST, response.status());
+    assertEquals("Invalid id", response.content()
+        .toString(StandardCharsets.UTF_8));
+    response.release();
+  }
+
+  @Test
+  public final void failureStatus() {
+    final EmbeddedChannel testChannel = new EmbeddedChannel(new HttpDispatchMonoHandler(
+        request -> CompletableFuture.failedFuture(new IllegalStateException()), -1) {
+      @Override
+      protected final HttpResponseStatus failureStatus(final Class<? extends Throwable> failureType) {
+        return failureType == IllegalStateException.class ? CONFLICT : super.failureStatus(failureType);
+      }
+    });
+    testChannel.writeInbound(new RequestWithMetadata<>(new DefaultFullHttpRequest(HTTP_1_1, GET, "/")));
+    final FullHttpResponse response = testChannel.readOutbound();
+    assertNotNull(response);
+    assertEquals(CONFLICT, response.status());
+    response.release();
+  }
 }
@@ -0,0 +1,58 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import stincmale.server.netty4.MetadataMap;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.reqres.AdmissionLimiter;
+import stincmale.server.reqres.Priority;
+import stincmale.server.reqres.RejectedRequestException;
+import stincmale.server.reqres.RequestProcessor;
+import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class TestHttpRequestDispatcherByRoute {
+  public TestHttpRequestDispatcherByRoute() {
+  }
+
+  @Test
+  public final void admission() {
+    final CompletableFuture<FullHttpResponse> futureResponse = new CompletableFuture<>();
+    final RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> low = request -> futureResponse;
+    final RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse> critical
+        = request -> new CompletableFuture<>();
+    final HttpRouter<RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>> router
+        = HttpRouter.<RequestProcessor<RequestWithMetadata<? extends FullHttpRequest>, FullHttpResponse>>builder()
+        .add("/low/{id}", List.of(), low)
+        .add("/critical", List.of(GET), critical)
+        .build();
+    final AdmissionLimiter limiter = new AdmissionLimiter(2);
+    final HttpRequestDispatcherByRoute dispatcher = new HttpRequestDispatcherByRoute(
+        router, "", Map.of(low, Priority.LOW, critical, Priority.CRITICAL), limiter);
+    dispatcher.process(request("/low/1", null));
+    assertEquals(1, limiter.getConcurrency());
+    assertEquals(RejectedRequestException.Reason.OVERLOADED, assertThrows(RejectedRequestException.class,
+        () -> dispatcher.process(request("/low/2", null))).reason());
+    dispatcher.process(request("/low/3", Priority.HIGH));//the priority of the request takes precedence
+    dispatcher.process(request("/critical", null));
+    assertEquals(3, limiter.getConcurrency());
+    futureResponse.complete(null);
+    assertEquals(1, limiter.getConcurrency());
+  }
+
+  private static final RequestWithMetadata<FullHttpRequest> request(final String uri, @Nullable final Priority priority) {
+    final MetadataMap metadata = new MetadataMap();
+    if (priority != null) {
+      metadata.set(RequestWithMetadata.PRIORITY_METADATA_KEY, priority);
+    }
+    return new RequestWithMetadata<>(new DefaultFullHttpRequest(HTTP_1_1, GET, uri), metadata);
+  }
+}
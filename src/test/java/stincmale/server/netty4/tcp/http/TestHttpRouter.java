@@ -0,0 +1,118 @@
+package stincmale.server.netty4.tcp.http;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpMethod.POST;
+import static io.netty.handler.codec.http.HttpMethod.PUT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestHttpRouter {
+  private static final HttpRouter<String> router = HttpRouter.<String>builder()
+      .add("/", List.of(), "root")
+      .add("/users", List.of(), "users")
+      .add("/users/me", List.of(), "me")
+      .add("/users/{id}", List.of(GET), "getUser")
+      .add("/users/{id}", List.of(PUT), "putUser")
+      .add("/users/{id}/orders/{orderId}", List.of(), "order")
+      .add("/usernames", List.of(), "usernames")
+      .build();
+
+  public TestHttpRouter() {
+  }
+
+  @Test
+  public final void staticRoutes() {
+    assertEquals("root", router.find("/", 0)
+        .value(GET));
+    assertEquals("users", router.find("/users", 0)
+        .value(GET));
+    assertEquals("usernames", router.find("/usernames?a=b", 0)
+        .value(GET));
+    assertFalse(router.find("/users", 0)
+        .hasParameters());
+    assertNull(router.find("/user", 0));
+    assertNull(router.find("/users/", 0));
+    assertNull(router.find("/nothing", 0));
+  }
+
+  @Test
+  public final void staticPreferredOverParameter() {
+    assertEquals("me", router.find("/users/me", 0)
+        .value(GET));
+    assertEquals("getUser", router.find("/users/mee", 0)
+        .value(GET));
+  }
+
+  @Test
+  public final void methods() {
+    final HttpRouter.Route<String> route = router.find("/users/1", 0);
+    assertEquals("/users/{id}", route.pattern());
+    assertEquals("getUser", route.value(GET));
+    assertEquals("putUser", route.value(PUT));
+    assertNull(route.value(POST));
+  }
+
+  @Test
+  public final void parameters() {
+    final String uri = "/context/users/a%20b/orders/42?x=y";
+    final int from = "/context".length();
+    final HttpRouter.Route<String> route = router.find(uri, from);
+    assertEquals("order", route.value(GET));
+    assertTrue(route.hasParameters());
+    final PathParameters pathParameters = route.parameters(uri, from);
+    assertEquals(2, pathParameters.size());
+    assertEquals("a b", pathParameters.get("id")
+        .orElseThrow());
+    assertEquals("42", pathParameters.get("orderId")
+        .orElseThrow());
+    assertTrue(pathParameters.get("unknown")
+        .isEmpty());
+  }
+
+  @Test
+  public final void emptyParameter() {
+    assertNull(router.find("/users//orders/42", 0));
+  }
+
+  @Test
+  public final void conflicts() {
+    assertThrows(IllegalArgumentException.class, () -> HttpRouter.<String>builder()
+        .add("/users/{id}", List.of(GET), "a")
+        .add("/users/{id}", List.of(GET), "b"));
+    assertThrows(IllegalArgumentException.class, () -> HttpRouter.<String>builder()
+        .add("/users/{id}", List.of(), "a")
+        .add("/users/{name}", List.of(GET), "b"));
+  }
+
+  @Test
+  public final void malformedPatterns() {
+    assertThrows(IllegalArgumentException.class, () -> HttpRouter.<String>builder()
+        .add("users", List.of(), "a"));
+    assertThrows(IllegalArgumentException.class, () -> HttpRouter.<String>builder()
+        .add("/users/{}", List.of(), "a"));
+    assertThrows(IllegalArgumentException.class, () -> HttpRouter.<String>builder()
+        .add("/users/x{id}", List.of(), "a"));
+    assertThrows(IllegalArgumentException.class, () -> HttpRouter.<String>builder()
+        .add("/users/{id}x", List.of(), "a"));
+  }
+
+  @Test
+  public final void manyRoutes() {
+    final HttpRouter.Builder<Integer> builder = HttpRouter.builder();
+    for (int i = 0; i < 1000; i++) {
+      builder.add("/r" + i + "/{p}", List.of(), i);
+    }
+    final HttpRouter<Integer> manyRoutesRouter = builder.build();
+    assertEquals(1000, manyRoutesRouter.routes()
+        .size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, manyRoutesRouter.find("/r" + i + "/x", 0)
+          .value(GET));
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package stincmale.server.netty4.tcp.http;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestHttpWarmUp {
+  public TestHttpWarmUp() {
+  }
+
+  @Test
+  public final void warmUp() throws InterruptedException {
+    final ConcurrentLinkedQueue<String> uris = new ConcurrentLinkedQueue<>();
+    final HttpDispatchMonoHandler dispatchHandler = new HttpDispatchMonoHandler(
+        request -> {
+          uris.add(request.request()
+              .uri());
+          return CompletableFuture.supplyAsync(() -> new DefaultFullHttpResponse(HTTP_1_1, OK));
+        },
+        -1);
+    final ChannelInitializer<Channel> childHandler = new ChannelInitializer<>() {
+      @Override
+      protected final void initChannel(final Channel channel) {
+        channel.pipeline()
+            .addLast(new HttpServerCodec())
+            .addLast(new HttpObjectAggregator(1_000_000))
+            .addLast(dispatchHandler);
+      }
+    };
+    new HttpWarmUp(
+        List.of("GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n", "GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n"),
+        3,
+        60_000,
+        TimeUnit.SECONDS.toNanos(60),
+        60_000,
+        null)
+        .warmUp(childHandler);
+    assertEquals(List.of("/a", "/b", "/a", "/b", "/a", "/b"), List.copyOf(uris));
+  }
+
+  @Test
+  public final void abortIfRoundFails() throws InterruptedException {
+    final ChannelInitializer<SocketChannel> childHandler = new ChannelInitializer<>() {
+      @Override
+      protected final void initChannel(final SocketChannel channel) {
+        channel.pipeline()
+            .addLast(new HttpServerCodec());
+      }
+    };
+    final long beginNanos = System.nanoTime();
+    new HttpWarmUp(List.of("GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n"), 3, 60_000, TimeUnit.SECONDS.toNanos(60), 60_000, null)
+        .warmUp(childHandler);
+    assertTrue(System.nanoTime() - beginNanos < TimeUnit.SECONDS.toNanos(30));
+  }
+}
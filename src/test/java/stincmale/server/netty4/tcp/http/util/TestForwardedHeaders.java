@@ -0,0 +1,73 @@
+package stincmale.server.netty4.tcp.http.util;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestForwardedHeaders {
+  private static final TrustedProxies PRIVATE = TrustedProxies.of("10.0.0.0/8", "fd00::/8");
+
+  public TestForwardedHeaders() {
+  }
+
+  @Test
+  public final void trustedProxies() throws UnknownHostException {
+    assertTrue(isTrusted(PRIVATE, "10.1.2.3"));
+    assertFalse(isTrusted(PRIVATE, "11.1.2.3"));
+    assertTrue(isTrusted(PRIVATE, "fd12:3456::1"));
+    assertTrue(isTrusted(PRIVATE, "::ffff:10.0.0.1"));
+    assertFalse(isTrusted(PRIVATE, "fe80::1"));
+    assertFalse(isTrusted(PRIVATE, "unknown"));
+    assertFalse(isTrusted(PRIVATE, "10.0.0"));
+    assertFalse(isTrusted(PRIVATE, "fd00:::1"));
+    assertTrue(isTrusted(TrustedProxies.of("::/0"), "192.0.2.1"));
+    assertTrue(isTrusted(TrustedProxies.of("2001:db8::1"), "2001:0db8:0:0:0:0:0:1"));
+    assertTrue(isTrusted(TrustedProxies.ANY, "unknown"));
+    assertFalse(isTrusted(TrustedProxies.NONE, "10.0.0.1"));
+    assertTrue(PRIVATE.isTrusted(InetAddress.getByName("10.0.0.1")));
+    assertTrue(PRIVATE.isTrusted(InetAddress.getByName("fd00::1")));
+    assertFalse(PRIVATE.isTrusted(InetAddress.getByName("192.0.2.1")));
+    assertThrows(IllegalArgumentException.class, () -> TrustedProxies.of("10.0.0.0/33"));
+    assertThrows(IllegalArgumentException.class, () -> TrustedProxies.of("10.0.0.256"));
+  }
+
+  @Test
+  public final void xForwardedFor() {
+    final String value = "192.0.2.43";
+    final HttpHeaders headers = new DefaultHttpHeaders().add("X-Forwarded-For", value);
+    assertSame(value, ForwardedHeaders.getClientAddress(headers, true, PRIVATE));
+    assertNull(ForwardedHeaders.getClientAddress(headers, false, PRIVATE));
+    headers.set("X-Forwarded-For", "203.0.113.7, 192.0.2.43:4711 , 10.0.0.1");
+    assertEquals("192.0.2.43", ForwardedHeaders.getClientAddress(headers, true, PRIVATE));
+    assertEquals("203.0.113.7", ForwardedHeaders.getClientAddress(headers, true, TrustedProxies.ANY));
+    headers.set("X-Forwarded-For", "10.0.0.2, 10.0.0.1");
+    assertEquals("10.0.0.2", ForwardedHeaders.getClientAddress(headers, true, PRIVATE));
+    headers.set("X-Forwarded-For", "[2001:db8:cafe::17]:4711, 2001:db8::1");
+    assertEquals("2001:db8::1", ForwardedHeaders.getClientAddress(headers, true, PRIVATE));
+    assertEquals("2001:db8:cafe::17", ForwardedHeaders.getClientAddress(headers, true, TrustedProxies.ANY));
+  }
+
+  @Test
+  public final void xRealIpAndForwarded() {
+    final HttpHeaders headers = new DefaultHttpHeaders().add("X-Real-IP", " 192.0.2.43 ");
+    assertEquals("192.0.2.43", ForwardedHeaders.getClientAddress(headers, true, PRIVATE));
+    headers.remove("X-Real-IP")
+        .add("Forwarded", "for=192.0.2.60;proto=http;by=203.0.113.43, For=\"[2001:db8:cafe::17]:4711\"");
+    assertEquals("2001:db8:cafe::17", ForwardedHeaders.getClientAddress(headers, true, PRIVATE));
+    assertEquals("192.0.2.60", ForwardedHeaders.getClientAddress(headers, true, TrustedProxies.ANY));
+    headers.set("Forwarded", "proto=https");
+    assertNull(ForwardedHeaders.getClientAddress(headers, true, PRIVATE));
+  }
+
+  private static final boolean isTrusted(final TrustedProxies trustedProxies, final String address) {
+    return trustedProxies.isTrusted(address, 0, address.length());
+  }
+}
@@ -0,0 +1,120 @@
+package stincmale.server.reqres;
+
+import com.timgroup.statsd.StatsDClient;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Measures the cost of the megamorphic call site through which {@link RequestDispatcherByProcessorName}
+ * calls {@link RequestProcessor}s specialized by {@link RequestProcessorSpecializer}.
+ * See {@code stincmale.server.netty4.tcp.http.HttpDispatchChainBenchmark} for the comparison with unspecialized ones.
+ * If {@link #distinctClasses}, then each {@link RequestProcessor} is of its own class and the call site is megamorphic,
+ * otherwise all {@link RequestProcessor}s are of the same class and the call site is monomorphic.
+ * If {@link #withStats}, then {@link RequestProcessor}s are wrapped into {@link RequestProcessorWithStats}
+ * as {@link stincmale.server.reqres.spring.SpringRequestDispatcher} does.
+ * A request is the name of a {@link RequestProcessor}, so the benchmark measures dispatching rather than routing.
+ * See {@code contributing.md} for how to run benchmarks, use a logging configuration that disables debug logging.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RequestDispatcherBenchmark {
+  @Param({"64"})
+  public int processorsCount;
+  @Param({"false", "true"})
+  public boolean distinctClasses;
+  @Param({"false", "true"})
+  public boolean withStats;
+
+  private RequestDispatcherByProcessorName<String, Object> dispatcher;
+  private String[] requests;
+  private int idx;
+
+  public RequestDispatcherBenchmark() {
+  }
+
+  @Setup
+  public final void setup() throws Throwable {
+    final Map<String, RequestProcessor<String, Object>> processors = new HashMap<>();
+    requests = new String[processorsCount];
+    for (int i = 0; i < processorsCount; i++) {
+      final String name = "/resource" + i;
+      final RequestProcessor<String, Object> processor = distinctClasses
+          ? newProcessorOfNewClass(i)
+          : new SameClassProcessor(CompletableFuture.completedFuture(i));
+      processors.put(name, withStats ? new RequestProcessorWithStats<>(processor, (StatsDClient)null, null) : processor);
+      requests[i] = name;
+    }
+    dispatcher = new RequestDispatcherByProcessorName<>(processors) {
+      @Override
+      protected final String getProcessorName(final String request) {
+        return request;
+      }
+    };
+    idx = 0;
+  }
+
+  /**
+   * Each call spins a new class via {@link LambdaMetafactory}.
+   */
+  @SuppressWarnings("unchecked")
+  private static final RequestProcessor<String, Object> newProcessorOfNewClass(final int i) throws Throwable {
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    return (RequestProcessor<String, Object>)LambdaMetafactory.metafactory(
+        lookup,
+        "process",
+        methodType(RequestProcessor.class, CompletionStage.class),
+        methodType(CompletionStage.class, Object.class),
+        lookup.findStatic(RequestDispatcherBenchmark.class, "process", methodType(CompletionStage.class, CompletionStage.class, String.class)),
+        methodType(CompletionStage.class, String.class))
+        .getTarget()
+        .invoke(CompletableFuture.completedFuture(i));
+  }
+
+  private static final CompletionStage<Object> process(final CompletionStage<Object> response, final String request) {
+    return response;
+  }
+
+  private final String nextRequest() {
+    idx = idx + 1 == processorsCount ? 0 : idx + 1;
+    return requests[idx];
+  }
+
+  @Benchmark
+  public final CompletionStage<Object> dispatch() {
+    return dispatcher.process(nextRequest());
+  }
+
+  private static final class SameClassProcessor implements RequestProcessor<String, Object> {
+    private final CompletionStage<Object> response;
+
+    private SameClassProcessor(final CompletionStage<Object> response) {
+      this.response = response;
+    }
+
+    @Override
+    public final CompletionStage<Object> process(final String request) {
+      return RequestDispatcherBenchmark.process(response, request);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package stincmale.server.reqres;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestAdmissionLimiter {
+  public TestAdmissionLimiter() {
+  }
+
+  @Test
+  public final void priorities() {
+    final AdmissionLimiter limiter = new AdmissionLimiter(4);
+    assertTrue(limiter.tryAcquire(Priority.LOW));
+    assertTrue(limiter.tryAcquire(Priority.LOW));
+    assertFalse(limiter.tryAcquire(Priority.LOW));
+    assertTrue(limiter.tryAcquire(Priority.NORMAL));
+    assertFalse(limiter.tryAcquire(Priority.NORMAL));
+    assertTrue(limiter.tryAcquire(Priority.HIGH));
+    assertFalse(limiter.tryAcquire(Priority.HIGH));
+    assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+    assertEquals(5, limiter.getConcurrency());
+    assertEquals(3, limiter.getRejectedCount());
+    limiter.release();
+    limiter.release();
+    assertTrue(limiter.tryAcquire(Priority.HIGH));
+    assertFalse(limiter.tryAcquire(Priority.NORMAL));
+  }
+}
@@ -0,0 +1,131 @@
+package stincmale.server.reqres;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestBatchingRequestProcessor {
+  private ScheduledExecutorService scheduler;
+  private List<List<Integer>> batches;
+
+  public TestBatchingRequestProcessor() {
+  }
+
+  @BeforeEach
+  public final void beforeEach() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    batches = new CopyOnWriteArrayList<>();
+  }
+
+  @AfterEach
+  public final void afterEach() {
+    scheduler.shutdownNow();
+  }
+
+  private final BatchingRequestProcessor<Integer, String> newProcessor(final int maxBatchSize, final long windowMillis) {
+    return new BatchingRequestProcessor<>(
+        "test",
+        requests -> {
+          batches.add(List.copyOf(requests));
+          return CompletableFuture.completedFuture(requests.stream()
+              .map(String::valueOf)
+              .collect(Collectors.toList()));
+        },
+        maxBatchSize, windowMillis, scheduler, null, null);
+  }
+
+  @Test
+  public final void maxBatchSize() throws ExecutionException, InterruptedException {
+    final BatchingRequestProcessor<Integer, String> processor = newProcessor(3, 1_000_000);
+    final CompletableFuture<String> futureResponse1 = processor.process(1)
+        .toCompletableFuture();
+    final CompletableFuture<String> futureResponse2 = processor.process(2)
+        .toCompletableFuture();
+    assertFalse(futureResponse1.isDone());
+    final CompletableFuture<String> futureResponse3 = processor.process(3)
+        .toCompletableFuture();
+    assertEquals("1", futureResponse1.get());
+    assertEquals("2", futureResponse2.get());
+    assertEquals("3", futureResponse3.get());
+    assertEquals(List.of(List.of(1, 2, 3)), batches);
+    assertEquals(1, processor.getBatchesCount());
+    assertEquals(3, processor.getBatchedRequestsCount());
+  }
+
+  @Test
+  public final void window() throws Exception {
+    final BatchingRequestProcessor<Integer, String> processor = newProcessor(100, 10);
+    final CompletableFuture<String> futureResponse1 = processor.process(1)
+        .toCompletableFuture();
+    final CompletableFuture<String> futureResponse2 = processor.process(2)
+        .toCompletableFuture();
+    assertEquals("1", futureResponse1.get(5, SECONDS));
+    assertEquals("2", futureResponse2.get(5, SECONDS));
+    assertEquals(List.of(List.of(1, 2)), batches);
+  }
+
+  @Test
+  public final void mdc() throws ExecutionException, InterruptedException {
+    final BatchingRequestProcessor<Integer, String> processor = newProcessor(2, 1_000_000);
+    final List<String> mdcValues = new CopyOnWriteArrayList<>();
+    MDC.put("key", "a");
+    final CompletableFuture<Void> future1 = processor.process(1)
+        .thenAccept(response -> mdcValues.add(MDC.get("key")))
+        .toCompletableFuture();
+    MDC.put("key", "b");
+    final CompletableFuture<Void> future2 = processor.process(2)
+        .thenAccept(response -> mdcValues.add(MDC.get("key")))
+        .toCompletableFuture();
+    MDC.remove("key");
+    future1.get();
+    future2.get();
+    assertEquals(List.of("a", "b"), mdcValues);
+  }
+
+  @Test
+  public final void failure() {
+    final BatchingRequestProcessor<Integer, String> processor = new BatchingRequestProcessor<>(
+        "test", requests -> CompletableFuture.completedFuture(List.of("1")), 2, 1_000_000, scheduler, null, null);
+    final CompletableFuture<String> futureResponse1 = processor.process(1)
+        .toCompletableFuture();
+    final CompletableFuture<String> futureResponse2 = processor.process(2)
+        .toCompletableFuture();
+    assertTrue(futureResponse1.isCompletedExceptionally());
+    assertThrows(ExecutionException.class, futureResponse2::get);
+  }
+
+  @Test
+  public final void releaseResponseOfCancelledRequest() throws ExecutionException, InterruptedException {
+    final List<ByteBuf> responses = List.of(Unpooled.buffer(), Unpooled.buffer());
+    final CompletableFuture<List<ByteBuf>> futureResponses = new CompletableFuture<>();
+    final BatchingRequestProcessor<Integer, ByteBuf> processor = new BatchingRequestProcessor<>(
+        "test", requests -> futureResponses, 2, 1_000_000, scheduler, null, null);
+    final CompletableFuture<ByteBuf> futureResponse1 = processor.process(1)
+        .toCompletableFuture();
+    final CompletableFuture<ByteBuf> futureResponse2 = processor.process(2)
+        .toCompletableFuture();
+    futureResponse1.cancel(false);
+    futureResponses.complete(responses);
+    assertEquals(0, responses.get(0)
+        .refCnt());
+    assertEquals(1, futureResponse2.get()
+        .refCnt());
+    futureResponse2.get()
+        .release();
+  }
+}
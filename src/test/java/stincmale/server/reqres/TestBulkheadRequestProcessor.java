@@ -0,0 +1,147 @@
+package stincmale.server.reqres;
+
+import com.timgroup.statsd.StatsDClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+import stincmale.server.netty4.MetadataMap;
+import stincmale.server.netty4.RequestWithMetadata;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestBulkheadRequestProcessor {
+  private static final class Processor implements RequestProcessor<String, String> {
+    private final List<String> requests;
+    private final List<CompletableFuture<String>> responses;
+
+    private Processor() {
+      requests = new CopyOnWriteArrayList<>();
+      responses = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public final CompletionStage<String> process(final String request) {
+      final CompletableFuture<String> response = new CompletableFuture<>();
+      requests.add(request);
+      responses.add(response);
+      return response;
+    }
+  }
+
+  public TestBulkheadRequestProcessor() {
+  }
+
+  @Test
+  public final void bulkhead() throws ExecutionException, InterruptedException {
+    final Processor processor = new Processor();
+    final BulkheadRequestProcessor<String, String> bulkhead = new BulkheadRequestProcessor<>(processor, 1, 1, null, null, null);
+    final CompletableFuture<String> futureResponse1 = bulkhead.process("1")
+        .toCompletableFuture();
+    final CompletableFuture<String> futureResponse2 = bulkhead.process("2")
+        .toCompletableFuture();
+    assertEquals(List.of("1"), processor.requests);
+    assertEquals(1, bulkhead.getConcurrency());
+    assertEquals(1, bulkhead.getQueueLength());
+    final RejectedRequestException rejection = assertThrows(RejectedRequestException.class, () -> bulkhead.process("3"));
+    assertSame(RejectedRequestException.Reason.OVERLOADED, rejection.reason());
+    assertEquals(1, bulkhead.getRejectedCount());
+    processor.responses.get(0)
+        .complete("r1");
+    assertEquals("r1", futureResponse1.get());
+    assertFalse(futureResponse2.isDone());
+    assertEquals(List.of("1", "2"), processor.requests);
+    assertEquals(0, bulkhead.getQueueLength());
+    processor.responses.get(1)
+        .complete("r2");
+    assertEquals("r2", futureResponse2.get());
+    assertEquals(0, bulkhead.getConcurrency());
+  }
+
+  @Test
+  public final void executor() throws ExecutionException, InterruptedException {
+    final List<Runnable> tasks = new CopyOnWriteArrayList<>();
+    final BulkheadRequestProcessor<String, String> bulkhead = new BulkheadRequestProcessor<>(
+        CompletableFuture::completedFuture, 1, 0, tasks::add, null, null);
+    final CompletableFuture<String> futureResponse = bulkhead.process("1")
+        .toCompletableFuture();
+    assertFalse(futureResponse.isDone());
+    assertEquals(1, tasks.size());
+    tasks.get(0)
+        .run();
+    assertEquals("1", futureResponse.get());
+    assertEquals(0, bulkhead.getConcurrency());
+  }
+
+  @Test
+  public final void priorities() throws ExecutionException, InterruptedException {
+    final Processor processor = new Processor();
+    final BulkheadRequestProcessor<RequestWithMetadata<String>, String> bulkhead = new BulkheadRequestProcessor<>(
+        request -> processor.process(request.request()), 1, 2, null, Priority.NORMAL, null, null);
+    bulkhead.process(request("normal1", null));
+    final CompletableFuture<String> futureLowResponse = bulkhead.process(request("low", Priority.LOW))
+        .toCompletableFuture();
+    bulkhead.process(request("normal2", null));
+    bulkhead.process(request("high", Priority.HIGH));
+    assertTrue(futureLowResponse.isCompletedExceptionally());
+    assertThrows(RejectedRequestException.class, () -> bulkhead.process(request("low2", Priority.LOW)));
+    bulkhead.process(request("critical", Priority.CRITICAL));
+    assertEquals(List.of("normal1", "critical"), processor.requests);
+    assertEquals(2, bulkhead.getConcurrency());
+    processor.responses.get(1)
+        .complete("");
+    assertEquals(1, bulkhead.getConcurrency());
+    assertEquals(2, bulkhead.getQueueLength());
+    processor.responses.get(0)
+        .complete("");
+    assertEquals(List.of("normal1", "critical", "high"), processor.requests);
+    processor.responses.get(2)
+        .complete("");
+    assertEquals(List.of("normal1", "critical", "high", "normal2"), processor.requests);
+    assertEquals(2, bulkhead.getRejectedCount());
+  }
+
+  @Test
+  public final void synchronousCompletionDoesNotRecurse() {
+    final CompletableFuture<String> firstResponse = new CompletableFuture<>();
+    final int queuedCount = 100_000;
+    final BulkheadRequestProcessor<String, String> bulkhead = new BulkheadRequestProcessor<>(
+        request -> "first".equals(request) ? firstResponse : CompletableFuture.completedFuture(request), 1, queuedCount, null, null, null);
+    bulkhead.process("first");
+    final List<CompletionStage<String>> responses = new ArrayList<>(queuedCount);
+    for (int i = 0; i < queuedCount; i++) {
+      responses.add(bulkhead.process("r" + i));
+    }
+    firstResponse.complete("first");//processes all the queued requests, each of them completes synchronously
+    for (int i = 0; i < queuedCount; i++) {
+      assertEquals("r" + i, responses.get(i)
+          .toCompletableFuture()
+          .getNow(null));
+    }
+    assertEquals(0, bulkhead.getConcurrency());
+  }
+
+  @Test
+  public final void statsName() {
+    final Processor processor = new Processor();
+    assertEquals("Processor", RequestProcessorWithStats.statsName(new BulkheadRequestProcessor<>(
+        new RequestProcessorWithStats<>(processor, (StatsDClient)null, null), 1, 0, null, null, null)));
+    assertEquals("Processor", RequestProcessorWithStats.statsName(new RequestProcessorWithStats<>(
+        new BulkheadRequestProcessor<>(processor, 1, 0, null, null, null), (StatsDClient)null, null)));
+  }
+
+  private static final RequestWithMetadata<String> request(final String request, @Nullable final Priority priority) {
+    final MetadataMap metadata = new MetadataMap();
+    if (priority != null) {
+      metadata.set(RequestWithMetadata.PRIORITY_METADATA_KEY, priority);
+    }
+    return new RequestWithMetadata<>(request, metadata);
+  }
+}
@@ -0,0 +1,120 @@
+package stincmale.server.reqres;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestCoalescingRequestProcessor {
+  private static final class Processor<RS> implements RequestProcessor<String, RS> {
+    private final AtomicInteger invocations;
+    private final CompletableFuture<RS> response;
+
+    private Processor() {
+      invocations = new AtomicInteger();
+      response = new CompletableFuture<>();
+    }
+
+    @Override
+    public final CompletionStage<RS> process(final String request) {
+      invocations.incrementAndGet();
+      return response;
+    }
+  }
+
+  public TestCoalescingRequestProcessor() {
+  }
+
+  @Test
+  public final void coalesce() throws ExecutionException, InterruptedException {
+    final Processor<Object> processor = new Processor<>();
+    final CoalescingRequestProcessor<String, Object> coalescingProcessor
+        = new CoalescingRequestProcessor<>(processor, request -> request, null, null);
+    final CompletableFuture<Object> futureResponse1 = coalescingProcessor.process("a")
+        .toCompletableFuture();
+    final CompletableFuture<Object> futureResponse2 = coalescingProcessor.process("a")
+        .toCompletableFuture();
+    assertEquals(1, processor.invocations.get());
+    assertEquals(1, coalescingProcessor.getFlightsCount());
+    assertEquals(1, coalescingProcessor.getCoalescedCount());
+    final Object response = new Object();
+    processor.response.complete(response);
+    assertSame(response, futureResponse1.get());
+    assertSame(response, futureResponse2.get());
+    coalescingProcessor.process("a");
+    assertEquals(2, processor.invocations.get());
+  }
+
+  @Test
+  public final void doNotCoalesceDifferentKeys() {
+    final Processor<Object> processor = new Processor<>();
+    final CoalescingRequestProcessor<String, Object> coalescingProcessor
+        = new CoalescingRequestProcessor<>(processor, request -> request, null, null);
+    coalescingProcessor.process("a");
+    coalescingProcessor.process("b");
+    assertEquals(2, processor.invocations.get());
+    assertEquals(0, coalescingProcessor.getCoalescedCount());
+  }
+
+  @Test
+  public final void doNotCoalesceNullKeys() {
+    final Processor<Object> processor = new Processor<>();
+    final CoalescingRequestProcessor<String, Object> coalescingProcessor
+        = new CoalescingRequestProcessor<>(processor, request -> null, null, null);
+    coalescingProcessor.process("a");
+    coalescingProcessor.process("a");
+    assertEquals(2, processor.invocations.get());
+    assertEquals(0, coalescingProcessor.getFlightsCount());
+  }
+
+  @Test
+  public final void failure() {
+    final Processor<Object> processor = new Processor<>();
+    final CoalescingRequestProcessor<String, Object> coalescingProcessor
+        = new CoalescingRequestProcessor<>(processor, request -> request, null, null);
+    final CompletableFuture<Object> futureResponse1 = coalescingProcessor.process("a")
+        .toCompletableFuture();
+    final CompletableFuture<Object> futureResponse2 = coalescingProcessor.process("a")
+        .toCompletableFuture();
+    processor.response.completeExceptionally(new RuntimeException());
+    assertThrows(ExecutionException.class, futureResponse1::get);
+    assertThrows(ExecutionException.class, futureResponse2::get);
+  }
+
+  @Test
+  public final void referenceCountedResponse() throws ExecutionException, InterruptedException {
+    final Processor<FullHttpResponse> processor = new Processor<>();
+    final CoalescingRequestProcessor<String, FullHttpResponse> coalescingProcessor
+        = new CoalescingRequestProcessor<>(processor, request -> request, null, null);
+    final CompletableFuture<FullHttpResponse> futureResponse1 = coalescingProcessor.process("a")
+        .toCompletableFuture();
+    final CompletableFuture<FullHttpResponse> futureResponse2 = coalescingProcessor.process("a")
+        .toCompletableFuture();
+    final FullHttpResponse response = new DefaultFullHttpResponse(
+        HTTP_1_1, OK, Unpooled.copiedBuffer("content", StandardCharsets.UTF_8));
+    processor.response.complete(response);
+    final FullHttpResponse response1 = futureResponse1.get();
+    final FullHttpResponse response2 = futureResponse2.get();
+    assertNotSame(response1, response2);
+    assertNotSame(response1.headers(), response2.headers());
+    assertEquals("content", response2.content()
+        .toString(StandardCharsets.UTF_8));
+    assertEquals(2, response.refCnt());
+    assertFalse(response1.release());
+    assertTrue(response2.release());
+    assertEquals(0, response.refCnt());
+  }
+}
@@ -0,0 +1,238 @@
+package stincmale.server.reqres;
+
+import com.timgroup.statsd.NoOpStatsDClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import stincmale.server.netty4.MetadataMap;
+import stincmale.server.netty4.RequestWithMetadata;
+import stincmale.server.netty4.tcp.http.ClientAddressMdcHandler;
+import stincmale.server.util.stats.StatsAggregator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestFairRequestDispatcher {
+  private static final class Dispatcher implements RequestDispatcher<String, String> {
+    private final List<String> requests;
+    private final List<CompletableFuture<String>> responses;
+
+    private Dispatcher() {
+      requests = new ArrayList<>();
+      responses = new ArrayList<>();
+    }
+
+    @Override
+    public final CompletionStage<String> process(final String request) {
+      final CompletableFuture<String> response = new CompletableFuture<>();
+      requests.add(request);
+      responses.add(response);
+      return response;
+    }
+
+    private final void completeNext() {
+      responses.get(requests.size() - 1)
+          .complete("");
+    }
+  }
+
+  public TestFairRequestDispatcher() {
+  }
+
+  @Test
+  public final void fairness() {
+    final Dispatcher dispatcher = new Dispatcher();
+    final FairRequestDispatcher<String, String> fairDispatcher = new FairRequestDispatcher<>(
+        dispatcher, request -> request.substring(0, 1), tenant -> "b".equals(tenant) ? 2 : 1, 1, 10, null, null);
+    fairDispatcher.process("x");
+    for (int i = 1; i <= 4; i++) {
+      fairDispatcher.process("a" + i);
+    }
+    for (int i = 1; i <= 4; i++) {
+      fairDispatcher.process("b" + i);
+    }
+    fairDispatcher.process("c1");
+    assertEquals(List.of("x"), dispatcher.requests);
+    assertEquals(Map.of("a", 4, "b", 4, "c", 1), fairDispatcher.getQueueLengths());
+    for (int i = 0; i < 9; i++) {
+      dispatcher.completeNext();
+    }
+    assertEquals(List.of("x", "a1", "b1", "b2", "c1", "a2", "b3", "b4", "a3", "a4"), dispatcher.requests);
+    assertTrue(fairDispatcher.getQueueLengths()
+        .isEmpty());
+  }
+
+  @Test
+  public final void maxQueueLengthPerTenant() {
+    final Dispatcher dispatcher = new Dispatcher();
+    final FairRequestDispatcher<String, String> fairDispatcher = new FairRequestDispatcher<>(
+        dispatcher, request -> request, null, 1, 1, null, null);
+    fairDispatcher.process("a");
+    fairDispatcher.process("a");
+    assertThrows(RejectedRequestException.class, () -> fairDispatcher.process("a"));
+    fairDispatcher.process("b");
+  }
+
+  @Test
+  public final void priorities() {
+    final List<RequestWithMetadata<String>> dispatched = new ArrayList<>();
+    final List<CompletableFuture<String>> responses = new ArrayList<>();
+    final RequestDispatcher<RequestWithMetadata<String>, String> dispatcher = request -> {
+      final CompletableFuture<String> response = new CompletableFuture<>();
+      dispatched.add(request);
+      responses.add(response);
+      return response;
+    };
+    final FairRequestDispatcher<RequestWithMetadata<String>, String> fairDispatcher = new FairRequestDispatcher<>(
+        dispatcher, request -> "tenant", null, 1, 2, null, null);
+    final RequestWithMetadata<String> first = request("first", Priority.NORMAL);
+    final RequestWithMetadata<String> low = request("low", Priority.LOW);
+    final RequestWithMetadata<String> normal = request("normal", Priority.NORMAL);
+    final RequestWithMetadata<String> high = request("high", Priority.HIGH);
+    final RequestWithMetadata<String> critical = request("critical", Priority.CRITICAL);
+    fairDispatcher.process(first);
+    final CompletionStage<String> lowResponse = fairDispatcher.process(low);
+    fairDispatcher.process(normal);
+    assertEquals(List.of(first), dispatched);
+    fairDispatcher.process(high);//the queue is full, so the low priority request is evicted
+    assertTrue(lowResponse.toCompletableFuture()
+        .isCompletedExceptionally());
+    assertThrows(RejectedRequestException.class, () -> fairDispatcher.process(request("another normal", Priority.NORMAL)));
+    fairDispatcher.process(critical);//neither queued nor rejected under contention
+    assertEquals(List.of(first, critical), dispatched);
+    responses.get(1)
+        .complete("critical");
+    assertEquals(List.of(first, critical), dispatched);//the slot of the first request is still taken
+    responses.get(0)
+        .complete("first");
+    assertEquals(List.of(first, critical, high), dispatched);
+    responses.get(2)
+        .complete("high");
+    assertEquals(List.of(first, critical, high, normal), dispatched);
+    assertTrue(fairDispatcher.getQueueLengths()
+        .isEmpty());
+  }
+
+  private static final RequestWithMetadata<String> request(final String request, final Priority priority) {
+    return new RequestWithMetadata<>(request, new MetadataMap().set(RequestWithMetadata.PRIORITY_METADATA_KEY, priority));
+  }
+
+  @Test
+  public final void statsDoNotDependOnNumberOfTenants() {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final StatsAggregator statsAggregator = new StatsAggregator(new NoOpStatsDClient(), 60_000, scheduler);
+      final Dispatcher dispatcher = new Dispatcher();
+      final FairRequestDispatcher<String, String> fairDispatcher = new FairRequestDispatcher<>(
+          dispatcher, request -> request, null, 1, 1, statsAggregator, null);
+      for (int i = 0; i < 1000; i++) {
+        fairDispatcher.process("tenant" + i);
+      }
+      final List<Object> metrics = new ArrayList<>();
+      statsAggregator.visit(new StatsAggregator.Visitor() {
+        @Override
+        public final void visit(final StatsAggregator.Counter counter) {
+          metrics.add(counter);
+        }
+
+        @Override
+        public final void visit(final StatsAggregator.Gauge gauge) {
+          metrics.add(gauge);
+        }
+
+        @Override
+        public final void visit(final StatsAggregator.Summary summary) {
+          metrics.add(summary);
+        }
+      });
+      assertEquals(2 * FairRequestDispatcher.STATS_TENANT_BUCKETS, metrics.size());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void routes() {
+    final CompletableFuture<String> futureResponseA = new CompletableFuture<>();
+    final RequestDispatcherByProcessorName<RequestWithMetadata<String>, String> dispatcher
+        = new RequestDispatcherByProcessorName<RequestWithMetadata<String>, String>(
+        Map.<String, RequestProcessor<RequestWithMetadata<String>, String>>of(
+            "a", request -> futureResponseA,
+            "b", request -> CompletableFuture.completedFuture("b"))) {
+      @Override
+      protected final String getProcessorName(final RequestWithMetadata<String> request) {
+        return request.request();
+      }
+    };
+    final FairRequestDispatcher<RequestWithMetadata<String>, String> fairDispatcher = new FairRequestDispatcher<>(
+        dispatcher, request -> "tenant", null, 1, 10, null, null);
+    final RequestWithMetadata<String> requestA = new RequestWithMetadata<>("a");
+    final RequestWithMetadata<String> requestB = new RequestWithMetadata<>("b");
+    fairDispatcher.process(requestA);
+    fairDispatcher.process(requestB);
+    assertEquals("a", requestA.route());
+    assertNull(requestB.route());
+    futureResponseA.complete("a");//dispatches the queued requestB
+    assertEquals("a", requestA.route());
+    assertEquals("b", requestB.route());
+  }
+
+  @Test
+  public final void synchronousCompletionDoesNotRecurse() {
+    final CompletableFuture<String> firstResponse = new CompletableFuture<>();
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final StatsAggregator statsAggregator = new StatsAggregator(new NoOpStatsDClient(), 60_000, scheduler);
+      final RequestDispatcher<String, String> dispatcher = request -> "first".equals(request)
+          ? firstResponse
+          : CompletableFuture.completedFuture(request);
+      final FairRequestDispatcher<String, String> fairDispatcher = new FairRequestDispatcher<>(
+          dispatcher, request -> "tenant", null, 1, 1_000_000, statsAggregator, List.of("tag"));
+      fairDispatcher.process("first");
+      final int queuedCount = 100_000;
+      final List<CompletionStage<String>> responses = new ArrayList<>(queuedCount);
+      for (int i = 0; i < queuedCount; i++) {
+        responses.add(fairDispatcher.process("r" + i));
+      }
+      final StatsAggregator.Gauge queueLength = statsAggregator.gauge(
+          dispatcher.getClass().getSimpleName() + ".fairQueueLength", List.of("tag", "tenantBucket:" + FairRequestDispatcher.statsTenantBucket("tenant")));
+      assertEquals(queuedCount, queueLength.value());
+      firstResponse.complete("first");//dispatches all the queued requests, each of them completes synchronously
+      for (int i = 0; i < queuedCount; i++) {
+        assertEquals("r" + i, responses.get(i)
+            .toCompletableFuture()
+            .getNow(null));
+      }
+      assertEquals(0, queueLength.value());
+      assertEquals(queuedCount, statsAggregator.counter(
+          dispatcher.getClass().getSimpleName() + ".fairServedRequestsCount", List.of("tag", "tenantBucket:" + FairRequestDispatcher.statsTenantBucket("tenant")))
+          .sum());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void defaultTenantExtractor() {
+    final Function<Object, Object> tenantExtractor = FairRequestDispatcher.defaultTenantExtractor(ClientAddressMdcHandler.CLIENT_ADDRESS_MDC_KEY);
+    MDC.put(ClientAddressMdcHandler.CLIENT_ADDRESS_MDC_KEY, "address");
+    try {
+      assertEquals("address", tenantExtractor.apply(new Object()));
+      assertNull(FairRequestDispatcher.defaultTenantExtractor(null)
+          .apply(new Object()));
+      assertEquals("tenant", tenantExtractor.apply(new RequestWithMetadata<>(
+          new Object(), new MetadataMap().set(FairRequestDispatcher.TENANT_METADATA_KEY, "tenant"))));
+    } finally {
+      MDC.remove(ClientAddressMdcHandler.CLIENT_ADDRESS_MDC_KEY);
+    }
+    assertNull(tenantExtractor.apply(new Object()));
+  }
+}
@@ -0,0 +1,64 @@
+package stincmale.server.reqres;
+
+import com.timgroup.statsd.NoOpStatsDClient;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.Test;
+import stincmale.server.util.stats.StatsAggregator;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+public final class TestRequestProcessorSpecializer {
+  public TestRequestProcessorSpecializer() {
+  }
+
+  @Test
+  public final void specializeWithStats() throws ExecutionException, InterruptedException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final StatsAggregator statsAggregator = new StatsAggregator(new NoOpStatsDClient(), 60_000, scheduler);
+      final RequestProcessor<String, String> specialized1 = RequestProcessorSpecializer.specialize(
+          new RequestProcessorWithStats<>(new Echo(), statsAggregator, null));
+      final RequestProcessor<String, String> specialized2 = RequestProcessorSpecializer.specialize(
+          new RequestProcessorWithStats<String, String>(request -> CompletableFuture.completedFuture(request), statsAggregator, null));
+      assertNotSame(specialized1.getClass(), specialized2.getClass());
+      assertNotSame(RequestProcessorWithStats.class, specialized1.getClass());
+      assertNotSame(RequestProcessorWithStats.class, specialized2.getClass());
+      assertEquals("a", specialized1.process("a")
+          .toCompletableFuture()
+          .get());
+      assertEquals("b", specialized2.process("b")
+          .toCompletableFuture()
+          .get());
+      assertEquals(1, statsAggregator.counter(Echo.class.getSimpleName() + ".requestsCount", null)
+          .sum());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void specialize() throws ExecutionException, InterruptedException {
+    final Echo processor = new Echo();
+    final RequestProcessor<String, String> specialized = RequestProcessorSpecializer.specialize(processor);
+    assertNotSame(processor.getClass(), specialized.getClass());
+    assertNotSame(RequestProcessorSpecializer.specialize(processor)
+        .getClass(), specialized.getClass());
+    assertEquals("a", specialized.process("a")
+        .toCompletableFuture()
+        .get());
+  }
+
+  private static final class Echo implements RequestProcessor<String, String> {
+    private Echo() {
+    }
+
+    @Override
+    public final CompletionStage<String> process(final String request) {
+      return CompletableFuture.completedFuture(request);
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package stincmale.server.reqres.spring.test;
 
+import stincmale.server.reqres.Bulkhead;
 import stincmale.server.reqres.Processor;
 import stincmale.server.reqres.RequestProcessor;
 import org.springframework.stereotype.Component;
@@ -7,7 +8,7 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
-@Processor("test request processor")
+@Processor(value = "test request processor", bulkhead = @Bulkhead(maxConcurrency = 2, maxQueueLength = 1))
 @Component
 @ThreadSafe
 final class TestSpringRequestDispatcher_RequestProcessor implements RequestProcessor<Object, Object> {
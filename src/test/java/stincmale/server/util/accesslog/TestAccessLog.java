@@ -0,0 +1,114 @@
+package stincmale.server.util.accesslog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestAccessLog {
+  private Path directory;
+
+  public TestAccessLog() {
+  }
+
+  @BeforeEach
+  public final void before() throws IOException {
+    directory = Files.createTempDirectory(getClass().getSimpleName());
+  }
+
+  @AfterEach
+  public final void after() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (final Path file : files.sorted(Comparator.reverseOrder())
+          .collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  public final void roundTrip() throws IOException {
+    try (AccessLog accessLog = new AccessLog(directory, "access", 4, 2, Runnable::run)) {
+      assertTrue(accessLog.append(0, 1_500, 200, 42, "GET /users/{id}", "192.0.2.43"));
+      assertTrue(accessLog.append(1_000, -1, 503, -1, null, "2001:db8:cafe::17"));
+      assertTrue(accessLog.append(2_000, 7, 404, 0, "/café", null));
+    }
+    final StringBuilder text = new StringBuilder();
+    assertEquals(3, AccessLogDecoder.decode(segments().get(0), text));
+    assertEquals(
+        "1970-01-01T00:00:00Z\t192.0.2.43\tGET /users/{id}\t200\t42\t1500\n"
+            + "1970-01-01T00:00:01Z\t2001:db8:cafe::17\t-\t503\t-\t-\n"
+            + "1970-01-01T00:00:02Z\t-\t/caf?\t404\t0\t7\n",
+        text.toString());
+  }
+
+  @Test
+  public final void rollover() throws IOException {
+    try (AccessLog accessLog = new AccessLog(directory, "access", 2, 2, Runnable::run)) {
+      for (int i = 0; i < 7; i++) {
+        assertTrue(accessLog.append(i, i, 200, i, "/", "127.0.0.1"));
+      }
+      assertEquals(0, accessLog.getDroppedCount());
+    }
+    final List<Path> segments = segments();
+    assertEquals(
+        List.of(
+            "access-0000000000000000001.bin",
+            "access-0000000000000000002.bin",
+            "access-0000000000000000003.bin"),
+        segments.stream()
+            .map(segment -> segment.getFileName().toString())
+            .collect(Collectors.toList()));
+    final StringBuilder text = new StringBuilder();
+    for (final Path segment : segments) {
+      AccessLogDecoder.decode(segment, text);
+    }
+    assertEquals(5, text.toString().lines().count());
+    try (AccessLog accessLog = new AccessLog(directory, "access", 2, 2, Runnable::run)) {
+      assertTrue(accessLog.append(0, 0, 200, 0, "/", "127.0.0.1"));
+    }
+    assertEquals("access-0000000000000000004.bin", segments().get(segments().size() - 1).getFileName().toString());
+  }
+
+  @Test
+  public final void noSegmentsAfterClose() throws IOException {
+    final List<Runnable> tasks = new ArrayList<>();
+    try (AccessLog accessLog = new AccessLog(directory, "access", 1, 2, tasks::add)) {
+      assertTrue(accessLog.append(0, 0, 200, 0, "/", "127.0.0.1"));
+    }
+    new ArrayList<>(tasks).forEach(Runnable::run);
+    assertEquals(1, segments().size());
+  }
+
+  @Test
+  public final void dropWhenNextSegmentIsNotReady() {
+    final List<Runnable> tasks = new ArrayList<>();
+    try (AccessLog accessLog = new AccessLog(directory, "access", 1, 2, tasks::add)) {
+      assertTrue(accessLog.append(0, 0, 200, 0, "/", "127.0.0.1"));
+      assertFalse(accessLog.append(0, 0, 200, 0, "/", "127.0.0.1"));
+      assertEquals(1, accessLog.getDroppedCount());
+      new ArrayList<>(tasks).forEach(Runnable::run);
+      assertTrue(accessLog.append(0, 0, 200, 0, "/", "127.0.0.1"));
+      accessLog.close();
+      assertFalse(accessLog.append(0, 0, 200, 0, "/", "127.0.0.1"));
+      assertEquals(2, accessLog.getDroppedCount());
+    }
+  }
+
+  private final List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted()
+          .collect(Collectors.toList());
+    }
+  }
+}
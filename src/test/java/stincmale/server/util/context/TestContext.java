@@ -0,0 +1,119 @@
+package stincmale.server.util.context;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public final class TestContext {
+  private static final String KEY = "KEY";
+  private static final String VALUE_OUTER = "VALUE_OUTER";
+  private static final String VALUE_INNER = "VALUE_INNER";
+
+  private ExecutorService executor;
+
+  public TestContext() {
+  }
+
+  @BeforeEach
+  public final void before() {
+    executor = Executors.newSingleThreadExecutor();
+    MDC.clear();
+  }
+
+  @AfterEach
+  public final void after() {
+    executor.shutdownNow();
+    MDC.clear();
+  }
+
+  @Test
+  public final void currentIsReusedWhileUnchanged() {
+    final Context empty = Context.current();
+    assertTrue(empty.mdc()
+        .isEmpty());
+    assertSame(empty, Context.current());
+    MDC.put(KEY, VALUE_OUTER);
+    final Context context = Context.current();
+    assertEquals(VALUE_OUTER, context.mdc()
+        .get(KEY));
+    assertSame(context, Context.current());
+    MDC.put(KEY, VALUE_INNER);
+    assertEquals(VALUE_OUTER, context.mdc()
+        .get(KEY));
+  }
+
+  @Test
+  public final void attach() throws ExecutionException, InterruptedException {
+    MDC.put(KEY, VALUE_OUTER);
+    final Context outer = Context.current()
+        .withTimeout(SECONDS.toNanos(10));
+    executor.submit(() -> {
+      MDC.put(KEY, VALUE_INNER);
+      for (int i = 0; i < 2; i++) {//a context may be attached more than once
+        try (var scope = outer.attach()) {
+          assertEquals(VALUE_OUTER, MDC.get(KEY));
+          assertSame(outer, Context.current());
+          assertTrue(Context.current()
+              .hasDeadline());
+        }
+        assertEquals(VALUE_INNER, MDC.get(KEY));
+        assertFalse(Context.current()
+            .hasDeadline());
+      }
+    })
+        .get();
+  }
+
+  @Test
+  public final void deadline() {
+    final Context context = Context.current();
+    assertFalse(context.hasDeadline());
+    assertFalse(context.isExpired());
+    assertEquals(Long.MAX_VALUE, context.remainingNanos());
+    final Context withDeadline = context.withTimeout(SECONDS.toNanos(10));
+    assertTrue(withDeadline.hasDeadline());
+    assertFalse(withDeadline.isExpired());
+    assertSame(withDeadline, withDeadline.withTimeout(SECONDS.toNanos(20)), "The earliest deadline must be retained");
+    final Context expired = withDeadline.withTimeout(0);
+    assertTrue(expired.isExpired());
+  }
+
+  @Test
+  public final void propagatingExecutor() throws ExecutionException, InterruptedException {
+    MDC.put(KEY, VALUE_OUTER);
+    final CompletableFuture<String> futureValue = new CompletableFuture<>();
+    Context.propagating(executor)
+        .execute(() -> futureValue.complete(MDC.get(KEY)));
+    assertEquals(VALUE_OUTER, futureValue.get());
+    executor.submit(() -> assertNull(MDC.get(KEY)))
+        .get();
+  }
+
+  @Test
+  public final void propagatingCompletionStage() throws ExecutionException, InterruptedException {
+    final CompletableFuture<String> future = new CompletableFuture<>();
+    MDC.put(KEY, VALUE_OUTER);
+    final CompletableFuture<String> futureValue = Context.propagating(future)
+        .thenApply(v -> v + MDC.get(KEY))
+        .toCompletableFuture();
+    MDC.clear();
+    executor.submit(() -> {
+      MDC.put(KEY, VALUE_INNER);
+      future.complete("");
+      assertEquals(VALUE_INNER, MDC.get(KEY));
+    })
+        .get();
+    assertEquals(VALUE_OUTER, futureValue.get());
+  }
+}
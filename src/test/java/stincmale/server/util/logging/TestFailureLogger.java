@@ -0,0 +1,67 @@
+package stincmale.server.util.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestFailureLogger {
+  private static final Logger logger = LoggerFactory.getLogger(TestFailureLogger.class);
+
+  public TestFailureLogger() {
+  }
+
+  @Test
+  public final void budgetPerFingerprint() {
+    final AtomicLong clock = new AtomicLong();
+    final FailureLogger failureLogger = new FailureLogger(logger, 2, 1_000, 10, 0, null, clock::get);
+    final List<Boolean> logged = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      logged.add(failureLogger.log(new IllegalStateException(), "Failure {}", i));
+    }
+    logged.add(failureLogger.log(new IllegalArgumentException(), "Failure {}", 4));
+    clock.addAndGet(MILLISECONDS.toNanos(1_000));
+    for (int i = 0; i < 3; i++) {
+      logged.add(failureLogger.log(new IllegalStateException(), "Failure {}", i));
+    }
+    assertEquals(List.of(true, true, false, false, true, true, true, false), logged);
+  }
+
+  @Test
+  public final void maxFingerprints() {
+    final FailureLogger failureLogger = new FailureLogger(logger, 1, 1_000, 1, 0, null, () -> 0);
+    assertEquals(true, failureLogger.log(new IllegalStateException(), "Failure"));
+    assertEquals(false, failureLogger.log(new IllegalArgumentException(), "Failure"));
+    failureLogger.report();
+    assertEquals(true, failureLogger.log(new IllegalStateException(), "Failure"));
+    failureLogger.report();
+    failureLogger.report();
+    assertEquals(true, failureLogger.log(new IllegalArgumentException(), "Failure"));
+  }
+
+  @Test
+  public final void scheduledReport() throws InterruptedException {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      final FailureLogger failureLogger = new FailureLogger(logger, 1, 10, 10, 0, scheduler, () -> 0);
+      assertTrue(failureLogger.log(new IllegalStateException(), "Failure"));
+      final long deadlineNanos = System.nanoTime() + SECONDS.toNanos(10);
+      boolean logged = false;
+      while (!logged && System.nanoTime() - deadlineNanos < 0) {//only the scheduled report may start a new period, because the clock stands still
+        logged = failureLogger.log(new IllegalStateException(), "Failure");
+        Thread.sleep(1);
+      }
+      assertTrue(logged);
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+}
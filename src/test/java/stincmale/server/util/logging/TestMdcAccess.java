@@ -0,0 +1,64 @@
+package stincmale.server.util.logging;
+
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public final class TestMdcAccess {
+  public TestMdcAccess() {
+  }
+
+  @AfterEach
+  public final void after() {
+    MDC.clear();
+  }
+
+  /**
+   * Fails if {@link MdcAccess} can no longer capture the context map of Log4j 2 without copying, e.g. after upgrading Log4j 2.
+   */
+  @Test
+  public final void log4j2CaptureWithoutCopying() {
+    final MdcAccess mdcAccess = MdcAccess.instance();
+    assertNotSame(MdcAccess.newFallback()
+        .getClass(), mdcAccess.getClass());
+    MDC.put("key", "value");
+    final Map<String, String> context = mdcAccess.capture();
+    assertEquals(Map.of("key", "value"), context);
+    assertSame(context, mdcAccess.capture());
+    MDC.put("key", "value2");
+    assertNotSame(context, mdcAccess.capture());
+  }
+
+  @Test
+  public final void fallbackCaptureRestore() {
+    captureRestore(MdcAccess.newFallback());
+  }
+
+  @Test
+  public final void captureRestore() {
+    captureRestore(MdcAccess.instance());
+  }
+
+  private static final void captureRestore(final MdcAccess mdcAccess) {
+    MDC.clear();
+    assertSame(Collections.emptyMap(), mdcAccess.capture());
+    MDC.put("key", "value");
+    final Map<String, String> context = mdcAccess.capture();
+    assertEquals(Map.of("key", "value"), context);
+    MDC.put("key", "value2");
+    MDC.put("key2", "value");
+    mdcAccess.restore(context);
+    assertEquals("value", MDC.get("key"));
+    assertNull(MDC.get("key2"));
+    assertEquals(context, mdcAccess.capture());
+    mdcAccess.restore(Collections.emptyMap());
+    assertNull(MDC.get("key"));
+    assertSame(Collections.emptyMap(), mdcAccess.capture());
+  }
+}
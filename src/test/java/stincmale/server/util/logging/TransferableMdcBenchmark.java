@@ -0,0 +1,99 @@
+package stincmale.server.util.logging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.MDC;
+
+/**
+ * Compares {@link TransferableMdc} with the copying implementation it used to be
+ * by capturing the {@link MDC} and transferring it within the same thread, which is what a request does multiple times.
+ * See {@code contributing.md} for how to run benchmarks, use {@code -prof gc} to see allocation rates.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TransferableMdcBenchmark {
+  @Param({"0", "2"})
+  public int mdcSize;
+
+  public TransferableMdcBenchmark() {
+  }
+
+  @Setup
+  public final void setup() {
+    MDC.clear();
+    for (int i = 0; i < mdcSize; i++) {
+      MDC.put("key" + i, "value" + i);
+    }
+  }
+
+  @TearDown
+  public final void tearDown() {
+    MDC.clear();
+  }
+
+  @Benchmark
+  public final String copyingCaptureAndTransfer() {
+    final CopyingTransferableMdc mdc = CopyingTransferableMdc.current();
+    try (var transferredMdc = mdc.transfer()) {
+      return MDC.get("key0");
+    }
+  }
+
+  @Benchmark
+  public final String captureAndTransfer() {
+    final TransferableMdc mdc = TransferableMdc.current();
+    try (var transferredMdc = mdc.transfer()) {
+      return MDC.get("key0");
+    }
+  }
+
+  /**
+   * The copying implementation of {@link TransferableMdc}.
+   */
+  private static final class CopyingTransferableMdc implements AutoCloseable {
+    private final Map<String, String> context;
+    @Nullable
+    private Map<String, String> backup;
+
+    private CopyingTransferableMdc(@Nullable final Map<String, String> contextMapCopy) {
+      context = contextMapCopy == null ? new HashMap<>() : contextMapCopy;
+    }
+
+    private static final CopyingTransferableMdc current() {
+      return new CopyingTransferableMdc(MDC.getCopyOfContextMap());
+    }
+
+    private final CopyingTransferableMdc transfer() {
+      @Nullable final Map<String, String> currentContext = MDC.getCopyOfContextMap();
+      backup = currentContext == null ? new HashMap<>() : currentContext;
+      MDC.setContextMap(context);
+      return this;
+    }
+
+    @Override
+    public final void close() {
+      if (backup != null) {
+        MDC.setContextMap(backup);
+        backup = null;
+      }
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package stincmale.server.util.logging;
 
+import java.util.Collections;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -142,4 +143,41 @@ public final class TransferableMdcTest {
     transferredMdc.close();
     assertThrows(IllegalStateException.class, transferredMdc::close);
   }
+
+  @Test
+  public final void changesInsideTransferredMdcAreRolledBack() {
+    {//prepare outer MDC
+      MDC.clear();
+      MDC.put(KEY_OUTER, VALUE_OUTER);
+    }
+    final TransferableMdc outerMdc = TransferableMdc.current();
+    try (var transferredMdc = outerMdc.transfer()) {//the MDC is unchanged
+      assertSame(VALUE_OUTER, MDC.get(KEY_OUTER));
+      MDC.put(KEY_INNER, VALUE_INNER);
+    }
+    assertSame(VALUE_OUTER, MDC.get(KEY_OUTER));
+    assertNull(MDC.get(KEY_INNER));
+  }
+
+  @Test
+  public final void snapshotIsImmutable() {
+    {//prepare outer MDC
+      MDC.clear();
+      MDC.put(KEY_OUTER, VALUE_OUTER);
+    }
+    final TransferableMdc outerMdc = TransferableMdc.current();
+    MDC.put(KEY_OUTER, VALUE_INNER);
+    assertSame(VALUE_OUTER, outerMdc.get(KEY_OUTER));
+    MDC.clear();
+  }
+
+  @Test
+  public final void captureDoesNotCopyLog4j2Context() {
+    MDC.clear();
+    MDC.put(KEY_OUTER, VALUE_OUTER);
+    final MdcAccess mdcAccess = MdcAccess.instance();
+    assertSame(mdcAccess.capture(), mdcAccess.capture());
+    MDC.clear();
+    assertSame(Collections.emptyMap(), mdcAccess.capture());
+  }
 }
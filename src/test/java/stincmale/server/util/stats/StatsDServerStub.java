@@ -0,0 +1,104 @@
+package stincmale.server.util.stats;
+
+import com.timgroup.statsd.NonBlockingStatsDClientBuilder;
+import com.timgroup.statsd.StatsDClient;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A local UDP stand-in for a StatsD server that collects received StatsD lines.
+ */
+final class StatsDServerStub implements AutoCloseable {
+  private final DatagramSocket socket;
+  private final BlockingQueue<String> lines;
+  private final Thread receiver;
+
+  StatsDServerStub() throws SocketException {
+    socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    lines = new LinkedBlockingQueue<>();
+    receiver = new Thread(this::receive, getClass().getSimpleName());
+    receiver.setDaemon(true);
+    receiver.start();
+  }
+
+  final int port() {
+    return socket.getLocalPort();
+  }
+
+  /**
+   * @return A new {@link StatsDClient} that sends to this server.
+   */
+  final StatsDClient newClient(final String prefix) {
+    return new NonBlockingStatsDClientBuilder()
+        .prefix(prefix)
+        .hostname(socket.getLocalAddress()
+            .getHostAddress())
+        .port(port())
+        .enableTelemetry(false)
+        .build();
+  }
+
+  /**
+   * @return The first received line that matches the {@code filter}, or {@code null} if there is no such line.
+   * Lines that do not match the {@code filter} are discarded.
+   */
+  @Nullable
+  final String await(final Predicate<String> filter, final long timeoutMillis) throws InterruptedException {
+    @Nullable
+    String result = null;
+    final long deadlineNanos = System.nanoTime() + MILLISECONDS.toNanos(timeoutMillis);
+    for (long remainingNanos = MILLISECONDS.toNanos(timeoutMillis); remainingNanos > 0; remainingNanos = deadlineNanos - System.nanoTime()) {
+      @Nullable final String line = lines.poll(remainingNanos, NANOSECONDS);
+      if (line != null && filter.test(line)) {
+        result = line;
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return All lines received so far that match the {@code filter}. Lines that do not match the {@code filter} are discarded.
+   */
+  final List<String> drain(final Predicate<String> filter) {
+    final List<String> received = new ArrayList<>();
+    lines.drainTo(received);
+    received.removeIf(filter.negate());
+    return received;
+  }
+
+  private final void receive() {
+    final byte[] buffer = new byte[64 * 1024];
+    while (!socket.isClosed()) {
+      final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+      try {
+        socket.receive(packet);
+      } catch (final IOException e) {
+        break;
+      }
+      for (final String line : new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8).split("\n")) {
+        if (!line.isEmpty()) {
+          lines.add(line);
+        }
+      }
+    }
+  }
+
+  @Override
+  public final void close() throws InterruptedException {
+    socket.close();
+    receiver.join();
+  }
+}
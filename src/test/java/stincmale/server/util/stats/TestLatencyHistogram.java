@@ -0,0 +1,96 @@
+package stincmale.server.util.stats;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class TestLatencyHistogram {
+  public TestLatencyHistogram() {
+  }
+
+  @Test
+  public final void buckets() {
+    for (long value = 0; value < 10_000_000; value = value * 11 / 10 + 1) {
+      final int index = LatencyHistogram.index(value);
+      final long highest = LatencyHistogram.highestEquivalentValue(index);
+      assertTrue(highest >= value, () -> String.valueOf(index));
+      assertTrue(highest - value <= value / LatencyHistogram.SUB_BUCKETS, () -> String.valueOf(index));
+      assertEquals(index, LatencyHistogram.index(highest));
+    }
+    assertEquals(0, LatencyHistogram.index(-1));
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(LatencyHistogram.MAX_VALUE));
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+    assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestEquivalentValue(LatencyHistogram.BUCKETS - 1));
+  }
+
+  @Test
+  public final void percentiles() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10_000; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertEquals(10_000, histogram.peek()
+        .count());
+    final LatencyHistogram.Snapshot snapshot = histogram.drain();
+    assertEquals(10_000, snapshot.count());
+    assertEquals(1000L * 10_000 * 10_001 / 2, snapshot.sum());
+    assertApproximatelyEquals(5_000_000, snapshot.valueAtPercentile(50));
+    assertApproximatelyEquals(9_900_000, snapshot.valueAtPercentile(99));
+    assertApproximatelyEquals(9_999_000, snapshot.valueAtPercentile(99.99));
+    assertApproximatelyEquals(10_000_000, snapshot.max());
+    assertEquals(0, histogram.drain()
+        .count());
+    assertEquals(0, histogram.drain()
+        .valueAtPercentile(50));
+    assertEquals(0, histogram.drain()
+        .sum());
+  }
+
+  @Test
+  public final void concurrentRecording() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final CompletableFuture<?>[] futures = new CompletableFuture<?>[4];
+      for (int i = 0; i < futures.length; i++) {
+        futures[i] = CompletableFuture.runAsync(() -> {
+          for (int j = 0; j < 100_000; j++) {
+            histogram.record(j);
+          }
+        }, executor);
+      }
+      long count = 0;
+      while (!CompletableFuture.allOf(futures)
+          .isDone()) {
+        count += histogram.drain()
+            .count();
+      }
+      count += histogram.drain()
+          .count();
+      assertEquals(400_000, count);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void shortLivedThreads() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 1000; i++) {
+      final Thread thread = new Thread(() -> histogram.record(1));
+      thread.start();
+      thread.join();
+    }
+    assertTrue(histogram.allocatedStripes() <= LatencyHistogram.STRIPES);
+    final LatencyHistogram.Snapshot snapshot = histogram.drain();
+    assertEquals(1000, snapshot.count());
+    assertEquals(1000, snapshot.sum());
+  }
+
+  private static final void assertApproximatelyEquals(final long expected, final long actual) {
+    assertTrue(Math.abs(expected - actual) <= expected / LatencyHistogram.SUB_BUCKETS, () -> expected + " != " + actual);
+  }
+}
@@ -0,0 +1,81 @@
+package stincmale.server.util.stats;
+
+import com.timgroup.statsd.StatsDClient;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public final class TestStatsAggregator {
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  public TestStatsAggregator() {
+  }
+
+  @Test
+  public final void histogram() throws Exception {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try (var server = new StatsDServerStub()) {
+      final StatsDClient statsDClient = server.newClient("test");
+      try {
+        final StatsAggregator aggregator = new StatsAggregator(statsDClient, 50, scheduler);
+        final LatencyHistogram histogram = aggregator.histogram("latency", List.of("tag:value"));
+        assertSame(histogram, aggregator.histogram("latency", List.of("tag:value")));
+        aggregator.start();
+        for (int i = 0; i < 1000; i++) {
+          histogram.record(MILLISECONDS.toNanos(2));
+        }
+        final String p99 = server.await(line -> line.startsWith("test.latency.p99:"), TIMEOUT_MILLIS);
+        assertNotNull(p99);
+        assertTrue(p99.startsWith("test.latency.p99:2.0"), p99);
+        assertTrue(p99.endsWith("|g|#tag:value"), p99);
+        aggregator.stop();
+        final String count = server.await(line -> line.startsWith("test.latency.count:"), TIMEOUT_MILLIS);
+        assertEquals("test.latency.count:1000|c|#tag:value", count);
+      } finally {
+        statsDClient.stop();
+      }
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public final void countersAndGauges() throws Exception {
+    final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try (var server = new StatsDServerStub()) {
+      final StatsDClient statsDClient = server.newClient("test");
+      try {
+        final StatsAggregator aggregator = new StatsAggregator(statsDClient, 60_000, scheduler);
+        final StatsAggregator.Counter counter = aggregator.counter("requests", null);
+        assertSame(counter, aggregator.counter("requests", List.of()));
+        final StatsAggregator.Gauge gauge = aggregator.gauge("concurrency", List.of("tag:value"));
+        for (int i = 0; i < 1000; i++) {
+          counter.increment();
+        }
+        gauge.add(5);
+        gauge.decrement();
+        aggregator.flush();
+        assertEquals("test.requests:1000|c", server.await(line -> line.startsWith("test.requests:"), TIMEOUT_MILLIS));
+        assertEquals("test.concurrency:4|g|#tag:value", server.await(line -> line.startsWith("test.concurrency:"), TIMEOUT_MILLIS));
+        counter.add(3);
+        aggregator.flush();
+        assertEquals("test.requests:3|c", server.await(line -> line.startsWith("test.requests:"), TIMEOUT_MILLIS));
+        aggregator.flush();
+        assertEquals("test.concurrency:4|g|#tag:value", server.await(line -> line.startsWith("test.concurrency:"), TIMEOUT_MILLIS));
+        assertTrue(server.drain(line -> line.startsWith("test.requests:"))
+            .isEmpty());
+        assertEquals(1003, counter.sum());
+      } finally {
+        statsDClient.stop();
+      }
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package stincmale.server.util.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class TestSpanRingBuffer {
+  public TestSpanRingBuffer() {
+  }
+
+  @Test
+  public final void overwrite() {
+    final SpanRingBuffer buffer = new SpanRingBuffer(4);
+    assertEquals(0, buffer.snapshot()
+        .size());
+    for (int i = 1; i <= 6; i++) {
+      buffer.record(1, i, 0, "span" + i, i, i);
+    }
+    final List<Span> spans = buffer.snapshot();
+    assertEquals(4, spans.size());
+    for (int i = 0; i < spans.size(); i++) {
+      final Span span = spans.get(i);
+      assertEquals(i + 3, span.spanId());
+      assertEquals("span" + (i + 3), span.name());
+      assertEquals(i + 3, span.durationNanos());
+    }
+  }
+
+  @Test
+  public final void read() {
+    final SpanRingBuffer buffer = new SpanRingBuffer(8);
+    buffer.record(1, 1, 0, "span1", 0, 0);
+    buffer.record(1, 2, 1, "span2", 0, 0);
+    final List<Span> spans = new ArrayList<>();
+    final long nextSequence = buffer.read(0, spans::add);
+    assertEquals(2, nextSequence);
+    assertEquals(2, spans.size());
+    spans.clear();
+    buffer.record(1, 3, 1, "span3", 0, 0);
+    assertEquals(3, buffer.read(nextSequence, spans::add));
+    assertEquals(1, spans.size());
+    assertEquals("span3", spans.get(0)
+        .name());
+  }
+
+  @Test
+  public final void json() {
+    final SpanRingBuffer buffer = new SpanRingBuffer(1);
+    buffer.record(0xabL, 0x1L, 0, "a\"b", System.nanoTime(), 5);
+    final String json = buffer.snapshot()
+        .get(0)
+        .toJson();
+    assertEquals("{\"traceId\":\"00000000000000ab\",\"spanId\":\"0000000000000001\",\"parentSpanId\":\"0000000000000000\""
+        + ",\"name\":\"a\\\"b\",\"startEpochNanos\":", json.substring(0, json.indexOf(':', json.indexOf("startEpochNanos")) + 1));
+    assertEquals(",\"durationNanos\":5}", json.substring(json.lastIndexOf(',')));
+  }
+
+  @Test
+  public final void sampling() {
+    final SpanRingBuffer buffer = new SpanRingBuffer(1);
+    assertNull(new Tracer(0, buffer).sample());
+    assertNotNull(new Tracer(1, buffer).sample());
+    assertThrows(IllegalArgumentException.class, () -> new SpanRingBuffer(3));
+  }
+}